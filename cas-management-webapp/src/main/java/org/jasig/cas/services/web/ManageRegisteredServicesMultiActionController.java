@@ -26,6 +26,7 @@ import java.util.Map;
 import javax.validation.constraints.NotNull;
 
 import org.jasig.cas.services.RegisteredService;
+import org.jasig.cas.services.RegisteredServices;
 import org.jasig.cas.services.ServicesManager;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.beans.factory.annotation.Value;
@@ -120,11 +121,12 @@ public final class ManageRegisteredServicesMultiActionController {
     @RequestMapping("updateRegisteredServiceEvaluationOrder.html")
     public ModelAndView updateRegisteredServiceEvaluationOrder(@RequestParam("id") final long id,
             @RequestParam("evaluationOrder") final int evaluationOrder) {
-        final RegisteredService svc = this.servicesManager.findServiceBy(id);
-        if (svc == null) {
+        final RegisteredService existing = this.servicesManager.findServiceBy(id);
+        if (existing == null) {
             throw new IllegalArgumentException("Service id " + id + " cannot be found.");
         }
 
+        final RegisteredService svc = RegisteredServices.copy(existing);
         svc.setEvaluationOrder(evaluationOrder);
         this.servicesManager.save(svc);
 
@@ -21,6 +21,7 @@ package org.jasig.cas.services.web;
 import org.jasig.cas.services.RegexRegisteredService;
 import org.jasig.cas.services.RegisteredService;
 import org.jasig.cas.services.RegisteredServiceImpl;
+import org.jasig.cas.services.RegisteredServices;
 import org.jasig.cas.services.ServicesManager;
 import org.jasig.services.persondir.IPersonAttributeDao;
 import org.slf4j.Logger;
@@ -226,12 +227,13 @@ public final class RegisteredServiceSimpleFormController {
 
         final RegisteredService service = this.servicesManager.findServiceBy(Long.parseLong(id));
 
-        if (service != null) {
-            LOGGER.debug("Loaded service {}", service.getServiceId());
-        } else {
+        if (service == null) {
             LOGGER.debug("Invalid service id specified.");
+            return null;
         }
+        LOGGER.debug("Loaded service {}", service.getServiceId());
 
-        return service;
+        // The form binds onto the command, so edit a copy rather than the shared instance
+        return RegisteredServices.copy(service);
     }
 }
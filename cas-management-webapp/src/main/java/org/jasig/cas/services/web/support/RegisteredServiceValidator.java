@@ -21,6 +21,10 @@ package org.jasig.cas.services.web.support;
 import javax.validation.constraints.Min;
 import javax.validation.constraints.NotNull;
 
+import java.util.regex.Pattern;
+import java.util.regex.PatternSyntaxException;
+
+import org.jasig.cas.services.RegexRegisteredService;
 import org.jasig.cas.services.RegisteredService;
 import org.jasig.cas.services.ServicesManager;
 import org.jasig.services.persondir.IPersonAttributeDao;
@@ -32,7 +36,8 @@ import org.springframework.validation.Validator;
 
 /**
  * RegisteredServiceValidator ensures that a new RegisteredService does not have
- * a conflicting Service Id with another service already in the registry.
+ * a conflicting Service Id with another service already in the registry, and that
+ * regular expression Service Ids compile.
  *
  * @author Scott Battaglia
  * @since 3.1
@@ -98,6 +103,15 @@ public final class RegisteredServiceValidator implements Validator {
             }
         }
 
+        if (r.getServiceId() != null && (r instanceof RegexRegisteredService || r.getServiceId().startsWith("^"))) {
+            try {
+                Pattern.compile(r.getServiceId());
+            } catch (final PatternSyntaxException e) {
+                errors.rejectValue("serviceId",
+                        "registeredService.serviceId.pattern", new Object[] {e.getDescription()}, null);
+            }
+        }
+
         if (r.getDescription() != null
                 && r.getDescription().length() > this.maxDescriptionLength) {
             errors.rejectValue("description",
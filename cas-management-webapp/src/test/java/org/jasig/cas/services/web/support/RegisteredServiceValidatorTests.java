@@ -29,6 +29,7 @@ import java.util.List;
 import java.util.Map;
 
 import org.jasig.cas.authentication.principal.Service;
+import org.jasig.cas.services.RegexRegisteredService;
 import org.jasig.cas.services.RegisteredService;
 import org.jasig.cas.services.RegisteredServiceImpl;
 import org.jasig.cas.services.ServicesManager;
@@ -102,6 +103,18 @@ public class RegisteredServiceValidatorTests {
         assertEquals(1, exception.getErrorCount());
     }
         
+    @Test
+    public void testInvalidRegexPattern() {
+        final RegexRegisteredService impl = new RegexRegisteredService();
+        impl.setServiceId("^https://(app.example.org/.*");
+
+        final BindException exception = new BindException(impl, "registeredService");
+        getValidator(false).validate(impl, exception);
+
+        assertEquals(1, exception.getErrorCount());
+        assertEquals("registeredService.serviceId.pattern", exception.getFieldError("serviceId").getCode());
+    }
+
     protected void checkId(final boolean exists, final int expectedErrors, final String name) {
         final Validator validator = getValidator(exists);
         final RegisteredServiceImpl impl = new RegisteredServiceImpl();
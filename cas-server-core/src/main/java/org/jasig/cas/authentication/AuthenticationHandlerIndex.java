@@ -0,0 +1,112 @@
+/*
+ * Licensed to Apereo under one or more contributor license
+ * agreements. See the NOTICE file distributed with this work
+ * for additional information regarding copyright ownership.
+ * Apereo licenses this file to you under the Apache License,
+ * Version 2.0 (the "License"); you may not use this file
+ * except in compliance with the License.  You may obtain a
+ * copy of the License at the following location:
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.jasig.cas.authentication;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+/**
+ * Index of the authentication handlers that may support each credential class, in configured order.
+ * Handlers implementing {@link CredentialTypeAuthenticationHandler} are only candidates for credentials of their
+ * declared type; other handlers are candidates for every credential. So are handlers whose class overrides
+ * {@link AuthenticationHandler#supports(Credential)} below the class declaring the type, such as deployer
+ * subclasses of a typed base class, since the override may accept other types. The candidates of a credential
+ * class are computed the first time it is seen, so that later dispatch is a single lookup.
+ *
+ * @author CAS Team
+ * @since 4.1
+ */
+final class AuthenticationHandlerIndex {
+
+    private final List<AuthenticationHandler> handlers;
+
+    /** Declared credential type of each handler, or null if the handler is a candidate for every credential. */
+    private final List<Class<? extends Credential>> types;
+
+    private final ConcurrentMap<Class<?>, List<AuthenticationHandler>> candidates =
+            new ConcurrentHashMap<Class<?>, List<AuthenticationHandler>>();
+
+    /**
+     * Creates a new index.
+     *
+     * @param handlers Handlers in the order they are attempted.
+     */
+    AuthenticationHandlerIndex(final Collection<AuthenticationHandler> handlers) {
+        this.handlers = new ArrayList<AuthenticationHandler>(handlers);
+        this.types = new ArrayList<Class<? extends Credential>>(handlers.size());
+        for (final AuthenticationHandler handler : this.handlers) {
+            this.types.add(getDeclaredType(handler));
+        }
+    }
+
+    /**
+     * Gets the handlers that may support a credential, whose {@link AuthenticationHandler#supports(Credential)}
+     * method still decides.
+     *
+     * @param credential the credential
+     * @return Candidate handlers in configured order.
+     */
+    List<AuthenticationHandler> getCandidates(final Credential credential) {
+        if (credential == null) {
+            return this.handlers;
+        }
+        final Class<?> type = credential.getClass();
+        final List<AuthenticationHandler> cached = this.candidates.get(type);
+        if (cached != null) {
+            return cached;
+        }
+        final List<AuthenticationHandler> list = new ArrayList<AuthenticationHandler>(this.handlers.size());
+        for (int i = 0; i < this.handlers.size(); i++) {
+            final Class<? extends Credential> declared = this.types.get(i);
+            if (declared == null || declared.isAssignableFrom(type)) {
+                list.add(this.handlers.get(i));
+            }
+        }
+        final List<AuthenticationHandler> unmodifiable = Collections.unmodifiableList(list);
+        final List<AuthenticationHandler> existing = this.candidates.putIfAbsent(type, unmodifiable);
+        return existing != null ? existing : unmodifiable;
+    }
+
+    /**
+     * Gets the credential type a handler declares, unless {@link AuthenticationHandler#supports(Credential)} is
+     * overridden in a subclass of the class declaring it.
+     *
+     * @param handler the handler
+     * @return Declared type, or null if supports() alone decides.
+     */
+    private static Class<? extends Credential> getDeclaredType(final AuthenticationHandler handler) {
+        if (!(handler instanceof CredentialTypeAuthenticationHandler)) {
+            return null;
+        }
+        try {
+            final Class<?> typeDeclarer = handler.getClass().getMethod("getSupportedCredentialType").getDeclaringClass();
+            final Class<?> supportsDeclarer = handler.getClass().getMethod("supports", Credential.class).getDeclaringClass();
+            if (supportsDeclarer != typeDeclarer && typeDeclarer.isAssignableFrom(supportsDeclarer)) {
+                return null;
+            }
+        } catch (final NoSuchMethodException e) {
+            throw new IllegalStateException("Public handler method not found", e);
+        }
+        return ((CredentialTypeAuthenticationHandler) handler).getSupportedCredentialType();
+    }
+}
@@ -0,0 +1,40 @@
+/*
+ * Licensed to Apereo under one or more contributor license
+ * agreements. See the NOTICE file distributed with this work
+ * for additional information regarding copyright ownership.
+ * Apereo licenses this file to you under the Apache License,
+ * Version 2.0 (the "License"); you may not use this file
+ * except in compliance with the License.  You may obtain a
+ * copy of the License at the following location:
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.jasig.cas.authentication;
+
+/**
+ * Authentication handler that declares the credential type it supports, so that it is never consulted for
+ * credentials of unrelated types. {@link #supports(Credential)} is still called for credentials of the declared
+ * type or its subtypes, and may refuse some of them. Handlers that cannot tell their credential type in
+ * advance simply implement {@link AuthenticationHandler} and are consulted for every credential. Subclasses that
+ * override {@link #supports(Credential)} without redeclaring the type are consulted for every credential too.
+ *
+ * @author CAS Team
+ * @since 4.1
+ */
+public interface CredentialTypeAuthenticationHandler extends AuthenticationHandler {
+
+    /**
+     * Gets the type of credential this handler may support. This handler must not support any credential
+     * that is not an instance of this type.
+     *
+     * @return Supported credential type, including its subtypes.
+     */
+    Class<? extends Credential> getSupportedCredentialType();
+}
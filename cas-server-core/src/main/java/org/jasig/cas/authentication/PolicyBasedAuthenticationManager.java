@@ -27,13 +27,22 @@ import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.util.Assert;
 
+import javax.validation.constraints.Min;
 import javax.validation.constraints.NotNull;
 import java.security.GeneralSecurityException;
 import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.Collections;
 import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CompletionService;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorCompletionService;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
 
 /**
  * Provides an authenticaiton manager that is inherently aware of multiple credentials and supports pluggable
@@ -42,7 +51,7 @@ import java.util.Map;
  * <ul>
  *   <li>For each given credential do the following:</li>
  *   <ul>
- *     <li>Iterate over all configured authentication handlers.</li>
+ *     <li>Iterate over the configured authentication handlers that may support the credential type.</li>
  *     <li>Attempt to authenticate a credential if a handler supports it.</li>
  *     <li>On success attempt to resolve a principal by doing the following:</li>
  *     <ul>
@@ -65,6 +74,15 @@ import java.util.Map;
  * </ul>
  *
  * It is an error condition to fail to resolve a principal.
+ * <p>
+ * When an executor is configured with {@link #setExecutor(ExecutorService)}, all supported handler and
+ * credential pairs are attempted concurrently instead. The security policy is checked as each attempt
+ * completes, and the attempts still running are cancelled as soon as it is satisfied. Successes and failures
+ * are always recorded in the order of the credentials and handlers, whatever order the attempts complete in,
+ * so audit records and metadata are ordered the same way as in sequential mode. Which attempts complete
+ * before the policy is satisfied does depend on their latency. A backup handler may be started for a slow
+ * handler with {@link #setHedgedHandlers(Map)}.
+ * </p>
  *
  * @author Marvin S. Addison
  * @since 4.0.0
@@ -87,6 +105,19 @@ public class PolicyBasedAuthenticationManager implements AuthenticationManager {
     @NotNull
     private final Map<AuthenticationHandler, PrincipalResolver> handlerResolverMap;
 
+    /** Candidate handlers by credential type. */
+    private final AuthenticationHandlerIndex handlerIndex;
+
+    /** Executor running handlers concurrently; null attempts them one after another. */
+    private ExecutorService executor;
+
+    /** Backup handler started for a handler that has not completed within the hedge delay. */
+    @NotNull
+    private Map<AuthenticationHandler, AuthenticationHandler> hedgedHandlers = Collections.emptyMap();
+
+    /** Time in milliseconds after which backup handlers are started. */
+    @Min(0)
+    private long hedgeDelay;
 
     /**
      * Creates a new authentication manager with a varargs array of authentication handlers that are attempted in the
@@ -113,6 +144,7 @@ public class PolicyBasedAuthenticationManager implements AuthenticationManager {
         for (final AuthenticationHandler handler : handlers) {
             this.handlerResolverMap.put(handler, null);
         }
+        this.handlerIndex = new AuthenticationHandlerIndex(this.handlerResolverMap.keySet());
     }
 
     /**
@@ -126,6 +158,7 @@ public class PolicyBasedAuthenticationManager implements AuthenticationManager {
     public PolicyBasedAuthenticationManager(final Map<AuthenticationHandler, PrincipalResolver> map) {
         Assert.notEmpty(map, "At least one authentication handler is required");
         this.handlerResolverMap = map;
+        this.handlerIndex = new AuthenticationHandlerIndex(map.keySet());
     }
 
     /**
@@ -182,6 +215,37 @@ public class PolicyBasedAuthenticationManager implements AuthenticationManager {
         this.authenticationPolicy = policy;
     }
 
+    /**
+     * Sets the executor that runs authentication handlers concurrently. The executor should be bounded, since
+     * every authentication submits one task per supported handler and credential. Attempts are cancelled by
+     * interruption once they are no longer needed.
+     *
+     * @param executor Executor for handler attempts, or null to attempt handlers one after another.
+     */
+    public void setExecutor(final ExecutorService executor) {
+        this.executor = executor;
+    }
+
+    /**
+     * Sets backup handlers that are also attempted when a handler has not completed within the hedge delay,
+     * for instance a handler for a secondary replica of the same directory. Only applies when an executor is
+     * configured. A backup handler result is recorded under the name of the backup handler, right after the
+     * handler it backs up.
+     *
+     * @param hedgedHandlers Map of handler to its backup handler.
+     */
+    public void setHedgedHandlers(final Map<AuthenticationHandler, AuthenticationHandler> hedgedHandlers) {
+        this.hedgedHandlers = hedgedHandlers;
+    }
+
+    /**
+     * @param hedgeDelay Time in milliseconds after which backup handlers are started for the handlers that have
+     *                   not completed.
+     */
+    public void setHedgeDelay(final long hedgeDelay) {
+        this.hedgeDelay = hedgeDelay;
+    }
+
     /**
      * Follows the same contract as {@link AuthenticationManager#authenticate(Credential...)}.
      *
@@ -196,32 +260,22 @@ public class PolicyBasedAuthenticationManager implements AuthenticationManager {
     protected AuthenticationBuilder authenticateInternal(final Credential... credentials)
             throws AuthenticationException {
 
-        final AuthenticationBuilder builder = new AuthenticationBuilder(NullPrincipal.getInstance());
-        for (final Credential c : credentials) {
-            builder.addCredential(new BasicCredentialMetaData(c));
+        if (this.executor != null) {
+            return authenticateConcurrently(credentials);
         }
+        final AuthenticationBuilder builder = newBuilder(credentials);
         boolean found;
         Principal principal;
-        PrincipalResolver resolver;
         for (final Credential credential : credentials) {
             found = false;
-            for (final AuthenticationHandler handler : this.handlerResolverMap.keySet()) {
+            for (final AuthenticationHandler handler : this.handlerIndex.getCandidates(credential)) {
                 if (handler.supports(credential)) {
                     found = true;
                     try {
                         final HandlerResult result = handler.authenticate(credential);
                         builder.addSuccess(handler.getName(), result);
                         logger.info("{} successfully authenticated {}", handler.getName(), credential);
-                        resolver = this.handlerResolverMap.get(handler);
-                        if (resolver == null) {
-                            principal = result.getPrincipal();
-                            logger.debug(
-                                    "No resolver configured for {}. Falling back to handler principal {}",
-                                    handler.getName(),
-                                    principal);
-                        } else {
-                            principal = resolvePrincipal(handler.getName(), resolver, credential);
-                        }
+                        principal = resolveHandlerPrincipal(handler, result, credential);
                         // Must avoid null principal since AuthenticationBuilder/ImmutableAuthentication
                         // require principal to be non-null
                         if (principal != null) {
@@ -246,6 +300,172 @@ public class PolicyBasedAuthenticationManager implements AuthenticationManager {
                         credential);
             }
         }
+        return checkPolicy(builder);
+    }
+
+    /**
+     * Attempts all supported handler and credential pairs concurrently, until the security policy is satisfied
+     * or all attempts have completed.
+     *
+     * @param credentials One or more credentials to authenticate.
+     * @return the authentication builder
+     * @throws AuthenticationException When security policy was not satisfied.
+     */
+    private AuthenticationBuilder authenticateConcurrently(final Credential... credentials)
+            throws AuthenticationException {
+
+        final CompletionService<HandlerAttempt> completionService =
+                new ExecutorCompletionService<HandlerAttempt>(this.executor);
+        final List<HandlerAttempt> attempts = new ArrayList<HandlerAttempt>();
+        final List<HandlerAttempt> hedgeable = new ArrayList<HandlerAttempt>();
+        for (final Credential credential : credentials) {
+            boolean found = false;
+            for (final AuthenticationHandler handler : this.handlerIndex.getCandidates(credential)) {
+                if (handler.supports(credential)) {
+                    found = true;
+                    // Leave room in the order for a backup attempt right after this one
+                    final HandlerAttempt attempt = new HandlerAttempt(attempts.size() * 2, handler, credential);
+                    attempt.future = completionService.submit(attempt);
+                    attempts.add(attempt);
+                    if (this.hedgedHandlers.containsKey(handler)) {
+                        hedgeable.add(attempt);
+                    }
+                }
+            }
+            if (!found) {
+                logger.warn(
+                        "Cannot find authentication handler that supports {}, which suggests a configuration problem.",
+                        credential);
+            }
+        }
+
+        final List<HandlerAttempt> completed = new ArrayList<HandlerAttempt>(attempts.size());
+        final long hedgeTime = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(this.hedgeDelay);
+        int pending = attempts.size();
+        try {
+            while (pending > 0) {
+                final Future<HandlerAttempt> future;
+                if (hedgeable.isEmpty()) {
+                    future = completionService.take();
+                } else {
+                    future = completionService.poll(hedgeTime - System.nanoTime(), TimeUnit.NANOSECONDS);
+                    if (future == null) {
+                        pending += startBackupAttempts(completionService, hedgeable, attempts);
+                        hedgeable.clear();
+                        continue;
+                    }
+                }
+                pending--;
+                final HandlerAttempt attempt = getAttempt(future);
+                completed.add(attempt);
+                if (attempt.result != null) {
+                    final AuthenticationBuilder builder = newBuilder(credentials, completed);
+                    if (this.authenticationPolicy.isSatisfiedBy(builder.build())) {
+                        return builder;
+                    }
+                }
+            }
+        } catch (final InterruptedException e) {
+            logger.warn("Interrupted while waiting for authentication handlers");
+            Thread.currentThread().interrupt();
+        } finally {
+            for (final HandlerAttempt attempt : attempts) {
+                attempt.future.cancel(true);
+            }
+        }
+        return checkPolicy(newBuilder(credentials, completed));
+    }
+
+    /**
+     * Starts the backup handlers of the hedgeable attempts that have not completed yet.
+     *
+     * @param completionService the completion service
+     * @param hedgeable attempts that have a backup handler
+     * @param attempts all attempts, to which the backup attempts are added
+     * @return the number of backup attempts started
+     */
+    private int startBackupAttempts(final CompletionService<HandlerAttempt> completionService,
+            final List<HandlerAttempt> hedgeable, final List<HandlerAttempt> attempts) {
+        int started = 0;
+        for (final HandlerAttempt attempt : hedgeable) {
+            final AuthenticationHandler backup = this.hedgedHandlers.get(attempt.handler);
+            if (!attempt.future.isDone() && backup.supports(attempt.credential)) {
+                logger.debug("{} has not completed within {} ms; also attempting {}", attempt.handler.getName(),
+                        this.hedgeDelay, backup.getName());
+                final HandlerAttempt hedge = new HandlerAttempt(attempt.order + 1, backup, attempt.credential);
+                hedge.future = completionService.submit(hedge);
+                attempts.add(hedge);
+                started++;
+            }
+        }
+        return started;
+    }
+
+    /**
+     * Gets a completed attempt, rethrowing unchecked exceptions raised by its handler.
+     *
+     * @param future the completed future
+     * @return the attempt
+     * @throws InterruptedException if interrupted
+     */
+    private static HandlerAttempt getAttempt(final Future<HandlerAttempt> future) throws InterruptedException {
+        try {
+            return future.get();
+        } catch (final ExecutionException e) {
+            if (e.getCause() instanceof Error) {
+                throw (Error) e.getCause();
+            }
+            throw (RuntimeException) e.getCause();
+        }
+    }
+
+    /**
+     * Creates a builder for the given credentials.
+     *
+     * @param credentials the credentials
+     * @return the authentication builder
+     */
+    private static AuthenticationBuilder newBuilder(final Credential... credentials) {
+        final AuthenticationBuilder builder = new AuthenticationBuilder(NullPrincipal.getInstance());
+        for (final Credential c : credentials) {
+            builder.addCredential(new BasicCredentialMetaData(c));
+        }
+        return builder;
+    }
+
+    /**
+     * Creates a builder recording the completed attempts in the order they were started in, so that the order
+     * does not depend on which handlers responded first.
+     *
+     * @param credentials the credentials
+     * @param completed the completed attempts
+     * @return the authentication builder
+     */
+    private static AuthenticationBuilder newBuilder(final Credential[] credentials, final List<HandlerAttempt> completed) {
+        final List<HandlerAttempt> ordered = new ArrayList<HandlerAttempt>(completed);
+        Collections.sort(ordered);
+        final AuthenticationBuilder builder = newBuilder(credentials);
+        for (final HandlerAttempt attempt : ordered) {
+            if (attempt.result != null) {
+                builder.addSuccess(attempt.handler.getName(), attempt.result);
+                if (attempt.principal != null) {
+                    builder.setPrincipal(attempt.principal);
+                }
+            } else {
+                builder.addFailure(attempt.handler.getName(), attempt.failure);
+            }
+        }
+        return builder;
+    }
+
+    /**
+     * Applies the implicit policy of at least one successful authentication, then the configured policy.
+     *
+     * @param builder the authentication builder
+     * @return the builder
+     * @throws AuthenticationException When security policy was not satisfied.
+     */
+    private AuthenticationBuilder checkPolicy(final AuthenticationBuilder builder) throws AuthenticationException {
         // We apply an implicit security policy of at least one successful authentication
         if (builder.getSuccesses().isEmpty()) {
             throw new AuthenticationException(builder.getFailures(), builder.getSuccesses());
@@ -257,6 +477,28 @@ public class PolicyBasedAuthenticationManager implements AuthenticationManager {
         return builder;
     }
 
+    /**
+     * Resolves the principal of a successful authentication, with the resolver configured for the handler if
+     * any and otherwise from the handler result.
+     *
+     * @param handler the handler
+     * @param result the handler result
+     * @param credential the credential
+     * @return the principal, possibly null
+     */
+    private Principal resolveHandlerPrincipal(
+            final AuthenticationHandler handler, final HandlerResult result, final Credential credential) {
+        final PrincipalResolver resolver = this.handlerResolverMap.get(handler);
+        if (resolver == null) {
+            logger.debug(
+                    "No resolver configured for {}. Falling back to handler principal {}",
+                    handler.getName(),
+                    result.getPrincipal());
+            return result.getPrincipal();
+        }
+        return resolvePrincipal(handler.getName(), resolver, credential);
+    }
+
       
     /**
      * Resolve principal.
@@ -286,4 +528,59 @@ public class PolicyBasedAuthenticationManager implements AuthenticationManager {
         return null;
     }
 
+    /**
+     * Attempt of one handler on one credential, ordered by the position at which it was started.
+     */
+    private final class HandlerAttempt implements Callable<HandlerAttempt>, Comparable<HandlerAttempt> {
+
+        private final int order;
+
+        private final AuthenticationHandler handler;
+
+        private final Credential credential;
+
+        private Future<HandlerAttempt> future;
+
+        private HandlerResult result;
+
+        private Principal principal;
+
+        private Class<? extends Exception> failure;
+
+        /**
+         * Creates a new attempt.
+         *
+         * @param order the position of the attempt
+         * @param handler the handler
+         * @param credential the credential
+         */
+        HandlerAttempt(final int order, final AuthenticationHandler handler, final Credential credential) {
+            this.order = order;
+            this.handler = handler;
+            this.credential = credential;
+        }
+
+        @Override
+        public HandlerAttempt call() {
+            try {
+                final HandlerResult r = this.handler.authenticate(this.credential);
+                logger.info("{} successfully authenticated {}", this.handler.getName(), this.credential);
+                this.principal = resolveHandlerPrincipal(this.handler, r, this.credential);
+                this.result = r;
+            } catch (final GeneralSecurityException e) {
+                logger.info("{} failed authenticating {}", this.handler.getName(), this.credential);
+                logger.debug("{} exception details: {}", this.handler.getName(), e.getMessage());
+                this.failure = e.getClass();
+            } catch (final PreventedException e) {
+                logger.error("{}: {}  (Details: {})", this.handler.getName(), e.getMessage(), e.getCause().getMessage());
+                this.failure = e.getClass();
+            }
+            return this;
+        }
+
+        @Override
+        public int compareTo(final HandlerAttempt other) {
+            return this.order - other.order;
+        }
+    }
 }
@@ -18,6 +18,7 @@
  */
 package org.jasig.cas.authentication.handler;
 
+import org.jasig.cas.util.CryptoPrimitives;
 import org.springframework.util.StringUtils;
 
 import javax.validation.constraints.NotNull;
@@ -62,8 +63,7 @@ public final class DefaultPasswordEncoder implements PasswordEncoder {
         }
 
         try {
-            final MessageDigest messageDigest = MessageDigest
-                .getInstance(this.encodingAlgorithm);
+            final MessageDigest messageDigest = CryptoPrimitives.getMessageDigest(this.encodingAlgorithm);
 
             if (StringUtils.hasText(this.characterEncoding)) {
                 messageDigest.update(password.getBytes(this.characterEncoding));
@@ -33,6 +33,7 @@ import org.jasig.cas.authentication.handler.PrincipalNameTransformer;
 import org.jasig.cas.authentication.principal.Principal;
 import org.jasig.cas.authentication.support.PasswordPolicyConfiguration;
 import org.jasig.cas.authentication.Credential;
+import org.jasig.cas.authentication.CredentialTypeAuthenticationHandler;
 
 import javax.security.auth.login.AccountNotFoundException;
 import javax.validation.constraints.NotNull;
@@ -47,7 +48,7 @@ import javax.validation.constraints.NotNull;
  * @since 3.0.0
  */
 public abstract class AbstractUsernamePasswordAuthenticationHandler extends
-    AbstractPreAndPostProcessingAuthenticationHandler {
+    AbstractPreAndPostProcessingAuthenticationHandler implements CredentialTypeAuthenticationHandler {
 
     /**
      * PasswordEncoder to be used by subclasses to encode passwords for
@@ -153,4 +154,9 @@ public abstract class AbstractUsernamePasswordAuthenticationHandler extends
     public boolean supports(final Credential credential) {
         return credential instanceof UsernamePasswordCredential;
     }
+
+    @Override
+    public Class<? extends Credential> getSupportedCredentialType() {
+        return UsernamePasswordCredential.class;
+    }
 }
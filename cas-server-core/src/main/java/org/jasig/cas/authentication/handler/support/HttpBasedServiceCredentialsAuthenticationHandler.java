@@ -20,6 +20,7 @@ package org.jasig.cas.authentication.handler.support;
 
 import org.jasig.cas.authentication.AbstractAuthenticationHandler;
 import org.jasig.cas.authentication.Credential;
+import org.jasig.cas.authentication.CredentialTypeAuthenticationHandler;
 import org.jasig.cas.authentication.HandlerResult;
 import org.jasig.cas.authentication.HttpBasedServiceCredential;
 import org.jasig.cas.authentication.principal.SimplePrincipal;
@@ -44,7 +45,8 @@ import java.security.GeneralSecurityException;
 
  * @since 3.0.0
  */
-public final class HttpBasedServiceCredentialsAuthenticationHandler extends AbstractAuthenticationHandler {
+public final class HttpBasedServiceCredentialsAuthenticationHandler extends AbstractAuthenticationHandler
+        implements CredentialTypeAuthenticationHandler {
 
     /** Log instance. */
     private final Logger logger = LoggerFactory.getLogger(getClass());
@@ -80,6 +82,11 @@ public final class HttpBasedServiceCredentialsAuthenticationHandler extends Abst
         return credential instanceof HttpBasedServiceCredential;
     }
 
+    @Override
+    public Class<? extends Credential> getSupportedCredentialType() {
+        return HttpBasedServiceCredential.class;
+    }
+
     /**
      * Sets the HttpClient which will do all of the connection stuff.
      * @param httpClient http client instance to use
@@ -55,6 +55,9 @@ public class PersonDirectoryPrincipalResolver implements PrincipalResolver {
     /** Optional principal attribute name. */
     private String principalAttributeName;
 
+    /** Optional cache of the attributes of recently resolved principals. */
+    private PrincipalAttributesCache attributeCache;
+
     @Override
     public boolean supports(final Credential credential) {
         return true;
@@ -73,7 +76,9 @@ public class PersonDirectoryPrincipalResolver implements PrincipalResolver {
 
         logger.debug("Creating SimplePrincipal for [{}]", principalId);
 
-        final IPersonAttributes personAttributes = this.attributeRepository.getPerson(principalId);
+        final IPersonAttributes personAttributes = this.attributeCache == null
+                ? this.attributeRepository.getPerson(principalId)
+                : this.attributeCache.getPerson(principalId, this.attributeRepository);
         final Map<String, List<Object>> attributes;
 
         if (personAttributes == null) {
@@ -114,6 +119,15 @@ public class PersonDirectoryPrincipalResolver implements PrincipalResolver {
         this.attributeRepository = attributeRepository;
     }
 
+    /**
+     * Sets a cache consulted before the attribute repository.
+     *
+     * @param attributeCache the cache; null queries the repository on every resolution.
+     */
+    public void setAttributeCache(final PrincipalAttributesCache attributeCache) {
+        this.attributeCache = attributeCache;
+    }
+
     public void setReturnNullIfNoAttributes(final boolean returnNullIfNoAttributes) {
         this.returnNullIfNoAttributes = returnNullIfNoAttributes;
     }
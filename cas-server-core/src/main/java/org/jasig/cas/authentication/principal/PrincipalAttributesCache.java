@@ -0,0 +1,349 @@
+/*
+ * Licensed to Apereo under one or more contributor license
+ * agreements. See the NOTICE file distributed with this work
+ * for additional information regarding copyright ownership.
+ * Apereo licenses this file to you under the Apache License,
+ * Version 2.0 (the "License"); you may not use this file
+ * except in compliance with the License.  You may obtain a
+ * copy of the License at the following location:
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.jasig.cas.authentication.principal;
+
+import org.jasig.cas.util.SegmentedLruCache;
+import org.jasig.services.persondir.IPersonAttributeDao;
+import org.jasig.services.persondir.IPersonAttributes;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.DisposableBean;
+
+import javax.validation.constraints.Min;
+import javax.validation.constraints.NotNull;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Bounded cache of the person attributes of recently resolved principals, used by
+ * {@link PersonDirectoryPrincipalResolver} in front of its attribute repository. Principals without attributes
+ * are cached as well. Entries are keyed by principal id and repository, so one cache may be shared by resolvers
+ * querying different repositories.
+ * <p>
+ * Each entry expires once its own time to live has passed since it was loaded. An entry read during the
+ * refresh-ahead window before it expires is still returned, and reloaded in the background so that active users
+ * rarely wait on the repository. Concurrent misses for the same principal share a single repository query.
+ * Entries are evicted in least recently used order once the capacity is reached, by a {@link SegmentedLruCache}
+ * that limits contention.
+ * </p>
+ *
+ * @author CAS Team
+ * @since 4.1
+ */
+public final class PrincipalAttributesCache implements DisposableBean {
+
+    /** Default maximum number of cached principals. */
+    public static final int DEFAULT_CAPACITY = 10000;
+
+    /** Default entry time to live in milliseconds. */
+    public static final long DEFAULT_TIME_TO_LIVE = 300000;
+
+    /** Default time in milliseconds before expiry from which entries are refreshed in the background. */
+    public static final long DEFAULT_REFRESH_AHEAD = 60000;
+
+    private static final int MAX_PENDING_REFRESHES = 1000;
+
+    private final Logger logger = LoggerFactory.getLogger(getClass());
+
+    @Min(1)
+    private final long timeToLive;
+
+    @Min(0)
+    private final long refreshAhead;
+
+    @NotNull
+    private ExecutorService refreshExecutor = newRefreshExecutor();
+
+    private final SegmentedLruCache<Key, Entry> entries;
+
+    private final ConcurrentMap<Key, FutureTask<IPersonAttributes>> loading =
+            new ConcurrentHashMap<Key, FutureTask<IPersonAttributes>>();
+
+    private final AtomicLong hits = new AtomicLong();
+
+    private final AtomicLong misses = new AtomicLong();
+
+    private final AtomicLong loads = new AtomicLong();
+
+    private final AtomicLong refreshes = new AtomicLong();
+
+    /**
+     * Creates a cache with the default capacity, time to live and refresh-ahead window.
+     */
+    public PrincipalAttributesCache() {
+        this(DEFAULT_CAPACITY, DEFAULT_TIME_TO_LIVE, DEFAULT_REFRESH_AHEAD);
+    }
+
+    /**
+     * Creates a new cache.
+     *
+     * @param capacity Maximum number of cached principals.
+     * @param timeToLive Time after which an entry expires, in milliseconds.
+     * @param refreshAhead Time before expiry from which a read entry is refreshed in the background, in
+     *                     milliseconds; 0 disables refreshing ahead.
+     */
+    public PrincipalAttributesCache(final int capacity, final long timeToLive, final long refreshAhead) {
+        this.timeToLive = timeToLive;
+        this.refreshAhead = Math.min(refreshAhead, timeToLive);
+        this.entries = new SegmentedLruCache<Key, Entry>(capacity);
+    }
+
+    /**
+     * @param refreshExecutor Executor running background refreshes in place of the default single daemon thread.
+     *                        It is shut down along with this cache.
+     */
+    public void setRefreshExecutor(final ExecutorService refreshExecutor) {
+        this.refreshExecutor.shutdown();
+        this.refreshExecutor = refreshExecutor;
+    }
+
+    /**
+     * Gets the attributes of a principal from the cache, querying the repository if they are not cached.
+     *
+     * @param principalId the principal id
+     * @param repository the attribute repository
+     * @return the person attributes, or null if the repository has none
+     */
+    public IPersonAttributes getPerson(final String principalId, final IPersonAttributeDao repository) {
+        final Key key = new Key(principalId, repository);
+        final Entry entry = this.entries.get(key);
+        final long now = System.currentTimeMillis();
+        if (entry != null && entry.expires > now) {
+            this.hits.incrementAndGet();
+            if (entry.refreshAt <= now && entry.refreshing.compareAndSet(false, true)) {
+                refresh(key, entry);
+            }
+            return entry.person;
+        }
+        this.misses.incrementAndGet();
+        return load(key);
+    }
+
+    /**
+     * Shuts down the background refresh executor.
+     */
+    @Override
+    public void destroy() {
+        this.refreshExecutor.shutdownNow();
+    }
+
+    /**
+     * @return the number of cached principals, including expired entries not yet evicted.
+     */
+    public int getSize() {
+        return this.entries.size();
+    }
+
+    public int getCapacity() {
+        return this.entries.getCapacity();
+    }
+
+    public long getHitCount() {
+        return this.hits.get();
+    }
+
+    public long getMissCount() {
+        return this.misses.get();
+    }
+
+    /**
+     * @return the number of repository queries, including background refreshes.
+     */
+    public long getLoadCount() {
+        return this.loads.get();
+    }
+
+    public long getRefreshCount() {
+        return this.refreshes.get();
+    }
+
+    public long getEvictionCount() {
+        return this.entries.getEvictionCount();
+    }
+
+    /**
+     * @return the fraction of lookups served from the cache, or zero if there were none.
+     */
+    public double getHitRatio() {
+        final long hitCount = this.hits.get();
+        final long total = hitCount + this.misses.get();
+        return total == 0 ? 0 : (double) hitCount / total;
+    }
+
+    /**
+     * Queries the repository for a principal and caches the result. Callers loading the same principal from the
+     * same repository at the same time wait for a single query.
+     *
+     * @param key the principal id and attribute repository
+     * @return the person attributes, or null
+     */
+    private IPersonAttributes load(final Key key) {
+        final String principalId = key.principalId;
+        final FutureTask<IPersonAttributes> task = new FutureTask<IPersonAttributes>(new Callable<IPersonAttributes>() {
+            @Override
+            public IPersonAttributes call() {
+                loads.incrementAndGet();
+                final IPersonAttributes person = key.repository.getPerson(principalId);
+                final long loaded = System.currentTimeMillis();
+                entries.put(key, new Entry(person, loaded + timeToLive, loaded + timeToLive - refreshAhead));
+                return person;
+            }
+        });
+        FutureTask<IPersonAttributes> flight = this.loading.putIfAbsent(key, task);
+        if (flight == null) {
+            flight = task;
+            try {
+                task.run();
+            } finally {
+                this.loading.remove(key, task);
+            }
+        } else {
+            logger.debug("Waiting for the attributes of {} being loaded by another thread", principalId);
+        }
+        try {
+            return flight.get();
+        } catch (final InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("Interrupted while loading the attributes of " + principalId, e);
+        } catch (final ExecutionException e) {
+            if (e.getCause() instanceof RuntimeException) {
+                throw (RuntimeException) e.getCause();
+            }
+            if (e.getCause() instanceof Error) {
+                throw (Error) e.getCause();
+            }
+            throw new IllegalStateException(e.getCause());
+        }
+    }
+
+    /**
+     * Reloads an entry in the background.
+     *
+     * @param key the principal id and attribute repository
+     * @param entry the entry being refreshed
+     */
+    private void refresh(final Key key, final Entry entry) {
+        final String principalId = key.principalId;
+        try {
+            this.refreshExecutor.execute(new Runnable() {
+                @Override
+                public void run() {
+                    try {
+                        refreshes.incrementAndGet();
+                        load(key);
+                    } catch (final RuntimeException e) {
+                        logger.warn("Failed refreshing the attributes of {}: {}", principalId, e.getMessage());
+                        entry.refreshing.set(false);
+                    }
+                }
+            });
+        } catch (final RejectedExecutionException e) {
+            logger.debug("Skipped refreshing the attributes of {}: {}", principalId, e.getMessage());
+            entry.refreshing.set(false);
+        }
+    }
+
+    /**
+     * Creates the default refresh executor: a single daemon thread with a bounded queue.
+     *
+     * @return the executor
+     */
+    private static ExecutorService newRefreshExecutor() {
+        return new ThreadPoolExecutor(1, 1, 0, TimeUnit.MILLISECONDS,
+                new LinkedBlockingQueue<Runnable>(MAX_PENDING_REFRESHES), new ThreadFactory() {
+            @Override
+            public Thread newThread(final Runnable r) {
+                final Thread thread = new Thread(r, "PrincipalAttributesCacheRefresh");
+                thread.setDaemon(true);
+                return thread;
+            }
+        });
+    }
+
+    /**
+     * Principal id and the repository its attributes are queried from. Repositories are compared by identity.
+     */
+    private static final class Key {
+        private final String principalId;
+
+        private final IPersonAttributeDao repository;
+
+        /**
+         * Instantiates a new key.
+         *
+         * @param principalId the principal id
+         * @param repository the attribute repository
+         */
+        Key(final String principalId, final IPersonAttributeDao repository) {
+            this.principalId = principalId;
+            this.repository = repository;
+        }
+
+        @Override
+        public boolean equals(final Object other) {
+            if (!(other instanceof Key)) {
+                return false;
+            }
+            final Key key = (Key) other;
+            return this.principalId.equals(key.principalId) && this.repository == key.repository;
+        }
+
+        @Override
+        public int hashCode() {
+            return 31 * this.principalId.hashCode() + System.identityHashCode(this.repository);
+        }
+    }
+
+    /**
+     * Cached attributes of a principal.
+     */
+    private static final class Entry {
+        private final IPersonAttributes person;
+
+        private final long expires;
+
+        private final long refreshAt;
+
+        private final AtomicBoolean refreshing = new AtomicBoolean();
+
+        /**
+         * Instantiates a new entry.
+         *
+         * @param person the person attributes, or null
+         * @param expires the expiration time
+         * @param refreshAt the time from which the entry is refreshed when read
+         */
+        Entry(final IPersonAttributes person, final long expires, final long refreshAt) {
+            this.person = person;
+            this.expires = expires;
+            this.refreshAt = refreshAt;
+        }
+    }
+}
@@ -22,6 +22,7 @@ import org.apache.commons.codec.binary.Base64;
 import org.apache.commons.lang3.RandomStringUtils;
 import org.apache.commons.lang3.builder.EqualsBuilder;
 import org.apache.commons.lang3.builder.HashCodeBuilder;
+import org.jasig.cas.util.CryptoPrimitives;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
@@ -82,7 +83,7 @@ public final class ShibbolethCompatiblePersistentIdGenerator implements Persiste
     @Override
     public String generate(final Principal principal, final Service service) {
         try {
-            final MessageDigest md = MessageDigest.getInstance("SHA");
+            final MessageDigest md = CryptoPrimitives.getMessageDigest("SHA");
             md.update(service.getId().getBytes());
             md.update(CONST_SEPARATOR);
             md.update(principal.getId().getBytes());
@@ -0,0 +1,114 @@
+/*
+ * Licensed to Apereo under one or more contributor license
+ * agreements. See the NOTICE file distributed with this work
+ * for additional information regarding copyright ownership.
+ * Apereo licenses this file to you under the Apache License,
+ * Version 2.0 (the "License"); you may not use this file
+ * except in compliance with the License.  You may obtain a
+ * copy of the License at the following location:
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.jasig.cas.monitor;
+
+/**
+ * Statistics of a cache of entries counted as items, such as a cache of lookup results, along with the number of
+ * lookups it served and missed and the number of times it loaded or refreshed entries from its source.
+ *
+ * @author CAS Team
+ * @since 4.1
+ */
+public class LookupCacheStatistics extends SimpleCacheStatistics {
+
+    private static final int PERCENTAGE = 100;
+
+    private final long hits;
+
+    private final long misses;
+
+    private final long loads;
+
+    private final long refreshes;
+
+    /**
+     * Creates a new named instance of a cache that loads an entry on every miss and never refreshes entries.
+     *
+     * @param size Number of cached items.
+     * @param capacity Maximum number of cached items.
+     * @param evictions Number of evictions reported by cache.
+     * @param name Name of cache instance to which statistics apply.
+     * @param hits Number of lookups served from the cache.
+     * @param misses Number of lookups not served from the cache.
+     */
+    public LookupCacheStatistics(final long size, final long capacity, final long evictions, final String name,
+                                 final long hits, final long misses) {
+        this(size, capacity, evictions, name, hits, misses, misses, 0);
+    }
+
+    /**
+     * Creates a new named instance with given parameters.
+     *
+     * @param size Number of cached items.
+     * @param capacity Maximum number of cached items.
+     * @param evictions Number of evictions reported by cache.
+     * @param name Name of cache instance to which statistics apply.
+     * @param hits Number of lookups served from the cache.
+     * @param misses Number of lookups not served from the cache.
+     * @param loads Number of entries loaded from the source of the cache, including refreshes.
+     * @param refreshes Number of entries reloaded before they expired.
+     */
+    public LookupCacheStatistics(final long size, final long capacity, final long evictions, final String name,
+                                 final long hits, final long misses, final long loads, final long refreshes) {
+        super(size, capacity, evictions, name);
+        this.hits = hits;
+        this.misses = misses;
+        this.loads = loads;
+        this.refreshes = refreshes;
+    }
+
+    public long getHits() {
+        return this.hits;
+    }
+
+    public long getMisses() {
+        return this.misses;
+    }
+
+    public long getLoads() {
+        return this.loads;
+    }
+
+    public long getRefreshes() {
+        return this.refreshes;
+    }
+
+    /**
+     * Gets the fraction of lookups served from the cache.
+     *
+     * @return Hit ratio between 0 and 1, or 0 if there were no lookups.
+     */
+    public double getHitRatio() {
+        final long total = this.hits + this.misses;
+        return total == 0 ? 0 : (double) this.hits / total;
+    }
+
+    @Override
+    public void toString(final StringBuilder builder) {
+        if (getName() != null) {
+            builder.append(getName()).append(':');
+        }
+        builder.append(getSize()).append(" items, ");
+        builder.append(getPercentFree()).append("% free, ");
+        builder.append(getEvictions()).append(" evictions, ");
+        builder.append(Math.round(getHitRatio() * PERCENTAGE)).append("% hits, ");
+        builder.append(this.loads).append(" loads, ");
+        builder.append(this.refreshes).append(" refreshes");
+    }
+}
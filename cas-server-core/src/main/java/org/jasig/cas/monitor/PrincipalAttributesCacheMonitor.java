@@ -0,0 +1,55 @@
+/*
+ * Licensed to Apereo under one or more contributor license
+ * agreements. See the NOTICE file distributed with this work
+ * for additional information regarding copyright ownership.
+ * Apereo licenses this file to you under the Apache License,
+ * Version 2.0 (the "License"); you may not use this file
+ * except in compliance with the License.  You may obtain a
+ * copy of the License at the following location:
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.jasig.cas.monitor;
+
+import org.jasig.cas.authentication.principal.PrincipalAttributesCache;
+
+import javax.validation.constraints.NotNull;
+
+/**
+ * Monitors a {@link PrincipalAttributesCache} instance, reporting {@link LookupCacheStatistics} that include its
+ * hit ratio and repository load and refresh counts. Since evictions are expected once the cache is full,
+ * consider raising the eviction threshold above its default of zero.
+ *
+ * @author CAS Team
+ * @since 4.1
+ */
+public class PrincipalAttributesCacheMonitor extends AbstractCacheMonitor {
+
+    @NotNull
+    private final PrincipalAttributesCache cache;
+
+    /**
+     * Instantiates a new principal attributes cache monitor.
+     *
+     * @param cache the cache
+     */
+    public PrincipalAttributesCacheMonitor(final PrincipalAttributesCache cache) {
+        this.cache = cache;
+    }
+
+    @Override
+    protected CacheStatistics[] getStatistics() {
+        return new CacheStatistics[] {
+                new LookupCacheStatistics(this.cache.getSize(), this.cache.getCapacity(), this.cache.getEvictionCount(),
+                        "principalAttributesCache", this.cache.getHitCount(), this.cache.getMissCount(),
+                        this.cache.getLoadCount(), this.cache.getRefreshCount()),
+        };
+    }
+}
@@ -0,0 +1,273 @@
+/*
+ * Licensed to Apereo under one or more contributor license
+ * agreements. See the NOTICE file distributed with this work
+ * for additional information regarding copyright ownership.
+ * Apereo licenses this file to you under the Apache License,
+ * Version 2.0 (the "License"); you may not use this file
+ * except in compliance with the License.  You may obtain a
+ * copy of the License at the following location:
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.jasig.cas.persondir;
+
+import org.jasig.services.persondir.IPersonAttributes;
+import org.jasig.services.persondir.support.AbstractDefaultAttributePersonAttributeDao;
+import org.jasig.services.persondir.support.merger.IAttributeMerger;
+import org.jasig.services.persondir.support.merger.MultivaluedAttributeMerger;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.DisposableBean;
+import org.springframework.dao.DataRetrievalFailureException;
+import org.springframework.dao.QueryTimeoutException;
+
+import javax.validation.constraints.NotNull;
+import javax.validation.constraints.Size;
+import java.util.ArrayList;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Attribute repository that queries several {@link PersonAttributeSource sources} at the same time and merges
+ * their results, so that resolving attributes takes as long as the slowest source rather than the sum of all of
+ * them. Each source is given its own timeout; a source that fails or does not answer in time is skipped unless
+ * it is required, in which case the query fails. Results are merged in the order the sources are configured,
+ * using the same {@link IAttributeMerger} strategies as the person directory merging repository.
+ * <p>
+ * Unlike the person directory merging repository, every source is queried with the original query; results of
+ * one source are not used to query the next.
+ * </p>
+ *
+ * @author CAS Team
+ * @since 4.1
+ */
+public final class ConcurrentMergingPersonAttributeDao extends AbstractDefaultAttributePersonAttributeDao
+        implements DisposableBean {
+
+    /** Default number of threads querying sources. */
+    public static final int DEFAULT_POOL_SIZE = 20;
+
+    private static final int MAX_PENDING_QUERIES = 1000;
+
+    private final Logger logger = LoggerFactory.getLogger(getClass());
+
+    @NotNull
+    @Size(min = 1)
+    private final List<PersonAttributeSource> sources;
+
+    @NotNull
+    private IAttributeMerger attributeMerger = new MultivaluedAttributeMerger();
+
+    @NotNull
+    private ExecutorService executor = newExecutor(DEFAULT_POOL_SIZE);
+
+    /**
+     * Creates a new repository.
+     *
+     * @param sources Sources to query, in the order their results are merged.
+     */
+    public ConcurrentMergingPersonAttributeDao(final List<PersonAttributeSource> sources) {
+        this.sources = sources;
+    }
+
+    /**
+     * @param attributeMerger Strategy merging the results of the sources, which defaults to
+     *                        {@link MultivaluedAttributeMerger}.
+     */
+    public void setAttributeMerger(final IAttributeMerger attributeMerger) {
+        this.attributeMerger = attributeMerger;
+    }
+
+    /**
+     * @param executor Executor querying the sources in place of the default bounded pool of daemon threads.
+     *                 It is shut down along with this repository.
+     */
+    public void setExecutor(final ExecutorService executor) {
+        this.executor.shutdown();
+        this.executor = executor;
+    }
+
+    public List<PersonAttributeSource> getSources() {
+        return this.sources;
+    }
+
+    @Override
+    public Set<IPersonAttributes> getPeopleWithMultivaluedAttributes(final Map<String, List<Object>> query) {
+        final long start = System.nanoTime();
+        final List<Future<Set<IPersonAttributes>>> futures = new ArrayList<Future<Set<IPersonAttributes>>>(
+                this.sources.size());
+        for (final PersonAttributeSource source : this.sources) {
+            futures.add(submit(source, query));
+        }
+
+        Set<IPersonAttributes> result = null;
+        try {
+            for (int i = 0; i < this.sources.size(); i++) {
+                final Set<IPersonAttributes> people = await(this.sources.get(i), futures.get(i), start);
+                if (people == null) {
+                    continue;
+                }
+                if (result == null) {
+                    result = new LinkedHashSet<IPersonAttributes>(people);
+                } else {
+                    result = this.attributeMerger.mergeResults(result, people);
+                }
+            }
+        } finally {
+            for (final Future<Set<IPersonAttributes>> future : futures) {
+                if (future != null) {
+                    future.cancel(true);
+                }
+            }
+        }
+        logger.debug("Queried {} attribute sources in {} ms", this.sources.size(),
+                TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start));
+        return result;
+    }
+
+    @Override
+    public Set<String> getPossibleUserAttributeNames() {
+        Set<String> names = new LinkedHashSet<String>();
+        for (final PersonAttributeSource source : this.sources) {
+            final Set<String> sourceNames = source.getAttributeRepository().getPossibleUserAttributeNames();
+            if (sourceNames == null) {
+                return null;
+            }
+            names = this.attributeMerger.mergePossibleUserAttributeNames(names, sourceNames);
+        }
+        return names;
+    }
+
+    @Override
+    public Set<String> getAvailableQueryAttributes() {
+        Set<String> names = new LinkedHashSet<String>();
+        for (final PersonAttributeSource source : this.sources) {
+            final Set<String> sourceNames = source.getAttributeRepository().getAvailableQueryAttributes();
+            if (sourceNames == null) {
+                return null;
+            }
+            names = this.attributeMerger.mergeAvailableQueryAttributes(names, sourceNames);
+        }
+        return names;
+    }
+
+    /**
+     * Shuts down the executor querying the sources.
+     */
+    @Override
+    public void destroy() {
+        this.executor.shutdownNow();
+    }
+
+    /**
+     * Starts querying a source.
+     *
+     * @param source the source
+     * @param query the query
+     * @return the pending result, or null if the executor is saturated and the source is skipped
+     */
+    private Future<Set<IPersonAttributes>> submit(final PersonAttributeSource source,
+                                                  final Map<String, List<Object>> query) {
+        try {
+            return this.executor.submit(new Callable<Set<IPersonAttributes>>() {
+                @Override
+                public Set<IPersonAttributes> call() {
+                    final long start = System.nanoTime();
+                    boolean failed = true;
+                    try {
+                        final Set<IPersonAttributes> people =
+                                source.getAttributeRepository().getPeopleWithMultivaluedAttributes(query);
+                        failed = false;
+                        return people;
+                    } finally {
+                        source.recordQuery(System.nanoTime() - start, failed);
+                    }
+                }
+            });
+        } catch (final RejectedExecutionException e) {
+            if (source.isRequired()) {
+                throw new DataRetrievalFailureException("Too many pending attribute queries to query " + source, e);
+            }
+            logger.warn("Too many pending attribute queries; skipping {}", source);
+            return null;
+        }
+    }
+
+    /**
+     * Waits for a source to answer until its timeout, measured from the start of the query, has passed.
+     *
+     * @param source the source
+     * @param future the pending result
+     * @param start time the query started, from {@link System#nanoTime()}
+     * @return the people found, or null if the source found none or was skipped
+     */
+    private Set<IPersonAttributes> await(final PersonAttributeSource source,
+                                         final Future<Set<IPersonAttributes>> future, final long start) {
+        if (future == null) {
+            return null;
+        }
+        final long remaining = TimeUnit.MILLISECONDS.toNanos(source.getTimeout()) - (System.nanoTime() - start);
+        try {
+            return future.get(Math.max(0, remaining), TimeUnit.NANOSECONDS);
+        } catch (final TimeoutException e) {
+            future.cancel(true);
+            source.recordTimeout();
+            if (source.isRequired()) {
+                throw new QueryTimeoutException("Attribute source " + source + " did not answer within "
+                        + source.getTimeout() + " ms", e);
+            }
+            logger.warn("Attribute source {} did not answer within {} ms; skipping it", source, source.getTimeout());
+        } catch (final ExecutionException e) {
+            if (source.isRequired()) {
+                if (e.getCause() instanceof RuntimeException) {
+                    throw (RuntimeException) e.getCause();
+                }
+                throw new DataRetrievalFailureException("Attribute source " + source + " failed", e.getCause());
+            }
+            logger.warn("Attribute source {} failed; skipping it", source, e.getCause());
+        } catch (final InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new DataRetrievalFailureException("Interrupted waiting for attribute source " + source, e);
+        }
+        return null;
+    }
+
+    /**
+     * Creates the default executor, a fixed pool of daemon threads with a bounded queue.
+     *
+     * @param size the number of threads
+     * @return the executor
+     */
+    private static ExecutorService newExecutor(final int size) {
+        final AtomicInteger count = new AtomicInteger();
+        return new ThreadPoolExecutor(size, size, 0, TimeUnit.MILLISECONDS,
+                new LinkedBlockingQueue<Runnable>(MAX_PENDING_QUERIES), new ThreadFactory() {
+            @Override
+            public Thread newThread(final Runnable r) {
+                final Thread thread = new Thread(r, "ConcurrentMergingPersonAttributeDao-" + count.incrementAndGet());
+                thread.setDaemon(true);
+                return thread;
+            }
+        });
+    }
+}
@@ -0,0 +1,172 @@
+/*
+ * Licensed to Apereo under one or more contributor license
+ * agreements. See the NOTICE file distributed with this work
+ * for additional information regarding copyright ownership.
+ * Apereo licenses this file to you under the Apache License,
+ * Version 2.0 (the "License"); you may not use this file
+ * except in compliance with the License.  You may obtain a
+ * copy of the License at the following location:
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.jasig.cas.persondir;
+
+import org.jasig.services.persondir.IPersonAttributeDao;
+
+import javax.validation.constraints.Min;
+import javax.validation.constraints.NotNull;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * An attribute repository queried by {@link ConcurrentMergingPersonAttributeDao}, together with the time it is
+ * given to answer and what happens when it does not. A source that is not required is skipped when it fails or
+ * times out, and the remaining sources are merged without it; a required source fails the whole query instead.
+ * The latency of every query is recorded.
+ *
+ * @author CAS Team
+ * @since 4.1
+ */
+public final class PersonAttributeSource {
+
+    /** Default time a source is given to answer, in milliseconds. */
+    public static final long DEFAULT_TIMEOUT = 5000;
+
+    @NotNull
+    private final IPersonAttributeDao attributeRepository;
+
+    @NotNull
+    private String name;
+
+    @Min(1)
+    private long timeout = DEFAULT_TIMEOUT;
+
+    private boolean required;
+
+    private final AtomicLong queries = new AtomicLong();
+
+    private final AtomicLong totalLatency = new AtomicLong();
+
+    private final AtomicLong maxLatency = new AtomicLong();
+
+    private final AtomicLong timeouts = new AtomicLong();
+
+    private final AtomicLong failures = new AtomicLong();
+
+    /**
+     * Creates a new source that is skipped on failure.
+     *
+     * @param attributeRepository Attribute repository to query.
+     */
+    public PersonAttributeSource(final IPersonAttributeDao attributeRepository) {
+        this.attributeRepository = attributeRepository;
+        this.name = attributeRepository.getClass().getSimpleName();
+    }
+
+    public IPersonAttributeDao getAttributeRepository() {
+        return this.attributeRepository;
+    }
+
+    public String getName() {
+        return this.name;
+    }
+
+    /**
+     * @param name Name of the source used in logs, which defaults to the repository class name.
+     */
+    public void setName(final String name) {
+        this.name = name;
+    }
+
+    public long getTimeout() {
+        return this.timeout;
+    }
+
+    /**
+     * @param timeout Time in milliseconds the source is given to answer a query.
+     */
+    public void setTimeout(final long timeout) {
+        this.timeout = timeout;
+    }
+
+    public boolean isRequired() {
+        return this.required;
+    }
+
+    /**
+     * @param required True to fail queries when this source fails or times out, false to skip it.
+     */
+    public void setRequired(final boolean required) {
+        this.required = required;
+    }
+
+    /**
+     * @return Number of queries that completed, including those that failed or finished after timing out.
+     */
+    public long getQueryCount() {
+        return this.queries.get();
+    }
+
+    public long getTimeoutCount() {
+        return this.timeouts.get();
+    }
+
+    public long getFailureCount() {
+        return this.failures.get();
+    }
+
+    /**
+     * @return Average latency of the completed queries in milliseconds, or 0 if there were none.
+     */
+    public double getAverageLatency() {
+        final long count = this.queries.get();
+        if (count == 0) {
+            return 0;
+        }
+        return (double) this.totalLatency.get() / count / TimeUnit.MILLISECONDS.toNanos(1);
+    }
+
+    /**
+     * @return Highest latency of a completed query in milliseconds.
+     */
+    public long getMaxLatency() {
+        return TimeUnit.NANOSECONDS.toMillis(this.maxLatency.get());
+    }
+
+    /**
+     * Records a query that completed, successfully or not.
+     *
+     * @param latency Time the query took in nanoseconds.
+     * @param failed True if the query failed.
+     */
+    void recordQuery(final long latency, final boolean failed) {
+        this.queries.incrementAndGet();
+        this.totalLatency.addAndGet(latency);
+        long max = this.maxLatency.get();
+        while (latency > max && !this.maxLatency.compareAndSet(max, latency)) {
+            max = this.maxLatency.get();
+        }
+        if (failed) {
+            this.failures.incrementAndGet();
+        }
+    }
+
+    /**
+     * Records a query that was not answered in time. The query itself is recorded once it completes.
+     */
+    void recordTimeout() {
+        this.timeouts.incrementAndGet();
+    }
+
+    @Override
+    public String toString() {
+        return this.name;
+    }
+}
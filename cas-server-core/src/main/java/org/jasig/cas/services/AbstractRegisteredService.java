@@ -24,6 +24,7 @@ import org.apache.commons.lang3.builder.HashCodeBuilder;
 import org.apache.commons.lang3.builder.ToStringBuilder;
 import org.apache.commons.lang3.builder.ToStringStyle;
 
+import javax.persistence.Cacheable;
 import javax.persistence.Column;
 import javax.persistence.DiscriminatorColumn;
 import javax.persistence.DiscriminatorType;
@@ -33,6 +34,8 @@ import javax.persistence.GenerationType;
 import javax.persistence.Id;
 import javax.persistence.Inheritance;
 import javax.persistence.Lob;
+import javax.persistence.PrePersist;
+import javax.persistence.PreUpdate;
 import javax.persistence.Table;
 import javax.persistence.Transient;
 import java.net.URL;
@@ -48,6 +51,7 @@ import java.util.Set;
  * @since 3.0.0
  */
 @Entity
+@Cacheable
 @Inheritance
 @DiscriminatorColumn(name = "expression_type", length = 15, discriminatorType = DiscriminatorType.STRING,
                      columnDefinition = "VARCHAR(15) DEFAULT 'ant'")
@@ -120,6 +124,14 @@ public abstract class AbstractRegisteredService implements RegisteredService, Co
     @Column(name = "logo")
     private URL logo;
 
+    /**
+     * Time the service was last persisted, used by {@link VersionedServiceRegistryDao} implementations
+     * backed by a database to find modified services. Not exposed as a property, so that it is not
+     * serialized along with the service definition.
+     */
+    @Column(name = "last_modified", nullable = true)
+    private Long lastModified;
+
     public long getId() {
         return this.id;
     }
@@ -283,6 +295,15 @@ public abstract class AbstractRegisteredService implements RegisteredService, Co
         return clone;
     }
 
+    /**
+     * Records the modification time before the service is inserted or updated.
+     */
+    @PrePersist
+    @PreUpdate
+    protected void updateLastModified() {
+        this.lastModified = System.currentTimeMillis();
+    }
+
     /**
      * Copies the properties of the source service into this instance.
      *
@@ -302,6 +323,7 @@ public abstract class AbstractRegisteredService implements RegisteredService, Co
         this.setLogoutType(source.getLogoutType());
         this.setAttributeReleasePolicy(source.getAttributeReleasePolicy());
         this.setLogo(source.getLogo());
+        this.setRequiredHandlers(source.getRequiredHandlers());
     }
 
     /**
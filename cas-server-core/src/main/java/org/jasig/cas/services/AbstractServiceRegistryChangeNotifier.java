@@ -0,0 +1,134 @@
+/*
+ * Licensed to Apereo under one or more contributor license
+ * agreements. See the NOTICE file distributed with this work
+ * for additional information regarding copyright ownership.
+ * Apereo licenses this file to you under the Apache License,
+ * Version 2.0 (the "License"); you may not use this file
+ * except in compliance with the License.  You may obtain a
+ * copy of the License at the following location:
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.jasig.cas.services;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.DisposableBean;
+import org.springframework.beans.factory.InitializingBean;
+
+import javax.validation.constraints.NotNull;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * Base class for change notifiers that reload the local services manager when another node announces a
+ * change. Reloads run on a single background thread, and notifications received while a reload is waiting
+ * to start are folded into it.
+ *
+ * @author CAS Team
+ * @since 4.1
+ */
+public abstract class AbstractServiceRegistryChangeNotifier
+        implements ServiceRegistryChangeNotifier, InitializingBean, DisposableBean {
+
+    /** Logger instance. */
+    protected final Logger logger = LoggerFactory.getLogger(getClass());
+
+    @NotNull
+    private final ReloadableServicesManager servicesManager;
+
+    private final AtomicBoolean reloadPending = new AtomicBoolean();
+
+    private ExecutorService reloadExecutor;
+
+    /**
+     * Creates a new notifier.
+     *
+     * @param servicesManager Services manager to reload when another node changes the registry.
+     */
+    protected AbstractServiceRegistryChangeNotifier(final ReloadableServicesManager servicesManager) {
+        this.servicesManager = servicesManager;
+    }
+
+    @Override
+    public final void afterPropertiesSet() throws Exception {
+        this.reloadExecutor = Executors.newSingleThreadExecutor(newThreadFactory(getClass().getSimpleName()));
+        start();
+    }
+
+    /**
+     * Stops listening for changes and discards pending reloads.
+     *
+     * @throws Exception the exception
+     */
+    @Override
+    public final void destroy() throws Exception {
+        try {
+            stop();
+        } finally {
+            if (this.reloadExecutor != null) {
+                this.reloadExecutor.shutdownNow();
+            }
+        }
+    }
+
+    /**
+     * Starts listening for changes announced by other nodes.
+     *
+     * @throws Exception on failure to start
+     */
+    protected abstract void start() throws Exception;
+
+    /**
+     * Stops listening for changes announced by other nodes.
+     *
+     * @throws Exception on failure to stop
+     */
+    protected abstract void stop() throws Exception;
+
+    /**
+     * Reloads the services manager in the background, unless a reload is already waiting to start.
+     */
+    protected final void reloadServices() {
+        if (!this.reloadPending.compareAndSet(false, true)) {
+            return;
+        }
+        this.reloadExecutor.execute(new Runnable() {
+            @Override
+            public void run() {
+                reloadPending.set(false);
+                try {
+                    servicesManager.reload();
+                } catch (final RuntimeException e) {
+                    logger.error("Failed reloading services after a change notification", e);
+                }
+            }
+        });
+    }
+
+    /**
+     * Creates a factory of daemon threads, so that notifiers never keep the JVM alive.
+     *
+     * @param name the thread name
+     * @return the thread factory
+     */
+    protected static ThreadFactory newThreadFactory(final String name) {
+        return new ThreadFactory() {
+            @Override
+            public Thread newThread(final Runnable r) {
+                final Thread thread = new Thread(r, name);
+                thread.setDaemon(true);
+                return thread;
+            }
+        };
+    }
+}
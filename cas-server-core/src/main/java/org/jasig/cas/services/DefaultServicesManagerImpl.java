@@ -23,13 +23,24 @@ import org.jasig.cas.authentication.principal.Service;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.transaction.annotation.Transactional;
+import org.springframework.transaction.support.TransactionSynchronizationAdapter;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
 
+import javax.validation.constraints.Min;
 import javax.validation.constraints.NotNull;
+import java.util.ArrayList;
 import java.util.Collection;
 import java.util.Collections;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
 import java.util.TreeSet;
+import java.util.concurrent.Callable;
 import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 
 /**
  * Default implementation of the {@link ServicesManager} interface. If there are
@@ -39,10 +50,13 @@ import java.util.concurrent.ConcurrentHashMap;
  * @author Scott Battaglia
  * @since 3.1
  */
-public final class DefaultServicesManagerImpl implements ReloadableServicesManager {
+public final class DefaultServicesManagerImpl implements ReloadableServicesManager, KeyedServicesManager {
 
     private static final Logger LOGGER = LoggerFactory.getLogger(DefaultServicesManagerImpl.class);
 
+    /** Number of newly loaded patterns from which compilation is spread across several threads. */
+    private static final int PARALLEL_COMPILATION_THRESHOLD = 500;
+
     /** Instance of ServiceRegistryDao. */
     @NotNull
     private ServiceRegistryDao serviceRegistryDao;
@@ -50,6 +64,39 @@ public final class DefaultServicesManagerImpl implements ReloadableServicesManag
     /** Map to store all services. */
     private ConcurrentHashMap<Long, RegisteredService> services = new ConcurrentHashMap<Long, RegisteredService>();
 
+    /**
+     * Index of the services sorted in evaluation order. Rebuilt whenever the services change and never
+     * modified once published, so that lookups can read it without locking or copying.
+     */
+    private volatile ServiceMatchingIndex serviceMatchingIndex =
+            new ServiceMatchingIndex(Collections.<RegisteredService>emptyList());
+
+    /** Extractors of the registered secondary indexes, by index name. */
+    private final Map<String, RegisteredServiceKeyExtractor> keyExtractors =
+            new ConcurrentHashMap<String, RegisteredServiceKeyExtractor>();
+
+    /** Secondary indexes by name, rebuilt along with the services index and never modified once published. */
+    private volatile Map<String, Map<String, RegisteredService>> keyIndexes = Collections.emptyMap();
+
+    /** Optional cache of service resolutions in front of the index. */
+    private ServiceResolutionCache serviceResolutionCache;
+
+    /** Version of the registry the services were last loaded from, if the registry is versioned. */
+    private long registryVersion = ServiceRegistryChanges.INITIAL_VERSION;
+
+    /**
+     * Patterns of the loaded services left out because their pattern is invalid, by service id, so that they are
+     * not reported again. Keyed by value since registries may return new instances on every load.
+     */
+    private Map<Long, String> rejectedServices = Collections.emptyMap();
+
+    /** Optional channel announcing local changes to the other nodes of a cluster. */
+    private ServiceRegistryChangeNotifier changeNotifier;
+
+    /** Number of threads compiling service patterns during a load. */
+    @Min(1)
+    private int patternCompilationParallelism = Runtime.getRuntime().availableProcessors();
+
     /**
      * Instantiates a new default services manager impl.
      *
@@ -92,6 +139,8 @@ public final class DefaultServicesManagerImpl implements ReloadableServicesManag
 
         this.serviceRegistryDao.delete(r);
         this.services.remove(id);
+        publishOrderedServices();
+        publishChange();
 
         return r;
     }
@@ -104,28 +153,85 @@ public final class DefaultServicesManagerImpl implements ReloadableServicesManag
      */
     @Override
     public RegisteredService findServiceBy(final Service service) {
-        final Collection<RegisteredService> c = convertToTreeSet();
+        final ServiceResolutionCache cache = this.serviceResolutionCache;
+        if (cache == null || service == null || service.getId() == null) {
+            return this.serviceMatchingIndex.findServiceBy(service);
+        }
 
-        for (final RegisteredService r : c) {
-            if (r.matches(service)) {
-                return r;
-            }
+        final ServiceResolutionCache.Entry entry = cache.get(service.getId());
+        if (entry != null) {
+            return entry.getRegisteredService();
         }
+        final long generation = cache.getGeneration();
+        final RegisteredService r = this.serviceMatchingIndex.findServiceBy(service);
+        cache.put(service.getId(), generation, r);
+        return r;
+    }
 
-        return null;
+    /**
+     * Sets a cache of service id to registered service resolutions that is consulted before matching.
+     * The cache is invalidated whenever services are loaded, saved or deleted.
+     *
+     * @param serviceResolutionCache the cache; null disables caching.
+     */
+    public void setServiceResolutionCache(final ServiceResolutionCache serviceResolutionCache) {
+        this.serviceResolutionCache = serviceResolutionCache;
     }
 
+    /**
+     * @param parallelism Number of threads compiling the patterns of regular expression services when a large
+     *                    number of them is loaded at once. Applies to reloads, since the constructor loads services.
+     */
+    public void setPatternCompilationParallelism(final int parallelism) {
+        this.patternCompilationParallelism = parallelism;
+    }
+
+    /**
+     * Sets the channel through which saves and deletes are announced to the other nodes of a cluster.
+     *
+     * @param changeNotifier the notifier; null keeps changes local until the other nodes reload.
+     */
+    public void setChangeNotifier(final ServiceRegistryChangeNotifier changeNotifier) {
+        this.changeNotifier = changeNotifier;
+    }
+
+    /**
+     * {@inheritDoc}
+     * Published services are never modified in place; {@link #save(RegisteredService)} replaces them.
+     * The shared instance is therefore returned without copying.
+     */
     @Override
     public RegisteredService findServiceBy(final long id) {
-        final RegisteredService r = this.services.get(id);
+        return this.services.get(id);
+    }
 
-        try {
-            return r == null ? null : r.clone();
-        } catch (final CloneNotSupportedException e) {
-            return r;
+    @Override
+    public void registerServiceIndex(final String name, final RegisteredServiceKeyExtractor extractor) {
+        if (this.keyExtractors.containsKey(name)) {
+            return;
+        }
+        synchronized (this) {
+            if (!this.keyExtractors.containsKey(name)) {
+                final Map<String, Map<String, RegisteredService>> indexes =
+                        new HashMap<String, Map<String, RegisteredService>>(this.keyIndexes);
+                indexes.put(name, buildKeyIndex(extractor, this.serviceMatchingIndex.getServices()));
+                // Publish the index before the extractor, which callers check to skip registering
+                this.keyIndexes = indexes;
+                this.keyExtractors.put(name, extractor);
+                LOGGER.debug("Registered service index {}", name);
+            }
         }
     }
 
+    @Override
+    public RegisteredService findServiceByKey(final String name, final String key) {
+        final Map<String, RegisteredService> index = this.keyIndexes.get(name);
+        if (index == null) {
+            throw new IllegalArgumentException("No service index is registered under the name " + name);
+        }
+        return key == null ? null : index.get(key);
+    }
+
     /**
      * Stuff services to tree set.
      *
@@ -136,7 +242,7 @@ public final class DefaultServicesManagerImpl implements ReloadableServicesManag
     }
 
     public Collection<RegisteredService> getAllServices() {
-        return Collections.unmodifiableCollection(convertToTreeSet());
+        return this.serviceMatchingIndex.getServices();
     }
 
     @Override
@@ -149,11 +255,37 @@ public final class DefaultServicesManagerImpl implements ReloadableServicesManag
             resourceResolverName = "SAVE_SERVICE_RESOURCE_RESOLVER")
     @Override
     public synchronized RegisteredService save(final RegisteredService registeredService) {
+        if (registeredService instanceof RegexRegisteredService) {
+            ((RegexRegisteredService) registeredService).compilePattern();
+        }
         final RegisteredService r = this.serviceRegistryDao.save(registeredService);
         this.services.put(r.getId(), r);
+        publishOrderedServices();
+        publishChange();
         return r;
     }
 
+    /**
+     * Announces a local change to the other nodes, once the surrounding transaction, if any, has committed
+     * so that they can read the change from the registry.
+     */
+    private void publishChange() {
+        final ServiceRegistryChangeNotifier notifier = this.changeNotifier;
+        if (notifier == null) {
+            return;
+        }
+        if (TransactionSynchronizationManager.isSynchronizationActive()) {
+            TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronizationAdapter() {
+                @Override
+                public void afterCommit() {
+                    notifier.publishChange();
+                }
+            });
+        } else {
+            notifier.publishChange();
+        }
+    }
+
     @Override
     public void reload() {
         LOGGER.info("Reloading registered services.");
@@ -161,19 +293,246 @@ public final class DefaultServicesManagerImpl implements ReloadableServicesManag
     }
 
     /**
-     * Load services that are provided by the DAO. 
+     * Load services that are provided by the DAO. The services index is only rebuilt if the DAO returned
+     * a service instance that is not already published or omitted one that is, so a reload against a DAO
+     * that reuses unchanged instances costs no more than the DAO load itself. A
+     * {@link VersionedServiceRegistryDao} is only asked for the services changed since the previous load.
      */
-    private void load() {
+    private synchronized void load() {
+        if (this.serviceRegistryDao instanceof VersionedServiceRegistryDao) {
+            loadChanges((VersionedServiceRegistryDao) this.serviceRegistryDao);
+            return;
+        }
+
         final ConcurrentHashMap<Long, RegisteredService> localServices =
                 new ConcurrentHashMap<Long, RegisteredService>();
+        final Map<Long, String> rejected = new HashMap<Long, String>();
+        final List<RegisteredService> added = new ArrayList<RegisteredService>();
 
         for (final RegisteredService r : this.serviceRegistryDao.load()) {
-            LOGGER.debug("Adding registered service {}", r.getServiceId());
-            localServices.put(r.getId(), r);
+            if (isRejected(r)) {
+                rejected.put(r.getId(), r.getServiceId());
+            } else {
+                if (this.services.get(r.getId()) != r) {
+                    LOGGER.debug("Adding registered service {}", r.getServiceId());
+                    added.add(r);
+                }
+                localServices.put(r.getId(), r);
+            }
+        }
+        int changes = added.size();
+        for (final Long id : this.services.keySet()) {
+            if (!localServices.containsKey(id)) {
+                LOGGER.debug("Removing registered service {}", id);
+                changes++;
+            }
+        }
+
+        if (changes > 0) {
+            rejectInvalidPatterns(added, localServices, rejected);
+            this.services = localServices;
+            publishOrderedServices();
+        }
+        this.rejectedServices = rejected;
+        LOGGER.info("Loaded {} services with {} changes.", this.services.size(), changes);
+    }
+
+    /**
+     * Applies the services changed since the previous load. The services map is only copied if something
+     * changed, so a reload against an unchanged registry costs no more than asking it for changes.
+     *
+     * @param dao the versioned service registry
+     */
+    private void loadChanges(final VersionedServiceRegistryDao dao) {
+        final ServiceRegistryChanges delta = dao.loadChangesSince(this.registryVersion);
+        final ConcurrentHashMap<Long, RegisteredService> localServices =
+                new ConcurrentHashMap<Long, RegisteredService>();
+
+        final Map<Long, String> rejected = new HashMap<Long, String>();
+        final List<RegisteredService> added = new ArrayList<RegisteredService>();
+
+        for (final RegisteredService r : delta.getModifiedServices()) {
+            if (isRejected(r)) {
+                rejected.put(r.getId(), r.getServiceId());
+            } else {
+                if (this.services.get(r.getId()) != r) {
+                    LOGGER.debug("Adding registered service {}", r.getServiceId());
+                    added.add(r);
+                }
+                localServices.put(r.getId(), r);
+            }
+        }
+        int changes = added.size();
+        for (final Long id : this.services.keySet()) {
+            if (!delta.getServiceIds().contains(id)) {
+                LOGGER.debug("Removing registered service {}", id);
+                changes++;
+            }
+        }
+
+        for (final Map.Entry<Long, String> entry : this.rejectedServices.entrySet()) {
+            if (delta.getServiceIds().contains(entry.getKey()) && !localServices.containsKey(entry.getKey())
+                    && !rejected.containsKey(entry.getKey())) {
+                rejected.put(entry.getKey(), entry.getValue());
+            }
+        }
+
+        this.registryVersion = delta.getVersion();
+        if (changes > 0) {
+            for (final Map.Entry<Long, RegisteredService> entry : this.services.entrySet()) {
+                if (delta.getServiceIds().contains(entry.getKey()) && !localServices.containsKey(entry.getKey())) {
+                    localServices.put(entry.getKey(), entry.getValue());
+                }
+            }
+            rejectInvalidPatterns(added, localServices, rejected);
+            this.services = localServices;
+            publishOrderedServices();
+        }
+        this.rejectedServices = rejected;
+        LOGGER.info("Loaded {} services with {} changes at registry version {}.", this.services.size(), changes,
+                this.registryVersion);
+    }
+
+    /**
+     * Determines whether the service was left out of the previous load for its pattern, which it still has.
+     *
+     * @param service the loaded service
+     * @return true if the service was rejected before
+     */
+    private boolean isRejected(final RegisteredService service) {
+        final String pattern = this.rejectedServices.get(service.getId());
+        return pattern != null && pattern.equals(service.getServiceId());
+    }
+
+    /**
+     * Compiles the patterns of newly loaded regular expression services before they are published, so that
+     * the first requests after a reload do not pay for compiling them. Large numbers of patterns are compiled
+     * in parallel. Services whose pattern is invalid are logged and left out of the published services.
+     *
+     * @param added the newly loaded services
+     * @param localServices the services about to be published
+     * @param rejected collects the patterns of the services left out, by service id
+     */
+    private void rejectInvalidPatterns(final List<RegisteredService> added,
+            final Map<Long, RegisteredService> localServices, final Map<Long, String> rejected) {
+        final List<RegexRegisteredService> pending = new ArrayList<RegexRegisteredService>();
+        for (final RegisteredService r : added) {
+            if (r instanceof RegexRegisteredService) {
+                pending.add((RegexRegisteredService) r);
+            }
+        }
+
+        final List<RegexRegisteredService> invalid;
+        final int threads = Math.min(this.patternCompilationParallelism, pending.size() / PARALLEL_COMPILATION_THRESHOLD + 1);
+        if (threads > 1) {
+            invalid = compilePatternsInParallel(pending, threads);
+        } else {
+            invalid = new PatternCompiler(pending).call();
+        }
+
+        for (final RegexRegisteredService r : invalid) {
+            localServices.remove(r.getId());
+            rejected.put(r.getId(), r.getServiceId());
         }
+        LOGGER.debug("Compiled {} service patterns on {} threads; rejected {}", pending.size(), threads, invalid.size());
+    }
+
+    /**
+     * Compiles patterns on several threads.
+     *
+     * @param pending the services to compile
+     * @param threads the number of threads
+     * @return the services whose pattern is invalid
+     */
+    private static List<RegexRegisteredService> compilePatternsInParallel(final List<RegexRegisteredService> pending,
+            final int threads) {
+        final List<RegexRegisteredService> invalid = new ArrayList<RegexRegisteredService>();
+        final ExecutorService executor = Executors.newFixedThreadPool(threads);
+        try {
+            final List<Future<List<RegexRegisteredService>>> results = new ArrayList<Future<List<RegexRegisteredService>>>();
+            final int sliceSize = (pending.size() + threads - 1) / threads;
+            for (int i = 0; i < pending.size(); i += sliceSize) {
+                results.add(executor.submit(new PatternCompiler(pending.subList(i, Math.min(i + sliceSize, pending.size())))));
+            }
+            for (final Future<List<RegexRegisteredService>> result : results) {
+                invalid.addAll(result.get());
+            }
+        } catch (final InterruptedException e) {
+            LOGGER.warn("Interrupted while compiling service patterns; compiling the remaining ones on this thread");
+            Thread.currentThread().interrupt();
+            invalid.clear();
+            invalid.addAll(new PatternCompiler(pending).call());
+        } catch (final ExecutionException e) {
+            throw new IllegalStateException("Failed compiling service patterns", e.getCause());
+        } finally {
+            executor.shutdownNow();
+        }
+        return invalid;
+    }
+
+    /**
+     * Builds a secondary index, keeping the first service in evaluation order for each key.
+     *
+     * @param extractor the key extractor
+     * @param orderedServices the services in evaluation order
+     * @return the index
+     */
+    private static Map<String, RegisteredService> buildKeyIndex(final RegisteredServiceKeyExtractor extractor,
+            final List<RegisteredService> orderedServices) {
+        final Map<String, RegisteredService> index = new HashMap<String, RegisteredService>();
+        for (final RegisteredService r : orderedServices) {
+            final String key = extractor.extractKey(r);
+            if (key != null && !index.containsKey(key)) {
+                index.put(key, r);
+            }
+        }
+        return index;
+    }
+
+    /**
+     * Rebuilds the services index from the current services map.
+     */
+    private void publishOrderedServices() {
+        final ServiceMatchingIndex index = new ServiceMatchingIndex(convertToTreeSet());
+        final Map<String, Map<String, RegisteredService>> indexes = new HashMap<String, Map<String, RegisteredService>>();
+        for (final Map.Entry<String, RegisteredServiceKeyExtractor> entry : this.keyExtractors.entrySet()) {
+            indexes.put(entry.getKey(), buildKeyIndex(entry.getValue(), index.getServices()));
+        }
+        this.serviceMatchingIndex = index;
+        this.keyIndexes = indexes;
+        if (this.serviceResolutionCache != null) {
+            this.serviceResolutionCache.invalidate();
+        }
+    }
 
-        this.services = localServices;
-        LOGGER.info("Loaded {} services.", this.services.size());
-        
+    /**
+     * Compiles the patterns of a list of services.
+     */
+    private static final class PatternCompiler implements Callable<List<RegexRegisteredService>> {
+        private final List<RegexRegisteredService> services;
+
+        /**
+         * Instantiates a new pattern compiler.
+         *
+         * @param services the services whose patterns to compile
+         */
+        PatternCompiler(final List<RegexRegisteredService> services) {
+            this.services = services;
+        }
+
+        @Override
+        public List<RegexRegisteredService> call() {
+            final List<RegexRegisteredService> invalid = new ArrayList<RegexRegisteredService>();
+            for (final RegexRegisteredService r : this.services) {
+                try {
+                    r.compilePattern();
+                } catch (final IllegalArgumentException e) {
+                    LOGGER.error("Rejected registered service [{}] with id {}: invalid pattern [{}]: {}",
+                            r.getName(), r.getId(), r.getServiceId(), e.getMessage());
+                    invalid.add(r);
+                }
+            }
+            return invalid;
+        }
     }
 }
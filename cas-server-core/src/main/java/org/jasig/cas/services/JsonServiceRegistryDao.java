@@ -27,6 +27,7 @@ import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.util.Assert;
 
+import javax.validation.constraints.Min;
 import java.io.BufferedInputStream;
 import java.io.File;
 import java.io.FileInputStream;
@@ -34,9 +35,16 @@ import java.io.FileOutputStream;
 import java.io.IOException;
 import java.util.ArrayList;
 import java.util.Collection;
+import java.util.HashMap;
+import java.util.HashSet;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.Callable;
 import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 
 /**
  * Implementation of <code>ServiceRegistryDao</code> that reads services definition from JSON
@@ -75,13 +83,19 @@ import java.util.concurrent.ConcurrentHashMap;
      }
  }
  * </pre>
+ * <p>
+ * Loading is incremental: a file is only parsed again if its size or modification time changed since
+ * the previous load, and changed files are parsed in parallel. Unchanged files keep returning the same
+ * {@link RegisteredService} instance, which lets the services manager detect that nothing changed.
+ * Combine with {@link ServiceRegistryDirectoryWatcher} to reload as soon as a file changes.
+ * </p>
  *
  * @author Dmitriy Kopylenko
  * @author Marvin S. Addison
  * @author Misagh Moayyed
  * @since 4.1.0
  */
-public class JsonServiceRegistryDao implements ServiceRegistryDao {
+public class JsonServiceRegistryDao implements VersionedServiceRegistryDao {
     private static final Logger LOGGER = LoggerFactory.getLogger(JsonServiceRegistryDao.class);
 
     /**
@@ -89,6 +103,12 @@ public class JsonServiceRegistryDao implements ServiceRegistryDao {
      */
     private static final String FILE_EXTENSION = "json";
 
+    /**
+     * Files modified less than this many milliseconds before they were last read are read again,
+     * since a further change within the file system's timestamp resolution would go unnoticed.
+     */
+    private static final long MODIFICATION_TIME_RESOLUTION = 2000;
+
     /**
      * Map of service ID to registered service.
      */
@@ -104,6 +124,22 @@ public class JsonServiceRegistryDao implements ServiceRegistryDao {
      */
     private final JsonSerializer<RegisteredService> registeredServiceJsonSerializer;
 
+    /**
+     * Services read by the previous load, by file.
+     */
+    private Map<File, LoadedFile> loadedFiles = new HashMap<File, LoadedFile>();
+
+    /**
+     * Number of threads used to parse changed files.
+     */
+    @Min(1)
+    private int parallelism = Runtime.getRuntime().availableProcessors();
+
+    /**
+     * Incremented whenever a load finds new, modified or deleted files.
+     */
+    private long version;
+
     /**
      * Instantiates a new Json service registry dao.
      *
@@ -128,6 +164,13 @@ public class JsonServiceRegistryDao implements ServiceRegistryDao {
         this(configDirectory, new RegisteredServiceJsonSerializer());
     }
 
+    /**
+     * @param parallelism Number of threads used to parse changed files during a load.
+     */
+    public final void setParallelism(final int parallelism) {
+        this.parallelism = parallelism;
+    }
+
     @Override
     public final RegisteredService save(final RegisteredService service) {
         if (service.getId() == RegisteredService.INITIAL_IDENTIFIER_VALUE && service instanceof AbstractRegisteredService) {
@@ -171,33 +214,78 @@ public class JsonServiceRegistryDao implements ServiceRegistryDao {
     @Override
     public final synchronized List<RegisteredService> load() {
         final Map<Long, RegisteredService> temp = new ConcurrentHashMap<Long, RegisteredService>();
+        final Map<File, LoadedFile> files = new HashMap<File, LoadedFile>();
+        final List<File> changed = new ArrayList<File>();
 
         int errorCount = 0;
 
         final Collection<File> c = FileUtils.listFiles(this.serviceRegistryDirectory, new String[]{FILE_EXTENSION}, true);
         for (final File file : c) {
-            BufferedInputStream in = null;
-            try {
-                if (file.length() > 0) {
-                    in = new BufferedInputStream(new FileInputStream(file));
-                    final RegisteredService service = this.registeredServiceJsonSerializer.fromJson(in);
+            final LoadedFile previous = this.loadedFiles.get(file);
+            if (previous != null && previous.isCurrent(file)) {
+                files.put(file, previous);
+            } else if (file.length() > 0) {
+                changed.add(file);
+            }
+        }
 
-                    temp.put(service.getId(), service);
+        if (!changed.isEmpty()) {
+            LOGGER.debug("Reading {} new or modified service definition files", changed.size());
+            final ExecutorService executor = Executors.newFixedThreadPool(Math.min(this.parallelism, changed.size()));
+            try {
+                final List<Future<LoadedFile>> results = new ArrayList<Future<LoadedFile>>(changed.size());
+                for (final File file : changed) {
+                    results.add(executor.submit(new ServiceFileReader(file)));
                 }
-            } catch (final Exception e) {
+                for (int i = 0; i < results.size(); i++) {
+                    try {
+                        files.put(changed.get(i), results.get(i).get());
+                    } catch (final ExecutionException e) {
+                        errorCount++;
+                        LOGGER.error("Error reading configuration file {}", changed.get(i), e.getCause());
+                    }
+                }
+            } catch (final InterruptedException e) {
                 errorCount++;
-                LOGGER.error("Error reading configuration file", e);
+                LOGGER.warn("Interrupted while reading service definition files");
+                Thread.currentThread().interrupt();
             } finally {
-                IOUtils.closeQuietly(in);
+                executor.shutdownNow();
             }
         }
+
+        for (final LoadedFile file : files.values()) {
+            temp.put(file.service.getId(), file.service);
+        }
         if (errorCount == 0) {
             this.serviceMap = temp;
+            this.loadedFiles = files;
         }
 
         return new ArrayList<RegisteredService>(this.serviceMap.values());
     }
 
+    @Override
+    public final synchronized ServiceRegistryChanges loadChangesSince(final long since) {
+        final Map<Long, RegisteredService> previous = this.serviceMap;
+        final boolean current = since == this.version;
+        load();
+
+        boolean changed = !previous.keySet().equals(this.serviceMap.keySet());
+        final List<RegisteredService> modified = new ArrayList<RegisteredService>();
+        for (final RegisteredService r : this.serviceMap.values()) {
+            final boolean reread = previous.get(r.getId()) != r;
+            changed |= reread;
+            if (reread || !current) {
+                modified.add(r);
+            }
+        }
+        if (changed) {
+            this.version++;
+        }
+        return new ServiceRegistryChanges(this.version, modified, new HashSet<Long>(this.serviceMap.keySet()));
+    }
+
     @Override
     public final RegisteredService findServiceById(final long id) {
         return serviceMap.get(id);
@@ -222,4 +310,74 @@ public class JsonServiceRegistryDao implements ServiceRegistryDao {
             throw new IllegalArgumentException(e);
         }
     }
+
+    /**
+     * Service read from a file along with the file attributes at the time it was read.
+     */
+    private static final class LoadedFile {
+        private final RegisteredService service;
+
+        private final long lastModified;
+
+        private final long length;
+
+        private final long readTime;
+
+        /**
+         * Instantiates a new loaded file.
+         *
+         * @param service the service
+         * @param lastModified the file modification time before reading
+         * @param length the file length before reading
+         * @param readTime the time the file was read
+         */
+        LoadedFile(final RegisteredService service, final long lastModified, final long length, final long readTime) {
+            this.service = service;
+            this.lastModified = lastModified;
+            this.length = length;
+            this.readTime = readTime;
+        }
+
+        /**
+         * Determines whether the file is unchanged since it was read.
+         *
+         * @param file the file
+         * @return true if the service read from the file can be reused
+         */
+        boolean isCurrent(final File file) {
+            return file.lastModified() == this.lastModified && file.length() == this.length
+                    && this.readTime - this.lastModified > MODIFICATION_TIME_RESOLUTION;
+        }
+    }
+
+    /**
+     * Parses a service definition file.
+     */
+    private final class ServiceFileReader implements Callable<LoadedFile> {
+        private final File file;
+
+        /**
+         * Instantiates a new file reader.
+         *
+         * @param file the file
+         */
+        ServiceFileReader(final File file) {
+            this.file = file;
+        }
+
+        @Override
+        public LoadedFile call() throws Exception {
+            final long readTime = System.currentTimeMillis();
+            final long lastModified = this.file.lastModified();
+            final long length = this.file.length();
+            BufferedInputStream in = null;
+            try {
+                in = new BufferedInputStream(new FileInputStream(this.file));
+                final RegisteredService service = registeredServiceJsonSerializer.fromJson(in);
+                return new LoadedFile(service, lastModified, length, readTime);
+            } finally {
+                IOUtils.closeQuietly(in);
+            }
+        }
+    }
 }
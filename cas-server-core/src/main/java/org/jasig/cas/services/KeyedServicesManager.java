@@ -0,0 +1,50 @@
+/*
+ * Licensed to Apereo under one or more contributor license
+ * agreements. See the NOTICE file distributed with this work
+ * for additional information regarding copyright ownership.
+ * Apereo licenses this file to you under the Apache License,
+ * Version 2.0 (the "License"); you may not use this file
+ * except in compliance with the License.  You may obtain a
+ * copy of the License at the following location:
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.jasig.cas.services;
+
+/**
+ * Services manager that maintains named secondary indexes of its services, so that services can be found
+ * by an exact key, such as an OAuth client id, without scanning every service. Indexes are rebuilt along
+ * with the services whenever they are loaded, saved or deleted.
+ *
+ * @author CAS Team
+ * @since 4.1
+ */
+public interface KeyedServicesManager extends ServicesManager {
+
+    /**
+     * Registers an index. Registering a name that is already registered has no effect, so callers may
+     * register the indexes they need before every lookup.
+     *
+     * @param name the index name
+     * @param extractor extracts the key of each service
+     */
+    void registerServiceIndex(String name, RegisteredServiceKeyExtractor extractor);
+
+    /**
+     * Finds the service indexed under a key. If several services have the same key, the first one in
+     * evaluation order is returned.
+     *
+     * @param name the index name
+     * @param key the key
+     * @return the service, or null if no service has the key.
+     * @throws IllegalArgumentException if no index is registered under the name.
+     */
+    RegisteredService findServiceByKey(String name, String key);
+}
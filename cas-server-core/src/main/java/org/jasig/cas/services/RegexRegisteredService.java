@@ -40,18 +40,38 @@ public class RegexRegisteredService extends AbstractRegisteredService {
 
     private static final long serialVersionUID = -8258660210826975771L;
 
-    private transient Pattern servicePattern;
+    /**
+     * Compiled service id. Compiled from the current service id, unless that was changed since, which is
+     * detected by comparing the pattern source with the service id by reference.
+     */
+    private transient volatile Pattern servicePattern;
 
     public void setServiceId(final String id) {
         serviceId = id;
     }
-    
+
     @Override
     public boolean matches(final Service service) {
-        if (servicePattern == null) {
-            servicePattern = createPattern(serviceId);
+        return service != null && compilePattern().matcher(service.getId()).matches();
+    }
+
+    /**
+     * Compiles the service id into a pattern, unless it has already been compiled. Services managers call this
+     * when services are loaded, so that invalid patterns are reported early and no request pays for compiling.
+     * Compiled patterns are immutable, so concurrent callers at worst compile the same pattern twice.
+     *
+     * @return the compiled pattern
+     * @throws java.util.regex.PatternSyntaxException if the service id is not a valid regular expression.
+     * @throws IllegalArgumentException if the service id is null.
+     */
+    public Pattern compilePattern() {
+        final Pattern pattern = this.servicePattern;
+        if (pattern != null && pattern.pattern() == this.serviceId) {
+            return pattern;
         }
-        return service != null && servicePattern.matcher(service.getId()).matches();
+        final Pattern compiled = createPattern(this.serviceId);
+        this.servicePattern = compiled;
+        return compiled;
     }
 
     @Override
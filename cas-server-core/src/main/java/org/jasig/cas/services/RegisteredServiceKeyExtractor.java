@@ -0,0 +1,36 @@
+/*
+ * Licensed to Apereo under one or more contributor license
+ * agreements. See the NOTICE file distributed with this work
+ * for additional information regarding copyright ownership.
+ * Apereo licenses this file to you under the Apache License,
+ * Version 2.0 (the "License"); you may not use this file
+ * except in compliance with the License.  You may obtain a
+ * copy of the License at the following location:
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.jasig.cas.services;
+
+/**
+ * Extracts the key under which a {@link KeyedServicesManager} indexes a registered service.
+ *
+ * @author CAS Team
+ * @since 4.1
+ */
+public interface RegisteredServiceKeyExtractor {
+
+    /**
+     * Extracts the index key of a service.
+     *
+     * @param service the registered service
+     * @return the key, or null if the service is not to be indexed.
+     */
+    String extractKey(RegisteredService service);
+}
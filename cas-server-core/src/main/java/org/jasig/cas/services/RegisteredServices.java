@@ -0,0 +1,49 @@
+/*
+ * Licensed to Apereo under one or more contributor license
+ * agreements. See the NOTICE file distributed with this work
+ * for additional information regarding copyright ownership.
+ * Apereo licenses this file to you under the Apache License,
+ * Version 2.0 (the "License"); you may not use this file
+ * except in compliance with the License.  You may obtain a
+ * copy of the License at the following location:
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.jasig.cas.services;
+
+/**
+ * Utility methods for {@link RegisteredService} instances.
+ *
+ * @author CAS Team
+ * @since 4.1
+ */
+public final class RegisteredServices {
+
+    /**
+     * Instantiates a new registered services utility.
+     */
+    private RegisteredServices() {}
+
+    /**
+     * Copies a registered service, typically one returned by a {@link ServicesManager} and shared with other
+     * threads, so that the copy can be modified and saved.
+     *
+     * @param service the service to copy
+     * @return the copy
+     * @throws IllegalStateException if the service cannot be cloned
+     */
+    public static RegisteredService copy(final RegisteredService service) {
+        try {
+            return service.clone();
+        } catch (final CloneNotSupportedException e) {
+            throw new IllegalStateException("Registered service " + service.getId() + " cannot be copied", e);
+        }
+    }
+}
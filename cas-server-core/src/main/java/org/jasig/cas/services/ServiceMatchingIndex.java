@@ -0,0 +1,300 @@
+/*
+ * Licensed to Apereo under one or more contributor license
+ * agreements. See the NOTICE file distributed with this work
+ * for additional information regarding copyright ownership.
+ * Apereo licenses this file to you under the Apache License,
+ * Version 2.0 (the "License"); you may not use this file
+ * except in compliance with the License.  You may obtain a
+ * copy of the License at the following location:
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.jasig.cas.services;
+
+import org.jasig.cas.authentication.principal.Service;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.regex.Pattern;
+
+/**
+ * Immutable index over a list of registered services sorted in evaluation order that finds the first
+ * service matching a given service without evaluating every pattern.
+ * <p>
+ * The literal prefix of each regular expression service pattern, such as <code>https://app.example.org/</code>
+ * for <code>^https://app\.example\.org/.*</code>, is stored in a character trie. Any service id the pattern
+ * matches starts with that prefix, so a lookup walks the trie along the service id and only evaluates the
+ * services found on that path. Services with no usable prefix, Ant pattern services and services that
+ * override {@link RegisteredService#matches(Service)} are evaluated for every lookup. Candidates are
+ * evaluated in evaluation order, so the result is always the same as that of a linear scan.
+ * </p>
+ *
+ * @author CAS Team
+ * @since 4.1
+ */
+public final class ServiceMatchingIndex {
+
+    private static final int[] NO_CANDIDATES = new int[0];
+
+    private static final int ASCII_LIMIT = 128;
+
+    /** Inline flags turning on comments mode, in which whitespace and <code>#</code> are not literals. */
+    private static final Pattern COMMENTS_FLAG = Pattern.compile("\\(\\?[a-zA-Z]*x");
+
+    /** Services in evaluation order. */
+    private final RegisteredService[] services;
+
+    /** Trie of literal prefixes; the root holds services that must always be evaluated. */
+    private final Node root;
+
+    /**
+     * Builds an index over the given services.
+     *
+     * @param orderedServices services sorted in evaluation order.
+     */
+    public ServiceMatchingIndex(final Collection<RegisteredService> orderedServices) {
+        this.services = orderedServices.toArray(new RegisteredService[orderedServices.size()]);
+        final Map<Node, List<Integer>> positions = new HashMap<Node, List<Integer>>();
+        this.root = new Node();
+        for (int i = 0; i < this.services.length; i++) {
+            Node node = this.root;
+            for (final char c : getIndexablePrefix(this.services[i]).toCharArray()) {
+                node = node.getOrCreateChild(c);
+            }
+            List<Integer> list = positions.get(node);
+            if (list == null) {
+                list = new ArrayList<Integer>();
+                positions.put(node, list);
+            }
+            list.add(i);
+        }
+        for (final Map.Entry<Node, List<Integer>> entry : positions.entrySet()) {
+            final int[] array = new int[entry.getValue().size()];
+            for (int i = 0; i < array.length; i++) {
+                array[i] = entry.getValue().get(i);
+            }
+            entry.getKey().positions = array;
+        }
+    }
+
+    /**
+     * @return services in evaluation order.
+     */
+    public List<RegisteredService> getServices() {
+        return Collections.unmodifiableList(Arrays.asList(this.services));
+    }
+
+    /**
+     * Finds the first service in evaluation order that matches the given service.
+     *
+     * @param service the service to match
+     * @return the matching registered service, or null if none matches.
+     */
+    public RegisteredService findServiceBy(final Service service) {
+        if (service == null) {
+            return null;
+        }
+        final String id = service.getId();
+        if (id == null) {
+            for (final RegisteredService r : this.services) {
+                if (r.matches(service)) {
+                    return r;
+                }
+            }
+            return null;
+        }
+        for (final int position : getCandidates(id)) {
+            if (this.services[position].matches(service)) {
+                return this.services[position];
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Collects the positions of all services whose prefix the given id starts with.
+     *
+     * @param id the service id
+     * @return candidate positions in evaluation order
+     */
+    private int[] getCandidates(final String id) {
+        int[] single = null;
+        List<int[]> lists = null;
+        int total = 0;
+        Node node = this.root;
+        int index = 0;
+        while (node != null) {
+            if (node.positions.length > 0) {
+                total += node.positions.length;
+                if (single == null) {
+                    single = node.positions;
+                } else {
+                    if (lists == null) {
+                        lists = new ArrayList<int[]>();
+                        lists.add(single);
+                    }
+                    lists.add(node.positions);
+                }
+            }
+            if (index >= id.length()) {
+                break;
+            }
+            final char c = id.charAt(index++);
+            // Prefixes are ASCII only, and case insensitive regular expressions only fold ASCII
+            node = c < ASCII_LIMIT ? node.getChild(Character.toLowerCase(c)) : null;
+        }
+        if (single == null) {
+            return NO_CANDIDATES;
+        }
+        if (lists == null) {
+            return single;
+        }
+        final int[] merged = new int[total];
+        int offset = 0;
+        for (final int[] list : lists) {
+            System.arraycopy(list, 0, merged, offset, list.length);
+            offset += list.length;
+        }
+        Arrays.sort(merged);
+        return merged;
+    }
+
+    /**
+     * Gets the lower case prefix that every service id matched by the service must start with,
+     * ignoring case.
+     *
+     * @param service the registered service
+     * @return the prefix; empty if the service must always be evaluated.
+     */
+    private static String getIndexablePrefix(final RegisteredService service) {
+        if (service.getServiceId() == null || !(service instanceof RegexRegisteredService)) {
+            return "";
+        }
+        try {
+            if (service.getClass().getMethod("matches", Service.class).getDeclaringClass()
+                    != RegexRegisteredService.class) {
+                return "";
+            }
+        } catch (final NoSuchMethodException e) {
+            return "";
+        }
+        return getLiteralPrefix(service.getServiceId());
+    }
+
+    /**
+     * Extracts the literal prefix of a regular expression, lower cased. The prefix is conservative: it
+     * stops at the first construct that is not a plain ASCII literal, drops a literal that is followed by
+     * a quantifier and is empty if the expression contains a top level alternation, quoting or
+     * comments mode.
+     *
+     * @param pattern the regular expression
+     * @return the literal prefix
+     */
+    static String getLiteralPrefix(final String pattern) {
+        if (pattern.contains("\\Q") || COMMENTS_FLAG.matcher(pattern).find() || hasTopLevelAlternation(pattern)) {
+            return "";
+        }
+        final StringBuilder prefix = new StringBuilder();
+        int i = pattern.startsWith("^") ? 1 : 0;
+        while (i < pattern.length()) {
+            final char c = pattern.charAt(i);
+            final char literal;
+            final int next;
+            if (c == '\\') {
+                if (i + 1 >= pattern.length() || Character.isLetterOrDigit(pattern.charAt(i + 1))) {
+                    break;
+                }
+                literal = pattern.charAt(i + 1);
+                next = i + 2;
+            } else if (".[]{}()*+?|^$".indexOf(c) >= 0) {
+                break;
+            } else {
+                literal = c;
+                next = i + 1;
+            }
+            if (literal >= ASCII_LIMIT) {
+                break;
+            }
+            if (next < pattern.length() && "?*+{".indexOf(pattern.charAt(next)) >= 0) {
+                break;
+            }
+            prefix.append(Character.toLowerCase(literal));
+            i = next;
+        }
+        return prefix.toString();
+    }
+
+    /**
+     * Determines whether the expression contains an alternation outside of any group.
+     *
+     * @param pattern the regular expression
+     * @return true if an unescaped <code>|</code> occurs at group depth zero
+     */
+    private static boolean hasTopLevelAlternation(final String pattern) {
+        int depth = 0;
+        boolean inClass = false;
+        for (int i = 0; i < pattern.length(); i++) {
+            final char c = pattern.charAt(i);
+            if (c == '\\') {
+                i++;
+            } else if (inClass) {
+                inClass = c != ']';
+            } else if (c == '[') {
+                inClass = true;
+            } else if (c == '(') {
+                depth++;
+            } else if (c == ')') {
+                depth--;
+            } else if (c == '|' && depth <= 0) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Trie node keyed by lower case character.
+     */
+    private static final class Node {
+        private final Map<Character, Node> children = new HashMap<Character, Node>();
+
+        private int[] positions = NO_CANDIDATES;
+
+        /**
+         * Gets the child for a character.
+         *
+         * @param c the character
+         * @return the child, or null if there is none
+         */
+        Node getChild(final char c) {
+            return this.children.get(c);
+        }
+
+        /**
+         * Gets the child for a character, creating it if needed.
+         *
+         * @param c the character
+         * @return the child
+         */
+        Node getOrCreateChild(final char c) {
+            Node child = this.children.get(c);
+            if (child == null) {
+                child = new Node();
+                this.children.put(c, child);
+            }
+            return child;
+        }
+    }
+}
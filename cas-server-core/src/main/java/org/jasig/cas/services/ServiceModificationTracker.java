@@ -0,0 +1,114 @@
+/*
+ * Licensed to Apereo under one or more contributor license
+ * agreements. See the NOTICE file distributed with this work
+ * for additional information regarding copyright ownership.
+ * Apereo licenses this file to you under the Apache License,
+ * Version 2.0 (the "License"); you may not use this file
+ * except in compliance with the License.  You may obtain a
+ * copy of the License at the following location:
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.jasig.cas.services;
+
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Works out which services changed between loads for {@link VersionedServiceRegistryDao} implementations
+ * whose data store records a modification time or change sequence number for each service. A load first
+ * reads the identifier and modification time of every service, which is cheap, and then reads in full
+ * only the services reported by {@link #getModifiedServiceIds(long, Map)}.
+ * <p>
+ * Modification times are compared for equality with the ones recorded by the previous load instead of
+ * against a watermark, so that neither clock differences between the servers writing to the data store nor
+ * timestamps of coarse resolution can hide a change. The version is a counter that is incremented whenever
+ * the recorded modification times change.
+ * </p>
+ * Instances are not thread-safe; callers are expected to serialize loads.
+ *
+ * @author CAS Team
+ * @since 4.1
+ */
+public final class ServiceModificationTracker {
+
+    private Map<Long, Object> modificationTimes = Collections.emptyMap();
+
+    private long version;
+
+    /**
+     * Determines the services that must be read in full to bring a caller up to date.
+     *
+     * @param callerVersion the version the caller is at.
+     * @param currentModificationTimes the modification time of each service in the data store, by service id.
+     *                                 Values are only compared for equality; unknown ones may be null.
+     * @return the identifiers of the services added or modified since the recorded load, or of all services
+     * if the caller is not at the current version.
+     */
+    public Set<Long> getModifiedServiceIds(final long callerVersion, final Map<Long, ?> currentModificationTimes) {
+        if (callerVersion != this.version) {
+            return new HashSet<Long>(currentModificationTimes.keySet());
+        }
+        final Set<Long> modified = new HashSet<Long>();
+        for (final Map.Entry<Long, ?> entry : currentModificationTimes.entrySet()) {
+            final Object recorded = this.modificationTimes.get(entry.getKey());
+            if (!this.modificationTimes.containsKey(entry.getKey())
+                    || (recorded == null ? entry.getValue() != null : !recorded.equals(entry.getValue()))) {
+                modified.add(entry.getKey());
+            }
+        }
+        return modified;
+    }
+
+    /**
+     * Determines whether any service was added, modified or deleted since the recorded load.
+     *
+     * @param currentModificationTimes the modification time of each service in the data store, by service id.
+     * @return true if the modification times differ from the recorded ones.
+     */
+    public boolean hasChanged(final Map<Long, ?> currentModificationTimes) {
+        return !currentModificationTimes.equals(this.modificationTimes);
+    }
+
+    /**
+     * Records the modification times once the modified services have been read.
+     *
+     * @param currentModificationTimes the modification times passed to {@link #getModifiedServiceIds(long, Map)}.
+     * @param modifiedServices the services read in full.
+     * @return the changes to return to the caller.
+     */
+    public ServiceRegistryChanges update(final Map<Long, ?> currentModificationTimes,
+            final Collection<RegisteredService> modifiedServices) {
+        if (hasChanged(currentModificationTimes)) {
+            this.modificationTimes = new HashMap<Long, Object>(currentModificationTimes);
+            this.version++;
+        }
+        return new ServiceRegistryChanges(this.version, modifiedServices, this.modificationTimes.keySet());
+    }
+
+    /**
+     * Reports no changes, so that a caller keeps its services while the data store cannot be read.
+     *
+     * @param callerVersion the version the caller is at.
+     * @return changes that leave the caller's services as they are.
+     */
+    public ServiceRegistryChanges unchanged(final long callerVersion) {
+        return new ServiceRegistryChanges(callerVersion, Collections.<RegisteredService>emptyList(),
+                this.modificationTimes.keySet());
+    }
+
+    public long getVersion() {
+        return this.version;
+    }
+}
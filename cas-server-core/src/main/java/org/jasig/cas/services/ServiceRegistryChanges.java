@@ -0,0 +1,76 @@
+/*
+ * Licensed to Apereo under one or more contributor license
+ * agreements. See the NOTICE file distributed with this work
+ * for additional information regarding copyright ownership.
+ * Apereo licenses this file to you under the Apache License,
+ * Version 2.0 (the "License"); you may not use this file
+ * except in compliance with the License.  You may obtain a
+ * copy of the License at the following location:
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.jasig.cas.services;
+
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Set;
+
+/**
+ * Services changed in a {@link VersionedServiceRegistryDao} since a given version.
+ *
+ * @author CAS Team
+ * @since 4.1
+ */
+public final class ServiceRegistryChanges {
+
+    /** Version to pass in order to load all services. */
+    public static final long INITIAL_VERSION = -1;
+
+    private final long version;
+
+    private final Collection<RegisteredService> modifiedServices;
+
+    private final Set<Long> serviceIds;
+
+    /**
+     * Instantiates a new set of changes.
+     *
+     * @param version the version of the registry these changes bring the caller up to.
+     * @param modifiedServices the services added or modified since the requested version.
+     * @param serviceIds the identifiers of all services in the registry.
+     */
+    public ServiceRegistryChanges(final long version, final Collection<RegisteredService> modifiedServices,
+            final Set<Long> serviceIds) {
+        this.version = version;
+        this.modifiedServices = Collections.unmodifiableCollection(modifiedServices);
+        this.serviceIds = Collections.unmodifiableSet(serviceIds);
+    }
+
+    /**
+     * @return the version to pass to the next {@link VersionedServiceRegistryDao#loadChangesSince(long)} call.
+     */
+    public long getVersion() {
+        return this.version;
+    }
+
+    /**
+     * @return the services added or modified since the requested version.
+     */
+    public Collection<RegisteredService> getModifiedServices() {
+        return this.modifiedServices;
+    }
+
+    /**
+     * @return the identifiers of all services in the registry; any other service has been deleted.
+     */
+    public Set<Long> getServiceIds() {
+        return this.serviceIds;
+    }
+}
@@ -0,0 +1,183 @@
+/*
+ * Licensed to Apereo under one or more contributor license
+ * agreements. See the NOTICE file distributed with this work
+ * for additional information regarding copyright ownership.
+ * Apereo licenses this file to you under the Apache License,
+ * Version 2.0 (the "License"); you may not use this file
+ * except in compliance with the License.  You may obtain a
+ * copy of the License at the following location:
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.jasig.cas.services;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.DisposableBean;
+import org.springframework.beans.factory.InitializingBean;
+
+import javax.validation.constraints.Min;
+import javax.validation.constraints.NotNull;
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.ClosedWatchServiceException;
+import java.nio.file.FileSystems;
+import java.nio.file.FileVisitResult;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.SimpleFileVisitor;
+import java.nio.file.StandardWatchEventKinds;
+import java.nio.file.WatchEvent;
+import java.nio.file.WatchKey;
+import java.nio.file.WatchService;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Watches a service registry directory, such as the one read by {@link JsonServiceRegistryDao}, and
+ * reloads the services manager shortly after files in it are created, modified or deleted. Changes are
+ * collected until the directory has been quiet for the configured delay, so that copying many files
+ * triggers a single reload. Subdirectories are watched as well.
+ *
+ * @author CAS Team
+ * @since 4.1
+ */
+public final class ServiceRegistryDirectoryWatcher implements InitializingBean, DisposableBean {
+
+    /** Default quiet period before reloading, in milliseconds. */
+    public static final long DEFAULT_DELAY = 1000;
+
+    private final Logger logger = LoggerFactory.getLogger(getClass());
+
+    @NotNull
+    private final Path directory;
+
+    @NotNull
+    private final ReloadableServicesManager servicesManager;
+
+    @Min(0)
+    private long delay = DEFAULT_DELAY;
+
+    private WatchService watchService;
+
+    private Thread thread;
+
+    /**
+     * Creates a new watcher.
+     *
+     * @param directory Service registry directory to watch.
+     * @param servicesManager Services manager to reload when files change.
+     */
+    public ServiceRegistryDirectoryWatcher(final File directory, final ReloadableServicesManager servicesManager) {
+        this.directory = directory.toPath();
+        this.servicesManager = servicesManager;
+    }
+
+    /**
+     * @param delay Time in milliseconds the directory must be unchanged before the services are reloaded.
+     */
+    public void setDelay(final long delay) {
+        this.delay = delay;
+    }
+
+    @Override
+    public void afterPropertiesSet() throws Exception {
+        this.watchService = FileSystems.getDefault().newWatchService();
+        register(this.directory);
+        this.thread = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                watch();
+            }
+        }, "ServiceRegistryDirectoryWatcher");
+        this.thread.setDaemon(true);
+        this.thread.start();
+        logger.info("Watching {} for service definition changes", this.directory);
+    }
+
+    /**
+     * Stops watching the directory.
+     *
+     * @throws Exception the exception
+     */
+    @Override
+    public void destroy() throws Exception {
+        if (this.watchService != null) {
+            this.watchService.close();
+        }
+        if (this.thread != null) {
+            this.thread.interrupt();
+        }
+    }
+
+    /**
+     * Waits for changes and reloads the services manager once they stop.
+     */
+    private void watch() {
+        try {
+            while (true) {
+                WatchKey key = this.watchService.take();
+                while (key != null) {
+                    handle(key);
+                    key = this.watchService.poll(this.delay, TimeUnit.MILLISECONDS);
+                }
+                logger.debug("Service definitions in {} changed; reloading services", this.directory);
+                try {
+                    this.servicesManager.reload();
+                } catch (final Exception e) {
+                    logger.error("Failed reloading services after changes in {}", this.directory, e);
+                }
+            }
+        } catch (final InterruptedException e) {
+            logger.debug("Service registry directory watcher interrupted");
+        } catch (final ClosedWatchServiceException e) {
+            logger.debug("Service registry directory watcher closed");
+        }
+    }
+
+    /**
+     * Consumes the events of a key, registering any new subdirectories.
+     *
+     * @param key the key
+     */
+    private void handle(final WatchKey key) {
+        final Path parent = (Path) key.watchable();
+        for (final WatchEvent<?> event : key.pollEvents()) {
+            if (event.kind() == StandardWatchEventKinds.ENTRY_CREATE) {
+                final Path child = parent.resolve((Path) event.context());
+                if (Files.isDirectory(child)) {
+                    try {
+                        register(child);
+                    } catch (final IOException e) {
+                        logger.warn("Cannot watch new directory {}", child, e);
+                    }
+                }
+            }
+        }
+        key.reset();
+    }
+
+    /**
+     * Registers a directory and all of its subdirectories with the watch service.
+     *
+     * @param root the directory
+     * @throws IOException on failure to register
+     */
+    private void register(final Path root) throws IOException {
+        Files.walkFileTree(root, new SimpleFileVisitor<Path>() {
+            @Override
+            public FileVisitResult preVisitDirectory(final Path dir, final BasicFileAttributes attrs) throws IOException {
+                dir.register(watchService, StandardWatchEventKinds.ENTRY_CREATE, StandardWatchEventKinds.ENTRY_DELETE,
+                        StandardWatchEventKinds.ENTRY_MODIFY);
+                return FileVisitResult.CONTINUE;
+            }
+        });
+    }
+}
@@ -0,0 +1,187 @@
+/*
+ * Licensed to Apereo under one or more contributor license
+ * agreements. See the NOTICE file distributed with this work
+ * for additional information regarding copyright ownership.
+ * Apereo licenses this file to you under the Apache License,
+ * Version 2.0 (the "License"); you may not use this file
+ * except in compliance with the License.  You may obtain a
+ * copy of the License at the following location:
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.jasig.cas.services;
+
+import org.jasig.cas.util.SegmentedLruCache;
+
+import javax.validation.constraints.Min;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Bounded cache of service id to registered service resolutions used by {@link DefaultServicesManagerImpl}
+ * in front of service matching. Unmatched service ids are cached as well, so repeated requests from
+ * unauthorized services do not re-run matching.
+ * <p>
+ * Entries are evicted in least recently used order once the capacity is reached and expire after the
+ * configured time to live. Entries are held in a {@link SegmentedLruCache} to limit contention.
+ * Every entry records the generation of the services it was resolved against; {@link #invalidate()} moves
+ * to a new generation, so entries resolved before a reload are never returned after it, even if they were
+ * stored concurrently with the reload.
+ * </p>
+ *
+ * @author CAS Team
+ * @since 4.1
+ */
+public final class ServiceResolutionCache {
+
+    /** Default maximum number of cached service ids. */
+    public static final int DEFAULT_CAPACITY = 10000;
+
+    /** Default entry time to live in milliseconds. */
+    public static final long DEFAULT_TIME_TO_LIVE = 300000;
+
+    @Min(1)
+    private final long timeToLive;
+
+    private final SegmentedLruCache<String, Entry> entries;
+
+    private final AtomicLong generation = new AtomicLong();
+
+    private final AtomicLong hits = new AtomicLong();
+
+    private final AtomicLong misses = new AtomicLong();
+
+    /**
+     * Creates a cache with the default capacity and time to live.
+     */
+    public ServiceResolutionCache() {
+        this(DEFAULT_CAPACITY, DEFAULT_TIME_TO_LIVE);
+    }
+
+    /**
+     * Creates a new cache.
+     *
+     * @param capacity Maximum number of cached service ids.
+     * @param timeToLive Time after which an entry expires, in milliseconds.
+     */
+    public ServiceResolutionCache(final int capacity, final long timeToLive) {
+        this.timeToLive = timeToLive;
+        this.entries = new SegmentedLruCache<String, Entry>(capacity);
+    }
+
+    /**
+     * Looks up the cached resolution of a service id.
+     *
+     * @param serviceId the service id
+     * @return the cached entry, or null if there is no current entry.
+     */
+    Entry get(final String serviceId) {
+        final Entry entry = this.entries.get(serviceId);
+        if (entry != null && entry.generation == this.generation.get()
+                && entry.expires > System.currentTimeMillis()) {
+            this.hits.incrementAndGet();
+            return entry;
+        }
+        this.misses.incrementAndGet();
+        return null;
+    }
+
+    /**
+     * Caches the resolution of a service id.
+     *
+     * @param serviceId the service id
+     * @param resolvedGeneration the value of {@link #getGeneration()} read before resolving the service id
+     * @param registeredService the matching registered service, or null if no service matched
+     */
+    void put(final String serviceId, final long resolvedGeneration, final RegisteredService registeredService) {
+        if (resolvedGeneration != this.generation.get()) {
+            return;
+        }
+        this.entries.put(serviceId,
+                new Entry(registeredService, resolvedGeneration, System.currentTimeMillis() + this.timeToLive));
+    }
+
+    /**
+     * @return the current generation, to be read before resolving a service id that is then stored.
+     */
+    long getGeneration() {
+        return this.generation.get();
+    }
+
+    /**
+     * Invalidates all entries. Must be called after new services are published.
+     */
+    public void invalidate() {
+        this.generation.incrementAndGet();
+        this.entries.clear();
+    }
+
+    /**
+     * @return the number of cached service ids.
+     */
+    public int getSize() {
+        return this.entries.size();
+    }
+
+    public int getCapacity() {
+        return this.entries.getCapacity();
+    }
+
+    public long getHitCount() {
+        return this.hits.get();
+    }
+
+    public long getMissCount() {
+        return this.misses.get();
+    }
+
+    public long getEvictionCount() {
+        return this.entries.getEvictionCount();
+    }
+
+    /**
+     * @return the fraction of lookups served from the cache, or zero if there were none.
+     */
+    public double getHitRatio() {
+        final long hitCount = this.hits.get();
+        final long total = hitCount + this.misses.get();
+        return total == 0 ? 0 : (double) hitCount / total;
+    }
+
+    /**
+     * Cached resolution of a service id.
+     */
+    static final class Entry {
+        private final RegisteredService registeredService;
+
+        private final long generation;
+
+        private final long expires;
+
+        /**
+         * Instantiates a new entry.
+         *
+         * @param registeredService the resolved service, or null
+         * @param generation the generation it was resolved against
+         * @param expires the expiration time
+         */
+        Entry(final RegisteredService registeredService, final long generation, final long expires) {
+            this.registeredService = registeredService;
+            this.generation = generation;
+            this.expires = expires;
+        }
+
+        /**
+         * @return the resolved service, or null if no service matched.
+         */
+        RegisteredService getRegisteredService() {
+            return this.registeredService;
+        }
+    }
+}
@@ -58,6 +58,10 @@ public interface ServicesManager {
 
     /**
      * Find a RegisteredService by matching with the supplied id.
+     * <p>
+     * The returned instance may be shared with concurrent lookups, so callers that intend to modify it
+     * must {@link RegisteredService#clone() clone} it first and {@link #save(RegisteredService) save}
+     * the copy.
      *
      * @param id the id to match with.
      * @return the RegisteredService that matches the supplied service.
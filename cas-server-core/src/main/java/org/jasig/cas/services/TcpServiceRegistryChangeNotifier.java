@@ -0,0 +1,285 @@
+/*
+ * Licensed to Apereo under one or more contributor license
+ * agreements. See the NOTICE file distributed with this work
+ * for additional information regarding copyright ownership.
+ * Apereo licenses this file to you under the Apache License,
+ * Version 2.0 (the "License"); you may not use this file
+ * except in compliance with the License.  You may obtain a
+ * copy of the License at the following location:
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.jasig.cas.services;
+
+import javax.validation.constraints.Min;
+import javax.validation.constraints.NotNull;
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.net.SocketException;
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.SynchronousQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Notifies peers of service registry changes over plain TCP connections, without multicast. Each node listens
+ * on a port and is configured with the <code>host:port</code> addresses of the other nodes. A change opens a
+ * short-lived connection to every peer and sends the local change counter on a single line; peers that
+ * receive it reload their services. Unreachable peers are logged and skipped, and catch up on their next
+ * scheduled reload.
+ * <p>
+ * Any client able to connect to the port can trigger a reload, which only ever reads the shared registry;
+ * the port should nevertheless only be reachable from the other CAS nodes.
+ * </p>
+ *
+ * @author CAS Team
+ * @since 4.1
+ */
+public final class TcpServiceRegistryChangeNotifier extends AbstractServiceRegistryChangeNotifier {
+
+    /** Default time in milliseconds to wait for a connection to, or a message from, a peer. */
+    public static final int DEFAULT_TIMEOUT = 2000;
+
+    /** Default maximum number of notifications read at the same time. */
+    public static final int DEFAULT_MAX_RECEIVERS = 8;
+
+    private static final Charset UTF8 = Charset.forName("UTF-8");
+
+    @Min(0)
+    private final int port;
+
+    private String bindAddress;
+
+    @NotNull
+    private List<InetSocketAddress> peers = Collections.emptyList();
+
+    @Min(0)
+    private int timeout = DEFAULT_TIMEOUT;
+
+    @Min(1)
+    private int maxReceivers = DEFAULT_MAX_RECEIVERS;
+
+    private final AtomicLong version = new AtomicLong();
+
+    private ServerSocket serverSocket;
+
+    private Thread acceptThread;
+
+    private ExecutorService sendExecutor;
+
+    private ExecutorService receiveExecutor;
+
+    /**
+     * Creates a new notifier.
+     *
+     * @param servicesManager Services manager to reload when a peer changes the registry.
+     * @param port Port to listen on for notifications from peers; 0 picks a free port.
+     */
+    public TcpServiceRegistryChangeNotifier(final ReloadableServicesManager servicesManager, final int port) {
+        super(servicesManager);
+        this.port = port;
+    }
+
+    /**
+     * @param bindAddress Local address to listen on. Defaults to all addresses.
+     */
+    public void setBindAddress(final String bindAddress) {
+        this.bindAddress = bindAddress;
+    }
+
+    /**
+     * @param peers Addresses of the other nodes, each in the form <code>host:port</code>.
+     */
+    public void setPeers(@NotNull final List<String> peers) {
+        final List<InetSocketAddress> addresses = new ArrayList<InetSocketAddress>(peers.size());
+        for (final String peer : peers) {
+            final int separator = peer.lastIndexOf(':');
+            if (separator <= 0) {
+                throw new IllegalArgumentException("Peer address must be of the form host:port: " + peer);
+            }
+            addresses.add(InetSocketAddress.createUnresolved(peer.substring(0, separator).trim(),
+                    Integer.parseInt(peer.substring(separator + 1).trim())));
+        }
+        this.peers = addresses;
+    }
+
+    /**
+     * @param timeout Time in milliseconds to wait for a connection to, or a message from, a peer.
+     */
+    public void setTimeout(final int timeout) {
+        this.timeout = timeout;
+    }
+
+    /**
+     * @param maxReceivers Maximum number of connections read at the same time. Connections accepted while all
+     *                     receivers are busy are closed, which is safe since every notification only triggers a
+     *                     reload and a reload is then already pending.
+     */
+    public void setMaxReceivers(final int maxReceivers) {
+        this.maxReceivers = maxReceivers;
+    }
+
+    /**
+     * Gets the port this notifier listens on, which is only known after startup when configured as 0.
+     *
+     * @return the local port
+     */
+    public int getLocalPort() {
+        return this.serverSocket.getLocalPort();
+    }
+
+    @Override
+    protected void start() throws Exception {
+        this.sendExecutor = Executors.newSingleThreadExecutor(newThreadFactory("TcpServiceRegistryChangeSender"));
+        this.receiveExecutor = new ThreadPoolExecutor(0, this.maxReceivers, 1, TimeUnit.MINUTES,
+                new SynchronousQueue<Runnable>(), newThreadFactory("TcpServiceRegistryChangeReceiver"));
+        this.serverSocket = new ServerSocket();
+        this.serverSocket.bind(this.bindAddress == null ? new InetSocketAddress(this.port)
+                : new InetSocketAddress(InetAddress.getByName(this.bindAddress), this.port));
+        this.acceptThread = newThreadFactory("TcpServiceRegistryChangeListener").newThread(new Runnable() {
+            @Override
+            public void run() {
+                accept();
+            }
+        });
+        this.acceptThread.start();
+        logger.info("Listening for service registry changes on {}", this.serverSocket.getLocalSocketAddress());
+    }
+
+    @Override
+    protected void stop() throws Exception {
+        if (this.sendExecutor != null) {
+            this.sendExecutor.shutdownNow();
+        }
+        if (this.receiveExecutor != null) {
+            this.receiveExecutor.shutdownNow();
+        }
+        if (this.serverSocket != null) {
+            this.serverSocket.close();
+        }
+    }
+
+    @Override
+    public void publishChange() {
+        final long current = this.version.incrementAndGet();
+        for (final InetSocketAddress peer : this.peers) {
+            this.sendExecutor.execute(new Runnable() {
+                @Override
+                public void run() {
+                    send(peer, current);
+                }
+            });
+        }
+    }
+
+    /**
+     * Sends a change notification to a peer.
+     *
+     * @param peer the peer address
+     * @param current the local change counter
+     */
+    private void send(final InetSocketAddress peer, final long current) {
+        final Socket socket = new Socket();
+        try {
+            socket.connect(new InetSocketAddress(peer.getHostString(), peer.getPort()), this.timeout);
+            final OutputStream out = socket.getOutputStream();
+            out.write((current + "\n").getBytes(UTF8));
+            out.flush();
+            logger.debug("Notified {} of service registry change {}", peer, current);
+        } catch (final IOException e) {
+            logger.warn("Cannot notify {} of service registry change: {}", peer, e.getMessage());
+        } finally {
+            closeQuietly(socket);
+        }
+    }
+
+    /**
+     * Accepts connections from peers until the server socket is closed, handing each to a receiver thread so
+     * that a slow client does not hold up the others.
+     */
+    private void accept() {
+        while (!this.serverSocket.isClosed()) {
+            try {
+                final Socket socket = this.serverSocket.accept();
+                try {
+                    this.receiveExecutor.execute(new Runnable() {
+                        @Override
+                        public void run() {
+                            receive(socket);
+                        }
+                    });
+                } catch (final RejectedExecutionException e) {
+                    logger.warn("Too many concurrent service registry change notifications; closing connection from {}",
+                            socket.getRemoteSocketAddress());
+                    closeQuietly(socket);
+                    // Whatever the dropped peer announced is covered by a reload
+                    reloadServices();
+                }
+            } catch (final SocketException e) {
+                if (!this.serverSocket.isClosed()) {
+                    logger.warn("Failed accepting service registry change notification", e);
+                }
+            } catch (final IOException e) {
+                logger.warn("Failed accepting service registry change notification", e);
+            }
+        }
+        logger.debug("Stopped listening for service registry changes");
+    }
+
+    /**
+     * Reads a change notification from a peer and closes the connection.
+     *
+     * @param socket the connection
+     */
+    private void receive(final Socket socket) {
+        try {
+            socket.setSoTimeout(this.timeout);
+            final BufferedReader reader = new BufferedReader(new InputStreamReader(socket.getInputStream(), UTF8));
+            final String line = reader.readLine();
+            if (line != null) {
+                logger.debug("{} announced service registry change {}", socket.getRemoteSocketAddress(), line.trim());
+                reloadServices();
+            }
+        } catch (final IOException e) {
+            logger.warn("Failed receiving service registry change notification from {}: {}",
+                    socket.getRemoteSocketAddress(), e.getMessage());
+        } finally {
+            closeQuietly(socket);
+        }
+    }
+
+    /**
+     * Closes a socket, ignoring errors.
+     *
+     * @param socket the socket, possibly null
+     */
+    private void closeQuietly(final Socket socket) {
+        if (socket != null) {
+            try {
+                socket.close();
+            } catch (final IOException e) {
+                logger.trace("Failed closing socket", e);
+            }
+        }
+    }
+}
@@ -0,0 +1,40 @@
+/*
+ * Licensed to Apereo under one or more contributor license
+ * agreements. See the NOTICE file distributed with this work
+ * for additional information regarding copyright ownership.
+ * Apereo licenses this file to you under the Apache License,
+ * Version 2.0 (the "License"); you may not use this file
+ * except in compliance with the License.  You may obtain a
+ * copy of the License at the following location:
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.jasig.cas.services;
+
+/**
+ * Service registry that can tell which services changed since an earlier load, so that callers that
+ * reload periodically need not read and rebuild every service when little or nothing changed.
+ *
+ * @author CAS Team
+ * @since 4.1
+ */
+public interface VersionedServiceRegistryDao extends ServiceRegistryDao {
+
+    /**
+     * Retrieves the services added or modified in the data store since the given version, along with the
+     * identifiers of all services currently in the data store so that deleted services can be removed.
+     * Services are returned in full if the version is {@link ServiceRegistryChanges#INITIAL_VERSION} or
+     * is not one this registry can compute changes from.
+     *
+     * @param version the version of a previous result, or {@link ServiceRegistryChanges#INITIAL_VERSION}.
+     * @return the changes, never null.
+     */
+    ServiceRegistryChanges loadChangesSince(long version);
+}
@@ -20,6 +20,7 @@ package org.jasig.cas.services.jmx;
 
 import org.jasig.cas.services.RegisteredService;
 import org.jasig.cas.services.RegisteredServiceImpl;
+import org.jasig.cas.services.RegisteredServices;
 import org.jasig.cas.services.ServicesManager;
 import org.springframework.jmx.export.annotation.ManagedAttribute;
 import org.springframework.jmx.export.annotation.ManagedOperation;
@@ -119,9 +120,10 @@ public abstract class AbstractServicesManagerMBean<T extends ServicesManager> {
      * @param newState the new state
      */
     private void changeEnabledState(final long id, final boolean newState) {
-        final RegisteredService r = this.servicesManager.findServiceBy(id);
-        Assert.notNull(r, "invalid RegisteredService id");
+        final RegisteredService existing = this.servicesManager.findServiceBy(id);
+        Assert.notNull(existing, "invalid RegisteredService id");
 
+        final RegisteredService r = RegisteredServices.copy(existing);
         // we screwed up our APIs in older versions of CAS, so we need to CAST this to do anything useful.
         ((RegisteredServiceImpl) r).setEnabled(newState);
         this.servicesManager.save(r);
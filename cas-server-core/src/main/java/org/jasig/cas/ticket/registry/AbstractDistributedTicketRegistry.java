@@ -69,6 +69,19 @@ public abstract class AbstractDistributedTicketRegistry extends AbstractTicketRe
         return new ServiceTicketDelegator(this, (ServiceTicket) ticket, needsCallback());
     }
 
+    /**
+     * Gets the ticket behind a proxy returned by {@link #getProxiedTicketInstance(Ticket)} of any registry.
+     *
+     * @param ticket the ticket, proxied or not
+     * @return the ticket itself
+     */
+    public static Ticket getUnproxiedTicketInstance(final Ticket ticket) {
+        if (ticket instanceof TicketDelegator) {
+            return ((TicketDelegator<?>) ticket).getTicket();
+        }
+        return ticket;
+    }
+
     private static class TicketDelegator<T extends Ticket> implements Ticket {
 
         private static final long serialVersionUID = 1780193477774123440L;
@@ -0,0 +1,280 @@
+/*
+ * Licensed to Apereo under one or more contributor license
+ * agreements. See the NOTICE file distributed with this work
+ * for additional information regarding copyright ownership.
+ * Apereo licenses this file to you under the Apache License,
+ * Version 2.0 (the "License"); you may not use this file
+ * except in compliance with the License.  You may obtain a
+ * copy of the License at the following location:
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.jasig.cas.ticket.registry;
+
+import java.util.AbstractCollection;
+import java.util.Collection;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+
+import javax.validation.constraints.NotNull;
+
+import org.jasig.cas.monitor.TicketRegistryState;
+import org.jasig.cas.ticket.Ticket;
+
+/**
+ * Ticket registry decorator used while cutting over from one registry implementation to another.
+ * <p>
+ * Writes are mirrored to both the source and the target registry, while reads are served from the
+ * target with a fallback to the source for tickets that have not been migrated yet. Tickets are returned
+ * through this registry's own proxies, so that later changes such as granting a service ticket are
+ * written to both registries as well. Combined with
+ * {@link org.jasig.cas.ticket.registry.support.TicketRegistryMigrator} this allows moving to a new
+ * registry without logging out existing users. Once migration completes the decorator can be replaced
+ * with the target registry.
+ * </p>
+ * <p>
+ * Writes to a ticket through this registry and {@link #copyTicket(String)} exclude each other, so the migrator
+ * cannot bring back a ticket deleted concurrently, such as a TGT at logout or a validated service ticket, nor
+ * overwrite a newer dual-written copy.
+ * </p>
+ *
+ * @author CAS Team
+ * @since 4.1
+ */
+public final class DualWriteTicketRegistry extends AbstractDistributedTicketRegistry {
+
+    /** Number of locks that writes and copies of a ticket synchronize on, chosen by the ticket id. */
+    private static final int LOCK_STRIPES = 64;
+
+    /** Registry being migrated away from. */
+    @NotNull
+    private final TicketRegistry source;
+
+    /** Registry being migrated to. */
+    @NotNull
+    private final TicketRegistry target;
+
+    private final Object[] locks = new Object[LOCK_STRIPES];
+
+    /**
+     * Creates a new instance.
+     *
+     * @param source Registry being migrated away from.
+     * @param target Registry being migrated to.
+     */
+    public DualWriteTicketRegistry(final TicketRegistry source, final TicketRegistry target) {
+        this.source = source;
+        this.target = target;
+        for (int i = 0; i < LOCK_STRIPES; i++) {
+            this.locks[i] = new Object();
+        }
+    }
+
+    public TicketRegistry getSource() {
+        return this.source;
+    }
+
+    public TicketRegistry getTarget() {
+        return this.target;
+    }
+
+    @Override
+    public void addTicket(final Ticket ticket) {
+        synchronized (lockFor(ticket.getId())) {
+            this.target.addTicket(ticket);
+            try {
+                this.source.addTicket(ticket);
+            } catch (final Exception e) {
+                logger.warn("Failed mirroring ticket [{}] to the source registry", ticket.getId(), e);
+            }
+        }
+    }
+
+    @Override
+    protected void updateTicket(final Ticket ticket) {
+        synchronized (lockFor(ticket.getId())) {
+            update(this.target, ticket);
+            try {
+                update(this.source, ticket);
+            } catch (final Exception e) {
+                logger.warn("Failed mirroring update of ticket [{}] to the source registry", ticket.getId(), e);
+            }
+        }
+    }
+
+    @Override
+    public Ticket getTicket(final String ticketId) {
+        Ticket ticket = this.target.getTicket(ticketId);
+        if (ticket == null) {
+            logger.debug("Ticket [{}] not found in target registry; falling back to source registry", ticketId);
+            ticket = this.source.getTicket(ticketId);
+        }
+        return getProxiedTicketInstance(getUnproxiedTicketInstance(ticket));
+    }
+
+    @Override
+    public boolean deleteTicket(final String ticketId) {
+        synchronized (lockFor(ticketId)) {
+            final boolean deletedFromTarget = this.target.deleteTicket(ticketId);
+            boolean deletedFromSource = false;
+            try {
+                deletedFromSource = this.source.deleteTicket(ticketId);
+            } catch (final Exception e) {
+                logger.warn("Failed deleting ticket [{}] from the source registry", ticketId, e);
+            }
+            return deletedFromTarget || deletedFromSource;
+        }
+    }
+
+    /**
+     * Copies a ticket from the source to the target registry unless it is missing or expired in the source
+     * or already present in the target. The ticket is read from the source while holding the same lock as
+     * writes to it through this registry, so the copy reflects every completed write and a later write
+     * replaces or deletes it in both registries.
+     *
+     * @param ticketId the ticket id
+     * @return true if the ticket was copied
+     */
+    public boolean copyTicket(final String ticketId) {
+        synchronized (lockFor(ticketId)) {
+            final Ticket ticket = getUnproxiedTicketInstance(this.source.getTicket(ticketId));
+            if (ticket == null || ticket.isExpired() || this.target.getTicket(ticketId) != null) {
+                return false;
+            }
+            this.target.addTicket(ticket);
+            return true;
+        }
+    }
+
+    /**
+     * {@inheritDoc}
+     * Returns a view of the tickets in the target registry followed by the source tickets not yet migrated.
+     * Neither registry is copied; each source ticket is looked up in the target while iterating.
+     */
+    @Override
+    public Collection<Ticket> getTickets() {
+        return new AbstractCollection<Ticket>() {
+            @Override
+            public Iterator<Ticket> iterator() {
+                return new MergedIterator();
+            }
+
+            @Override
+            public int size() {
+                int size = 0;
+                final Iterator<Ticket> iterator = iterator();
+                while (iterator.hasNext()) {
+                    iterator.next();
+                    size++;
+                }
+                return size;
+            }
+        };
+    }
+
+    @Override
+    public int sessionCount() {
+        if (this.target instanceof TicketRegistryState) {
+            return ((TicketRegistryState) this.target).sessionCount();
+        }
+        return super.sessionCount();
+    }
+
+    @Override
+    public int serviceTicketCount() {
+        if (this.target instanceof TicketRegistryState) {
+            return ((TicketRegistryState) this.target).serviceTicketCount();
+        }
+        return super.serviceTicketCount();
+    }
+
+    /**
+     * Granting tickets are looked up through this registry, so that changes to them are mirrored too.
+     *
+     * @return true
+     */
+    @Override
+    protected boolean needsCallback() {
+        return true;
+    }
+
+    /**
+     * Gets the lock guarding writes and copies of a ticket.
+     *
+     * @param ticketId the ticket id
+     * @return the lock
+     */
+    private Object lockFor(final String ticketId) {
+        return this.locks[(ticketId.hashCode() & Integer.MAX_VALUE) % LOCK_STRIPES];
+    }
+
+    /**
+     * Writes the changed ticket to the given registry. Registries that hand out their own copies are
+     * updated in place; others store the ticket again.
+     *
+     * @param registry the registry
+     * @param ticket the changed ticket
+     */
+    private static void update(final TicketRegistry registry, final Ticket ticket) {
+        if (registry instanceof AbstractDistributedTicketRegistry) {
+            ((AbstractDistributedTicketRegistry) registry).updateTicket(ticket);
+        } else {
+            registry.addTicket(ticket);
+        }
+    }
+
+    /**
+     * Iterates over the target tickets, then over the source tickets that are not in the target.
+     */
+    private final class MergedIterator implements Iterator<Ticket> {
+        private final Iterator<Ticket> targetTickets = target.getTickets().iterator();
+
+        private Iterator<Ticket> sourceTickets;
+
+        private Ticket next;
+
+        @Override
+        public boolean hasNext() {
+            if (this.next != null) {
+                return true;
+            }
+            if (this.targetTickets.hasNext()) {
+                this.next = this.targetTickets.next();
+                return true;
+            }
+            if (this.sourceTickets == null) {
+                this.sourceTickets = source.getTickets().iterator();
+            }
+            while (this.sourceTickets.hasNext()) {
+                final Ticket ticket = this.sourceTickets.next();
+                if (target.getTicket(ticket.getId()) == null) {
+                    this.next = ticket;
+                    return true;
+                }
+            }
+            return false;
+        }
+
+        @Override
+        public Ticket next() {
+            if (!hasNext()) {
+                throw new NoSuchElementException();
+            }
+            final Ticket ticket = this.next;
+            this.next = null;
+            return ticket;
+        }
+
+        @Override
+        public void remove() {
+            throw new UnsupportedOperationException();
+        }
+    }
+}
@@ -0,0 +1,281 @@
+/*
+ * Licensed to Apereo under one or more contributor license
+ * agreements. See the NOTICE file distributed with this work
+ * for additional information regarding copyright ownership.
+ * Apereo licenses this file to you under the Apache License,
+ * Version 2.0 (the "License"); you may not use this file
+ * except in compliance with the License.  You may obtain a
+ * copy of the License at the following location:
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.jasig.cas.ticket.registry.support;
+
+import org.jasig.cas.ticket.ServiceTicket;
+import org.jasig.cas.ticket.Ticket;
+import org.jasig.cas.ticket.TicketGrantingTicket;
+import org.jasig.cas.ticket.registry.AbstractDistributedTicketRegistry;
+import org.jasig.cas.ticket.registry.DualWriteTicketRegistry;
+import org.jasig.cas.ticket.registry.TicketRegistry;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import javax.validation.constraints.Min;
+import javax.validation.constraints.NotNull;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Copies tickets from one {@link TicketRegistry} to another so that a deployment can switch registry
+ * implementations without logging out its users. The source registry is never modified.
+ * <p>
+ * The source is enumerated once through {@link TicketRegistry#getTickets()} to take a snapshot of ticket ids.
+ * Tickets are then fetched one at a time by id and written to the target in batches of at most
+ * {@link #setBatchSize(int)} tickets, so only the ids and a single ticket are held in memory.
+ * Registries that build a full copy for {@link TicketRegistry#getTickets()} are still read in full once while
+ * the snapshot is taken, but none of those tickets are retained. The copy rate is throttled to
+ * {@link #setMaxTicketsPerSecond(int)} to limit the load placed on either backend. Ticket-granting tickets
+ * are copied before service tickets, and parent TGTs before their proxy-granting tickets, so that
+ * referential constraints in the target hold at every point. Expired tickets and tickets already present
+ * in the target are skipped, which makes the migration safe to re-run. So are tickets removed from the source
+ * after the snapshot was taken.
+ * </p>
+ * <p>
+ * Create the migrator from the {@link DualWriteTicketRegistry} serving live traffic so that tickets created or
+ * removed during the migration are reflected in both registries. Each ticket is then copied through
+ * {@link DualWriteTicketRegistry#copyTicket(String)}, which excludes concurrent writes to the same ticket, so a
+ * ticket deleted or changed while it is being copied is neither brought back nor overwritten with a stale copy.
+ * The source and target constructor is only safe while no other writes reach the target.
+ * </p>
+ *
+ * @author CAS Team
+ * @since 4.1
+ */
+public final class TicketRegistryMigrator {
+
+    /** Default number of tickets written per batch. */
+    public static final int DEFAULT_BATCH_SIZE = 1000;
+
+    /** Default throughput cap; zero disables throttling. */
+    public static final int DEFAULT_MAX_TICKETS_PER_SECOND = 5000;
+
+    private final Logger logger = LoggerFactory.getLogger(getClass());
+
+    @NotNull
+    private final TicketRegistry source;
+
+    @NotNull
+    private final TicketRegistry target;
+
+    /** Registry serving live traffic during the migration, if any. */
+    private final DualWriteTicketRegistry registry;
+
+    @Min(1)
+    private int batchSize = DEFAULT_BATCH_SIZE;
+
+    @Min(0)
+    private int maxTicketsPerSecond = DEFAULT_MAX_TICKETS_PER_SECOND;
+
+    private long copied;
+
+    private long skipped;
+
+    private long failed;
+
+    /**
+     * Creates a new migrator.
+     *
+     * @param source Registry to copy tickets from.
+     * @param target Registry to copy tickets to.
+     */
+    public TicketRegistryMigrator(final TicketRegistry source, final TicketRegistry target) {
+        this.source = source;
+        this.target = target;
+        this.registry = null;
+    }
+
+    /**
+     * Creates a migrator copying tickets between the registries of a dual-write registry in use.
+     *
+     * @param registry Registry mirroring writes to the source and target registries.
+     */
+    public TicketRegistryMigrator(final DualWriteTicketRegistry registry) {
+        this.source = registry.getSource();
+        this.target = registry.getTarget();
+        this.registry = registry;
+    }
+
+    /**
+     * @param batchSize Maximum number of tickets held in memory and written per batch.
+     */
+    public void setBatchSize(final int batchSize) {
+        this.batchSize = batchSize;
+    }
+
+    /**
+     * @param maxTicketsPerSecond Upper bound on the copy rate; zero disables throttling.
+     */
+    public void setMaxTicketsPerSecond(final int maxTicketsPerSecond) {
+        this.maxTicketsPerSecond = maxTicketsPerSecond;
+    }
+
+    /**
+     * Copies all unexpired tickets from the source to the target registry.
+     *
+     * @return Number of tickets copied by this run.
+     * @throws InterruptedException if the thread is interrupted while throttling.
+     */
+    public synchronized long migrate() throws InterruptedException {
+        this.copied = 0;
+        this.skipped = 0;
+        this.failed = 0;
+        final long start = System.currentTimeMillis();
+        logger.info("Beginning ticket migration from {} to {}", this.source, this.target);
+
+        final List<List<String>> ticketGrantingTicketIds = new ArrayList<List<String>>();
+        final List<String> serviceTicketIds = new ArrayList<String>();
+        snapshotTicketIds(ticketGrantingTicketIds, serviceTicketIds);
+        for (final List<String> ids : ticketGrantingTicketIds) {
+            copyTickets(ids);
+        }
+        copyTickets(serviceTicketIds);
+
+        logger.info("Finished ticket migration in {} ms: {} copied, {} skipped, {} failed",
+                System.currentTimeMillis() - start, this.copied, this.skipped, this.failed);
+        return this.copied;
+    }
+
+    public long getCopiedCount() {
+        return this.copied;
+    }
+
+    public long getSkippedCount() {
+        return this.skipped;
+    }
+
+    public long getFailedCount() {
+        return this.failed;
+    }
+
+    /**
+     * Enumerates the source once and records the ids of the unexpired tickets to copy.
+     *
+     * @param ticketGrantingTicketIds receives ticket-granting ticket ids, grouped by the number of parents
+     *                                between the ticket and its root TGT
+     * @param serviceTicketIds receives service and proxy ticket ids
+     */
+    private void snapshotTicketIds(final List<List<String>> ticketGrantingTicketIds, final List<String> serviceTicketIds) {
+        final Iterator<Ticket> iterator = this.source.getTickets().iterator();
+        while (iterator.hasNext()) {
+            final Ticket ticket = iterator.next();
+            if (ticket.isExpired()) {
+                this.skipped++;
+            } else if (ticket instanceof TicketGrantingTicket) {
+                final int depth = getDepth((TicketGrantingTicket) ticket);
+                while (ticketGrantingTicketIds.size() <= depth) {
+                    ticketGrantingTicketIds.add(new ArrayList<String>());
+                }
+                ticketGrantingTicketIds.get(depth).add(ticket.getId());
+            } else if (ticket instanceof ServiceTicket) {
+                serviceTicketIds.add(ticket.getId());
+            }
+        }
+        logger.debug("Found {} ticket-granting ticket levels and {} service tickets to copy",
+                ticketGrantingTicketIds.size(), serviceTicketIds.size());
+    }
+
+    /**
+     * Copies the tickets with the given ids in batches.
+     *
+     * @param ids the ticket ids
+     * @throws InterruptedException if interrupted while throttling
+     */
+    private void copyTickets(final List<String> ids) throws InterruptedException {
+        final List<String> batch = new ArrayList<String>(this.batchSize);
+        for (final String id : ids) {
+            batch.add(id);
+            if (batch.size() >= this.batchSize) {
+                writeBatch(batch);
+            }
+        }
+        writeBatch(batch);
+    }
+
+    /**
+     * Copies the tickets of the batch to the target registry, then sleeps as needed to honor the configured rate.
+     *
+     * @param batch the ids of the tickets, which is cleared on return
+     * @throws InterruptedException if interrupted while throttling
+     */
+    private void writeBatch(final List<String> batch) throws InterruptedException {
+        if (batch.isEmpty()) {
+            return;
+        }
+        final long start = System.nanoTime();
+        for (final String id : batch) {
+            try {
+                if (copyTicket(id)) {
+                    this.copied++;
+                } else {
+                    this.skipped++;
+                }
+            } catch (final Exception e) {
+                this.failed++;
+                logger.warn("Failed copying ticket [{}] to the target registry", id, e);
+            }
+        }
+        logger.debug("Copied batch of {} tickets; {} copied so far", batch.size(), this.copied);
+
+        if (this.maxTicketsPerSecond > 0) {
+            final long minimumNanos = TimeUnit.SECONDS.toNanos(batch.size()) / this.maxTicketsPerSecond;
+            final long remaining = minimumNanos - (System.nanoTime() - start);
+            if (remaining > 0) {
+                TimeUnit.NANOSECONDS.sleep(remaining);
+            }
+        }
+        batch.clear();
+    }
+
+    /**
+     * Copies a ticket unless it is missing or expired in the source or already present in the target.
+     *
+     * @param id the ticket id
+     * @return true if the ticket was copied
+     */
+    private boolean copyTicket(final String id) {
+        if (this.registry != null) {
+            return this.registry.copyTicket(id);
+        }
+        final Ticket ticket = AbstractDistributedTicketRegistry.getUnproxiedTicketInstance(this.source.getTicket(id));
+        if (ticket == null || ticket.isExpired() || this.target.getTicket(id) != null) {
+            return false;
+        }
+        this.target.addTicket(ticket);
+        return true;
+    }
+
+    /**
+     * Computes the number of parents between the ticket and its root.
+     *
+     * @param ticket the ticket
+     * @return the depth; zero for a root TGT
+     */
+    private static int getDepth(final TicketGrantingTicket ticket) {
+        int depth = 0;
+        TicketGrantingTicket parent = ticket.getGrantingTicket();
+        while (parent != null) {
+            depth++;
+            parent = parent.getGrantingTicket();
+        }
+        return depth;
+    }
+}
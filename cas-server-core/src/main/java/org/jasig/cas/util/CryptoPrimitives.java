@@ -0,0 +1,187 @@
+/*
+ * Licensed to Apereo under one or more contributor license
+ * agreements. See the NOTICE file distributed with this work
+ * for additional information regarding copyright ownership.
+ * Apereo licenses this file to you under the Apache License,
+ * Version 2.0 (the "License"); you may not use this file
+ * except in compliance with the License.  You may obtain a
+ * copy of the License at the following location:
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.jasig.cas.util;
+
+import javax.crypto.Cipher;
+import javax.crypto.Mac;
+import javax.crypto.NoSuchPaddingException;
+import javax.xml.crypto.dsig.XMLSignatureFactory;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.security.Provider;
+import java.security.SecureRandom;
+import java.security.Signature;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Provides JCA primitives cached per thread, so that hot paths do not look up a provider and create a new instance
+ * on every call. Message digests, MACs, ciphers and signatures are not thread safe; caching them per thread gives
+ * each thread its own instance without any locking.
+ * <p>
+ * Digests and MACs are reset before they are returned. Ciphers and signatures must be initialized by the caller
+ * before each use, which also resets them. A primitive must be used to completion before the same thread asks for
+ * one of the same kind and algorithm again, so callers should not call out to other code while using one.
+ * </p>
+ *
+ * @author CAS Team
+ * @since 4.1
+ */
+public final class CryptoPrimitives {
+
+    private static final ThreadLocal<Map<String, MessageDigest>> DIGESTS = newCache();
+
+    private static final ThreadLocal<Map<String, Mac>> MACS = newCache();
+
+    private static final ThreadLocal<Map<String, Cipher>> CIPHERS = newCache();
+
+    private static final ThreadLocal<Map<String, Signature>> SIGNATURES = newCache();
+
+    private static final ThreadLocal<Map<String, XMLSignatureFactory>> XML_SIGNATURE_FACTORIES = newCache();
+
+    private static final ThreadLocal<SecureRandom> SECURE_RANDOM = new ThreadLocal<SecureRandom>() {
+        @Override
+        protected SecureRandom initialValue() {
+            return new SecureRandom();
+        }
+    };
+
+    /**
+     * The constructor is intentionally marked as private.
+     */
+    private CryptoPrimitives() {
+        // nothing to do
+    }
+
+    /**
+     * Gets the message digest of the current thread for an algorithm.
+     *
+     * @param algorithm the digest algorithm, e.g. SHA-256
+     * @return a reset message digest
+     * @throws NoSuchAlgorithmException if no provider supports the algorithm
+     */
+    public static MessageDigest getMessageDigest(final String algorithm) throws NoSuchAlgorithmException {
+        final Map<String, MessageDigest> digests = DIGESTS.get();
+        MessageDigest digest = digests.get(algorithm);
+        if (digest == null) {
+            digest = MessageDigest.getInstance(algorithm);
+            digests.put(algorithm, digest);
+        } else {
+            digest.reset();
+        }
+        return digest;
+    }
+
+    /**
+     * Gets the MAC of the current thread for an algorithm. It must be initialized with a key before use.
+     *
+     * @param algorithm the MAC algorithm, e.g. HmacSHA256
+     * @return a reset MAC
+     * @throws NoSuchAlgorithmException if no provider supports the algorithm
+     */
+    public static Mac getMac(final String algorithm) throws NoSuchAlgorithmException {
+        final Map<String, Mac> macs = MACS.get();
+        Mac mac = macs.get(algorithm);
+        if (mac == null) {
+            mac = Mac.getInstance(algorithm);
+            macs.put(algorithm, mac);
+        } else {
+            mac.reset();
+        }
+        return mac;
+    }
+
+    /**
+     * Gets the cipher of the current thread for a transformation. It must be initialized before use.
+     *
+     * @param transformation the transformation, e.g. AES/CBC/PKCS5Padding
+     * @return the cipher
+     * @throws NoSuchAlgorithmException if no provider supports the transformation
+     * @throws NoSuchPaddingException if the padding scheme is not available
+     */
+    public static Cipher getCipher(final String transformation) throws NoSuchAlgorithmException, NoSuchPaddingException {
+        final Map<String, Cipher> ciphers = CIPHERS.get();
+        Cipher cipher = ciphers.get(transformation);
+        if (cipher == null) {
+            cipher = Cipher.getInstance(transformation);
+            ciphers.put(transformation, cipher);
+        }
+        return cipher;
+    }
+
+    /**
+     * Gets the signature of the current thread for an algorithm. It must be initialized for signing or verification
+     * before use.
+     *
+     * @param algorithm the signature algorithm, e.g. SHA256withRSA
+     * @return the signature
+     * @throws NoSuchAlgorithmException if no provider supports the algorithm
+     */
+    public static Signature getSignature(final String algorithm) throws NoSuchAlgorithmException {
+        final Map<String, Signature> signatures = SIGNATURES.get();
+        Signature signature = signatures.get(algorithm);
+        if (signature == null) {
+            signature = Signature.getInstance(algorithm);
+            signatures.put(algorithm, signature);
+        }
+        return signature;
+    }
+
+    /**
+     * Gets the XML signature factory of the current thread for the DOM mechanism of a provider.
+     *
+     * @param providerClassName class name of the JSR 105 provider, which must have a public no-argument constructor
+     * @return the factory
+     * @throws ReflectiveOperationException if the provider cannot be instantiated
+     */
+    public static XMLSignatureFactory getXmlSignatureFactory(final String providerClassName)
+            throws ReflectiveOperationException {
+        final Map<String, XMLSignatureFactory> factories = XML_SIGNATURE_FACTORIES.get();
+        XMLSignatureFactory factory = factories.get(providerClassName);
+        if (factory == null) {
+            factory = XMLSignatureFactory.getInstance("DOM", (Provider) Class.forName(providerClassName).newInstance());
+            factories.put(providerClassName, factory);
+        }
+        return factory;
+    }
+
+    /**
+     * Gets the secure random number generator of the current thread.
+     *
+     * @return the generator
+     */
+    public static SecureRandom getSecureRandom() {
+        return SECURE_RANDOM.get();
+    }
+
+    /**
+     * Creates a per thread cache of primitives by algorithm.
+     *
+     * @param <T> the type of primitive
+     * @return the cache
+     */
+    private static <T> ThreadLocal<Map<String, T>> newCache() {
+        return new ThreadLocal<Map<String, T>>() {
+            @Override
+            protected Map<String, T> initialValue() {
+                return new HashMap<String, T>();
+            }
+        };
+    }
+}
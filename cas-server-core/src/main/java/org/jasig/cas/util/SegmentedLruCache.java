@@ -0,0 +1,161 @@
+/*
+ * Licensed to Apereo under one or more contributor license
+ * agreements. See the NOTICE file distributed with this work
+ * for additional information regarding copyright ownership.
+ * Apereo licenses this file to you under the Apache License,
+ * Version 2.0 (the "License"); you may not use this file
+ * except in compliance with the License.  You may obtain a
+ * copy of the License at the following location:
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.jasig.cas.util;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Bounded map evicting entries in least recently used order once its capacity is reached. It is split into
+ * independently locked segments to limit contention, each holding an equal share of the capacity, so eviction
+ * order is only approximately least recently used across the whole map. Null keys are not supported.
+ *
+ * @param <K> the key type
+ * @param <V> the value type
+ * @author CAS Team
+ * @since 4.1
+ */
+public final class SegmentedLruCache<K, V> {
+
+    /** Number of segments, which is also the smallest useful capacity. */
+    public static final int SEGMENTS = 16;
+
+    private static final int HASH_SHIFT = 16;
+
+    private static final float LOAD_FACTOR = 0.75f;
+
+    private final int capacity;
+
+    private final List<Segment> segments = new ArrayList<Segment>(SEGMENTS);
+
+    private final AtomicLong evictions = new AtomicLong();
+
+    /**
+     * Creates a new cache.
+     *
+     * @param capacity Maximum number of entries.
+     */
+    public SegmentedLruCache(final int capacity) {
+        this.capacity = capacity;
+        final int segmentCapacity = Math.max(1, capacity / SEGMENTS);
+        for (int i = 0; i < SEGMENTS; i++) {
+            this.segments.add(new Segment(segmentCapacity));
+        }
+    }
+
+    /**
+     * Gets the value of a key, marking it as most recently used.
+     *
+     * @param key the key
+     * @return the value, or null if the key is not cached
+     */
+    public V get(final K key) {
+        final Segment segment = segmentFor(key);
+        synchronized (segment) {
+            return segment.get(key);
+        }
+    }
+
+    /**
+     * Caches the value of a key, evicting the least recently used entry of its segment if the segment is full.
+     *
+     * @param key the key
+     * @param value the value
+     */
+    public void put(final K key, final V value) {
+        final Segment segment = segmentFor(key);
+        synchronized (segment) {
+            segment.put(key, value);
+        }
+    }
+
+    /**
+     * Removes all entries.
+     */
+    public void clear() {
+        for (final Segment segment : this.segments) {
+            synchronized (segment) {
+                segment.clear();
+            }
+        }
+    }
+
+    /**
+     * @return the number of cached entries.
+     */
+    public int size() {
+        int size = 0;
+        for (final Segment segment : this.segments) {
+            synchronized (segment) {
+                size += segment.size();
+            }
+        }
+        return size;
+    }
+
+    public int getCapacity() {
+        return this.capacity;
+    }
+
+    public long getEvictionCount() {
+        return this.evictions.get();
+    }
+
+    /**
+     * Gets the segment responsible for a key.
+     *
+     * @param key the key
+     * @return the segment
+     */
+    private Segment segmentFor(final K key) {
+        final int hash = key.hashCode();
+        return this.segments.get((hash ^ (hash >>> HASH_SHIFT)) & (SEGMENTS - 1));
+    }
+
+    /**
+     * Access ordered map evicting its least recently used entry beyond its capacity.
+     */
+    private final class Segment extends LinkedHashMap<K, V> {
+        private static final long serialVersionUID = 5120372381425398211L;
+
+        private final int segmentCapacity;
+
+        /**
+         * Instantiates a new segment.
+         *
+         * @param segmentCapacity maximum number of entries
+         */
+        Segment(final int segmentCapacity) {
+            super(segmentCapacity, LOAD_FACTOR, true);
+            this.segmentCapacity = segmentCapacity;
+        }
+
+        @Override
+        protected boolean removeEldestEntry(final Map.Entry<K, V> eldest) {
+            if (size() > this.segmentCapacity) {
+                evictions.incrementAndGet();
+                return true;
+            }
+            return false;
+        }
+    }
+}
@@ -25,6 +25,8 @@ import com.fasterxml.jackson.annotation.PropertyAccessor;
 import com.fasterxml.jackson.core.PrettyPrinter;
 import com.fasterxml.jackson.core.util.DefaultPrettyPrinter;
 import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.ObjectReader;
+import com.fasterxml.jackson.databind.ObjectWriter;
 import com.fasterxml.jackson.databind.SerializationFeature;
 import org.jasig.cas.services.RegisteredService;
 import org.jasig.cas.services.RegisteredServiceProxyPolicy;
@@ -40,12 +42,19 @@ import java.net.URL;
 
 /**
  * Serializes registered services to JSON based on the Jackson JSON library.
+ * Instances are thread-safe. Unless an object mapper is supplied, all instances share one preconfigured
+ * mapper, so creating a serializer does not repeat the mapper's configuration and introspection work.
  * @author Misagh Moayyed
  * @since 4.1.0
  */
 public final class RegisteredServiceJsonSerializer implements JsonSerializer<RegisteredService> {
     private static final Logger LOGGER = LoggerFactory.getLogger(RegisteredServiceJsonSerializer.class);
 
+    /**
+     * Object mapper shared by serializers using the default configuration.
+     */
+    private static final ObjectMapper DEFAULT_OBJECT_MAPPER = initializeObjectMapper();
+
     /**
      * The Pretty printer.
      */
@@ -56,6 +65,16 @@ public final class RegisteredServiceJsonSerializer implements JsonSerializer<Reg
      */
     private final ObjectMapper objectMapper;
 
+    /**
+     * Reader bound to the registered service type.
+     */
+    private final ObjectReader objectReader;
+
+    /**
+     * Writer using the pretty printer.
+     */
+    private final ObjectWriter objectWriter;
+
     /**
      * Instantiates a new Registered service json serializer.
      * Uses the {@link DefaultPrettyPrinter} for formatting.
@@ -69,7 +88,7 @@ public final class RegisteredServiceJsonSerializer implements JsonSerializer<Reg
      * @param prettyPrinter the pretty printer
      */
     public RegisteredServiceJsonSerializer(final PrettyPrinter prettyPrinter) {
-        this(initializeObjectMapper(), prettyPrinter);
+        this(DEFAULT_OBJECT_MAPPER, prettyPrinter);
     }
 
     /**
@@ -81,12 +100,14 @@ public final class RegisteredServiceJsonSerializer implements JsonSerializer<Reg
     public RegisteredServiceJsonSerializer(final ObjectMapper objectMapper, final PrettyPrinter prettyPrinter) {
         this.objectMapper = objectMapper;
         this.prettyPrinter = prettyPrinter;
+        this.objectReader = objectMapper.reader(RegisteredService.class);
+        this.objectWriter = objectMapper.writer(prettyPrinter);
     }
 
     @Override
     public RegisteredService fromJson(final String json) {
         try {
-            return this.objectMapper.readValue(json, RegisteredService.class);
+            return this.objectReader.readValue(json);
         } catch (final Exception e) {
             throw new RuntimeException(e);
         }
@@ -95,7 +116,7 @@ public final class RegisteredServiceJsonSerializer implements JsonSerializer<Reg
     @Override
     public RegisteredService fromJson(final File json) {
         try {
-            return this.objectMapper.readValue(json, RegisteredService.class);
+            return this.objectReader.readValue(json);
         } catch (final Exception e) {
             throw new RuntimeException(e);
         }
@@ -104,7 +125,7 @@ public final class RegisteredServiceJsonSerializer implements JsonSerializer<Reg
     @Override
     public RegisteredService fromJson(final Reader json) {
         try {
-            return this.objectMapper.readValue(json, RegisteredService.class);
+            return this.objectReader.readValue(json);
         } catch (final Exception e) {
             throw new RuntimeException(e);
         }
@@ -113,7 +134,7 @@ public final class RegisteredServiceJsonSerializer implements JsonSerializer<Reg
     @Override
     public RegisteredService fromJson(final InputStream json) {
         try {
-            return this.objectMapper.readValue(json, RegisteredService.class);
+            return this.objectReader.readValue(json);
         } catch (final Exception e) {
             throw new RuntimeException(e);
         }
@@ -122,7 +143,7 @@ public final class RegisteredServiceJsonSerializer implements JsonSerializer<Reg
     @Override
     public void toJson(final OutputStream out, final RegisteredService object) {
         try {
-            this.objectMapper.writer(this.prettyPrinter).writeValue(out, object);
+            this.objectWriter.writeValue(out, object);
         } catch (final Exception e) {
             throw new RuntimeException(e);
         }
@@ -131,7 +152,7 @@ public final class RegisteredServiceJsonSerializer implements JsonSerializer<Reg
     @Override
     public void toJson(final Writer out, final RegisteredService object) {
         try {
-            this.objectMapper.writer(this.prettyPrinter).writeValue(out, object);
+            this.objectWriter.writeValue(out, object);
         } catch (final Exception e) {
             throw new RuntimeException(e);
         }
@@ -140,7 +161,7 @@ public final class RegisteredServiceJsonSerializer implements JsonSerializer<Reg
     @Override
     public void toJson(final File out, final RegisteredService object) {
         try {
-            this.objectMapper.writer(this.prettyPrinter).writeValue(out, object);
+            this.objectWriter.writeValue(out, object);
         } catch (final Exception e) {
             throw new RuntimeException(e);
         }
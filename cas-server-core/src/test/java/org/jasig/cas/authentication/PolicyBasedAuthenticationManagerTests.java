@@ -20,10 +20,25 @@ package org.jasig.cas.authentication;
 
 import javax.security.auth.login.FailedLoginException;
 
+import java.security.GeneralSecurityException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.jasig.cas.authentication.handler.support.AbstractUsernamePasswordAuthenticationHandler;
 import org.jasig.cas.authentication.principal.SimplePrincipal;
+import org.junit.After;
 import org.junit.Test;
+import org.mockito.invocation.InvocationOnMock;
+import org.mockito.stubbing.Answer;
 
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
 import static org.junit.Assert.fail;
 import static org.mockito.Mockito.*;
 
@@ -34,6 +49,19 @@ import static org.mockito.Mockito.*;
  */
 public class PolicyBasedAuthenticationManagerTests {
 
+    private static final int TIMEOUT = 10000;
+
+    private final ExecutorService executor = Executors.newFixedThreadPool(4);
+
+    /** Released at the end of each test so that blocked handlers complete. */
+    private final CountDownLatch release = new CountDownLatch(1);
+
+    @After
+    public void tearDown() {
+        this.release.countDown();
+        this.executor.shutdownNow();
+    }
+
     @Test
     public void testAuthenticateAnySuccess() throws Exception {
         final PolicyBasedAuthenticationManager manager = new PolicyBasedAuthenticationManager(
@@ -126,6 +154,135 @@ public class PolicyBasedAuthenticationManagerTests {
         assertEquals(2, auth.getCredentials().size());
     }
 
+    @Test
+    public void testHandlersForOtherCredentialTypesAreSkipped() throws Exception {
+        final CredentialTypeAuthenticationHandler typed = mock(CredentialTypeAuthenticationHandler.class);
+        when(typed.getName()).thenReturn("Typed");
+        doReturn(UsernamePasswordCredential.class).when(typed).getSupportedCredentialType();
+        final PolicyBasedAuthenticationManager manager = new PolicyBasedAuthenticationManager(
+                typed,
+                newMockHandler("Untyped", true));
+
+        final Authentication auth = manager.authenticate(mock(Credential.class));
+        assertEquals(Collections.singleton("Untyped"), auth.getSuccesses().keySet());
+        manager.authenticate(mock(Credential.class));
+        verify(typed, never()).supports(any(Credential.class));
+        verify(typed, never()).authenticate(any(Credential.class));
+    }
+
+    @Test
+    public void testSubclassesOverridingSupportsAreConsultedForAllCredentials() throws Exception {
+        final AtomicInteger consulted = new AtomicInteger();
+        final AbstractUsernamePasswordAuthenticationHandler subclass = new AbstractUsernamePasswordAuthenticationHandler() {
+            @Override
+            public boolean supports(final Credential credential) {
+                consulted.incrementAndGet();
+                return false;
+            }
+
+            @Override
+            protected HandlerResult authenticateUsernamePasswordInternal(final UsernamePasswordCredential credential)
+                    throws GeneralSecurityException {
+                throw new FailedLoginException();
+            }
+        };
+        final PolicyBasedAuthenticationManager manager = new PolicyBasedAuthenticationManager(
+                subclass,
+                newMockHandler("Untyped", true));
+
+        manager.authenticate(mock(Credential.class));
+        assertEquals(1, consulted.get());
+    }
+
+    @Test
+    public void testConcurrentStopsWhenPolicySatisfied() throws Exception {
+        final CountDownLatch interrupted = new CountDownLatch(1);
+        final AuthenticationHandler slow = newBlockingHandler("Slow", interrupted);
+        final PolicyBasedAuthenticationManager manager = new PolicyBasedAuthenticationManager(
+                slow,
+                newMockHandler("Fast", true));
+        manager.setExecutor(this.executor);
+
+        final Authentication auth = manager.authenticate(mock(Credential.class));
+        assertEquals(Collections.singleton("Fast"), auth.getSuccesses().keySet());
+        assertEquals(0, auth.getFailures().size());
+        assertTrue("Slow handler was not cancelled", interrupted.await(TIMEOUT, TimeUnit.MILLISECONDS));
+    }
+
+    @Test
+    public void testConcurrentResultsAreOrderedLikeHandlers() throws Exception {
+        final AuthenticationHandler slow = newMockHandler("HandlerA", true);
+        final HandlerResult slowResult = slow.authenticate(mock(Credential.class));
+        when(slow.authenticate(any(Credential.class))).thenAnswer(new Answer<HandlerResult>() {
+            @Override
+            public HandlerResult answer(final InvocationOnMock invocation) throws Throwable {
+                Thread.sleep(200);
+                return slowResult;
+            }
+        });
+        final PolicyBasedAuthenticationManager manager = new PolicyBasedAuthenticationManager(
+                slow,
+                newMockHandler("HandlerB", false),
+                newMockHandler("HandlerC", true));
+        manager.setAuthenticationPolicy(new AllAuthenticationPolicy());
+        manager.setExecutor(this.executor);
+
+        final Authentication auth = manager.authenticate(mock(Credential.class), mock(Credential.class));
+        assertEquals(Arrays.asList("HandlerA", "HandlerC"), new ArrayList<String>(auth.getSuccesses().keySet()));
+        assertEquals(Collections.singleton("HandlerB"), auth.getFailures().keySet());
+    }
+
+    @Test(expected = AuthenticationException.class)
+    public void testConcurrentAnyFailure() throws Exception {
+        final PolicyBasedAuthenticationManager manager = new PolicyBasedAuthenticationManager(
+                newMockHandler(false),
+                newMockHandler(false));
+        manager.setExecutor(this.executor);
+        manager.authenticate(mock(Credential.class), mock(Credential.class));
+    }
+
+    @Test
+    public void testHedgedBackupHandler() throws Exception {
+        final AuthenticationHandler primary = newBlockingHandler("Primary", new CountDownLatch(1));
+        final AuthenticationHandler backup = newMockHandler("Backup", true);
+        final PolicyBasedAuthenticationManager manager = new PolicyBasedAuthenticationManager(primary);
+        manager.setExecutor(this.executor);
+        manager.setHedgedHandlers(Collections.singletonMap(primary, backup));
+        manager.setHedgeDelay(50);
+
+        final Authentication auth = manager.authenticate(mock(Credential.class));
+        assertEquals(Collections.singleton("Backup"), auth.getSuccesses().keySet());
+    }
+
+    /**
+     * Creates a new mock authentication handler that blocks until the end of the test or until interrupted.
+     *
+     * @param name Authentication handler name.
+     * @param interrupted Latch counted down when the handler is interrupted.
+     *
+     * @return New mock authentication handler instance.
+     *
+     * @throws Exception On errors.
+     */
+    private AuthenticationHandler newBlockingHandler(final String name, final CountDownLatch interrupted)
+            throws Exception {
+        final AuthenticationHandler mock = mock(AuthenticationHandler.class);
+        when(mock.getName()).thenReturn(name);
+        when(mock.supports(any(Credential.class))).thenReturn(true);
+        when(mock.authenticate(any(Credential.class))).thenAnswer(new Answer<HandlerResult>() {
+            @Override
+            public HandlerResult answer(final InvocationOnMock invocation) throws Throwable {
+                try {
+                    release.await();
+                } catch (final InterruptedException e) {
+                    interrupted.countDown();
+                }
+                throw new FailedLoginException();
+            }
+        });
+        return mock;
+    }
+
     /**
      * Creates a new mock authentication handler that either successfully validates all credentials or fails to
      * validate all credentials.
@@ -0,0 +1,170 @@
+/*
+ * Licensed to Apereo under one or more contributor license
+ * agreements. See the NOTICE file distributed with this work
+ * for additional information regarding copyright ownership.
+ * Apereo licenses this file to you under the Apache License,
+ * Version 2.0 (the "License"); you may not use this file
+ * except in compliance with the License.  You may obtain a
+ * copy of the License at the following location:
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.jasig.cas.authentication.principal;
+
+import org.jasig.cas.TestUtils;
+import org.jasig.services.persondir.IPersonAttributeDao;
+import org.jasig.services.persondir.IPersonAttributes;
+import org.jasig.services.persondir.support.NamedPersonImpl;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.mockito.invocation.InvocationOnMock;
+import org.mockito.stubbing.Answer;
+
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import static org.junit.Assert.*;
+import static org.mockito.Mockito.*;
+
+/**
+ * Unit test for {@link PrincipalAttributesCache}.
+ *
+ * @author CAS Team
+ * @since 4.1
+ */
+public class PrincipalAttributesCacheTests {
+
+    private static final int CAPACITY = 32;
+
+    private static final int TIMEOUT = 10000;
+
+    private final IPersonAttributes person = new NamedPersonImpl("test",
+            Collections.<String, List<Object>>singletonMap("mail", Collections.<Object>singletonList("test@example.org")));
+
+    private IPersonAttributeDao repository;
+
+    private PrincipalAttributesCache cache;
+
+    @Before
+    public void setUp() {
+        this.repository = mock(IPersonAttributeDao.class);
+        when(this.repository.getPerson("test")).thenReturn(this.person);
+    }
+
+    @After
+    public void tearDown() {
+        if (this.cache != null) {
+            this.cache.destroy();
+        }
+    }
+
+    @Test
+    public void testHitsAfterFirstLoad() {
+        this.cache = new PrincipalAttributesCache(CAPACITY, 60000, 0);
+        assertSame(this.person, this.cache.getPerson("test", this.repository));
+        assertSame(this.person, this.cache.getPerson("test", this.repository));
+        assertNull(this.cache.getPerson("unknown", this.repository));
+        assertNull(this.cache.getPerson("unknown", this.repository));
+
+        verify(this.repository, times(1)).getPerson("test");
+        verify(this.repository, times(1)).getPerson("unknown");
+        assertEquals(2, this.cache.getHitCount());
+        assertEquals(2, this.cache.getMissCount());
+        assertEquals(2, this.cache.getLoadCount());
+        assertEquals(2, this.cache.getSize());
+        assertEquals(0.5, this.cache.getHitRatio(), 0.001);
+    }
+
+    @Test
+    public void testExpiredEntriesAreReloaded() throws Exception {
+        this.cache = new PrincipalAttributesCache(CAPACITY, 1, 0);
+        this.cache.getPerson("test", this.repository);
+        Thread.sleep(10);
+        this.cache.getPerson("test", this.repository);
+        verify(this.repository, times(2)).getPerson("test");
+    }
+
+    @Test
+    public void testConcurrentMissesShareOneQuery() throws Exception {
+        this.cache = new PrincipalAttributesCache(CAPACITY, 60000, 0);
+        final CountDownLatch started = new CountDownLatch(1);
+        final CountDownLatch release = new CountDownLatch(1);
+        when(this.repository.getPerson("test")).thenAnswer(new Answer<IPersonAttributes>() {
+            @Override
+            public IPersonAttributes answer(final InvocationOnMock invocation) throws Throwable {
+                started.countDown();
+                release.await();
+                return person;
+            }
+        });
+        final ExecutorService executor = Executors.newFixedThreadPool(2);
+        try {
+            final Callable<IPersonAttributes> lookup = new Callable<IPersonAttributes>() {
+                @Override
+                public IPersonAttributes call() {
+                    return cache.getPerson("test", repository);
+                }
+            };
+            final Future<IPersonAttributes> first = executor.submit(lookup);
+            started.await();
+            final Future<IPersonAttributes> second = executor.submit(lookup);
+            // Give the second lookup time to join the pending query
+            Thread.sleep(200);
+            release.countDown();
+
+            assertSame(this.person, first.get());
+            assertSame(this.person, second.get());
+            verify(this.repository, times(1)).getPerson("test");
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    @Test
+    public void testRefreshesAheadOfExpiry() {
+        this.cache = new PrincipalAttributesCache(CAPACITY, 60000, 60000);
+        this.cache.getPerson("test", this.repository);
+        assertSame(this.person, this.cache.getPerson("test", this.repository));
+        verify(this.repository, timeout(TIMEOUT).times(2)).getPerson("test");
+        assertEquals(1, this.cache.getRefreshCount());
+    }
+
+    @Test
+    public void testEntriesAreKeptPerRepository() {
+        this.cache = new PrincipalAttributesCache(CAPACITY, 60000, 0);
+        final IPersonAttributeDao other = mock(IPersonAttributeDao.class);
+        assertSame(this.person, this.cache.getPerson("test", this.repository));
+        assertNull(this.cache.getPerson("test", other));
+        assertNull(this.cache.getPerson("test", other));
+
+        verify(this.repository, times(1)).getPerson("test");
+        verify(other, times(1)).getPerson("test");
+        assertEquals(2, this.cache.getSize());
+    }
+
+    @Test
+    public void testResolverUsesCache() {
+        this.cache = new PrincipalAttributesCache(CAPACITY, 60000, 0);
+        final PersonDirectoryPrincipalResolver resolver = new PersonDirectoryPrincipalResolver();
+        resolver.setAttributeRepository(this.repository);
+        resolver.setAttributeCache(this.cache);
+
+        assertEquals("test@example.org", resolver.resolve(TestUtils.getCredentialsWithSameUsernameAndPassword("test"))
+                .getAttributes().get("mail"));
+        resolver.resolve(TestUtils.getCredentialsWithSameUsernameAndPassword("test"));
+        verify(this.repository, times(1)).getPerson("test");
+    }
+}
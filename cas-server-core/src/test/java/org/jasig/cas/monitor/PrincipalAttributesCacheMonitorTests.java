@@ -0,0 +1,58 @@
+/*
+ * Licensed to Apereo under one or more contributor license
+ * agreements. See the NOTICE file distributed with this work
+ * for additional information regarding copyright ownership.
+ * Apereo licenses this file to you under the Apache License,
+ * Version 2.0 (the "License"); you may not use this file
+ * except in compliance with the License.  You may obtain a
+ * copy of the License at the following location:
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.jasig.cas.monitor;
+
+import org.jasig.cas.authentication.principal.PrincipalAttributesCache;
+import org.jasig.services.persondir.IPersonAttributeDao;
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+import static org.mockito.Mockito.*;
+
+/**
+ * Unit test for {@link PrincipalAttributesCacheMonitor}.
+ *
+ * @author CAS Team
+ * @since 4.1
+ */
+public class PrincipalAttributesCacheMonitorTests {
+
+    @Test
+    public void testReportsLookupStatistics() {
+        final PrincipalAttributesCache cache = new PrincipalAttributesCache(32, 60000, 0);
+        try {
+            final IPersonAttributeDao repository = mock(IPersonAttributeDao.class);
+            cache.getPerson("test", repository);
+            cache.getPerson("test", repository);
+
+            final CacheStatus status = new PrincipalAttributesCacheMonitor(cache).observe();
+            assertEquals(StatusCode.OK, status.getCode());
+            final LookupCacheStatistics statistics = (LookupCacheStatistics) status.getStatistics()[0];
+            assertEquals("principalAttributesCache", statistics.getName());
+            assertEquals(1, statistics.getSize());
+            assertEquals(1, statistics.getHits());
+            assertEquals(1, statistics.getMisses());
+            assertEquals(1, statistics.getLoads());
+            assertEquals(0, statistics.getRefreshes());
+            assertEquals(0.5, statistics.getHitRatio(), 0.001);
+        } finally {
+            cache.destroy();
+        }
+    }
+}
@@ -0,0 +1,57 @@
+/*
+ * Licensed to Apereo under one or more contributor license
+ * agreements. See the NOTICE file distributed with this work
+ * for additional information regarding copyright ownership.
+ * Apereo licenses this file to you under the Apache License,
+ * Version 2.0 (the "License"); you may not use this file
+ * except in compliance with the License.  You may obtain a
+ * copy of the License at the following location:
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.jasig.cas.monitor;
+
+import org.jasig.cas.services.ServiceResolutionCache;
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+/**
+ * Unit test for {@link ServiceResolutionCacheMonitor}.
+ *
+ * @author CAS Team
+ * @since 4.1
+ */
+public class ServiceResolutionCacheMonitorTests {
+
+    @Test
+    public void testReportsLookupStatistics() {
+        final ServiceResolutionCache cache = new ServiceResolutionCache(32, 60000);
+        final ServiceResolutionCacheMonitor monitor = new ServiceResolutionCacheMonitor(cache);
+
+        final CacheStatus status = monitor.observe();
+        assertEquals(StatusCode.OK, status.getCode());
+        final LookupCacheStatistics statistics = (LookupCacheStatistics) status.getStatistics()[0];
+        assertEquals("serviceResolutionCache", statistics.getName());
+        assertEquals(32, statistics.getCapacity());
+        assertEquals(0, statistics.getHits());
+        assertEquals(0, statistics.getMisses());
+        assertEquals(0, statistics.getHitRatio(), 0.001);
+    }
+
+    @Test
+    public void testLookupStatisticsDescription() {
+        final LookupCacheStatistics statistics = new LookupCacheStatistics(8, 32, 2, "cache", 3, 1);
+        assertEquals(0.75, statistics.getHitRatio(), 0.001);
+        final StringBuilder builder = new StringBuilder();
+        statistics.toString(builder);
+        assertEquals("cache:8 items, 75% free, 2 evictions, 75% hits, 1 loads, 0 refreshes", builder.toString());
+    }
+}
@@ -0,0 +1,135 @@
+/*
+ * Licensed to Apereo under one or more contributor license
+ * agreements. See the NOTICE file distributed with this work
+ * for additional information regarding copyright ownership.
+ * Apereo licenses this file to you under the Apache License,
+ * Version 2.0 (the "License"); you may not use this file
+ * except in compliance with the License.  You may obtain a
+ * copy of the License at the following location:
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.jasig.cas.persondir;
+
+import org.jasig.services.persondir.IPersonAttributeDao;
+import org.jasig.services.persondir.IPersonAttributes;
+import org.jasig.services.persondir.support.NamedPersonImpl;
+import org.junit.After;
+import org.junit.Test;
+import org.mockito.invocation.InvocationOnMock;
+import org.mockito.stubbing.Answer;
+import org.springframework.dao.QueryTimeoutException;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import static org.junit.Assert.*;
+import static org.mockito.Mockito.*;
+
+/**
+ * Unit test for {@link ConcurrentMergingPersonAttributeDao}.
+ *
+ * @author CAS Team
+ * @since 4.1
+ */
+public class ConcurrentMergingPersonAttributeDaoTests {
+
+    private static final long DELAY = 500;
+
+    private ConcurrentMergingPersonAttributeDao dao;
+
+    @After
+    public void tearDown() {
+        if (this.dao != null) {
+            this.dao.destroy();
+        }
+    }
+
+    @Test
+    public void testQueriesSourcesConcurrentlyAndMerges() {
+        final PersonAttributeSource first = new PersonAttributeSource(newRepository("mail", "test@example.org", DELAY));
+        final PersonAttributeSource second = new PersonAttributeSource(newRepository("mail", "alias@example.org", DELAY));
+        final PersonAttributeSource third = new PersonAttributeSource(newRepository("cn", "Test", DELAY));
+        this.dao = new ConcurrentMergingPersonAttributeDao(Arrays.asList(first, second, third));
+
+        final long start = System.currentTimeMillis();
+        final IPersonAttributes person = this.dao.getPerson("test");
+        assertTrue(System.currentTimeMillis() - start < DELAY * 3);
+
+        assertEquals(Arrays.<Object>asList("test@example.org", "alias@example.org"), person.getAttributeValues("mail"));
+        assertEquals("Test", person.getAttributeValue("cn"));
+        for (final PersonAttributeSource source : this.dao.getSources()) {
+            assertEquals(1, source.getQueryCount());
+            assertTrue(source.getAverageLatency() >= DELAY);
+        }
+    }
+
+    @Test
+    public void testSkipsSlowOptionalSource() {
+        final PersonAttributeSource fast = new PersonAttributeSource(newRepository("mail", "test@example.org", 0));
+        final PersonAttributeSource slow = new PersonAttributeSource(newRepository("cn", "Test", DELAY * 10));
+        slow.setTimeout(DELAY);
+        this.dao = new ConcurrentMergingPersonAttributeDao(Arrays.asList(fast, slow));
+
+        final IPersonAttributes person = this.dao.getPerson("test");
+        assertEquals("test@example.org", person.getAttributeValue("mail"));
+        assertNull(person.getAttributeValue("cn"));
+        assertEquals(1, slow.getTimeoutCount());
+    }
+
+    @Test
+    public void testSkipsFailingOptionalSource() {
+        final IPersonAttributeDao failing = mock(IPersonAttributeDao.class);
+        when(failing.getPeopleWithMultivaluedAttributes(anyMap()))
+                .thenThrow(new IllegalStateException("unavailable"));
+        final PersonAttributeSource source = new PersonAttributeSource(failing);
+        this.dao = new ConcurrentMergingPersonAttributeDao(Arrays.asList(
+                new PersonAttributeSource(newRepository("mail", "test@example.org", 0)), source));
+
+        assertEquals("test@example.org", this.dao.getPerson("test").getAttributeValue("mail"));
+        assertEquals(1, source.getFailureCount());
+    }
+
+    @Test(expected = QueryTimeoutException.class)
+    public void testFailsWhenRequiredSourceTimesOut() {
+        final PersonAttributeSource slow = new PersonAttributeSource(newRepository("cn", "Test", DELAY * 10));
+        slow.setTimeout(DELAY);
+        slow.setRequired(true);
+        this.dao = new ConcurrentMergingPersonAttributeDao(Arrays.asList(
+                new PersonAttributeSource(newRepository("mail", "test@example.org", 0)), slow));
+        this.dao.getPerson("test");
+    }
+
+    /**
+     * Creates a repository answering every query with a single attribute after a delay.
+     *
+     * @param name the attribute name
+     * @param value the attribute value
+     * @param delay the delay in milliseconds
+     * @return the repository
+     */
+    private static IPersonAttributeDao newRepository(final String name, final Object value, final long delay) {
+        final IPersonAttributeDao repository = mock(IPersonAttributeDao.class);
+        when(repository.getPeopleWithMultivaluedAttributes(anyMap())).thenAnswer(
+                new Answer<Set<IPersonAttributes>>() {
+                    @Override
+                    public Set<IPersonAttributes> answer(final InvocationOnMock invocation) throws Throwable {
+                        Thread.sleep(delay);
+                        final Map<String, List<Object>> attributes =
+                                Collections.singletonMap(name, Collections.singletonList(value));
+                        return Collections.<IPersonAttributes>singleton(new NamedPersonImpl("test", attributes));
+                    }
+                });
+        return repository;
+    }
+}
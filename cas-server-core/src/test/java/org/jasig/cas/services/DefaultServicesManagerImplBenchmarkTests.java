@@ -0,0 +1,124 @@
+/*
+ * Licensed to Apereo under one or more contributor license
+ * agreements. See the NOTICE file distributed with this work
+ * for additional information regarding copyright ownership.
+ * Apereo licenses this file to you under the Apache License,
+ * Version 2.0 (the "License"); you may not use this file
+ * except in compliance with the License.  You may obtain a
+ * copy of the License at the following location:
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.jasig.cas.services;
+
+import org.jasig.cas.TestUtils;
+import org.jasig.cas.authentication.principal.Service;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.test.annotation.IfProfileValue;
+import org.springframework.test.annotation.ProfileValueSourceConfiguration;
+import org.springframework.test.annotation.SystemProfileValueSource;
+import org.springframework.test.context.junit4.SpringJUnit4ClassRunner;
+
+import java.lang.management.ManagementFactory;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.*;
+import static org.junit.Assume.assumeTrue;
+
+/**
+ * Measures {@link DefaultServicesManagerImpl#findServiceBy(Service)} with 10, 1,000 and 10,000 registered
+ * services, and the memory allocated per lookup. Run with <code>-Dcas.services.benchmark=true</code>.
+ *
+ * @author CAS Team
+ * @since 4.1
+ */
+@RunWith(SpringJUnit4ClassRunner.class)
+@ProfileValueSourceConfiguration(SystemProfileValueSource.class)
+public class DefaultServicesManagerImplBenchmarkTests {
+
+    private static final int[] SERVICE_COUNTS = {10, 1000, 10000};
+
+    private static final int WARMUP_LOOKUPS = 2000;
+
+    private static final int LOOKUPS = 20000;
+
+    private final Logger logger = LoggerFactory.getLogger(getClass());
+
+    @Test
+    @IfProfileValue(name = "cas.services.benchmark", value = "true")
+    public void testFindServiceByWithManyServices() {
+        for (final int count : SERVICE_COUNTS) {
+            final DefaultServicesManagerImpl servicesManager = newServicesManager(count);
+            // The last service in evaluation order, which is the worst case for a linear match
+            final Service service = TestUtils.getService("https://app" + (count - 1) + ".example.org/login");
+
+            for (int i = 0; i < WARMUP_LOOKUPS; i++) {
+                assertNotNull(servicesManager.findServiceBy(service));
+            }
+            final long start = System.nanoTime();
+            for (int i = 0; i < LOOKUPS; i++) {
+                assertNotNull(servicesManager.findServiceBy(service));
+            }
+            final long elapsed = System.nanoTime() - start;
+            logger.info("{} services: {} lookups in {} ms, {} us per lookup", count, LOOKUPS,
+                    TimeUnit.NANOSECONDS.toMillis(elapsed), TimeUnit.NANOSECONDS.toMicros(elapsed / LOOKUPS));
+        }
+    }
+
+    @Test
+    @IfProfileValue(name = "cas.services.benchmark", value = "true")
+    public void testAllocationPerLookup() {
+        final java.lang.management.ThreadMXBean threadBean = ManagementFactory.getThreadMXBean();
+        assumeTrue(threadBean instanceof com.sun.management.ThreadMXBean);
+        final com.sun.management.ThreadMXBean allocationBean = (com.sun.management.ThreadMXBean) threadBean;
+        final long threadId = Thread.currentThread().getId();
+        final int count = SERVICE_COUNTS[1];
+        final DefaultServicesManagerImpl servicesManager = newServicesManager(count);
+        final Service service = TestUtils.getService("https://app" + (count - 1) + ".example.org/login");
+
+        for (int i = 0; i < WARMUP_LOOKUPS; i++) {
+            servicesManager.findServiceBy(service);
+            servicesManager.findServiceBy(i % count);
+        }
+        long start = allocationBean.getThreadAllocatedBytes(threadId);
+        for (int i = 0; i < LOOKUPS; i++) {
+            assertNotNull(servicesManager.findServiceBy(service));
+        }
+        logger.info("findServiceBy(Service) allocates {} bytes per lookup",
+                (allocationBean.getThreadAllocatedBytes(threadId) - start) / LOOKUPS);
+
+        start = allocationBean.getThreadAllocatedBytes(threadId);
+        for (int i = 0; i < LOOKUPS; i++) {
+            assertNotNull(servicesManager.findServiceBy(i % count));
+        }
+        logger.info("findServiceBy(long) allocates {} bytes per lookup",
+                (allocationBean.getThreadAllocatedBytes(threadId) - start) / LOOKUPS);
+    }
+
+    private static DefaultServicesManagerImpl newServicesManager(final int count) {
+        final List<RegisteredService> services = new ArrayList<RegisteredService>(count);
+        for (int i = 0; i < count; i++) {
+            final RegexRegisteredService r = new RegexRegisteredService();
+            r.setId(i);
+            r.setName("app" + i);
+            r.setServiceId("^https://app" + i + "\\.example\\.org/.*");
+            r.setEvaluationOrder(i);
+            services.add(r);
+        }
+        final InMemoryServiceRegistryDaoImpl dao = new InMemoryServiceRegistryDaoImpl();
+        dao.setRegisteredServices(services);
+        return new DefaultServicesManagerImpl(dao);
+    }
+}
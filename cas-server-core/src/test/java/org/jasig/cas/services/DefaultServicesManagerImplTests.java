@@ -19,6 +19,10 @@
 package org.jasig.cas.services;
 
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashSet;
 import java.util.List;
 import java.util.Map;
 
@@ -28,6 +32,7 @@ import org.junit.Before;
 import org.junit.Test;
 
 import static org.junit.Assert.*;
+import static org.mockito.Mockito.*;
 
 /**
  *
@@ -113,6 +118,167 @@ public class DefaultServicesManagerImplTests  {
         assertNull(this.defaultServicesManagerImpl.findServiceBy(r.getId()));
     }
 
+    @Test
+    public void testFindServiceByIdReturnsSharedInstance() throws Exception {
+        final RegisteredServiceImpl r = new RegisteredServiceImpl();
+        r.setId(1000);
+        r.setName("test");
+        r.setServiceId("test");
+        r.setRequiredHandlers(Collections.singleton("handler"));
+        this.defaultServicesManagerImpl.save(r);
+
+        final RegisteredService shared = this.defaultServicesManagerImpl.findServiceBy(1000);
+        assertSame(shared, this.defaultServicesManagerImpl.findServiceBy(1000));
+
+        final RegisteredService copy = shared.clone();
+        copy.setEvaluationOrder(5);
+        assertEquals(r.getRequiredHandlers(), copy.getRequiredHandlers());
+        assertEquals(0, this.defaultServicesManagerImpl.findServiceBy(1000).getEvaluationOrder());
+        this.defaultServicesManagerImpl.save(copy);
+        assertEquals(5, this.defaultServicesManagerImpl.findServiceBy(1000).getEvaluationOrder());
+    }
+
+    @Test
+    public void testReloadAppliesRegistryChanges() {
+        final RegisteredServiceImpl r1 = new RegisteredServiceImpl();
+        r1.setId(1);
+        r1.setName("one");
+        r1.setServiceId("one");
+        final RegisteredServiceImpl r2 = new RegisteredServiceImpl();
+        r2.setId(2);
+        r2.setName("two");
+        r2.setServiceId("two");
+        final RegisteredServiceImpl r3 = new RegisteredServiceImpl();
+        r3.setId(3);
+        r3.setName("three");
+        r3.setServiceId("three");
+
+        final VersionedServiceRegistryDao dao = mock(VersionedServiceRegistryDao.class);
+        when(dao.loadChangesSince(ServiceRegistryChanges.INITIAL_VERSION)).thenReturn(
+                new ServiceRegistryChanges(1, Arrays.<RegisteredService>asList(r1, r2), new HashSet<Long>(Arrays.asList(1L, 2L))));
+        final DefaultServicesManagerImpl servicesManager = new DefaultServicesManagerImpl(dao);
+        assertEquals(2, servicesManager.getAllServices().size());
+
+        when(dao.loadChangesSince(1)).thenReturn(
+                new ServiceRegistryChanges(1, Collections.<RegisteredService>emptyList(), new HashSet<Long>(Arrays.asList(1L, 2L))));
+        final Collection<RegisteredService> published = servicesManager.getAllServices();
+        servicesManager.reload();
+        assertSame(published, servicesManager.getAllServices());
+
+        when(dao.loadChangesSince(1)).thenReturn(
+                new ServiceRegistryChanges(2, Arrays.<RegisteredService>asList(r3), new HashSet<Long>(Arrays.asList(2L, 3L))));
+        servicesManager.reload();
+        assertNull(servicesManager.findServiceBy(1));
+        assertSame(r2, servicesManager.findServiceBy(2));
+        assertSame(r3, servicesManager.findServiceBy(3));
+        assertEquals(2, servicesManager.getAllServices().size());
+        verify(dao, never()).load();
+    }
+
+    @Test
+    public void testRejectsInvalidPatternsOnLoad() {
+        final InMemoryServiceRegistryDaoImpl dao = new InMemoryServiceRegistryDaoImpl();
+        final List<RegisteredService> list = new ArrayList<RegisteredService>();
+        list.add(newRegexService(1, "^https://valid\\.example\\.org/.*"));
+        list.add(newRegexService(2, "^https://(invalid.example.org/.*"));
+        dao.setRegisteredServices(list);
+
+        final DefaultServicesManagerImpl servicesManager = new DefaultServicesManagerImpl(dao);
+        assertNotNull(servicesManager.findServiceBy(1));
+        assertNull(servicesManager.findServiceBy(2));
+        assertEquals(1, servicesManager.getAllServices().size());
+
+        final Collection<RegisteredService> published = servicesManager.getAllServices();
+        servicesManager.reload();
+        assertSame(published, servicesManager.getAllServices());
+    }
+
+    @Test
+    public void testRejectedServicesReloadedAsNewInstancesAreNotChanges() {
+        final RegisteredService valid = newRegexService(1, "^https://valid\\.example\\.org/.*");
+        final ServiceRegistryDao dao = mock(ServiceRegistryDao.class);
+        when(dao.load()).thenReturn(
+                Arrays.<RegisteredService>asList(valid, newRegexService(2, "^https://(invalid.example.org/.*")),
+                Arrays.<RegisteredService>asList(valid, newRegexService(2, "^https://(invalid.example.org/.*")),
+                Arrays.<RegisteredService>asList(valid, newRegexService(2, "^https://(other.example.org/.*")));
+
+        final DefaultServicesManagerImpl servicesManager = new DefaultServicesManagerImpl(dao);
+        final Collection<RegisteredService> published = servicesManager.getAllServices();
+        servicesManager.reload();
+        assertSame(published, servicesManager.getAllServices());
+
+        // A changed pattern is checked again
+        servicesManager.reload();
+        assertNotSame(published, servicesManager.getAllServices());
+        assertNull(servicesManager.findServiceBy(2));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testSaveRejectsInvalidPattern() {
+        this.defaultServicesManagerImpl.save(newRegexService(3, "^https://(invalid.example.org/.*"));
+    }
+
+    @Test
+    public void testCompilesPatternsInParallel() {
+        final InMemoryServiceRegistryDaoImpl dao = new InMemoryServiceRegistryDaoImpl();
+        dao.setRegisteredServices(new ArrayList<RegisteredService>());
+        final DefaultServicesManagerImpl servicesManager = new DefaultServicesManagerImpl(dao);
+        servicesManager.setPatternCompilationParallelism(4);
+
+        final int count = 5000;
+        final List<RegisteredService> list = new ArrayList<RegisteredService>(count);
+        for (int i = 0; i < count; i++) {
+            list.add(newRegexService(i, i % 1000 == 0 ? "^https://(app" + i : "^https://app" + i + "\\.example\\.org/.*"));
+        }
+        dao.setRegisteredServices(list);
+        servicesManager.reload();
+
+        assertEquals(count - count / 1000, servicesManager.getAllServices().size());
+        assertNotNull(servicesManager.findServiceBy(new SimpleService("https://app4999.example.org/login")));
+    }
+
+    @Test
+    public void testFindServiceByKey() {
+        final RegisteredServiceKeyExtractor nameExtractor = new RegisteredServiceKeyExtractor() {
+            @Override
+            public String extractKey(final RegisteredService service) {
+                return service.getName();
+            }
+        };
+        this.defaultServicesManagerImpl.registerServiceIndex("name", nameExtractor);
+        assertEquals(2500, this.defaultServicesManagerImpl.findServiceByKey("name", "serviceName").getId());
+
+        final RegexRegisteredService r = newRegexService(10, "^https://app\\.example\\.org/.*");
+        this.defaultServicesManagerImpl.save(r);
+        assertSame(r, this.defaultServicesManagerImpl.findServiceByKey("name", "service10"));
+        this.defaultServicesManagerImpl.delete(r.getId());
+        assertNull(this.defaultServicesManagerImpl.findServiceByKey("name", "service10"));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testFindServiceByUnregisteredKey() {
+        this.defaultServicesManagerImpl.findServiceByKey("unknown", "key");
+    }
+
+    @Test
+    public void testSaveAndDeletePublishChanges() {
+        final ServiceRegistryChangeNotifier notifier = mock(ServiceRegistryChangeNotifier.class);
+        this.defaultServicesManagerImpl.setChangeNotifier(notifier);
+
+        final RegisteredServiceImpl r = new RegisteredServiceImpl();
+        r.setId(1000);
+        r.setName("test");
+        r.setServiceId("test");
+        this.defaultServicesManagerImpl.save(r);
+        verify(notifier).publishChange();
+
+        this.defaultServicesManagerImpl.delete(1000);
+        verify(notifier, times(2)).publishChange();
+
+        this.defaultServicesManagerImpl.reload();
+        verify(notifier, times(2)).publishChange();
+    }
+
     @Test
     public void testDeleteNotExistentService() {
         assertNull(this.defaultServicesManagerImpl.delete(1500));
@@ -211,6 +377,15 @@ public class DefaultServicesManagerImplTests  {
 
     }
 
+    private static RegexRegisteredService newRegexService(final long id, final String serviceId) {
+        final RegexRegisteredService r = new RegexRegisteredService();
+        r.setId(id);
+        r.setName("service" + id);
+        r.setServiceId(serviceId);
+        r.setEvaluationOrder((int) id);
+        return r;
+    }
+
     protected class SimpleService implements Service {
 
         /**
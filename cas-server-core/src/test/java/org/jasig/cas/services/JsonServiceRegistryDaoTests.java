@@ -21,9 +21,12 @@ package org.jasig.cas.services;
 import org.apache.commons.io.FileUtils;
 import org.jasig.cas.services.support.RegisteredServiceRegexAttributeFilter;
 import org.junit.BeforeClass;
+import org.junit.Rule;
 import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
 import org.springframework.core.io.ClassPathResource;
 
+import java.io.File;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.HashMap;
@@ -39,6 +42,9 @@ import static org.junit.Assert.*;
  * @since 4.1.0
  */
 public class JsonServiceRegistryDaoTests {
+    @Rule
+    public final TemporaryFolder temporaryFolder = new TemporaryFolder();
+
     private ServiceRegistryDao dao;
     private static final ClassPathResource RESOURCE = new ClassPathResource("services");
 
@@ -215,4 +221,83 @@ public class JsonServiceRegistryDaoTests {
 
     }
 
+    @Test
+    public void testLoadOnlyRereadsChangedFiles() throws Exception {
+        final File directory = this.temporaryFolder.newFolder();
+        final JsonServiceRegistryDao incrementalDao = new JsonServiceRegistryDao(directory);
+        incrementalDao.setParallelism(2);
+        for (int i = 1; i <= 3; i++) {
+            final RegexRegisteredService r = new RegexRegisteredService();
+            r.setServiceId("^https://app" + i + "\\.example\\.org/.+");
+            r.setName("testLoadOnlyRereadsChangedFiles" + i);
+            r.setId(i);
+            incrementalDao.save(r);
+        }
+        final long past = System.currentTimeMillis() - 60000;
+        for (final File file : directory.listFiles()) {
+            assertTrue(file.setLastModified(past));
+        }
+
+        final Map<Long, RegisteredService> first = toMap(incrementalDao.load());
+        assertEquals(3, first.size());
+        final Map<Long, RegisteredService> second = toMap(incrementalDao.load());
+        for (final Map.Entry<Long, RegisteredService> entry : first.entrySet()) {
+            assertSame(entry.getValue(), second.get(entry.getKey()));
+        }
+
+        final RegexRegisteredService changed = (RegexRegisteredService) first.get(2L).clone();
+        changed.setEvaluationOrder(10);
+        incrementalDao.save(changed);
+        assertTrue(incrementalDao.makeFile(changed).setLastModified(past + 1000));
+        assertTrue(incrementalDao.makeFile(first.get(3L)).delete());
+
+        final Map<Long, RegisteredService> third = toMap(incrementalDao.load());
+        assertEquals(2, third.size());
+        assertSame(first.get(1L), third.get(1L));
+        assertNotSame(first.get(2L), third.get(2L));
+        assertEquals(10, third.get(2L).getEvaluationOrder());
+    }
+
+    @Test
+    public void testLoadChangesSince() throws Exception {
+        final File directory = this.temporaryFolder.newFolder();
+        final JsonServiceRegistryDao versionedDao = new JsonServiceRegistryDao(directory);
+        for (int i = 1; i <= 2; i++) {
+            final RegexRegisteredService r = new RegexRegisteredService();
+            r.setServiceId("^https://app" + i + "\\.example\\.org/.+");
+            r.setName("testLoadChangesSince" + i);
+            r.setId(i);
+            versionedDao.save(r);
+        }
+        final long past = System.currentTimeMillis() - 60000;
+        for (final File file : directory.listFiles()) {
+            assertTrue(file.setLastModified(past));
+        }
+
+        final ServiceRegistryChanges initial = versionedDao.loadChangesSince(ServiceRegistryChanges.INITIAL_VERSION);
+        assertEquals(2, initial.getModifiedServices().size());
+        final ServiceRegistryChanges unchanged = versionedDao.loadChangesSince(initial.getVersion());
+        assertTrue(unchanged.getModifiedServices().isEmpty());
+        assertEquals(initial.getVersion(), unchanged.getVersion());
+        assertEquals(2, unchanged.getServiceIds().size());
+
+        final Map<Long, RegisteredService> services = toMap(new ArrayList<RegisteredService>(initial.getModifiedServices()));
+        assertTrue(versionedDao.makeFile(services.get(1L)).delete());
+        final ServiceRegistryChanges deleted = versionedDao.loadChangesSince(unchanged.getVersion());
+        assertTrue(deleted.getModifiedServices().isEmpty());
+        assertEquals(new HashSet<Long>(Arrays.asList(2L)), deleted.getServiceIds());
+        assertTrue(deleted.getVersion() > unchanged.getVersion());
+
+        final ServiceRegistryChanges stale = versionedDao.loadChangesSince(initial.getVersion());
+        assertEquals(1, stale.getModifiedServices().size());
+    }
+
+    private static Map<Long, RegisteredService> toMap(final List<RegisteredService> services) {
+        final Map<Long, RegisteredService> map = new HashMap<Long, RegisteredService>();
+        for (final RegisteredService r : services) {
+            map.put(r.getId(), r);
+        }
+        return map;
+    }
+
 }
@@ -0,0 +1,46 @@
+/*
+ * Licensed to Apereo under one or more contributor license
+ * agreements. See the NOTICE file distributed with this work
+ * for additional information regarding copyright ownership.
+ * Apereo licenses this file to you under the Apache License,
+ * Version 2.0 (the "License"); you may not use this file
+ * except in compliance with the License.  You may obtain a
+ * copy of the License at the following location:
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.jasig.cas.services;
+
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+/**
+ * Unit test for {@link RegisteredServices}.
+ *
+ * @author CAS Team
+ * @since 4.1
+ */
+public class RegisteredServicesTests {
+
+    @Test
+    public void testCopyIsIndependent() {
+        final RegexRegisteredService service = new RegexRegisteredService();
+        service.setId(1);
+        service.setServiceId("^https://app\\.example\\.org/.*");
+        service.setEvaluationOrder(10);
+
+        final RegisteredService copy = RegisteredServices.copy(service);
+        assertNotSame(service, copy);
+        assertEquals(service, copy);
+        copy.setEvaluationOrder(20);
+        assertEquals(10, service.getEvaluationOrder());
+    }
+}
@@ -0,0 +1,156 @@
+/*
+ * Licensed to Apereo under one or more contributor license
+ * agreements. See the NOTICE file distributed with this work
+ * for additional information regarding copyright ownership.
+ * Apereo licenses this file to you under the Apache License,
+ * Version 2.0 (the "License"); you may not use this file
+ * except in compliance with the License.  You may obtain a
+ * copy of the License at the following location:
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.jasig.cas.services;
+
+import org.jasig.cas.authentication.principal.Service;
+import org.jasig.cas.mock.MockService;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.TreeSet;
+import java.util.regex.Pattern;
+import java.util.regex.PatternSyntaxException;
+
+import static org.junit.Assert.*;
+
+/**
+ * Unit test for {@link ServiceMatchingIndex}.
+ *
+ * @author CAS Team
+ * @since 4.1
+ */
+public class ServiceMatchingIndexTests {
+
+    private static final String[] PATTERN_FRAGMENTS = {
+        "^", "https?", "http", "s", "://", "app", "\\.", "example", ".org", "/", ".*", ".+", "(a|b)", "[a-z]+",
+        "x?", "y*", "z{2}", "|", "(?i)", "\\d", "\\w+", "$", "A", "B", "(?:c|d)", "-", "/**", "*",
+    };
+
+    private static final String[] ID_FRAGMENTS = {
+        "http", "https", "HTTPS", "://", "app", "APP", ".", "example", "org", "/", "a", "b", "c", "d", "x", "y",
+        "zz", "1", "-", "?", "=",
+    };
+
+    private static final int RUNS = 200;
+
+    private static final int SERVICES_PER_RUN = 50;
+
+    private static final int LOOKUPS_PER_RUN = 500;
+
+    @Test
+    public void testLiteralPrefix() {
+        assertEquals("https://app.example.org/", ServiceMatchingIndex.getLiteralPrefix("^https://app\\.example\\.org/.*"));
+        assertEquals("http", ServiceMatchingIndex.getLiteralPrefix("https?://.*"));
+        assertEquals("https://www", ServiceMatchingIndex.getLiteralPrefix("HTTPS://www.test.edu.+"));
+        assertEquals("", ServiceMatchingIndex.getLiteralPrefix("(https*|imaps*)://.*"));
+        assertEquals("", ServiceMatchingIndex.getLiteralPrefix("https://a\\.org/.*|https://b\\.org/.*"));
+        assertEquals("", ServiceMatchingIndex.getLiteralPrefix("\\Qhttps://a.org\\E.*"));
+        assertEquals("https://a.org/", ServiceMatchingIndex.getLiteralPrefix("https://a\\.org/(x|y)"));
+    }
+
+    @Test
+    public void testFirstMatchInEvaluationOrder() {
+        final List<RegisteredService> services = new ArrayList<RegisteredService>();
+        services.add(newRegexService(1, "^https://app\\.example\\.org/admin/.*", 10));
+        services.add(newAntService(2, "https://app.example.org/**", 20));
+        services.add(newRegexService(3, "^https://.*", 30));
+        final ServiceMatchingIndex index = new ServiceMatchingIndex(new TreeSet<RegisteredService>(services));
+
+        assertEquals(1, index.findServiceBy(new MockService("https://APP.example.org/admin/x")).getId());
+        assertEquals(2, index.findServiceBy(new MockService("https://app.example.org/user")).getId());
+        assertEquals(3, index.findServiceBy(new MockService("https://other.example.org/")).getId());
+        assertNull(index.findServiceBy(new MockService("imaps://app.example.org/")));
+        assertNull(index.findServiceBy(null));
+        assertEquals(3, index.getServices().size());
+    }
+
+    @Test
+    public void testEquivalentToLinearScan() {
+        final Random random = new Random(20141019L);
+        int matches = 0;
+        for (int run = 0; run < RUNS; run++) {
+            final TreeSet<RegisteredService> sorted = new TreeSet<RegisteredService>();
+            for (int i = 0; i < SERVICES_PER_RUN; i++) {
+                final String pattern = randomString(random, PATTERN_FRAGMENTS, 1 + random.nextInt(6));
+                if (random.nextInt(4) == 0) {
+                    sorted.add(newAntService(i, pattern, random.nextInt(SERVICES_PER_RUN)));
+                } else if (isValidRegex(pattern)) {
+                    sorted.add(newRegexService(i, pattern, random.nextInt(SERVICES_PER_RUN)));
+                }
+            }
+            final ServiceMatchingIndex index = new ServiceMatchingIndex(sorted);
+
+            for (int i = 0; i < LOOKUPS_PER_RUN; i++) {
+                final Service service = new MockService(randomString(random, ID_FRAGMENTS, random.nextInt(8)));
+                final RegisteredService expected = findLinear(sorted, service);
+                assertSame(service.getId(), expected, index.findServiceBy(service));
+                if (expected != null) {
+                    matches++;
+                }
+            }
+        }
+        assertTrue(matches > 0);
+    }
+
+    private static RegisteredService findLinear(final TreeSet<RegisteredService> services, final Service service) {
+        for (final RegisteredService r : services) {
+            if (r.matches(service)) {
+                return r;
+            }
+        }
+        return null;
+    }
+
+    private static String randomString(final Random random, final String[] fragments, final int count) {
+        final StringBuilder builder = new StringBuilder();
+        for (int i = 0; i < count; i++) {
+            builder.append(fragments[random.nextInt(fragments.length)]);
+        }
+        return builder.toString();
+    }
+
+    private static boolean isValidRegex(final String pattern) {
+        try {
+            Pattern.compile(pattern);
+            return true;
+        } catch (final PatternSyntaxException e) {
+            return false;
+        }
+    }
+
+    private static RegexRegisteredService newRegexService(final long id, final String serviceId, final int order) {
+        final RegexRegisteredService r = new RegexRegisteredService();
+        r.setId(id);
+        r.setName("regex" + id);
+        r.setServiceId(serviceId);
+        r.setEvaluationOrder(order);
+        return r;
+    }
+
+    private static RegisteredServiceImpl newAntService(final long id, final String serviceId, final int order) {
+        final RegisteredServiceImpl r = new RegisteredServiceImpl();
+        r.setId(id);
+        r.setName("ant" + id);
+        r.setServiceId(serviceId);
+        r.setEvaluationOrder(order);
+        return r;
+    }
+}
@@ -0,0 +1,79 @@
+/*
+ * Licensed to Apereo under one or more contributor license
+ * agreements. See the NOTICE file distributed with this work
+ * for additional information regarding copyright ownership.
+ * Apereo licenses this file to you under the Apache License,
+ * Version 2.0 (the "License"); you may not use this file
+ * except in compliance with the License.  You may obtain a
+ * copy of the License at the following location:
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.jasig.cas.services;
+
+import org.apache.commons.io.FileUtils;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+
+import static org.mockito.Mockito.*;
+
+/**
+ * Unit test for {@link ServiceRegistryDirectoryWatcher}.
+ *
+ * @author CAS Team
+ * @since 4.1
+ */
+public class ServiceRegistryDirectoryWatcherTests {
+
+    private static final int TIMEOUT = 30000;
+
+    @Rule
+    public final TemporaryFolder temporaryFolder = new TemporaryFolder();
+
+    private ReloadableServicesManager servicesManager;
+
+    private ServiceRegistryDirectoryWatcher watcher;
+
+    @Before
+    public void setUp() throws Exception {
+        this.servicesManager = mock(ReloadableServicesManager.class);
+        this.watcher = new ServiceRegistryDirectoryWatcher(this.temporaryFolder.getRoot(), this.servicesManager);
+        this.watcher.setDelay(100);
+        this.watcher.afterPropertiesSet();
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        this.watcher.destroy();
+    }
+
+    @Test
+    public void testReloadsAfterFileChanges() throws Exception {
+        FileUtils.write(new File(this.temporaryFolder.getRoot(), "service-1.json"), "{}");
+        verify(this.servicesManager, timeout(TIMEOUT).atLeastOnce()).reload();
+    }
+
+    @Test
+    public void testWatchesNewSubdirectories() throws Exception {
+        final File subdirectory = this.temporaryFolder.newFolder("sub");
+        verify(this.servicesManager, timeout(TIMEOUT).atLeastOnce()).reload();
+        reset(this.servicesManager);
+
+        // Give the watcher time to register the new directory
+        Thread.sleep(500);
+        FileUtils.write(new File(subdirectory, "service-2.json"), "{}");
+        verify(this.servicesManager, timeout(TIMEOUT).atLeastOnce()).reload();
+    }
+}
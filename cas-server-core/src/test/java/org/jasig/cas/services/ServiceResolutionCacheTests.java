@@ -0,0 +1,111 @@
+/*
+ * Licensed to Apereo under one or more contributor license
+ * agreements. See the NOTICE file distributed with this work
+ * for additional information regarding copyright ownership.
+ * Apereo licenses this file to you under the Apache License,
+ * Version 2.0 (the "License"); you may not use this file
+ * except in compliance with the License.  You may obtain a
+ * copy of the License at the following location:
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.jasig.cas.services;
+
+import org.jasig.cas.mock.MockService;
+import org.junit.Test;
+
+import java.util.ArrayList;
+
+import static org.junit.Assert.*;
+
+/**
+ * Unit test for {@link ServiceResolutionCache}.
+ *
+ * @author CAS Team
+ * @since 4.1
+ */
+public class ServiceResolutionCacheTests {
+
+    private static final int CAPACITY = 32;
+
+    @Test
+    public void testHitsAndNegativeEntries() {
+        final ServiceResolutionCache cache = new ServiceResolutionCache(CAPACITY, 60000);
+        final RegisteredService service = new RegexRegisteredService();
+
+        assertNull(cache.get("https://a.example.org"));
+        cache.put("https://a.example.org", cache.getGeneration(), service);
+        cache.put("https://unknown.example.org", cache.getGeneration(), null);
+
+        assertSame(service, cache.get("https://a.example.org").getRegisteredService());
+        final ServiceResolutionCache.Entry negative = cache.get("https://unknown.example.org");
+        assertNotNull(negative);
+        assertNull(negative.getRegisteredService());
+        assertEquals(2, cache.getHitCount());
+        assertEquals(1, cache.getMissCount());
+        assertEquals(2.0 / 3, cache.getHitRatio(), 0.001);
+    }
+
+    @Test
+    public void testEvictsBeyondCapacity() {
+        final ServiceResolutionCache cache = new ServiceResolutionCache(CAPACITY, 60000);
+        for (int i = 0; i < CAPACITY * 4; i++) {
+            cache.put("https://app" + i + ".example.org", cache.getGeneration(), null);
+        }
+        assertTrue(cache.getSize() <= CAPACITY);
+        assertEquals(CAPACITY * 4 - cache.getSize(), cache.getEvictionCount());
+    }
+
+    @Test
+    public void testExpiredEntriesAreMisses() throws Exception {
+        final ServiceResolutionCache cache = new ServiceResolutionCache(CAPACITY, 1);
+        cache.put("https://a.example.org", cache.getGeneration(), null);
+        Thread.sleep(10);
+        assertNull(cache.get("https://a.example.org"));
+    }
+
+    @Test
+    public void testInvalidateDiscardsStaleResolutions() {
+        final ServiceResolutionCache cache = new ServiceResolutionCache(CAPACITY, 60000);
+        final long generation = cache.getGeneration();
+        cache.put("https://a.example.org", generation, null);
+        cache.invalidate();
+
+        assertNull(cache.get("https://a.example.org"));
+        // A resolution started before the invalidation is not stored
+        cache.put("https://a.example.org", generation, null);
+        assertNull(cache.get("https://a.example.org"));
+        assertEquals(0, cache.getSize());
+    }
+
+    @Test
+    public void testServicesManagerInvalidatesOnSaveAndDelete() {
+        final InMemoryServiceRegistryDaoImpl dao = new InMemoryServiceRegistryDaoImpl();
+        dao.setRegisteredServices(new ArrayList<RegisteredService>());
+        final ServiceResolutionCache cache = new ServiceResolutionCache(CAPACITY, 60000);
+        final DefaultServicesManagerImpl servicesManager = new DefaultServicesManagerImpl(dao);
+        servicesManager.setServiceResolutionCache(cache);
+        final MockService service = new MockService("https://app.example.org/login");
+
+        assertNull(servicesManager.findServiceBy(service));
+        assertNull(servicesManager.findServiceBy(service));
+        assertEquals(1, cache.getHitCount());
+
+        final RegexRegisteredService r = new RegexRegisteredService();
+        r.setId(100);
+        r.setName("app");
+        r.setServiceId("^https://app\\.example\\.org/.*");
+        servicesManager.save(r);
+        assertEquals(r, servicesManager.findServiceBy(service));
+
+        servicesManager.delete(r.getId());
+        assertNull(servicesManager.findServiceBy(service));
+    }
+}
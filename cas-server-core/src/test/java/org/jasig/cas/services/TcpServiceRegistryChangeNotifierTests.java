@@ -0,0 +1,97 @@
+/*
+ * Licensed to Apereo under one or more contributor license
+ * agreements. See the NOTICE file distributed with this work
+ * for additional information regarding copyright ownership.
+ * Apereo licenses this file to you under the Apache License,
+ * Version 2.0 (the "License"); you may not use this file
+ * except in compliance with the License.  You may obtain a
+ * copy of the License at the following location:
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.jasig.cas.services;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.net.Socket;
+import java.util.Arrays;
+
+import static org.mockito.Mockito.*;
+
+/**
+ * Unit test for {@link TcpServiceRegistryChangeNotifier}.
+ *
+ * @author CAS Team
+ * @since 4.1
+ */
+public class TcpServiceRegistryChangeNotifierTests {
+
+    private static final int TIMEOUT = 10000;
+
+    private ReloadableServicesManager receivingManager;
+
+    private TcpServiceRegistryChangeNotifier receiver;
+
+    private TcpServiceRegistryChangeNotifier sender;
+
+    @Before
+    public void setUp() throws Exception {
+        this.receivingManager = mock(ReloadableServicesManager.class);
+        this.receiver = new TcpServiceRegistryChangeNotifier(this.receivingManager, 0);
+        this.receiver.setBindAddress("127.0.0.1");
+        this.receiver.afterPropertiesSet();
+
+        this.sender = new TcpServiceRegistryChangeNotifier(mock(ReloadableServicesManager.class), 0);
+        this.sender.setBindAddress("127.0.0.1");
+        this.sender.afterPropertiesSet();
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        this.sender.destroy();
+        this.receiver.destroy();
+    }
+
+    @Test
+    public void testPeerReloadsOnChange() throws Exception {
+        this.sender.setPeers(Arrays.asList("127.0.0.1:" + this.receiver.getLocalPort()));
+        this.sender.publishChange();
+        verify(this.receivingManager, timeout(TIMEOUT)).reload();
+    }
+
+    @Test
+    public void testSlowClientDoesNotBlockPeers() throws Exception {
+        final Socket idle = new Socket("127.0.0.1", this.receiver.getLocalPort());
+        try {
+            this.sender.setPeers(Arrays.asList("127.0.0.1:" + this.receiver.getLocalPort()));
+            this.sender.publishChange();
+            // Well within the read timeout the idle client holds its receiver for
+            verify(this.receivingManager, timeout(TcpServiceRegistryChangeNotifier.DEFAULT_TIMEOUT / 2)).reload();
+        } finally {
+            idle.close();
+        }
+    }
+
+    @Test
+    public void testUnreachablePeersAreSkipped() throws Exception {
+        final TcpServiceRegistryChangeNotifier stopped =
+                new TcpServiceRegistryChangeNotifier(mock(ReloadableServicesManager.class), 0);
+        stopped.setBindAddress("127.0.0.1");
+        stopped.afterPropertiesSet();
+        final int unusedPort = stopped.getLocalPort();
+        stopped.destroy();
+
+        this.sender.setPeers(Arrays.asList("127.0.0.1:" + unusedPort, "127.0.0.1:" + this.receiver.getLocalPort()));
+        this.sender.publishChange();
+        verify(this.receivingManager, timeout(TIMEOUT)).reload();
+    }
+}
@@ -0,0 +1,127 @@
+/*
+ * Licensed to Apereo under one or more contributor license
+ * agreements. See the NOTICE file distributed with this work
+ * for additional information regarding copyright ownership.
+ * Apereo licenses this file to you under the Apache License,
+ * Version 2.0 (the "License"); you may not use this file
+ * except in compliance with the License.  You may obtain a
+ * copy of the License at the following location:
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.jasig.cas.ticket.registry;
+
+import org.apache.commons.lang3.SerializationUtils;
+import org.jasig.cas.TestUtils;
+import org.jasig.cas.ticket.Ticket;
+import org.jasig.cas.ticket.TicketGrantingTicket;
+import org.jasig.cas.ticket.TicketGrantingTicketImpl;
+import org.jasig.cas.ticket.support.NeverExpiresExpirationPolicy;
+import org.junit.Test;
+
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.Map;
+
+import static org.junit.Assert.*;
+
+/**
+ * Test case to test the {@link DualWriteTicketRegistry} based on test cases to test all
+ * Ticket Registries.
+ *
+ * @author CAS Team
+ * @since 4.1
+ */
+public class DualWriteTicketRegistryTests extends AbstractTicketRegistryTests {
+
+    private DefaultTicketRegistry source;
+
+    private DefaultTicketRegistry target;
+
+    public TicketRegistry getNewTicketRegistry() throws Exception {
+        this.source = new DefaultTicketRegistry();
+        this.target = new DefaultTicketRegistry();
+        return new DualWriteTicketRegistry(this.source, this.target);
+    }
+
+    @Test
+    public void testWritesAreMirroredAndReadsFallBackToSource() throws Exception {
+        final TicketRegistry registry = getNewTicketRegistry();
+        this.source.addTicket(new TicketGrantingTicketImpl("TGT-OLD", TestUtils.getAuthentication(),
+                new NeverExpiresExpirationPolicy()));
+        registry.addTicket(new TicketGrantingTicketImpl("TGT-NEW", TestUtils.getAuthentication(),
+                new NeverExpiresExpirationPolicy()));
+
+        assertNotNull(this.source.getTicket("TGT-NEW"));
+        assertNotNull(this.target.getTicket("TGT-NEW"));
+        assertNull(this.target.getTicket("TGT-OLD"));
+        assertNotNull(registry.getTicket("TGT-OLD"));
+        assertEquals(2, registry.getTickets().size());
+
+        assertTrue(registry.deleteTicket("TGT-OLD"));
+        assertNull(registry.getTicket("TGT-OLD"));
+        assertTrue(registry.deleteTicket("TGT-NEW"));
+        assertNull(this.source.getTicket("TGT-NEW"));
+    }
+
+    @Test
+    public void testChangesAreMirroredToRegistriesHoldingCopies() {
+        final CopyingTicketRegistry copyingSource = new CopyingTicketRegistry();
+        final CopyingTicketRegistry copyingTarget = new CopyingTicketRegistry();
+        final TicketRegistry registry = new DualWriteTicketRegistry(copyingSource, copyingTarget);
+        registry.addTicket(new TicketGrantingTicketImpl("TGT-1", TestUtils.getAuthentication(),
+                new NeverExpiresExpirationPolicy()));
+
+        final TicketGrantingTicket tgt = (TicketGrantingTicket) registry.getTicket("TGT-1");
+        tgt.grantServiceTicket("ST-1", TestUtils.getService(), new NeverExpiresExpirationPolicy(), false);
+
+        assertEquals(1, copyingTarget.getTicket("TGT-1").getCountOfUses());
+        assertEquals(1, copyingSource.getTicket("TGT-1").getCountOfUses());
+    }
+
+    /**
+     * Registry that stores and hands out copies of tickets, like most distributed registries.
+     */
+    private static class CopyingTicketRegistry extends AbstractDistributedTicketRegistry {
+
+        private final Map<String, Ticket> tickets = new HashMap<String, Ticket>();
+
+        @Override
+        protected void updateTicket(final Ticket ticket) {
+            addTicket(ticket);
+        }
+
+        @Override
+        public void addTicket(final Ticket ticket) {
+            this.tickets.put(ticket.getId(), SerializationUtils.clone(ticket));
+        }
+
+        @Override
+        public boolean deleteTicket(final String ticketId) {
+            return this.tickets.remove(ticketId) != null;
+        }
+
+        @Override
+        public Ticket getTicket(final String ticketId) {
+            final Ticket ticket = this.tickets.get(ticketId);
+            return getProxiedTicketInstance(ticket == null ? null : SerializationUtils.clone(ticket));
+        }
+
+        @Override
+        public Collection<Ticket> getTickets() {
+            return this.tickets.values();
+        }
+
+        @Override
+        protected boolean needsCallback() {
+            return false;
+        }
+    }
+}
@@ -0,0 +1,171 @@
+/*
+ * Licensed to Apereo under one or more contributor license
+ * agreements. See the NOTICE file distributed with this work
+ * for additional information regarding copyright ownership.
+ * Apereo licenses this file to you under the Apache License,
+ * Version 2.0 (the "License"); you may not use this file
+ * except in compliance with the License.  You may obtain a
+ * copy of the License at the following location:
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.jasig.cas.ticket.registry.support;
+
+import org.jasig.cas.TestUtils;
+import org.jasig.cas.ticket.ServiceTicket;
+import org.jasig.cas.ticket.Ticket;
+import org.jasig.cas.ticket.TicketGrantingTicket;
+import org.jasig.cas.ticket.TicketGrantingTicketImpl;
+import org.jasig.cas.ticket.registry.AbstractTicketRegistry;
+import org.jasig.cas.ticket.registry.DefaultTicketRegistry;
+import org.jasig.cas.ticket.registry.DualWriteTicketRegistry;
+import org.jasig.cas.ticket.registry.TicketRegistry;
+import org.jasig.cas.ticket.support.NeverExpiresExpirationPolicy;
+import org.junit.Test;
+
+import java.util.Collection;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+
+import static org.junit.Assert.*;
+
+/**
+ * @author CAS Team
+ * @since 4.1
+ */
+public class TicketRegistryMigratorTests {
+
+    private static final int TICKETS_IN_REGISTRY = 25;
+
+    @Test
+    public void testMigrateCopiesAllTicketsWithoutChangingSource() throws Exception {
+        final DefaultTicketRegistry source = newSourceRegistry();
+        final DefaultTicketRegistry target = new DefaultTicketRegistry();
+
+        final TicketRegistryMigrator migrator = new TicketRegistryMigrator(source, target);
+        migrator.setBatchSize(10);
+        migrator.setMaxTicketsPerSecond(0);
+
+        assertEquals(TICKETS_IN_REGISTRY * 3, migrator.migrate());
+        assertEquals(TICKETS_IN_REGISTRY * 3, source.getTickets().size());
+        assertEquals(TICKETS_IN_REGISTRY * 3, target.getTickets().size());
+        assertNotNull(target.getTicket("PGT-0"));
+
+        assertEquals(0, migrator.migrate());
+        assertEquals(TICKETS_IN_REGISTRY * 3, migrator.getSkippedCount());
+        assertEquals(0, migrator.getFailedCount());
+    }
+
+    @Test
+    public void testMigrateEnumeratesSourceOnce() throws Exception {
+        final DefaultTicketRegistry tickets = newSourceRegistry();
+        final AtomicInteger enumerations = new AtomicInteger();
+        final TicketRegistry source = new AbstractTicketRegistry() {
+            @Override
+            public void addTicket(final Ticket ticket) {
+                tickets.addTicket(ticket);
+            }
+
+            @Override
+            public Ticket getTicket(final String ticketId) {
+                return tickets.getTicket(ticketId);
+            }
+
+            @Override
+            public boolean deleteTicket(final String ticketId) {
+                return tickets.deleteTicket(ticketId);
+            }
+
+            @Override
+            public Collection<Ticket> getTickets() {
+                enumerations.incrementAndGet();
+                return tickets.getTickets();
+            }
+        };
+        final DefaultTicketRegistry target = new DefaultTicketRegistry();
+
+        final TicketRegistryMigrator migrator = new TicketRegistryMigrator(source, target);
+        migrator.setMaxTicketsPerSecond(0);
+
+        assertEquals(TICKETS_IN_REGISTRY * 3, migrator.migrate());
+        assertEquals(1, enumerations.get());
+    }
+
+    @Test
+    public void testTicketDeletedWhileCopyingIsNotBroughtBack() throws Exception {
+        final DefaultTicketRegistry tickets = newSourceRegistry();
+        final DefaultTicketRegistry target = new DefaultTicketRegistry();
+        final AtomicReference<DualWriteTicketRegistry> registry = new AtomicReference<DualWriteTicketRegistry>();
+        final Thread logout = new Thread() {
+            @Override
+            public void run() {
+                registry.get().deleteTicket("TGT-0");
+            }
+        };
+        final TicketRegistry source = new AbstractTicketRegistry() {
+            @Override
+            public void addTicket(final Ticket ticket) {
+                tickets.addTicket(ticket);
+            }
+
+            @Override
+            public Ticket getTicket(final String ticketId) {
+                final Ticket ticket = tickets.getTicket(ticketId);
+                if ("TGT-0".equals(ticketId)) {
+                    // Log out after the migrator has read the ticket but before it is written to the target
+                    logout.start();
+                    try {
+                        logout.join(200);
+                    } catch (final InterruptedException e) {
+                        Thread.currentThread().interrupt();
+                    }
+                }
+                return ticket;
+            }
+
+            @Override
+            public boolean deleteTicket(final String ticketId) {
+                return tickets.deleteTicket(ticketId);
+            }
+
+            @Override
+            public Collection<Ticket> getTickets() {
+                return tickets.getTickets();
+            }
+        };
+        registry.set(new DualWriteTicketRegistry(source, target));
+
+        final TicketRegistryMigrator migrator = new TicketRegistryMigrator(registry.get());
+        migrator.setMaxTicketsPerSecond(0);
+        migrator.migrate();
+        logout.join();
+
+        assertNull(tickets.getTicket("TGT-0"));
+        assertNull(target.getTicket("TGT-0"));
+        assertNotNull(target.getTicket("TGT-1"));
+    }
+
+    private static DefaultTicketRegistry newSourceRegistry() {
+        final DefaultTicketRegistry source = new DefaultTicketRegistry();
+        final DefaultTicketRegistry target = new DefaultTicketRegistry();
+        for (int i = 0; i < TICKETS_IN_REGISTRY; i++) {
+            final TicketGrantingTicket tgt = new TicketGrantingTicketImpl("TGT-" + i, TestUtils.getAuthentication(),
+                    new NeverExpiresExpirationPolicy());
+            final ServiceTicket st = tgt.grantServiceTicket("ST-" + i, TestUtils.getService(),
+                    new NeverExpiresExpirationPolicy(), false);
+            final TicketGrantingTicket pgt = st.grantTicketGrantingTicket("PGT-" + i, TestUtils.getAuthentication(),
+                    new NeverExpiresExpirationPolicy());
+            source.addTicket(tgt);
+            source.addTicket(st);
+            source.addTicket(pgt);
+        }
+        return source;
+    }
+}
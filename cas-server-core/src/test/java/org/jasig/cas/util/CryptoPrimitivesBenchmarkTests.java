@@ -0,0 +1,153 @@
+/*
+ * Licensed to Apereo under one or more contributor license
+ * agreements. See the NOTICE file distributed with this work
+ * for additional information regarding copyright ownership.
+ * Apereo licenses this file to you under the Apache License,
+ * Version 2.0 (the "License"); you may not use this file
+ * except in compliance with the License.  You may obtain a
+ * copy of the License at the following location:
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.jasig.cas.util;
+
+import org.jasig.cas.authentication.handler.DefaultPasswordEncoder;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.test.annotation.IfProfileValue;
+import org.springframework.test.annotation.ProfileValueSourceConfiguration;
+import org.springframework.test.annotation.SystemProfileValueSource;
+import org.springframework.test.context.junit4.SpringJUnit4ClassRunner;
+
+import javax.crypto.Cipher;
+import javax.crypto.spec.IvParameterSpec;
+import javax.crypto.spec.SecretKeySpec;
+import java.security.MessageDigest;
+
+import static org.junit.Assert.*;
+
+/**
+ * Compares primitives obtained from {@link CryptoPrimitives} with new instances created on every call.
+ * Run with <code>-Dcas.crypto.benchmark=true</code>.
+ *
+ * @author CAS Team
+ * @since 4.1
+ */
+@RunWith(SpringJUnit4ClassRunner.class)
+@ProfileValueSourceConfiguration(SystemProfileValueSource.class)
+public class CryptoPrimitivesBenchmarkTests {
+
+    private static final int WARMUP_OPERATIONS = 50000;
+
+    private static final int OPERATIONS = 500000;
+
+    private static final byte[] DATA = "casuser@example.org".getBytes();
+
+    private final Logger logger = LoggerFactory.getLogger(getClass());
+
+    @Test
+    @IfProfileValue(name = "cas.crypto.benchmark", value = "true")
+    public void testMessageDigest() throws Exception {
+        final Operation newInstance = new Operation() {
+            @Override
+            public void run() throws Exception {
+                MessageDigest.getInstance("SHA-256").digest(DATA);
+            }
+        };
+        final Operation perThread = new Operation() {
+            @Override
+            public void run() throws Exception {
+                CryptoPrimitives.getMessageDigest("SHA-256").digest(DATA);
+            }
+        };
+        report("SHA-256 digest", measure(newInstance), measure(perThread));
+    }
+
+    @Test
+    @IfProfileValue(name = "cas.crypto.benchmark", value = "true")
+    public void testCipher() throws Exception {
+        final SecretKeySpec key = new SecretKeySpec(new byte[16], "AES");
+        final IvParameterSpec iv = new IvParameterSpec(new byte[16]);
+        final Operation newInstance = new Operation() {
+            @Override
+            public void run() throws Exception {
+                final Cipher cipher = Cipher.getInstance("AES/CBC/PKCS5Padding");
+                cipher.init(Cipher.ENCRYPT_MODE, key, iv);
+                cipher.doFinal(DATA);
+            }
+        };
+        final Operation perThread = new Operation() {
+            @Override
+            public void run() throws Exception {
+                final Cipher cipher = CryptoPrimitives.getCipher("AES/CBC/PKCS5Padding");
+                cipher.init(Cipher.ENCRYPT_MODE, key, iv);
+                cipher.doFinal(DATA);
+            }
+        };
+        report("AES/CBC encryption", measure(newInstance), measure(perThread));
+    }
+
+    @Test
+    @IfProfileValue(name = "cas.crypto.benchmark", value = "true")
+    public void testPasswordEncoder() throws Exception {
+        final DefaultPasswordEncoder encoder = new DefaultPasswordEncoder("SHA-256");
+        final Operation operation = new Operation() {
+            @Override
+            public void run() throws Exception {
+                assertNotNull(encoder.encode("password"));
+            }
+        };
+        logger.info("DefaultPasswordEncoder: {} ns per encode", measure(operation));
+    }
+
+    /**
+     * Logs the time of an operation with new and per thread instances.
+     *
+     * @param name the operation name
+     * @param newInstanceNanos nanoseconds per operation with new instances
+     * @param perThreadNanos nanoseconds per operation with per thread instances
+     */
+    private void report(final String name, final long newInstanceNanos, final long perThreadNanos) {
+        logger.info("{}: {} ns per operation with new instances, {} ns with per thread instances",
+                name, newInstanceNanos, perThreadNanos);
+    }
+
+    /**
+     * Runs an operation repeatedly after a warm up.
+     *
+     * @param operation the operation
+     * @return the average time per operation in nanoseconds
+     * @throws Exception on failure
+     */
+    private static long measure(final Operation operation) throws Exception {
+        for (int i = 0; i < WARMUP_OPERATIONS; i++) {
+            operation.run();
+        }
+        final long start = System.nanoTime();
+        for (int i = 0; i < OPERATIONS; i++) {
+            operation.run();
+        }
+        return (System.nanoTime() - start) / OPERATIONS;
+    }
+
+    /**
+     * Measured operation.
+     */
+    private interface Operation {
+        /**
+         * Runs the operation once.
+         *
+         * @throws Exception on failure
+         */
+        void run() throws Exception;
+    }
+}
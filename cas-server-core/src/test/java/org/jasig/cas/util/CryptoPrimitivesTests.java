@@ -0,0 +1,68 @@
+/*
+ * Licensed to Apereo under one or more contributor license
+ * agreements. See the NOTICE file distributed with this work
+ * for additional information regarding copyright ownership.
+ * Apereo licenses this file to you under the Apache License,
+ * Version 2.0 (the "License"); you may not use this file
+ * except in compliance with the License.  You may obtain a
+ * copy of the License at the following location:
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.jasig.cas.util;
+
+import org.junit.Test;
+
+import java.security.MessageDigest;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+import static org.junit.Assert.*;
+
+/**
+ * Unit test for {@link CryptoPrimitives}.
+ *
+ * @author CAS Team
+ * @since 4.1
+ */
+public class CryptoPrimitivesTests {
+
+    @Test
+    public void testReusesResetDigestPerThread() throws Exception {
+        final MessageDigest digest = CryptoPrimitives.getMessageDigest("SHA-256");
+        final byte[] expected = digest.digest("test".getBytes("UTF-8"));
+        digest.update("unfinished".getBytes("UTF-8"));
+
+        final MessageDigest again = CryptoPrimitives.getMessageDigest("SHA-256");
+        assertSame(digest, again);
+        assertArrayEquals(expected, again.digest("test".getBytes("UTF-8")));
+        assertNotSame(digest, CryptoPrimitives.getMessageDigest("SHA-1"));
+    }
+
+    @Test
+    public void testGivesEachThreadItsOwnInstances() throws Exception {
+        final MessageDigest digest = CryptoPrimitives.getMessageDigest("SHA-256");
+        final ExecutorService executor = Executors.newSingleThreadExecutor();
+        try {
+            final MessageDigest other = executor.submit(new Callable<MessageDigest>() {
+                @Override
+                public MessageDigest call() throws Exception {
+                    return CryptoPrimitives.getMessageDigest("SHA-256");
+                }
+            }).get();
+            assertNotSame(digest, other);
+        } finally {
+            executor.shutdown();
+        }
+        assertSame(CryptoPrimitives.getCipher("AES/CBC/PKCS5Padding"), CryptoPrimitives.getCipher("AES/CBC/PKCS5Padding"));
+        assertSame(CryptoPrimitives.getSecureRandom(), CryptoPrimitives.getSecureRandom());
+    }
+}
@@ -0,0 +1,59 @@
+/*
+ * Licensed to Apereo under one or more contributor license
+ * agreements. See the NOTICE file distributed with this work
+ * for additional information regarding copyright ownership.
+ * Apereo licenses this file to you under the Apache License,
+ * Version 2.0 (the "License"); you may not use this file
+ * except in compliance with the License.  You may obtain a
+ * copy of the License at the following location:
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.jasig.cas.util;
+
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+/**
+ * Unit test for {@link SegmentedLruCache}.
+ *
+ * @author CAS Team
+ * @since 4.1
+ */
+public class SegmentedLruCacheTests {
+
+    private static final int CAPACITY = SegmentedLruCache.SEGMENTS * 4;
+
+    @Test
+    public void testSizeIsBoundedByCapacity() {
+        final SegmentedLruCache<Integer, String> cache = new SegmentedLruCache<Integer, String>(CAPACITY);
+        for (int i = 0; i < CAPACITY * 10; i++) {
+            cache.put(i, "value" + i);
+        }
+        assertTrue(cache.size() <= CAPACITY);
+        assertEquals(CAPACITY * 10 - cache.size(), cache.getEvictionCount());
+
+        cache.clear();
+        assertEquals(0, cache.size());
+    }
+
+    @Test
+    public void testRecentlyReadEntriesAreKept() {
+        final SegmentedLruCache<Integer, String> cache = new SegmentedLruCache<Integer, String>(CAPACITY);
+        cache.put(0, "first");
+        for (int i = 1; i < CAPACITY * 10; i++) {
+            assertEquals("first", cache.get(0));
+            cache.put(i, "value" + i);
+        }
+        assertEquals("first", cache.get(0));
+        assertNull(cache.get(1));
+    }
+}
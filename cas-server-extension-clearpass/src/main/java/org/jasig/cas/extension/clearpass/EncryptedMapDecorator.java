@@ -19,6 +19,7 @@
 package org.jasig.cas.extension.clearpass;
 
 import org.apache.commons.codec.binary.Base64;
+import org.jasig.cas.util.CryptoPrimitives;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
@@ -73,7 +74,7 @@ public final class EncryptedMapDecorator implements Map<String, String> {
     private final Map<String, String> decoratedMap;
 
     @NotNull
-    private final MessageDigest messageDigest;
+    private final String hashAlgorithm;
 
     @NotNull
     private final byte[] salt;
@@ -87,8 +88,6 @@ public final class EncryptedMapDecorator implements Map<String, String> {
     @NotNull
     private final String secretKeyAlgorithm;
 
-    private boolean cloneNotSupported;
-
     /**
      * Decorates a map using the default algorithm {@link #DEFAULT_HASH_ALGORITHM} and a
      * {@link #DEFAULT_ENCRYPTION_ALGORITHM}.
@@ -155,7 +154,9 @@ public final class EncryptedMapDecorator implements Map<String, String> {
         this.key = secretKey;
         this.salt = salt;
         this.secretKeyAlgorithm = secretKeyAlgorithm;
-        this.messageDigest = MessageDigest.getInstance(hashAlgorithm);
+        this.hashAlgorithm = hashAlgorithm;
+        // Fail now rather than on first use if the algorithm is not supported
+        CryptoPrimitives.getMessageDigest(hashAlgorithm);
 
         try {
             this.ivSize = getIvSize();
@@ -321,9 +322,8 @@ public final class EncryptedMapDecorator implements Map<String, String> {
      * @return the iv value
      */
     private static byte[] generateIV(final int size) {
-        final SecureRandom srand = new SecureRandom();
         final byte[] ivValue = new byte[size];
-        srand.nextBytes(ivValue);
+        CryptoPrimitives.getSecureRandom().nextBytes(ivValue);
         return ivValue;
     }
 
@@ -434,35 +434,18 @@ public final class EncryptedMapDecorator implements Map<String, String> {
     }
 
     /**
-     * Tries to clone the {@link MessageDigest} that was created during construction. If the clone fails
-     * that is remembered and from that point on new {@link MessageDigest} instances will be created on
-     * every call.
-     * <p>
-     * Adopted from the Spring EhCache Annotations project.
+     * Gets the {@link MessageDigest} of the current thread for the hash algorithm. Each thread hashes with its
+     * own instance, since a {@link MessageDigest} must not be shared between threads.
      *
      * @return Generates a {@link MessageDigest} to use
      */
     protected MessageDigest getMessageDigest() {
-        if (this.cloneNotSupported) {
-            final String algorithm = this.messageDigest.getAlgorithm();
-            try {
-                return MessageDigest.getInstance(algorithm);
-            } catch (final NoSuchAlgorithmException e) {
-                throw new IllegalStateException("MessageDigest algorithm '" + algorithm + "' was supported when "
-                        + this.getClass().getSimpleName()
-                        + " was created but is not now. This should not be possible.", e);
-            }
-        }
-
         try {
-            return (MessageDigest) this.messageDigest.clone();
-        } catch (final CloneNotSupportedException e) {
-            this.cloneNotSupported = true;
-            final String msg = String.format("Could not clone MessageDigest using algorithm '%s'. "
-                        + "MessageDigest.getInstance will be used from now on which will be much more expensive.",
-                        this.messageDigest.getAlgorithm());
-            logger.warn(msg, e);
-            return this.getMessageDigest();
+            return CryptoPrimitives.getMessageDigest(this.hashAlgorithm);
+        } catch (final NoSuchAlgorithmException e) {
+            throw new IllegalStateException("MessageDigest algorithm '" + this.hashAlgorithm + "' was supported when "
+                    + this.getClass().getSimpleName()
+                    + " was created but is not now. This should not be possible.", e);
         }
     }
 
@@ -483,7 +466,7 @@ public final class EncryptedMapDecorator implements Map<String, String> {
     }
 
     /**
-     * Gets the cipher object for the {@link #CIPHER_ALGORITHM}.
+     * Gets the cipher object of the current thread for the {@link #CIPHER_ALGORITHM}.
      *
      * @return the cipher object
      * @throws NoSuchAlgorithmException - if transformation is null, empty, in an invalid format, or if no Provider
@@ -492,7 +475,7 @@ public final class EncryptedMapDecorator implements Map<String, String> {
      * @see Cipher#getInstance(String)
      */
     private Cipher getCipherObject() throws NoSuchAlgorithmException, NoSuchPaddingException {
-        return Cipher.getInstance(CIPHER_ALGORITHM);
+        return CryptoPrimitives.getCipher(CIPHER_ALGORITHM);
     }
 
     /**
@@ -22,7 +22,13 @@ import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertNull;
 import static org.junit.Assert.fail;
 
+import java.util.ArrayList;
+import java.util.List;
 import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 
 import net.sf.ehcache.Cache;
 import net.sf.ehcache.CacheManager;
@@ -114,6 +120,36 @@ public class EncryptedMapDecoratorTests {
         assertNull(this.decorator.get(null));
     }
 
+    @Test
+    public void addItemsConcurrently() throws Exception {
+        final int threads = 8;
+        final int itemsPerThread = 200;
+        final ExecutorService executor = Executors.newFixedThreadPool(threads);
+        try {
+            final List<Future<Void>> futures = new ArrayList<Future<Void>>(threads);
+            for (int t = 0; t < threads; t++) {
+                final int thread = t;
+                futures.add(executor.submit(new Callable<Void>() {
+                    @Override
+                    public Void call() {
+                        for (int i = 0; i < itemsPerThread; i++) {
+                            final String key = "key" + thread + "-" + i;
+                            decorator.put(key, "value" + thread + "-" + i);
+                            assertEquals("value" + thread + "-" + i, decorator.get(key));
+                        }
+                        return null;
+                    }
+                }));
+            }
+            for (final Future<Void> future : futures) {
+                future.get();
+            }
+        } finally {
+            executor.shutdown();
+        }
+        assertEquals(threads * itemsPerThread, this.decorator.size());
+    }
+
     @Test
     public void addNullValue() {
         this.decorator.put("hello", null);
@@ -21,7 +21,6 @@ package org.jasig.cas.ticket.registry;
 import net.sf.ehcache.Cache;
 import net.sf.ehcache.Element;
 import net.sf.ehcache.config.CacheConfiguration;
-import org.apache.commons.lang3.BooleanUtils;
 import org.apache.commons.lang3.StringUtils;
 import org.jasig.cas.ticket.ServiceTicket;
 import org.jasig.cas.ticket.Ticket;
@@ -113,6 +112,10 @@ public final class EhCacheTicketRegistry extends AbstractDistributedTicketRegist
         if (StringUtils.isBlank(ticketId)) {
             return false;
         }
+        final Cache cache = getCacheForTicketId(ticketId);
+        if (cache != null) {
+            return cache.remove(ticketId);
+        }
         return this.serviceTicketsCache.remove(ticketId) || this.ticketGrantingTicketsCache.remove(ticketId);
     }
 
@@ -122,9 +125,15 @@ public final class EhCacheTicketRegistry extends AbstractDistributedTicketRegist
             return null;
         }
 
-        Element element = this.serviceTicketsCache.get(ticketId);
-        if (element == null) {
-            element = this.ticketGrantingTicketsCache.get(ticketId);
+        final Cache cache = getCacheForTicketId(ticketId);
+        Element element;
+        if (cache != null) {
+            element = cache.get(ticketId);
+        } else {
+            element = this.serviceTicketsCache.get(ticketId);
+            if (element == null) {
+                element = this.ticketGrantingTicketsCache.get(ticketId);
+            }
         }
         return element == null ? null : getProxiedTicketInstance((Ticket) element.getObjectValue());
     }
@@ -149,6 +158,24 @@ public final class EhCacheTicketRegistry extends AbstractDistributedTicketRegist
         return allTickets;
     }
 
+    /**
+     * Routes a ticket id to the cache that holds tickets of its type based on the well-known ticket prefixes,
+     * so that lookups and removals touch a single cache and generate a single replication message.
+     *
+     * @param ticketId the ticket id
+     * @return the cache for the ticket type, or null if the id does not carry a known prefix.
+     */
+    private Cache getCacheForTicketId(final String ticketId) {
+        if (ticketId.startsWith(ServiceTicket.PREFIX) || ticketId.startsWith(ServiceTicket.PROXY_TICKET_PREFIX)) {
+            return this.serviceTicketsCache;
+        }
+        if (ticketId.startsWith(TicketGrantingTicket.PREFIX)
+                || ticketId.startsWith(TicketGrantingTicket.PROXY_GRANTING_TICKET_PREFIX)) {
+            return this.ticketGrantingTicketsCache;
+        }
+        return null;
+    }
+
     public void setServiceTicketsCache(final Cache serviceTicketsCache) {
         this.serviceTicketsCache = serviceTicketsCache;
     }
@@ -176,9 +203,8 @@ public final class EhCacheTicketRegistry extends AbstractDistributedTicketRegist
     /**
      * Flag to indicate whether this registry instance should participate in reporting its state with
      * default value set to <code>true</code>.
-     * Based on the <a href="http://ehcache.org/apidocs/net/sf/ehcache/Ehcache.html#getKeysWithExpiryCheck()">EhCache documentation</a>,
-     * determining the number of service tickets and the total session count from the cache can be considered
-     * an expensive operation with the time taken as O(n), where n is the number of elements in the cache.
+     * Counts are taken from {@link Cache#getSize()}, which is a constant-time operation for local stores
+     * but may involve a round trip for clustered caches.
      *
      * <p>Therefore, the flag provides a level of flexibility such that depending on the cache and environment
      * settings, reporting statistics
@@ -222,21 +248,27 @@ public final class EhCacheTicketRegistry extends AbstractDistributedTicketRegist
 
     /**
      * {@inheritDoc}
-     * @see Cache#getKeysWithExpiryCheck()
+     * The count is taken from {@link Cache#getSize()} and may include expired tickets
+     * that have not yet been evicted.
      */
     @Override
     public int sessionCount() {
-        return BooleanUtils.toInteger(this.supportRegistryState, this.ticketGrantingTicketsCache
-                .getKeysWithExpiryCheck().size(), super.sessionCount());
+        if (!this.supportRegistryState) {
+            return super.sessionCount();
+        }
+        return this.ticketGrantingTicketsCache.getSize();
     }
 
     /**
      * {@inheritDoc}
-     * @see Cache#getKeysWithExpiryCheck()
+     * The count is taken from {@link Cache#getSize()} and may include expired tickets
+     * that have not yet been evicted.
      */
     @Override
     public int serviceTicketCount() {
-        return BooleanUtils.toInteger(this.supportRegistryState, this.serviceTicketsCache.getKeysWithExpiryCheck()
-                .size(), super.serviceTicketCount());
+        if (!this.supportRegistryState) {
+            return super.serviceTicketCount();
+        }
+        return this.serviceTicketsCache.getSize();
     }
 }
@@ -0,0 +1,114 @@
+/*
+ * Licensed to Apereo under one or more contributor license
+ * agreements. See the NOTICE file distributed with this work
+ * for additional information regarding copyright ownership.
+ * Apereo licenses this file to you under the Apache License,
+ * Version 2.0 (the "License"); you may not use this file
+ * except in compliance with the License.  You may obtain a
+ * copy of the License at the following location:
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.jasig.cas.ticket.registry;
+
+import net.sf.ehcache.Cache;
+import net.sf.ehcache.CacheManager;
+import net.sf.ehcache.config.CacheConfiguration;
+import net.sf.ehcache.config.Configuration;
+import org.jasig.cas.TestUtils;
+import org.jasig.cas.ticket.ServiceTicket;
+import org.jasig.cas.ticket.TicketGrantingTicket;
+import org.jasig.cas.ticket.TicketGrantingTicketImpl;
+import org.jasig.cas.ticket.support.NeverExpiresExpirationPolicy;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.test.annotation.IfProfileValue;
+import org.springframework.test.annotation.ProfileValueSourceConfiguration;
+import org.springframework.test.annotation.SystemProfileValueSource;
+import org.springframework.test.context.junit4.SpringJUnit4ClassRunner;
+
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.*;
+
+/**
+ * Measures counting and prefix-routed deletes of {@link EhCacheTicketRegistry} with a large number
+ * of entries. Run with <code>-Dcas.ehcache.benchmark=true</code>.
+ *
+ * @author CAS Team
+ * @since 4.1
+ */
+@RunWith(SpringJUnit4ClassRunner.class)
+@ProfileValueSourceConfiguration(SystemProfileValueSource.class)
+public class EhCacheTicketRegistryBenchmarkTests {
+
+    private static final int SESSIONS = 500000;
+
+    private static final int COUNT_ITERATIONS = 1000;
+
+    private final Logger logger = LoggerFactory.getLogger(getClass());
+
+    private CacheManager cacheManager;
+
+    private EhCacheTicketRegistry ticketRegistry;
+
+    @Before
+    public void setUp() {
+        this.cacheManager = new CacheManager(new Configuration().name("benchmarkCacheManager"));
+        final Cache serviceTicketsCache = new Cache(new CacheConfiguration("benchmarkServiceTickets", SESSIONS));
+        final Cache ticketGrantingTicketsCache = new Cache(
+                new CacheConfiguration("benchmarkTicketGrantingTickets", SESSIONS));
+        this.cacheManager.addCache(serviceTicketsCache);
+        this.cacheManager.addCache(ticketGrantingTicketsCache);
+        this.ticketRegistry = new EhCacheTicketRegistry(serviceTicketsCache, ticketGrantingTicketsCache);
+    }
+
+    @After
+    public void tearDown() {
+        this.cacheManager.shutdown();
+    }
+
+    @Test
+    @IfProfileValue(name = "cas.ehcache.benchmark", value = "true")
+    public void testCountAndDeleteWithOneMillionEntries() {
+        long start = System.nanoTime();
+        for (int i = 0; i < SESSIONS; i++) {
+            final TicketGrantingTicket tgt = new TicketGrantingTicketImpl(TicketGrantingTicket.PREFIX + '-' + i,
+                    TestUtils.getAuthentication(), new NeverExpiresExpirationPolicy());
+            final ServiceTicket st = tgt.grantServiceTicket(ServiceTicket.PREFIX + '-' + i, TestUtils.getService(),
+                    new NeverExpiresExpirationPolicy(), false);
+            this.ticketRegistry.addTicket(tgt);
+            this.ticketRegistry.addTicket(st);
+        }
+        logger.info("Added {} tickets in {} ms", SESSIONS * 2, elapsedMillis(start));
+
+        start = System.nanoTime();
+        for (int i = 0; i < COUNT_ITERATIONS; i++) {
+            assertEquals(SESSIONS, this.ticketRegistry.sessionCount());
+            assertEquals(SESSIONS, this.ticketRegistry.serviceTicketCount());
+        }
+        logger.info("{} session and service ticket counts took {} ms", COUNT_ITERATIONS, elapsedMillis(start));
+
+        start = System.nanoTime();
+        for (int i = 0; i < SESSIONS; i++) {
+            assertTrue(this.ticketRegistry.deleteTicket(TicketGrantingTicket.PREFIX + '-' + i));
+        }
+        logger.info("Deleted {} ticket-granting tickets in {} ms", SESSIONS, elapsedMillis(start));
+        assertEquals(0, this.ticketRegistry.sessionCount());
+    }
+
+    private static long elapsedMillis(final long start) {
+        return TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start);
+    }
+}
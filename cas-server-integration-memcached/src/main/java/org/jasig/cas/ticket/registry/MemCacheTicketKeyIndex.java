@@ -0,0 +1,329 @@
+/*
+ * Licensed to Apereo under one or more contributor license
+ * agreements. See the NOTICE file distributed with this work
+ * for additional information regarding copyright ownership.
+ * Apereo licenses this file to you under the Apache License,
+ * Version 2.0 (the "License"); you may not use this file
+ * except in compliance with the License.  You may obtain a
+ * copy of the License at the following location:
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.jasig.cas.ticket.registry;
+
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Iterator;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import net.spy.memcached.CachedData;
+import net.spy.memcached.MemcachedClientIF;
+import net.spy.memcached.transcoders.Transcoder;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Index of ticket ids maintained in memcached alongside the tickets themselves, which makes it possible
+ * to enumerate and count tickets without scanning the cluster.
+ * <p>
+ * Adding a ticket appends <code>+id</code> to an index entry, and every delete appends <code>-id</code>.
+ * Updates append <code>+id</code> again only if the id was last recorded by this node in an earlier time
+ * bucket, which keeps the ticket listed for as long as its refreshed memcached expiration while letting
+ * the index grow with the number of tickets rather than with the number of updates. Index entries are keyed
+ * by a time bucket (the write time divided by the bucket length) and a shard (a hash of the ticket id), so
+ * each entry stays small and the entries are spread over all memcached servers. Entries expire on their own
+ * once every ticket they could reference has timed out.
+ * Reading the index fetches all entries for the retention window in one bulk get and replays them in
+ * order; ids of tickets that memcached has since evicted are filtered out when the tickets are fetched.
+ * </p>
+ * <p>
+ * An append fails if an index entry would exceed the memcached item size limit, after which the index
+ * no longer lists every ticket. Such failures are logged and counted by {@link #getFailedAppendCount()};
+ * use more shards or shorter buckets if it is not zero.
+ * </p>
+ *
+ * @author CAS Team
+ * @since 4.1
+ */
+public final class MemCacheTicketKeyIndex {
+
+    /** Default length of an index time bucket in seconds. */
+    public static final int DEFAULT_BUCKET_SECONDS = 60;
+
+    /** Default number of index shards per time bucket. */
+    public static final int DEFAULT_SHARDS = 16;
+
+    private static final String KEY_PREFIX = "cas-ticket-index:";
+
+    private static final char ADDED = '+';
+
+    private static final char REMOVED = '-';
+
+    private static final char SEPARATOR = ' ';
+
+    private final Logger logger = LoggerFactory.getLogger(getClass());
+
+    private final MemcachedClientIF client;
+
+    private final int retentionSeconds;
+
+    private final int bucketSeconds;
+
+    private final int shards;
+
+    private final Transcoder<String> transcoder = new RawStringTranscoder();
+
+    /** Time bucket in which this node last recorded each ticket id. */
+    private final ConcurrentMap<String, Long> lastRecorded = new ConcurrentHashMap<String, Long>();
+
+    /** Bucket in which {@link #lastRecorded} was last pruned. */
+    private final AtomicLong lastPruned = new AtomicLong();
+
+    private final AtomicLong failedAppends = new AtomicLong();
+
+    /**
+     * Creates a new index with the default bucket length and shard count.
+     *
+     * @param client Memcached client shared with the ticket registry.
+     * @param retentionSeconds Longest time a ticket can live in memcached without being written again.
+     */
+    public MemCacheTicketKeyIndex(final MemcachedClientIF client, final int retentionSeconds) {
+        this(client, retentionSeconds, DEFAULT_BUCKET_SECONDS, DEFAULT_SHARDS);
+    }
+
+    /**
+     * Creates a new index.
+     *
+     * @param client Memcached client shared with the ticket registry.
+     * @param retentionSeconds Longest time a ticket can live in memcached without being written again.
+     * @param bucketSeconds Length of an index time bucket in seconds.
+     * @param shards Number of index entries per time bucket.
+     */
+    public MemCacheTicketKeyIndex(final MemcachedClientIF client, final int retentionSeconds,
+            final int bucketSeconds, final int shards) {
+        this.client = client;
+        this.retentionSeconds = retentionSeconds;
+        this.bucketSeconds = bucketSeconds;
+        this.shards = shards;
+    }
+
+    /**
+     * Records that a ticket was written.
+     *
+     * @param ticketId the ticket id
+     */
+    public void added(final String ticketId) {
+        final long bucket = currentBucket();
+        this.lastRecorded.put(ticketId, bucket);
+        append(ticketId, ADDED, bucket);
+        prune(bucket);
+    }
+
+    /**
+     * Records that a ticket was written again, unless it has already been recorded in the current time bucket.
+     *
+     * @param ticketId the ticket id
+     */
+    public void updated(final String ticketId) {
+        final long bucket = currentBucket();
+        final Long previous = this.lastRecorded.put(ticketId, bucket);
+        if (previous == null || previous < bucket) {
+            append(ticketId, ADDED, bucket);
+        }
+        prune(bucket);
+    }
+
+    /**
+     * Records that a ticket was deleted.
+     *
+     * @param ticketId the ticket id
+     */
+    public void removed(final String ticketId) {
+        this.lastRecorded.remove(ticketId);
+        append(ticketId, REMOVED, currentBucket());
+    }
+
+    /**
+     * @return Number of index updates that could not be stored, which leaves the index incomplete.
+     */
+    public long getFailedAppendCount() {
+        return this.failedAppends.get();
+    }
+
+    /**
+     * Gets the ids of all tickets written within the retention window and not deleted since.
+     *
+     * @return ticket ids in the order they were first written.
+     */
+    public Set<String> getTicketIds() {
+        final long currentBucket = currentBucket();
+        final long firstBucket = currentBucket - this.retentionSeconds / this.bucketSeconds - 1;
+        final List<String> keys = new ArrayList<String>();
+        for (long bucket = firstBucket; bucket <= currentBucket; bucket++) {
+            for (int shard = 0; shard < this.shards; shard++) {
+                keys.add(indexKey(bucket, shard));
+            }
+        }
+
+        final Map<String, String> entries = this.client.getBulk(keys, this.transcoder);
+        final Set<String> ids = new LinkedHashSet<String>();
+        for (final String key : keys) {
+            final String entry = entries.get(key);
+            if (entry != null) {
+                replay(entry, ids);
+            }
+        }
+        return ids;
+    }
+
+    /**
+     * Applies the additions and removals recorded in an index entry to the given set.
+     *
+     * @param entry the index entry
+     * @param ids the live ids
+     */
+    private void replay(final String entry, final Collection<String> ids) {
+        int start = 0;
+        while (start < entry.length()) {
+            int end = entry.indexOf(SEPARATOR, start);
+            if (end < 0) {
+                end = entry.length();
+            }
+            if (end - start > 1) {
+                final String id = entry.substring(start + 1, end);
+                if (entry.charAt(start) == ADDED) {
+                    ids.add(id);
+                } else {
+                    ids.remove(id);
+                }
+            }
+            start = end + 1;
+        }
+    }
+
+    /**
+     * Appends an operation to the index entry of the given bucket, creating the entry if needed.
+     *
+     * @param ticketId the ticket id
+     * @param operation the operation marker
+     * @param bucket the time bucket
+     */
+    private void append(final String ticketId, final char operation, final long bucket) {
+        final String key = indexKey(bucket, shard(ticketId));
+        final String value = operation + ticketId + SEPARATOR;
+        final int expiration = this.retentionSeconds + 2 * this.bucketSeconds;
+        try {
+            if (this.client.append(0, key, value, this.transcoder).get()) {
+                return;
+            }
+            if (this.client.add(key, expiration, value, this.transcoder).get()) {
+                return;
+            }
+            // Another node created the entry concurrently
+            if (this.client.append(0, key, value, this.transcoder).get()) {
+                return;
+            }
+            logger.error("Failed recording {} in ticket index entry {}; the entry may exceed the memcached item size",
+                    ticketId, key);
+        } catch (final InterruptedException e) {
+            logger.warn("Interrupted while updating ticket index entry {} for {}", key, ticketId);
+            Thread.currentThread().interrupt();
+        } catch (final Exception e) {
+            logger.error("Failed updating ticket index entry {} for {}", key, ticketId, e);
+        }
+        this.failedAppends.incrementAndGet();
+        this.lastRecorded.remove(ticketId);
+    }
+
+    /**
+     * Forgets ids recorded before the retention window, at most once per time bucket.
+     *
+     * @param bucket the current time bucket
+     */
+    private void prune(final long bucket) {
+        final long previous = this.lastPruned.get();
+        if (previous >= bucket || !this.lastPruned.compareAndSet(previous, bucket)) {
+            return;
+        }
+        final long oldest = bucket - this.retentionSeconds / this.bucketSeconds - 1;
+        final Iterator<Long> iterator = this.lastRecorded.values().iterator();
+        while (iterator.hasNext()) {
+            if (iterator.next() < oldest) {
+                iterator.remove();
+            }
+        }
+    }
+
+    /**
+     * @return the current time bucket.
+     */
+    private long currentBucket() {
+        return TimeUnit.MILLISECONDS.toSeconds(System.currentTimeMillis()) / this.bucketSeconds;
+    }
+
+    /**
+     * Computes the shard for a ticket id.
+     *
+     * @param ticketId the ticket id
+     * @return the shard
+     */
+    private int shard(final String ticketId) {
+        return (ticketId.hashCode() & Integer.MAX_VALUE) % this.shards;
+    }
+
+    /**
+     * Builds the memcached key of an index entry.
+     *
+     * @param bucket the time bucket
+     * @param shard the shard
+     * @return the key
+     */
+    private static String indexKey(final long bucket, final int shard) {
+        return KEY_PREFIX + bucket + ':' + shard;
+    }
+
+    /**
+     * Stores index entries as raw, uncompressed UTF-8 so that memcached <code>append</code>
+     * produces a valid value regardless of the transcoder configured on the client.
+     */
+    private static final class RawStringTranscoder implements Transcoder<String> {
+
+        private static final Charset UTF8 = Charset.forName("UTF-8");
+
+        @Override
+        public boolean asyncDecode(final CachedData d) {
+            return false;
+        }
+
+        @Override
+        public CachedData encode(final String o) {
+            return new CachedData(0, o.getBytes(UTF8), getMaxSize());
+        }
+
+        @Override
+        public String decode(final CachedData d) {
+            return new String(d.getData(), UTF8);
+        }
+
+        @Override
+        public int getMaxSize() {
+            return CachedData.MAX_SIZE;
+        }
+    }
+}
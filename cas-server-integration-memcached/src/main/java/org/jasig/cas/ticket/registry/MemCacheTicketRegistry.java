@@ -19,8 +19,10 @@
 package org.jasig.cas.ticket.registry;
 
 import java.io.IOException;
+import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Collection;
+import java.util.Map;
 import java.util.concurrent.TimeUnit;
 
 import javax.validation.constraints.Min;
@@ -44,6 +46,9 @@ import org.springframework.beans.factory.DisposableBean;
  */
 public final class MemCacheTicketRegistry extends AbstractDistributedTicketRegistry implements DisposableBean {
 
+    /** Default grace period in seconds, which matches the default interval of the registry cleaner. */
+    public static final int DEFAULT_EXPIRATION_GRACE_PERIOD = 5000;
+
     /** Memcached client. */
     @NotNull
     private final MemcachedClientIF client;
@@ -60,6 +65,18 @@ public final class MemCacheTicketRegistry extends AbstractDistributedTicketRegis
     @Min(0)
     private final int stTimeout;
 
+    /**
+     * Time in seconds ticket-granting tickets are kept in memcached past their timeout when the key index is
+     * enabled, so that the registry cleaner still finds them once they expire.
+     */
+    @Min(0)
+    private int expirationGracePeriod = DEFAULT_EXPIRATION_GRACE_PERIOD;
+
+    /**
+     * Optional index of ticket ids that enables enumerating and counting tickets.
+     */
+    private MemCacheTicketKeyIndex keyIndex;
+
 
     /**
      * Creates a new instance that stores tickets in the given memcached hosts.
@@ -118,6 +135,8 @@ final int serviceTicketTimeOut) {
         try {
             if (!this.client.replace(ticket.getId(), getTimeout(ticket), ticket).get()) {
                 logger.error("Failed updating {}", ticket);
+            } else if (this.keyIndex != null) {
+                this.keyIndex.updated(ticket.getId());
             }
         } catch (final InterruptedException e) {
             logger.warn("Interrupted while waiting for response to async replace operation for ticket {}. "
@@ -133,6 +152,8 @@ final int serviceTicketTimeOut) {
         try {
             if (!this.client.add(ticket.getId(), getTimeout(ticket), ticket).get()) {
                 logger.error("Failed adding {}", ticket);
+            } else if (this.keyIndex != null) {
+                this.keyIndex.added(ticket.getId());
             }
         } catch (final InterruptedException e) {
             logger.warn("Interrupted while waiting for response to async add operation for ticket {}."
@@ -145,6 +166,9 @@ final int serviceTicketTimeOut) {
     public boolean deleteTicket(final String ticketId) {
         logger.debug("Deleting ticket {}", ticketId);
         try {
+            if (this.keyIndex != null) {
+                this.keyIndex.removed(ticketId);
+            }
             return this.client.delete(ticketId).get();
         } catch (final Exception e) {
             logger.error("Failed deleting {}", ticketId, e);
@@ -166,13 +190,105 @@ final int serviceTicketTimeOut) {
 
     /**
      * {@inheritDoc}
-     * This operation is not supported.
+     * This operation is only supported when the key index is enabled.
      *
-     * @throws UnsupportedOperationException if you try and call this operation.
+     * @throws UnsupportedOperationException if you try and call this operation without a key index.
+     * @see #setKeyIndexEnabled(boolean)
      */
     @Override
     public Collection<Ticket> getTickets() {
-        throw new UnsupportedOperationException("GetTickets not supported.");
+        if (this.keyIndex == null) {
+            throw new UnsupportedOperationException("GetTickets not supported.");
+        }
+        final Map<String, Object> tickets = this.client.getBulk(this.keyIndex.getTicketIds());
+        final Collection<Ticket> result = new ArrayList<Ticket>(tickets.size());
+        for (final Object ticket : tickets.values()) {
+            result.add((Ticket) ticket);
+        }
+        return result;
+    }
+
+    /**
+     * {@inheritDoc}
+     * Counted from the ids in the key index if enabled, without fetching tickets. Tickets evicted by
+     * memcached before they were deleted are included until their index entries expire.
+     */
+    @Override
+    public int sessionCount() {
+        if (this.keyIndex == null) {
+            return super.sessionCount();
+        }
+        int count = 0;
+        for (final String id : this.keyIndex.getTicketIds()) {
+            if (isTicketGrantingTicketId(id)) {
+                count++;
+            }
+        }
+        return count;
+    }
+
+    /**
+     * {@inheritDoc}
+     * Counted from the ids in the key index if enabled, without fetching tickets. Tickets evicted by
+     * memcached before they were deleted are included until their index entries expire.
+     */
+    @Override
+    public int serviceTicketCount() {
+        if (this.keyIndex == null) {
+            return super.serviceTicketCount();
+        }
+        int count = 0;
+        for (final String id : this.keyIndex.getTicketIds()) {
+            if (!isTicketGrantingTicketId(id)) {
+                count++;
+            }
+        }
+        return count;
+    }
+
+    /**
+     * Enables an index of ticket ids kept in memcached itself, which allows {@link #getTickets()},
+     * {@link #sessionCount()} and {@link #serviceTicketCount()} to work without scanning the cluster.
+     * This in turn makes the registry usable with the registry cleaner and session monitors.
+     * Each add and delete costs one additional memcached <code>append</code>, and so does the first
+     * update of a ticket in each index time bucket.
+     * <p>
+     * With the index enabled, ticket-granting tickets are kept in memcached for
+     * {@link #setExpirationGracePeriod(int)} seconds past their timeout, so that the registry cleaner
+     * finds them expired and sends single logout before memcached evicts them.
+     * </p>
+     *
+     * @param enabled true to maintain the key index.
+     * @see MemCacheTicketKeyIndex
+     */
+    public void setKeyIndexEnabled(final boolean enabled) {
+        if (enabled) {
+            this.keyIndex = new MemCacheTicketKeyIndex(this.client,
+                    Math.max(this.tgtTimeout + this.expirationGracePeriod, this.stTimeout));
+        } else {
+            this.keyIndex = null;
+        }
+    }
+
+    /**
+     * Sets how long ticket-granting tickets outlive their timeout in memcached when the key index is
+     * enabled. This should be longer than the repeat interval of the registry cleaner; otherwise
+     * memcached may evict expired tickets before the cleaner sees them and no single logout is sent.
+     *
+     * @param expirationGracePeriod Grace period in seconds.
+     */
+    public void setExpirationGracePeriod(final int expirationGracePeriod) {
+        this.expirationGracePeriod = expirationGracePeriod;
+        if (this.keyIndex != null) {
+            setKeyIndexEnabled(true);
+        }
+    }
+
+    /**
+     * @return Number of key index updates that could not be stored, or zero if the index is disabled.
+     */
+    public long getFailedIndexAppendCount() {
+        return this.keyIndex == null ? 0 : this.keyIndex.getFailedAppendCount();
     }
 
     /**
@@ -204,10 +320,21 @@ final int serviceTicketTimeOut) {
      */
     private int getTimeout(final Ticket t) {
         if (t instanceof TicketGrantingTicket) {
-            return this.tgtTimeout;
+            return this.keyIndex == null ? this.tgtTimeout : this.tgtTimeout + this.expirationGracePeriod;
         } else if (t instanceof ServiceTicket) {
             return this.stTimeout;
         }
         throw new IllegalArgumentException("Invalid ticket type");
     }
+
+    /**
+     * Determines from its prefix whether a ticket id denotes a ticket-granting ticket.
+     *
+     * @param id the ticket id
+     * @return true for ticket-granting and proxy-granting tickets
+     */
+    private static boolean isTicketGrantingTicketId(final String id) {
+        return id.startsWith(TicketGrantingTicket.PREFIX)
+                || id.startsWith(TicketGrantingTicket.PROXY_GRANTING_TICKET_PREFIX);
+    }
 }
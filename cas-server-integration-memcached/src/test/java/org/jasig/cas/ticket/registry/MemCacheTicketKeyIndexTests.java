@@ -0,0 +1,127 @@
+/*
+ * Licensed to Apereo under one or more contributor license
+ * agreements. See the NOTICE file distributed with this work
+ * for additional information regarding copyright ownership.
+ * Apereo licenses this file to you under the Apache License,
+ * Version 2.0 (the "License"); you may not use this file
+ * except in compliance with the License.  You may obtain a
+ * copy of the License at the following location:
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.jasig.cas.ticket.registry;
+
+import net.spy.memcached.MemcachedClientIF;
+import net.spy.memcached.transcoders.Transcoder;
+import org.jasig.cas.ticket.Ticket;
+import org.jasig.cas.ticket.TicketGrantingTicket;
+import org.junit.Before;
+import org.junit.Test;
+import org.mockito.Matchers;
+import org.mockito.invocation.InvocationOnMock;
+import org.mockito.stubbing.Answer;
+
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Map;
+import java.util.concurrent.Future;
+
+import static org.junit.Assert.*;
+import static org.mockito.Mockito.*;
+
+/**
+ * Unit test for {@link MemCacheTicketKeyIndex} and its use by {@link MemCacheTicketRegistry},
+ * run against a mock memcached client.
+ *
+ * @author CAS Team
+ * @since 4.1
+ */
+public class MemCacheTicketKeyIndexTests {
+
+    private static final int BUCKET_SECONDS = 3600;
+
+    private MemcachedClientIF client;
+
+    @Before
+    public void setUp() throws Exception {
+        this.client = mock(MemcachedClientIF.class);
+        final Future<Boolean> success = future(true);
+        when(this.client.append(anyLong(), anyString(), anyString(), Matchers.<Transcoder<String>>any()))
+                .thenReturn(success);
+        when(this.client.add(anyString(), anyInt(), any())).thenReturn(success);
+    }
+
+    @Test
+    public void testUpdatesAreRecordedOncePerBucket() throws Exception {
+        final MemCacheTicketKeyIndex index = new MemCacheTicketKeyIndex(this.client, 60, BUCKET_SECONDS, 1);
+        index.added("TGT-1");
+        for (int i = 0; i < 10; i++) {
+            index.updated("TGT-1");
+        }
+        verify(this.client, times(1)).append(anyLong(), anyString(), anyString(), Matchers.<Transcoder<String>>any());
+
+        index.removed("TGT-1");
+        index.updated("TGT-1");
+        verify(this.client, times(3)).append(anyLong(), anyString(), anyString(), Matchers.<Transcoder<String>>any());
+        assertEquals(0, index.getFailedAppendCount());
+    }
+
+    @Test
+    public void testFailedAppendsAreCounted() throws Exception {
+        final Future<Boolean> failure = future(false);
+        when(this.client.append(anyLong(), anyString(), anyString(), Matchers.<Transcoder<String>>any()))
+                .thenReturn(failure);
+        when(this.client.add(anyString(), anyInt(), anyString(), Matchers.<Transcoder<String>>any()))
+                .thenReturn(failure);
+        final MemCacheTicketKeyIndex index = new MemCacheTicketKeyIndex(this.client, 60, BUCKET_SECONDS, 1);
+        index.added("TGT-1");
+        assertEquals(1, index.getFailedAppendCount());
+        // Not remembered as recorded, so the next update tries again
+        index.updated("TGT-1");
+        assertEquals(2, index.getFailedAppendCount());
+    }
+
+    @Test
+    public void testExpiredTicketGrantingTicketsRemainVisibleToCleaner() throws Exception {
+        final MemCacheTicketRegistry registry = new MemCacheTicketRegistry(this.client, 10, 2);
+        registry.setKeyIndexEnabled(true);
+        registry.setExpirationGracePeriod(30);
+        final TicketGrantingTicket ticket = mock(TicketGrantingTicket.class, withSettings().serializable());
+        when(ticket.getId()).thenReturn("TGT-1");
+        when(ticket.isExpired()).thenReturn(true);
+
+        registry.addTicket(ticket);
+        verify(this.client).add("TGT-1", 40, ticket);
+
+        when(this.client.getBulk(anyCollectionOf(String.class), Matchers.<Transcoder<String>>any()))
+                .thenAnswer(new Answer<Map<String, String>>() {
+                    @Override
+                    public Map<String, String> answer(final InvocationOnMock invocation) {
+                        final Collection<?> keys = (Collection<?>) invocation.getArguments()[0];
+                        return Collections.singletonMap((String) keys.iterator().next(), "+TGT-1 ");
+                    }
+                });
+        when(this.client.getBulk(anyCollectionOf(String.class)))
+                .thenReturn(Collections.<String, Object>singletonMap("TGT-1", ticket));
+
+        assertEquals(1, registry.sessionCount());
+        assertEquals(0, registry.serviceTicketCount());
+        final Collection<Ticket> tickets = registry.getTickets();
+        assertEquals(1, tickets.size());
+        assertTrue(tickets.iterator().next().isExpired());
+    }
+
+    @SuppressWarnings("unchecked")
+    private static Future<Boolean> future(final boolean result) throws Exception {
+        final Future<Boolean> future = mock(Future.class);
+        when(future.get()).thenReturn(result);
+        return future;
+    }
+}
@@ -24,6 +24,7 @@ import java.util.Collection;
 
 import org.apache.commons.io.IOUtils;
 import org.jasig.cas.ticket.ServiceTicket;
+import org.jasig.cas.ticket.Ticket;
 import org.junit.Assert;
 import org.junit.Assume;
 import org.junit.Before;
@@ -109,6 +110,28 @@ public class MemCacheTicketRegistryTests {
         Assert.assertNull((ServiceTicket) registry.getTicket(id));
     }
 
+    @Test
+    public void testKeyIndexEnumeratesTickets() throws Exception {
+        registry.setKeyIndexEnabled(true);
+        final String id = "ST-1234567890ABCDEFGHIJKL-index";
+        final ServiceTicket ticket = mock(ServiceTicket.class, withSettings().serializable());
+        when(ticket.getId()).thenReturn(id);
+        registry.addTicket(ticket);
+        Assert.assertTrue(containsTicket(registry.getTickets(), id));
+        Assert.assertTrue(registry.serviceTicketCount() > 0);
+        registry.deleteTicket(id);
+        Assert.assertFalse(containsTicket(registry.getTickets(), id));
+    }
+
+    private static boolean containsTicket(final Collection<Ticket> tickets, final String id) {
+        for (final Ticket ticket : tickets) {
+            if (id.equals(ticket.getId())) {
+                return true;
+            }
+        }
+        return false;
+    }
+
     private boolean isMemcachedListening() {
         Socket socket = null;
         try {
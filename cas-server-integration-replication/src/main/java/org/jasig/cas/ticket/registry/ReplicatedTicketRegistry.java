@@ -0,0 +1,950 @@
+/*
+ * Licensed to Apereo under one or more contributor license
+ * agreements. See the NOTICE file distributed with this work
+ * for additional information regarding copyright ownership.
+ * Apereo licenses this file to you under the Apache License,
+ * Version 2.0 (the "License"); you may not use this file
+ * except in compliance with the License.  You may obtain a
+ * copy of the License at the following location:
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.jasig.cas.ticket.registry;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InvalidClassException;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.io.ObjectStreamClass;
+import java.io.Serializable;
+import java.net.InetSocketAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.nio.charset.Charset;
+import java.security.GeneralSecurityException;
+import java.security.MessageDigest;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.TreeSet;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import javax.crypto.Mac;
+import javax.crypto.spec.SecretKeySpec;
+import javax.validation.constraints.Min;
+import javax.validation.constraints.NotNull;
+
+import org.apache.commons.io.IOUtils;
+import org.jasig.cas.Message;
+import org.jasig.cas.authentication.Authentication;
+import org.jasig.cas.authentication.Credential;
+import org.jasig.cas.authentication.CredentialMetaData;
+import org.jasig.cas.authentication.HandlerResult;
+import org.jasig.cas.authentication.PreventedException;
+import org.jasig.cas.authentication.principal.Principal;
+import org.jasig.cas.ticket.ExpirationPolicy;
+import org.jasig.cas.ticket.ServiceTicket;
+import org.jasig.cas.ticket.Ticket;
+import org.jasig.cas.ticket.TicketGrantingTicket;
+import org.jasig.cas.util.CryptoPrimitives;
+import org.springframework.beans.factory.DisposableBean;
+import org.springframework.beans.factory.InitializingBean;
+import org.springframework.util.Assert;
+
+/**
+ * Peer-to-peer ticket registry that keeps a full copy of all tickets on every node and replicates
+ * changes asynchronously over TCP.
+ * <p>
+ * Writes complete against the local copy and are queued for each peer; a sender thread per peer drains
+ * its queue into batched replication messages. Every change to a ticket carries a version made of a
+ * Lamport clock and the id of the originating node, which gives all updates to a ticket a total order:
+ * a node only applies a replicated change if it is newer than the one it already holds, so all nodes
+ * converge on the latest update regardless of delivery order. Deletes are replicated as tombstones that
+ * are purged on a schedule once they are older than {@link #setTombstoneTimeToLive(long)}.
+ * </p>
+ * <p>
+ * Whenever a connection to a peer is (re-)established, the full local state including tombstones is sent
+ * to it before any queued changes. This anti-entropy pass brings a rejoining node up to date and repairs
+ * any changes lost while the peer was unreachable. Changes are therefore only queued for connected peers.
+ * Queued changes to the same ticket are collapsed into the latest one, and a peer whose queue exceeds
+ * {@link #setMaxPendingChanges(int)} tickets is disconnected and resynchronized instead of buffering more.
+ * </p>
+ * <p>
+ * Every replication message carries an HMAC-SHA256 computed with the shared secret of the cluster, which is
+ * verified before the message is deserialized; messages that fail verification close the connection. Old
+ * messages replayed by an attacker are harmless because nodes only apply changes newer than their own copy.
+ * Deserialization is further restricted to ticket, authentication, principal and expiration policy classes,
+ * the JDK value and collection types they hold and the authentication failure types recorded in them.
+ * Messages are not encrypted, so nodes should still listen on a private interface.
+ * </p>
+ *
+ * @author CAS Team
+ * @since 4.1
+ */
+public final class ReplicatedTicketRegistry extends AbstractDistributedTicketRegistry
+        implements InitializingBean, DisposableBean {
+
+    /** Default maximum number of changes per replication message. */
+    public static final int DEFAULT_BATCH_SIZE = 500;
+
+    /** Default delay between attempts to reach an unavailable peer, in milliseconds. */
+    public static final long DEFAULT_RETRY_INTERVAL = 2000;
+
+    /** Default time tombstones of deleted tickets are retained, in milliseconds. */
+    public static final long DEFAULT_TOMBSTONE_TIME_TO_LIVE = TimeUnit.MINUTES.toMillis(10);
+
+    /** Default maximum number of tickets with changes queued for one peer. */
+    public static final int DEFAULT_MAX_PENDING_CHANGES = 100000;
+
+    /** Default maximum size of a replication message in bytes. */
+    public static final int DEFAULT_MAX_MESSAGE_SIZE = 64 * 1024 * 1024;
+
+    /** Minimum length of the shared secret. */
+    public static final int MIN_SHARED_SECRET_LENGTH = 16;
+
+    /** Lower bound of the timeout for connecting to a peer, in milliseconds. */
+    private static final int MIN_CONNECT_TIMEOUT = 1000;
+
+    /** Algorithm authenticating replication messages. */
+    private static final String MAC_ALGORITHM = "HmacSHA256";
+
+    /** CAS types that ticket state may hold, including their subclasses. */
+    private static final Class<?>[] ALLOWED_TYPES = {
+        Ticket.class, ExpirationPolicy.class, Authentication.class, CredentialMetaData.class, Credential.class,
+        HandlerResult.class, Message.class, Principal.class,
+    };
+
+    /** JDK value and collection classes that ticket state may hold. */
+    private static final Set<Class<?>> ALLOWED_JDK_CLASSES = new HashSet<Class<?>>(Arrays.<Class<?>>asList(
+            Object.class, String.class, Boolean.class, Character.class, Number.class, Enum.class, Date.class,
+            ArrayList.class, LinkedList.class, HashMap.class, LinkedHashMap.class,
+            TreeMap.class, HashSet.class, LinkedHashSet.class, TreeSet.class,
+            Arrays.asList().getClass(),
+            Collections.unmodifiableCollection(Collections.emptyList()).getClass(),
+            Collections.unmodifiableList(new ArrayList<Object>()).getClass(),
+            Collections.unmodifiableList(new LinkedList<Object>()).getClass(),
+            Collections.unmodifiableSet(Collections.emptySet()).getClass(),
+            Collections.unmodifiableMap(Collections.emptyMap()).getClass(),
+            Collections.emptyList().getClass(), Collections.emptySet().getClass(), Collections.emptyMap().getClass(),
+            Collections.singletonList(null).getClass(), Collections.singleton(null).getClass(),
+            Collections.singletonMap(null, null).getClass(),
+            Throwable.class, Exception.class));
+
+    /** Address this node listens on for replication messages. */
+    @NotNull
+    private final InetSocketAddress localAddress;
+
+    /** Addresses of all other nodes in the cluster. */
+    @NotNull
+    private final List<InetSocketAddress> peerAddresses;
+
+    /** Identifies this node as the origin of a change. */
+    private final String nodeId;
+
+    /** Latest known version of every ticket, including tombstones of deleted tickets. */
+    private final ConcurrentMap<String, VersionedTicket> tickets = new ConcurrentHashMap<String, VersionedTicket>();
+
+    /** Lamport clock used to version local changes. */
+    private final AtomicLong clock = new AtomicLong();
+
+    private final List<Peer> peers = new ArrayList<Peer>();
+
+    /** Inbound connections currently open, closed on shutdown to release their receiver threads. */
+    private final Set<Socket> inboundConnections = Collections.newSetFromMap(new ConcurrentHashMap<Socket, Boolean>());
+
+    private final ExecutorService executor = Executors.newCachedThreadPool();
+
+    private final ScheduledExecutorService scheduler = Executors.newSingleThreadScheduledExecutor();
+
+    private final AtomicLong replicatedChanges = new AtomicLong();
+
+    private final AtomicLong appliedChanges = new AtomicLong();
+
+    private final AtomicLong rejectedMessages = new AtomicLong();
+
+    private final AtomicLong resynchronizations = new AtomicLong();
+
+    @Min(1)
+    private int batchSize = DEFAULT_BATCH_SIZE;
+
+    @Min(1)
+    private long retryInterval = DEFAULT_RETRY_INTERVAL;
+
+    @Min(1)
+    private long tombstoneTimeToLive = DEFAULT_TOMBSTONE_TIME_TO_LIVE;
+
+    @Min(1)
+    private int maxPendingChanges = DEFAULT_MAX_PENDING_CHANGES;
+
+    @Min(1)
+    private int maxMessageSize = DEFAULT_MAX_MESSAGE_SIZE;
+
+    /** Key authenticating replication messages between nodes. */
+    private SecretKeySpec secretKey;
+
+    private ServerSocket serverSocket;
+
+    private volatile boolean running;
+
+    /**
+     * Creates a new registry node.
+     *
+     * @param localAddress Address of this node in the form host:port.
+     * @param peerAddresses Addresses of all other nodes in the form host:port.
+     */
+    public ReplicatedTicketRegistry(final String localAddress, final List<String> peerAddresses) {
+        this.localAddress = parseAddress(localAddress);
+        this.peerAddresses = new ArrayList<InetSocketAddress>(peerAddresses.size());
+        for (final String peer : peerAddresses) {
+            this.peerAddresses.add(parseAddress(peer));
+        }
+        this.nodeId = localAddress;
+    }
+
+    /**
+     * @param batchSize Maximum number of changes sent in one replication message.
+     */
+    public void setBatchSize(final int batchSize) {
+        this.batchSize = batchSize;
+    }
+
+    /**
+     * @param retryInterval Delay between attempts to reach an unavailable peer, in milliseconds.
+     */
+    public void setRetryInterval(final long retryInterval) {
+        this.retryInterval = retryInterval;
+    }
+
+    /**
+     * Sets how long tombstones of deleted tickets are retained. This must exceed the longest time a peer
+     * may be unreachable while still holding the deleted ticket, otherwise the ticket may reappear when
+     * that peer rejoins.
+     *
+     * @param tombstoneTimeToLive time to live in milliseconds.
+     */
+    public void setTombstoneTimeToLive(final long tombstoneTimeToLive) {
+        this.tombstoneTimeToLive = tombstoneTimeToLive;
+    }
+
+    /**
+     * @param maxPendingChanges Maximum number of tickets with changes queued for one peer before the peer is
+     *                          disconnected and resynchronized with the full state instead.
+     */
+    public void setMaxPendingChanges(final int maxPendingChanges) {
+        this.maxPendingChanges = maxPendingChanges;
+    }
+
+    /**
+     * @param maxMessageSize Maximum size in bytes of a replication message accepted from a peer.
+     */
+    public void setMaxMessageSize(final int maxMessageSize) {
+        this.maxMessageSize = maxMessageSize;
+    }
+
+    /**
+     * Sets the secret shared by all nodes of the cluster, which authenticates replication messages.
+     * It must be at least {@value #MIN_SHARED_SECRET_LENGTH} characters long and should be random.
+     *
+     * @param sharedSecret the shared secret
+     */
+    public void setSharedSecret(final String sharedSecret) {
+        Assert.isTrue(sharedSecret != null && sharedSecret.length() >= MIN_SHARED_SECRET_LENGTH,
+                "The replication shared secret must be at least " + MIN_SHARED_SECRET_LENGTH + " characters long");
+        this.secretKey = new SecretKeySpec(sharedSecret.getBytes(Charset.forName("UTF-8")), MAC_ALGORITHM);
+    }
+
+    @Override
+    public void afterPropertiesSet() throws Exception {
+        Assert.notNull(this.secretKey, "A replication shared secret must be configured");
+        this.serverSocket = new ServerSocket();
+        this.serverSocket.setReuseAddress(true);
+        this.serverSocket.bind(this.localAddress);
+        this.running = true;
+        this.executor.execute(new Acceptor());
+        for (final InetSocketAddress address : this.peerAddresses) {
+            final Peer peer = new Peer(address);
+            this.peers.add(peer);
+            this.executor.execute(peer);
+        }
+        final long purgeInterval = Math.max(1, this.tombstoneTimeToLive / 2);
+        this.scheduler.scheduleWithFixedDelay(new Runnable() {
+            @Override
+            public void run() {
+                purgeTombstones();
+            }
+        }, purgeInterval, purgeInterval, TimeUnit.MILLISECONDS);
+        logger.info("Replicated ticket registry node {} started with peers {}", this.nodeId, this.peerAddresses);
+    }
+
+    /**
+     * Stops replication and closes all connections.
+     *
+     * @throws Exception the exception
+     */
+    @Override
+    public void destroy() throws Exception {
+        this.running = false;
+        this.scheduler.shutdownNow();
+        IOUtils.closeQuietly(this.serverSocket);
+        for (final Peer peer : this.peers) {
+            peer.close();
+        }
+        for (final Socket socket : this.inboundConnections) {
+            IOUtils.closeQuietly(socket);
+        }
+        this.executor.shutdownNow();
+        this.executor.awaitTermination(this.retryInterval, TimeUnit.MILLISECONDS);
+        logger.info("Replicated ticket registry node {} stopped", this.nodeId);
+    }
+
+    @Override
+    public void addTicket(final Ticket ticket) {
+        logger.debug("Adding ticket [{}] to registry.", ticket.getId());
+        publish(ticket.getId(), ticket);
+    }
+
+    @Override
+    protected void updateTicket(final Ticket ticket) {
+        logger.debug("Updating ticket [{}] in registry.", ticket.getId());
+        publish(ticket.getId(), ticket);
+    }
+
+    @Override
+    public boolean deleteTicket(final String ticketId) {
+        if (ticketId == null) {
+            return false;
+        }
+        final VersionedTicket existing = this.tickets.get(ticketId);
+        if (existing == null || existing.isTombstone()) {
+            return false;
+        }
+        logger.debug("Removing ticket [{}] from registry", ticketId);
+        publish(ticketId, null);
+        return true;
+    }
+
+    @Override
+    public Ticket getTicket(final String ticketId) {
+        if (ticketId == null) {
+            return null;
+        }
+        final VersionedTicket entry = this.tickets.get(ticketId);
+        if (entry == null || entry.isTombstone()) {
+            return null;
+        }
+        return getProxiedTicketInstance(entry.ticket);
+    }
+
+    @Override
+    public Collection<Ticket> getTickets() {
+        final List<Ticket> result = new ArrayList<Ticket>(this.tickets.size());
+        for (final VersionedTicket entry : this.tickets.values()) {
+            if (!entry.isTombstone()) {
+                result.add(entry.ticket);
+            }
+        }
+        return result;
+    }
+
+    @Override
+    public int sessionCount() {
+        int count = 0;
+        for (final VersionedTicket entry : this.tickets.values()) {
+            if (entry.ticket instanceof TicketGrantingTicket) {
+                count++;
+            }
+        }
+        return count;
+    }
+
+    @Override
+    public int serviceTicketCount() {
+        int count = 0;
+        for (final VersionedTicket entry : this.tickets.values()) {
+            if (entry.ticket instanceof ServiceTicket) {
+                count++;
+            }
+        }
+        return count;
+    }
+
+    @Override
+    protected boolean needsCallback() {
+        return true;
+    }
+
+    /**
+     * @return Number of local changes handed to peers for replication.
+     */
+    public long getReplicatedChangeCount() {
+        return this.replicatedChanges.get();
+    }
+
+    /**
+     * @return Number of changes received from peers that were newer than the local copy.
+     */
+    public long getAppliedChangeCount() {
+        return this.appliedChanges.get();
+    }
+
+    /**
+     * @return Number of changes waiting to be sent, summed over all peers.
+     */
+    public int getPendingChangeCount() {
+        int count = 0;
+        for (final Peer peer : this.peers) {
+            count += peer.getPendingCount();
+        }
+        return count;
+    }
+
+    /**
+     * @return Number of tombstones of deleted tickets currently retained.
+     */
+    public int getTombstoneCount() {
+        int count = 0;
+        for (final VersionedTicket entry : this.tickets.values()) {
+            if (entry.isTombstone()) {
+                count++;
+            }
+        }
+        return count;
+    }
+
+    /**
+     * @return Number of messages from peers rejected because they failed authentication or contained
+     * disallowed classes.
+     */
+    public long getRejectedMessageCount() {
+        return this.rejectedMessages.get();
+    }
+
+    /**
+     * @return Number of times a peer was resynchronized because its queue of pending changes was full.
+     */
+    public long getResynchronizationCount() {
+        return this.resynchronizations.get();
+    }
+
+    /**
+     * Records a local change and queues it for replication to every peer.
+     *
+     * @param ticketId the ticket id
+     * @param ticket the new state of the ticket, or null if it was deleted
+     */
+    private void publish(final String ticketId, final Ticket ticket) {
+        final VersionedTicket entry = new VersionedTicket(ticketId, ticket, this.clock.incrementAndGet(), this.nodeId);
+        // A concurrent local change may already have stored a newer version, which must not be overwritten
+        // since the peers converge on it
+        if (!store(entry)) {
+            return;
+        }
+        for (final Peer peer : this.peers) {
+            peer.offer(entry);
+        }
+        this.replicatedChanges.incrementAndGet();
+    }
+
+    /**
+     * Applies a change received from a peer if it is newer than the local copy.
+     *
+     * @param incoming the change
+     */
+    private void apply(final VersionedTicket incoming) {
+        long current = this.clock.get();
+        while (incoming.version > current && !this.clock.compareAndSet(current, incoming.version)) {
+            current = this.clock.get();
+        }
+        if (store(incoming)) {
+            this.appliedChanges.incrementAndGet();
+        }
+    }
+
+    /**
+     * Stores a change unless a newer change to the same ticket is already stored.
+     *
+     * @param change the change
+     * @return true if the change was stored
+     */
+    private boolean store(final VersionedTicket change) {
+        while (true) {
+            final VersionedTicket existing = this.tickets.get(change.ticketId);
+            if (existing == null) {
+                if (this.tickets.putIfAbsent(change.ticketId, change) == null) {
+                    return true;
+                }
+            } else if (!change.isNewerThan(existing)) {
+                return false;
+            } else if (this.tickets.replace(change.ticketId, existing, change)) {
+                return true;
+            }
+        }
+    }
+
+    /**
+     * Removes tombstones older than the configured time to live.
+     */
+    void purgeTombstones() {
+        final long cutoff = System.currentTimeMillis() - this.tombstoneTimeToLive;
+        final Iterator<VersionedTicket> iterator = this.tickets.values().iterator();
+        while (iterator.hasNext()) {
+            final VersionedTicket entry = iterator.next();
+            if (entry.isTombstone() && entry.created < cutoff) {
+                iterator.remove();
+            }
+        }
+    }
+
+    /**
+     * Parses an address of the form host:port.
+     *
+     * @param address the address
+     * @return the socket address
+     */
+    private static InetSocketAddress parseAddress(final String address) {
+        final int index = address.lastIndexOf(':');
+        if (index <= 0) {
+            throw new IllegalArgumentException("Invalid replication address " + address + "; expected host:port");
+        }
+        return new InetSocketAddress(address.substring(0, index), Integer.parseInt(address.substring(index + 1)));
+    }
+
+    /**
+     * Computes the authentication code of a replication message.
+     *
+     * @param message the serialized message
+     * @return the authentication code
+     * @throws GeneralSecurityException if the MAC cannot be computed
+     */
+    private byte[] sign(final byte[] message) throws GeneralSecurityException {
+        final Mac mac = CryptoPrimitives.getMac(MAC_ALGORITHM);
+        mac.init(this.secretKey);
+        return mac.doFinal(message);
+    }
+
+    /**
+     * Determines whether a class may be deserialized from a replication message.
+     *
+     * @param clazz the class
+     * @return true if allowed
+     */
+    private static boolean isAllowed(final Class<?> clazz) {
+        if (clazz.isArray()) {
+            return isAllowed(clazz.getComponentType());
+        }
+        if (clazz.isPrimitive() || clazz == VersionedTicket.class || ALLOWED_JDK_CLASSES.contains(clazz)) {
+            return true;
+        }
+        if (Number.class.isAssignableFrom(clazz)) {
+            return clazz.getName().startsWith("java.lang.") || clazz.getName().startsWith("java.math.");
+        }
+        if (clazz.isEnum()) {
+            return clazz.getName().startsWith("org.jasig.cas.");
+        }
+        // Authentications record the types of handler failures, which are security exceptions
+        if (clazz == PreventedException.class || GeneralSecurityException.class.isAssignableFrom(clazz)) {
+            return clazz.getName().startsWith("java.security.") || clazz.getName().startsWith("javax.security.")
+                    || clazz.getName().startsWith("org.jasig.cas.");
+        }
+        for (final Class<?> type : ALLOWED_TYPES) {
+            if (type.isAssignableFrom(clazz)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * A version of a ticket, or a tombstone if the ticket is null.
+     */
+    private static final class VersionedTicket implements Serializable {
+
+        private static final long serialVersionUID = -2785932345216733452L;
+
+        private final String ticketId;
+
+        private final Ticket ticket;
+
+        private final long version;
+
+        private final String origin;
+
+        private final long created = System.currentTimeMillis();
+
+        /**
+         * Instantiates a new versioned ticket.
+         *
+         * @param ticketId the ticket id
+         * @param ticket the ticket, or null for a tombstone
+         * @param version the Lamport clock value of the change
+         * @param origin the node that made the change
+         */
+        VersionedTicket(final String ticketId, final Ticket ticket, final long version, final String origin) {
+            this.ticketId = ticketId;
+            this.ticket = ticket;
+            this.version = version;
+            this.origin = origin;
+        }
+
+        boolean isTombstone() {
+            return this.ticket == null;
+        }
+
+        /**
+         * Orders changes by version, breaking ties by origin node id.
+         *
+         * @param other the other change to the same ticket
+         * @return true if this change supersedes the other
+         */
+        boolean isNewerThan(final VersionedTicket other) {
+            if (this.version != other.version) {
+                return this.version > other.version;
+            }
+            return this.origin.compareTo(other.origin) > 0;
+        }
+    }
+
+    /**
+     * Object stream that refuses to resolve classes that are not part of ticket state.
+     */
+    private static final class ReplicationObjectInputStream extends ObjectInputStream {
+
+        /**
+         * Instantiates a new stream.
+         *
+         * @param in the underlying stream
+         * @throws IOException if the stream header cannot be read
+         */
+        ReplicationObjectInputStream(final InputStream in) throws IOException {
+            super(in);
+        }
+
+        @Override
+        protected Class<?> resolveClass(final ObjectStreamClass desc) throws IOException, ClassNotFoundException {
+            final Class<?> clazz = super.resolveClass(desc);
+            if (!isAllowed(clazz)) {
+                throw new InvalidClassException(desc.getName(), "Class is not allowed in replication messages");
+            }
+            return clazz;
+        }
+
+        @Override
+        protected Class<?> resolveProxyClass(final String[] interfaces) throws IOException {
+            throw new InvalidClassException("Proxy classes are not allowed in replication messages");
+        }
+    }
+
+    /**
+     * Accepts replication connections from peers.
+     */
+    private final class Acceptor implements Runnable {
+        @Override
+        public void run() {
+            while (running) {
+                try {
+                    final Socket socket = serverSocket.accept();
+                    executor.execute(new Receiver(socket));
+                } catch (final IOException e) {
+                    if (running) {
+                        logger.warn("Failed accepting replication connection", e);
+                    }
+                }
+            }
+        }
+    }
+
+    /**
+     * Reads replication messages from a single peer connection.
+     */
+    private final class Receiver implements Runnable {
+        private final Socket socket;
+
+        /**
+         * Instantiates a new receiver.
+         *
+         * @param socket the connection
+         */
+        Receiver(final Socket socket) {
+            this.socket = socket;
+        }
+
+        @Override
+        public void run() {
+            DataInputStream in = null;
+            inboundConnections.add(this.socket);
+            try {
+                in = new DataInputStream(new BufferedInputStream(this.socket.getInputStream()));
+                while (running) {
+                    final List<VersionedTicket> batch = read(in);
+                    for (final VersionedTicket entry : batch) {
+                        apply(entry);
+                    }
+                    logger.debug("Applied replication batch of {} changes from {}", batch.size(),
+                            this.socket.getRemoteSocketAddress());
+                }
+            } catch (final GeneralSecurityException e) {
+                rejectedMessages.incrementAndGet();
+                logger.warn("Rejected replication message from {}: {}", this.socket.getRemoteSocketAddress(),
+                        e.getMessage());
+            } catch (final InvalidClassException e) {
+                rejectedMessages.incrementAndGet();
+                logger.warn("Rejected replication message from {}: {}", this.socket.getRemoteSocketAddress(),
+                        e.getMessage());
+            } catch (final Exception e) {
+                logger.debug("Replication connection from {} closed", this.socket.getRemoteSocketAddress(), e);
+            } finally {
+                inboundConnections.remove(this.socket);
+                IOUtils.closeQuietly(in);
+                IOUtils.closeQuietly(this.socket);
+            }
+        }
+
+        /**
+         * Reads one replication message, verifying its authentication code before deserializing it.
+         *
+         * @param in the stream
+         * @return the changes in the message
+         * @throws IOException on read failure or if the message contains disallowed classes
+         * @throws GeneralSecurityException if the message is too large or fails authentication
+         * @throws ClassNotFoundException if a class in the message cannot be found
+         */
+        @SuppressWarnings("unchecked")
+        private List<VersionedTicket> read(final DataInputStream in)
+                throws IOException, GeneralSecurityException, ClassNotFoundException {
+            final int length = in.readInt();
+            if (length < 0 || length > maxMessageSize) {
+                throw new GeneralSecurityException("Invalid message length " + length);
+            }
+            final byte[] message = new byte[length];
+            in.readFully(message);
+            final byte[] code = new byte[in.readUnsignedByte()];
+            in.readFully(code);
+            if (!MessageDigest.isEqual(sign(message), code)) {
+                throw new GeneralSecurityException("Message authentication failed");
+            }
+            final ObjectInputStream objects = new ReplicationObjectInputStream(new ByteArrayInputStream(message));
+            try {
+                return (List<VersionedTicket>) objects.readObject();
+            } finally {
+                objects.close();
+            }
+        }
+    }
+
+    /**
+     * Maintains the connection to one peer and sends it batched changes.
+     */
+    private final class Peer implements Runnable {
+        private final InetSocketAddress address;
+
+        /** Latest queued change of each ticket in the order tickets were first queued; guards the fields below. */
+        private final Map<String, VersionedTicket> pending = new LinkedHashMap<String, VersionedTicket>();
+
+        /** Whether changes are queued; false while disconnected, since the next connection sends the full state. */
+        private boolean accepting;
+
+        private volatile Socket socket;
+
+        /**
+         * Instantiates a new peer.
+         *
+         * @param address the peer address
+         */
+        Peer(final InetSocketAddress address) {
+            this.address = address;
+        }
+
+        @Override
+        public void run() {
+            while (running) {
+                try {
+                    connectAndSend();
+                } catch (final InterruptedException e) {
+                    return;
+                } catch (final Exception e) {
+                    logger.debug("Lost replication connection to {}", this.address, e);
+                }
+                close();
+                // Changes made while the peer is unreachable are covered by the sync on reconnect
+                synchronized (this.pending) {
+                    this.accepting = false;
+                    this.pending.clear();
+                }
+                try {
+                    Thread.sleep(retryInterval);
+                } catch (final InterruptedException e) {
+                    return;
+                }
+            }
+        }
+
+        /**
+         * Connects to the peer, sends the full local state and then streams queued changes until the
+         * connection fails or the registry stops. An empty message is sent whenever the queue stays idle
+         * for the retry interval.
+         *
+         * @throws IOException on connection failure
+         * @throws InterruptedException if the registry is shutting down
+         */
+        private void connectAndSend() throws IOException, InterruptedException {
+            this.socket = new Socket();
+            this.socket.connect(this.address, (int) Math.min(Integer.MAX_VALUE, Math.max(retryInterval, MIN_CONNECT_TIMEOUT)));
+            this.socket.setTcpNoDelay(true);
+            final DataOutputStream out = new DataOutputStream(new BufferedOutputStream(this.socket.getOutputStream()));
+            synchronized (this.pending) {
+                this.pending.clear();
+                this.accepting = true;
+            }
+            logger.info("Connected to replication peer {}; sending full state", this.address);
+
+            final List<VersionedTicket> batch = new ArrayList<VersionedTicket>(batchSize);
+            for (final VersionedTicket entry : tickets.values()) {
+                batch.add(entry);
+                if (batch.size() >= batchSize) {
+                    send(out, batch);
+                }
+            }
+            send(out, batch);
+
+            while (running) {
+                if (!poll(batch)) {
+                    throw new IOException("More than " + maxPendingChanges + " tickets changed while sending; resynchronizing");
+                }
+                // An empty batch is a heartbeat so that a restarted peer is detected and resynchronized while idle
+                send(out, batch);
+            }
+        }
+
+        /**
+         * Queues a change unless the peer is disconnected. A change replaces any queued change to the same
+         * ticket. If too many tickets are queued, the queue is dropped and the peer is resynchronized.
+         *
+         * @param entry the change
+         */
+        void offer(final VersionedTicket entry) {
+            synchronized (this.pending) {
+                if (!this.accepting) {
+                    return;
+                }
+                if (this.pending.size() >= maxPendingChanges && !this.pending.containsKey(entry.ticketId)) {
+                    logger.warn("More than {} tickets with changes queued for peer {}; resynchronizing",
+                            maxPendingChanges, this.address);
+                    resynchronizations.incrementAndGet();
+                    this.accepting = false;
+                    this.pending.clear();
+                    this.pending.notifyAll();
+                    return;
+                }
+                this.pending.put(entry.ticketId, entry);
+                this.pending.notifyAll();
+            }
+        }
+
+        /**
+         * Waits up to the retry interval for queued changes and moves at most one batch of them into the
+         * given list.
+         *
+         * @param batch receives the changes
+         * @return false if the queue overflowed and the peer must be resynchronized
+         * @throws InterruptedException if the registry is shutting down
+         */
+        private boolean poll(final List<VersionedTicket> batch) throws InterruptedException {
+            synchronized (this.pending) {
+                if (this.pending.isEmpty() && this.accepting) {
+                    this.pending.wait(retryInterval);
+                }
+                if (!this.accepting) {
+                    return false;
+                }
+                final Iterator<VersionedTicket> iterator = this.pending.values().iterator();
+                while (iterator.hasNext() && batch.size() < batchSize) {
+                    batch.add(iterator.next());
+                    iterator.remove();
+                }
+                return true;
+            }
+        }
+
+        /**
+         * @return Number of tickets with changes queued.
+         */
+        int getPendingCount() {
+            synchronized (this.pending) {
+                return this.pending.size();
+            }
+        }
+
+        /**
+         * Writes a batch as one authenticated replication message and clears it.
+         *
+         * @param out the stream
+         * @param batch the batch, which may be empty
+         * @throws IOException on write failure
+         */
+        private void send(final DataOutputStream out, final List<VersionedTicket> batch) throws IOException {
+            final ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+            final ObjectOutputStream objects = new ObjectOutputStream(bytes);
+            objects.writeObject(new ArrayList<VersionedTicket>(batch));
+            objects.close();
+            final byte[] message = bytes.toByteArray();
+            final byte[] code;
+            try {
+                code = sign(message);
+            } catch (final GeneralSecurityException e) {
+                throw new IOException("Cannot authenticate replication message", e);
+            }
+            out.writeInt(message.length);
+            out.write(message);
+            out.writeByte(code.length);
+            out.write(code);
+            out.flush();
+            batch.clear();
+        }
+
+        /**
+         * Closes the current connection, if any.
+         */
+        void close() {
+            final Socket current = this.socket;
+            if (current != null) {
+                try {
+                    current.close();
+                } catch (final IOException e) {
+                    logger.trace("Failed closing replication connection to {}", this.address, e);
+                }
+            }
+        }
+    }
+}
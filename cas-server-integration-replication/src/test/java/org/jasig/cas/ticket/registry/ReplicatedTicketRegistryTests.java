@@ -0,0 +1,259 @@
+/*
+ * Licensed to Apereo under one or more contributor license
+ * agreements. See the NOTICE file distributed with this work
+ * for additional information regarding copyright ownership.
+ * Apereo licenses this file to you under the Apache License,
+ * Version 2.0 (the "License"); you may not use this file
+ * except in compliance with the License.  You may obtain a
+ * copy of the License at the following location:
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.jasig.cas.ticket.registry;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.ObjectOutputStream;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.net.URL;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.PriorityQueue;
+
+import javax.crypto.Mac;
+import javax.crypto.spec.SecretKeySpec;
+
+import org.jasig.cas.TestUtils;
+import org.jasig.cas.ticket.ServiceTicket;
+import org.jasig.cas.ticket.TicketGrantingTicket;
+import org.jasig.cas.ticket.TicketGrantingTicketImpl;
+import org.jasig.cas.ticket.support.NeverExpiresExpirationPolicy;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+/**
+ * Unit test for {@link ReplicatedTicketRegistry} running a three node cluster on the loopback interface.
+ *
+ * @author CAS Team
+ * @since 4.1
+ */
+public class ReplicatedTicketRegistryTests {
+
+    private static final int NODES = 3;
+
+    private static final long RETRY_INTERVAL = 100;
+
+    private static final long TIMEOUT = 10000;
+
+    private static final String SHARED_SECRET = "0123456789abcdef0123456789abcdef";
+
+    private final List<String> addresses = new ArrayList<String>(NODES);
+
+    private final ReplicatedTicketRegistry[] registries = new ReplicatedTicketRegistry[NODES];
+
+    @Before
+    public void setUp() throws Exception {
+        for (int i = 0; i < NODES; i++) {
+            this.addresses.add("127.0.0.1:" + getFreePort());
+        }
+        for (int i = 0; i < NODES; i++) {
+            this.registries[i] = startNode(i);
+        }
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        for (final ReplicatedTicketRegistry registry : this.registries) {
+            if (registry != null) {
+                registry.destroy();
+            }
+        }
+    }
+
+    @Test
+    public void testAddIsReplicatedToAllNodes() throws Exception {
+        final TicketGrantingTicket tgt = newTGT("TGT-1");
+        this.registries[0].addTicket(tgt);
+
+        assertNotNull(this.registries[0].getTicket(tgt.getId()));
+        for (int i = 1; i < NODES; i++) {
+            assertTrue(awaitPresent(this.registries[i], tgt.getId(), true));
+            assertEquals(1, this.registries[i].sessionCount());
+        }
+    }
+
+    @Test
+    public void testUpdateFromPeerIsReplicated() throws Exception {
+        final TicketGrantingTicket tgt = newTGT("TGT-2");
+        this.registries[0].addTicket(tgt);
+        assertTrue(awaitPresent(this.registries[1], tgt.getId(), true));
+
+        final TicketGrantingTicket proxied = (TicketGrantingTicket) this.registries[1].getTicket(tgt.getId());
+        final ServiceTicket st = proxied.grantServiceTicket("ST-2", TestUtils.getService(),
+                new NeverExpiresExpirationPolicy(), false);
+        this.registries[1].addTicket(st);
+
+        assertTrue(awaitPresent(this.registries[2], st.getId(), true));
+        assertEquals(1, this.registries[2].serviceTicketCount());
+        final long deadline = System.currentTimeMillis() + TIMEOUT;
+        while (((TicketGrantingTicket) this.registries[0].getTicket(tgt.getId())).getCountOfUses() != 1
+                && System.currentTimeMillis() < deadline) {
+            Thread.sleep(RETRY_INTERVAL);
+        }
+        assertEquals(1, ((TicketGrantingTicket) this.registries[0].getTicket(tgt.getId())).getCountOfUses());
+    }
+
+    @Test
+    public void testDeleteIsReplicatedToAllNodes() throws Exception {
+        final TicketGrantingTicket tgt = newTGT("TGT-3");
+        this.registries[0].addTicket(tgt);
+        assertTrue(awaitPresent(this.registries[2], tgt.getId(), true));
+
+        assertTrue(this.registries[2].deleteTicket(tgt.getId()));
+        assertFalse(this.registries[2].deleteTicket(tgt.getId()));
+        for (int i = 0; i < NODES; i++) {
+            assertTrue(awaitPresent(this.registries[i], tgt.getId(), false));
+            assertTrue(this.registries[i].getTickets().isEmpty());
+        }
+    }
+
+    @Test
+    public void testRestartedNodeIsResynchronized() throws Exception {
+        this.registries[2].destroy();
+        this.registries[2] = null;
+
+        final TicketGrantingTicket tgt = newTGT("TGT-4");
+        this.registries[0].addTicket(tgt);
+        assertTrue(awaitPresent(this.registries[1], tgt.getId(), true));
+
+        this.registries[2] = startNode(2);
+        assertTrue(awaitPresent(this.registries[2], tgt.getId(), true));
+    }
+
+    @Test
+    public void testNodeWithWrongSecretIsIgnored() throws Exception {
+        this.registries[2].destroy();
+        this.registries[2] = startNode(2, "fedcba9876543210fedcba9876543210", ReplicatedTicketRegistry.DEFAULT_TOMBSTONE_TIME_TO_LIVE);
+
+        final TicketGrantingTicket tgt = newTGT("TGT-5");
+        this.registries[2].addTicket(tgt);
+        assertTrue(awaitRejected(this.registries[0]));
+        assertTrue(awaitRejected(this.registries[1]));
+        assertNull(this.registries[0].getTicket(tgt.getId()));
+        assertNull(this.registries[1].getTicket(tgt.getId()));
+    }
+
+    @Test
+    public void testAuthenticatedMessageWithDisallowedClassIsRejected() throws Exception {
+        sendAuthenticated(new ArrayList<Object>(Collections.singletonList(new URL("http://www.example.com"))));
+    }
+
+    @Test
+    public void testAuthenticatedMessageWithDisallowedCollectionIsRejected() throws Exception {
+        sendAuthenticated(new PriorityQueue<String>(Collections.singleton("TGT-7")));
+    }
+
+    @Test
+    public void testTombstonesArePurged() throws Exception {
+        this.registries[0].destroy();
+        this.registries[0] = startNode(0, SHARED_SECRET, 500);
+
+        final TicketGrantingTicket tgt = newTGT("TGT-6");
+        this.registries[0].addTicket(tgt);
+        assertTrue(this.registries[0].deleteTicket(tgt.getId()));
+        assertEquals(1, this.registries[0].getTombstoneCount());
+
+        final long deadline = System.currentTimeMillis() + TIMEOUT;
+        while (this.registries[0].getTombstoneCount() > 0 && System.currentTimeMillis() < deadline) {
+            Thread.sleep(RETRY_INTERVAL);
+        }
+        assertEquals(0, this.registries[0].getTombstoneCount());
+    }
+
+    private void sendAuthenticated(final Object payload) throws Exception {
+        final ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        final ObjectOutputStream objects = new ObjectOutputStream(bytes);
+        objects.writeObject(payload);
+        objects.close();
+        final byte[] message = bytes.toByteArray();
+        final Mac mac = Mac.getInstance("HmacSHA256");
+        mac.init(new SecretKeySpec(SHARED_SECRET.getBytes("UTF-8"), "HmacSHA256"));
+        final byte[] code = mac.doFinal(message);
+
+        final String[] address = this.addresses.get(0).split(":");
+        final Socket socket = new Socket(address[0], Integer.parseInt(address[1]));
+        try {
+            final DataOutputStream out = new DataOutputStream(socket.getOutputStream());
+            out.writeInt(message.length);
+            out.write(message);
+            out.writeByte(code.length);
+            out.write(code);
+            out.flush();
+            assertTrue(awaitRejected(this.registries[0]));
+        } finally {
+            socket.close();
+        }
+    }
+
+    private ReplicatedTicketRegistry startNode(final int index) throws Exception {
+        return startNode(index, SHARED_SECRET, ReplicatedTicketRegistry.DEFAULT_TOMBSTONE_TIME_TO_LIVE);
+    }
+
+    private ReplicatedTicketRegistry startNode(final int index, final String secret, final long tombstoneTimeToLive)
+            throws Exception {
+        final List<String> peers = new ArrayList<String>(this.addresses);
+        final String local = peers.remove(index);
+        final ReplicatedTicketRegistry registry = new ReplicatedTicketRegistry(local, peers);
+        registry.setRetryInterval(RETRY_INTERVAL);
+        registry.setSharedSecret(secret);
+        registry.setTombstoneTimeToLive(tombstoneTimeToLive);
+        registry.afterPropertiesSet();
+        return registry;
+    }
+
+    private static boolean awaitRejected(final ReplicatedTicketRegistry registry) throws InterruptedException {
+        final long deadline = System.currentTimeMillis() + TIMEOUT;
+        while (registry.getRejectedMessageCount() == 0 && System.currentTimeMillis() < deadline) {
+            Thread.sleep(RETRY_INTERVAL);
+        }
+        return registry.getRejectedMessageCount() > 0;
+    }
+
+    private static boolean awaitPresent(final TicketRegistry registry, final String ticketId, final boolean present)
+            throws InterruptedException {
+        final long deadline = System.currentTimeMillis() + TIMEOUT;
+        while (System.currentTimeMillis() < deadline) {
+            if ((registry.getTicket(ticketId) != null) == present) {
+                return true;
+            }
+            Thread.sleep(RETRY_INTERVAL);
+        }
+        return false;
+    }
+
+    private static TicketGrantingTicket newTGT(final String id) {
+        return new TicketGrantingTicketImpl(id, TestUtils.getAuthentication(), new NeverExpiresExpirationPolicy());
+    }
+
+    private static int getFreePort() throws IOException {
+        final ServerSocket socket = new ServerSocket(0);
+        try {
+            return socket.getLocalPort();
+        } finally {
+            socket.close();
+        }
+    }
+}
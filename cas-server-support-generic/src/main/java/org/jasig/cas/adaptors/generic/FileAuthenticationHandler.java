@@ -22,6 +22,11 @@ import java.io.BufferedReader;
 import java.io.IOException;
 import java.io.InputStreamReader;
 import java.security.GeneralSecurityException;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.locks.Lock;
+import java.util.concurrent.locks.ReentrantLock;
 
 import org.apache.commons.io.IOUtils;
 import org.jasig.cas.authentication.HandlerResult;
@@ -31,8 +36,10 @@ import org.jasig.cas.authentication.handler.support.AbstractUsernamePasswordAuth
 import org.jasig.cas.authentication.principal.SimplePrincipal;
 import org.springframework.core.io.Resource;
 
+import javax.annotation.PostConstruct;
 import javax.security.auth.login.AccountNotFoundException;
 import javax.security.auth.login.FailedLoginException;
+import javax.validation.constraints.Min;
 import javax.validation.constraints.NotNull;
 
 /**
@@ -43,6 +50,12 @@ import javax.validation.constraints.NotNull;
  * there is a match, the user is authenticated. Note that the default password
  * translator is a plaintext password translator and the default separator is
  * "::" (without quotes).
+ * <p>
+ * The file is read once into an index of passwords by username. Malformed lines are reported and skipped at
+ * that time. The modification time and size of the file are checked at most once per reload interval, and the
+ * index is replaced as a whole when either has changed, so that edits within the timestamp granularity of the file
+ * system are not missed; authentications in progress keep using the previous index.
+ * </p>
  *
  * @author Scott Battaglia
  * @author Marvin S. Addison
@@ -50,6 +63,9 @@ import javax.validation.constraints.NotNull;
  */
 public class FileAuthenticationHandler extends AbstractUsernamePasswordAuthenticationHandler {
 
+    /** The default minimum time in milliseconds between checks for changes of the file. */
+    public static final long DEFAULT_RELOAD_INTERVAL = 5000;
+
     /** The default separator in the file. */
     private static final String DEFAULT_SEPARATOR = "::";
 
@@ -61,6 +77,19 @@ public class FileAuthenticationHandler extends AbstractUsernamePasswordAuthentic
     @NotNull
     private Resource fileName;
 
+    /** Minimum time in milliseconds between checks for changes of the file. */
+    @Min(0)
+    private long reloadInterval = DEFAULT_RELOAD_INTERVAL;
+
+    /** Passwords read from the file, or null until the file is read. */
+    private volatile PasswordIndex index;
+
+    /** Time after which the file is next checked for changes. */
+    private volatile long nextCheck;
+
+    /** Held while the file is read. */
+    private final Lock loadLock = new ReentrantLock();
+
     /**
      * {@inheritDoc}
      */
@@ -89,6 +118,7 @@ public class FileAuthenticationHandler extends AbstractUsernamePasswordAuthentic
      */
     public final void setFileName(final Resource fileName) {
         this.fileName = fileName;
+        this.index = null;
     }
 
     /**
@@ -96,6 +126,28 @@ public class FileAuthenticationHandler extends AbstractUsernamePasswordAuthentic
      */
     public final void setSeparator(final String separator) {
         this.separator = separator;
+        this.index = null;
+    }
+
+    /**
+     * @param reloadInterval Minimum time in milliseconds between checks of the modification time and size of the
+     *                       file.
+     *                       With 0 the file is checked on every authentication.
+     */
+    public final void setReloadInterval(final long reloadInterval) {
+        this.reloadInterval = reloadInterval;
+    }
+
+    /**
+     * Reads the file at startup. If it cannot be read, it is read again on the next authentication.
+     */
+    @PostConstruct
+    public void initialize() {
+        try {
+            getPasswordIndex();
+        } catch (final IOException e) {
+            logger.error("Failed reading {}", this.fileName, e);
+        }
     }
 
     /**
@@ -106,22 +158,153 @@ public class FileAuthenticationHandler extends AbstractUsernamePasswordAuthentic
      * @throws IOException Signals that an I/O exception has occurred.
      */
     private String getPasswordOnRecord(final String username) throws IOException {
+        return getPasswordIndex().passwords.get(username);
+    }
+
+    /**
+     * Gets the current index, reading the file the first time and again whenever it has changed.
+     *
+     * @return the index
+     * @throws IOException if the file has never been read successfully and cannot be read now
+     */
+    private PasswordIndex getPasswordIndex() throws IOException {
+        PasswordIndex current = this.index;
+        if (current == null) {
+            this.loadLock.lock();
+            try {
+                current = this.index;
+                if (current == null) {
+                    current = load();
+                    this.index = current;
+                }
+            } finally {
+                this.loadLock.unlock();
+            }
+            return current;
+        }
+
+        final long now = System.currentTimeMillis();
+        // Only one thread checks the file; others carry on with the current index
+        if (now >= this.nextCheck && this.loadLock.tryLock()) {
+            try {
+                this.nextCheck = now + this.reloadInterval;
+                if (!version().equals(current.version)) {
+                    current = load();
+                    this.index = current;
+                }
+            } catch (final IOException e) {
+                logger.error("Failed reloading {}; keeping the previously read users", this.fileName, e);
+            } finally {
+                this.loadLock.unlock();
+            }
+        }
+        return current;
+    }
+
+    /**
+     * Reads the file into a new index. Lines without a separator are reported and skipped, and only the first
+     * line of a user is used.
+     *
+     * @return the index
+     * @throws IOException Signals that an I/O exception has occurred.
+     */
+    private PasswordIndex load() throws IOException {
+        // Read the version first so that changes made while reading are picked up by the next check
+        final FileVersion version = version();
+        final Map<String, String> passwords = new HashMap<String, String>();
         BufferedReader bufferedReader = null;
         try {
             bufferedReader = new BufferedReader(new InputStreamReader(this.fileName.getInputStream()));
+            int lineNumber = 0;
             String line = bufferedReader.readLine();
             while (line != null) {
+                lineNumber++;
                 final String[] lineFields = line.split(this.separator);
-                final String userOnRecord = lineFields[0];
-                final String passOnRecord = lineFields[1];
-                if (username.equals(userOnRecord)) {
-                    return passOnRecord;
+                if (lineFields.length < 2) {
+                    logger.warn("Skipping malformed line {} of {}", lineNumber, this.fileName);
+                } else if (passwords.containsKey(lineFields[0])) {
+                    logger.warn("Skipping line {} of {}: user {} is already defined", lineNumber, this.fileName,
+                            lineFields[0]);
+                } else {
+                    passwords.put(lineFields[0], lineFields[1]);
                 }
                 line = bufferedReader.readLine();
             }
         } finally {
             IOUtils.closeQuietly(bufferedReader);
         }
-        return null;
+        logger.debug("Read {} users from {}", passwords.size(), this.fileName);
+        return new PasswordIndex(Collections.unmodifiableMap(passwords), version);
+    }
+
+    /**
+     * Gets the modification time and size of the file.
+     *
+     * @return the version; either part is 0 if it cannot be determined
+     */
+    private FileVersion version() {
+        long lastModified = 0;
+        long length = 0;
+        try {
+            lastModified = this.fileName.lastModified();
+            length = this.fileName.contentLength();
+        } catch (final IOException e) {
+            logger.trace("Cannot determine the modification time or size of {}", this.fileName, e);
+        }
+        return new FileVersion(lastModified, length);
+    }
+
+    /**
+     * Modification time and size of the file, which together identify the content that was read.
+     */
+    private static final class FileVersion {
+        private final long lastModified;
+
+        private final long length;
+
+        /**
+         * Instantiates a new version.
+         *
+         * @param lastModified the modification time of the file
+         * @param length the size of the file in bytes
+         */
+        FileVersion(final long lastModified, final long length) {
+            this.lastModified = lastModified;
+            this.length = length;
+        }
+
+        @Override
+        public boolean equals(final Object obj) {
+            if (!(obj instanceof FileVersion)) {
+                return false;
+            }
+            final FileVersion other = (FileVersion) obj;
+            return this.lastModified == other.lastModified && this.length == other.length;
+        }
+
+        @Override
+        public int hashCode() {
+            return (int) (31 * this.lastModified + this.length);
+        }
+    }
+
+    /**
+     * Passwords read from the file, by username.
+     */
+    private static final class PasswordIndex {
+        private final Map<String, String> passwords;
+
+        private final FileVersion version;
+
+        /**
+         * Instantiates a new index.
+         *
+         * @param passwords the passwords by username
+         * @param version the version of the file when it was read
+         */
+        PasswordIndex(final Map<String, String> passwords, final FileVersion version) {
+            this.passwords = passwords;
+            this.version = version;
+        }
     }
 }
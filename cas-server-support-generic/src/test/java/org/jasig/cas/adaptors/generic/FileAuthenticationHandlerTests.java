@@ -21,13 +21,18 @@ package org.jasig.cas.adaptors.generic;
 import org.jasig.cas.authentication.HttpBasedServiceCredential;
 import org.jasig.cas.authentication.PreventedException;
 import org.jasig.cas.authentication.UsernamePasswordCredential;
+import org.apache.commons.io.FileUtils;
 import org.jasig.cas.services.RegisteredServiceImpl;
 import org.junit.Before;
+import org.junit.Rule;
 import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
 import org.springframework.core.io.ClassPathResource;
+import org.springframework.core.io.FileSystemResource;
 
 import javax.security.auth.login.AccountNotFoundException;
 import javax.security.auth.login.FailedLoginException;
+import java.io.File;
 import java.net.MalformedURLException;
 import java.net.URL;
 
@@ -38,6 +43,9 @@ import static org.junit.Assert.*;
  */
 public class FileAuthenticationHandlerTests  {
 
+    @Rule
+    public final TemporaryFolder temporaryFolder = new TemporaryFolder();
+
     private FileAuthenticationHandler authenticationHandler;
 
     @Before
@@ -168,4 +176,51 @@ public class FileAuthenticationHandlerTests  {
 
         this.authenticationHandler.authenticate(c);
     }
+
+    @Test
+    public void testSkipsMalformedLines() throws Exception {
+        final File file = this.temporaryFolder.newFile("users.txt");
+        FileUtils.writeStringToFile(file, "malformed\nscott::rutgers\n");
+        this.authenticationHandler.setFileName(new FileSystemResource(file));
+
+        assertNotNull(this.authenticationHandler.authenticate(new UsernamePasswordCredential("scott", "rutgers")));
+    }
+
+    @Test
+    public void testReloadsChangedFile() throws Exception {
+        final File file = this.temporaryFolder.newFile("users.txt");
+        FileUtils.writeStringToFile(file, "scott::rutgers\n");
+        this.authenticationHandler.setFileName(new FileSystemResource(file));
+        this.authenticationHandler.setReloadInterval(0);
+        this.authenticationHandler.initialize();
+        assertNotNull(this.authenticationHandler.authenticate(new UsernamePasswordCredential("scott", "rutgers")));
+
+        FileUtils.writeStringToFile(file, "scott::rutgers2\n");
+        // Ensure a different modification time on file systems with coarse timestamps
+        assertTrue(file.setLastModified(file.lastModified() + 2000));
+        assertNotNull(this.authenticationHandler.authenticate(new UsernamePasswordCredential("scott", "rutgers2")));
+        try {
+            this.authenticationHandler.authenticate(new UsernamePasswordCredential("scott", "rutgers"));
+            fail("Should have thrown FailedLoginException.");
+        } catch (final FailedLoginException e) {
+            // The old password no longer applies
+            assertNotNull(e);
+        }
+    }
+
+    @Test
+    public void testReloadsFileChangedWithinTimestampGranularity() throws Exception {
+        final File file = this.temporaryFolder.newFile("users.txt");
+        FileUtils.writeStringToFile(file, "scott::rutgers\n");
+        final long lastModified = file.lastModified();
+        this.authenticationHandler.setFileName(new FileSystemResource(file));
+        this.authenticationHandler.setReloadInterval(0);
+        this.authenticationHandler.initialize();
+        assertNotNull(this.authenticationHandler.authenticate(new UsernamePasswordCredential("scott", "rutgers")));
+
+        FileUtils.writeStringToFile(file, "scott::rutgers\nbill::princeton\n");
+        // Same modification time as an edit within one tick of a coarse file system clock would have
+        assertTrue(file.setLastModified(lastModified));
+        assertNotNull(this.authenticationHandler.authenticate(new UsernamePasswordCredential("bill", "princeton")));
+    }
 }
@@ -18,11 +18,13 @@
  */
 package org.jasig.cas.adaptors.jdbc;
 
+import org.jasig.cas.authentication.PreventedException;
 import org.jasig.cas.authentication.handler.support.AbstractUsernamePasswordAuthenticationHandler;
 import org.springframework.jdbc.core.JdbcTemplate;
 
 import javax.sql.DataSource;
 import javax.validation.constraints.NotNull;
+import java.util.concurrent.Callable;
 
 /**
  * Abstract class for database authentication handlers.
@@ -39,6 +41,8 @@ public abstract class AbstractJdbcUsernamePasswordAuthenticationHandler extends
     @NotNull
     private DataSource dataSource;
 
+    private PasswordHashExecutor hashExecutor;
+
     /**
      * Method to set the datasource and generate a JdbcTemplate.
      *
@@ -61,4 +65,50 @@ public abstract class AbstractJdbcUsernamePasswordAuthenticationHandler extends
     protected final DataSource getDataSource() {
         return this.dataSource;
     }
+
+    /**
+     * Sets the executor on which passwords are hashed. By default they are hashed on the calling thread.
+     *
+     * @param hashExecutor the bounded hashing executor, which may be shared by several handlers.
+     */
+    public final void setHashExecutor(final PasswordHashExecutor hashExecutor) {
+        this.hashExecutor = hashExecutor;
+    }
+
+    /**
+     * Encodes a password with the configured password encoder, on the hashing executor if there is one.
+     *
+     * @param password the password
+     * @return the encoded password
+     * @throws PreventedException if the password could not be hashed
+     */
+    protected final String encodePassword(final String password) throws PreventedException {
+        return hash(new Callable<String>() {
+            @Override
+            public String call() {
+                return getPasswordEncoder().encode(password);
+            }
+        });
+    }
+
+    /**
+     * Computes a hash on the hashing executor if there is one, or else on the calling thread. Callers should not
+     * hold a database connection while hashing.
+     *
+     * @param task Task computing the hash.
+     * @return the hash
+     * @throws PreventedException if the hash could not be computed
+     */
+    protected final String hash(final Callable<String> task) throws PreventedException {
+        if (this.hashExecutor != null) {
+            return this.hashExecutor.execute(task);
+        }
+        try {
+            return task.call();
+        } catch (final RuntimeException e) {
+            throw e;
+        } catch (final Exception e) {
+            throw new PreventedException("Failed hashing password", e);
+        }
+    }
 }
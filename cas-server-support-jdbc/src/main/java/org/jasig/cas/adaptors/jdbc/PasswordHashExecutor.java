@@ -0,0 +1,210 @@
+/*
+ * Licensed to Apereo under one or more contributor license
+ * agreements. See the NOTICE file distributed with this work
+ * for additional information regarding copyright ownership.
+ * Apereo licenses this file to you under the Apache License,
+ * Version 2.0 (the "License"); you may not use this file
+ * except in compliance with the License.  You may obtain a
+ * copy of the License at the following location:
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.jasig.cas.adaptors.jdbc;
+
+import org.jasig.cas.authentication.PreventedException;
+import org.springframework.beans.factory.DisposableBean;
+
+import javax.validation.constraints.Min;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Runs password hashing for database authentication handlers on a bounded pool of threads, sized separately from
+ * the servlet container and the database pool. At most as many passwords as there are threads are hashed at once,
+ * and at most the queue capacity wait for a thread; further attempts are rejected immediately, so that a burst of
+ * logins fails fast rather than exhausting request threads on CPU-bound work. The calling thread waits for its
+ * hash, up to the configured timeout.
+ * <p>
+ * The number of hashes, rejections and timeouts, the current queue length and the average time spent queued and
+ * hashing are recorded.
+ * </p>
+ *
+ * @author CAS Team
+ * @since 4.1
+ */
+public final class PasswordHashExecutor implements DisposableBean {
+
+    /** Default maximum number of hashes waiting for a thread. */
+    public static final int DEFAULT_QUEUE_CAPACITY = 100;
+
+    /** Default time in milliseconds a caller waits for its hash. */
+    public static final long DEFAULT_TIMEOUT = 10000;
+
+    private final ThreadPoolExecutor executor;
+
+    @Min(1)
+    private long timeout = DEFAULT_TIMEOUT;
+
+    private final AtomicLong completed = new AtomicLong();
+
+    private final AtomicLong rejected = new AtomicLong();
+
+    private final AtomicLong timeouts = new AtomicLong();
+
+    private final AtomicLong queueTime = new AtomicLong();
+
+    private final AtomicLong hashTime = new AtomicLong();
+
+    /**
+     * Creates an executor with a thread per available processor and the default queue capacity.
+     */
+    public PasswordHashExecutor() {
+        this(Runtime.getRuntime().availableProcessors(), DEFAULT_QUEUE_CAPACITY);
+    }
+
+    /**
+     * Creates a new executor.
+     *
+     * @param threads Number of threads hashing passwords.
+     * @param queueCapacity Maximum number of hashes waiting for a thread.
+     */
+    public PasswordHashExecutor(final int threads, final int queueCapacity) {
+        final AtomicInteger count = new AtomicInteger();
+        this.executor = new ThreadPoolExecutor(threads, threads, 0, TimeUnit.MILLISECONDS,
+                new ArrayBlockingQueue<Runnable>(queueCapacity), new ThreadFactory() {
+            @Override
+            public Thread newThread(final Runnable r) {
+                final Thread thread = new Thread(r, "PasswordHashExecutor-" + count.incrementAndGet());
+                thread.setDaemon(true);
+                return thread;
+            }
+        });
+    }
+
+    /**
+     * @param timeout Time in milliseconds a caller waits for its hash before authentication is prevented.
+     */
+    public void setTimeout(final long timeout) {
+        this.timeout = timeout;
+    }
+
+    /**
+     * Computes a hash on the pool and waits for it.
+     *
+     * @param task Task computing the hash.
+     * @return the hash
+     * @throws PreventedException if the queue is full, the hash is not computed in time or the task fails
+     */
+    public String execute(final Callable<String> task) throws PreventedException {
+        final long submitted = System.nanoTime();
+        final Future<String> future;
+        try {
+            future = this.executor.submit(new Callable<String>() {
+                @Override
+                public String call() throws Exception {
+                    final long start = System.nanoTime();
+                    queueTime.addAndGet(start - submitted);
+                    try {
+                        return task.call();
+                    } finally {
+                        hashTime.addAndGet(System.nanoTime() - start);
+                        completed.incrementAndGet();
+                    }
+                }
+            });
+        } catch (final RejectedExecutionException e) {
+            this.rejected.incrementAndGet();
+            throw new PreventedException("Too many passwords waiting to be hashed", e);
+        }
+        try {
+            return future.get(this.timeout, TimeUnit.MILLISECONDS);
+        } catch (final TimeoutException e) {
+            future.cancel(true);
+            this.timeouts.incrementAndGet();
+            throw new PreventedException("Password not hashed within " + this.timeout + " ms", e);
+        } catch (final ExecutionException e) {
+            if (e.getCause() instanceof RuntimeException) {
+                throw (RuntimeException) e.getCause();
+            }
+            throw new PreventedException("Failed hashing password", e.getCause());
+        } catch (final InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new PreventedException("Interrupted waiting for password hash", e);
+        }
+    }
+
+    public long getCompletedCount() {
+        return this.completed.get();
+    }
+
+    public long getRejectedCount() {
+        return this.rejected.get();
+    }
+
+    public long getTimeoutCount() {
+        return this.timeouts.get();
+    }
+
+    /**
+     * @return Number of hashes currently waiting for a thread.
+     */
+    public int getQueueLength() {
+        return this.executor.getQueue().size();
+    }
+
+    /**
+     * @return Number of hashes currently being computed.
+     */
+    public int getActiveCount() {
+        return this.executor.getActiveCount();
+    }
+
+    /**
+     * @return Average time in milliseconds a hash waited for a thread.
+     */
+    public double getAverageQueueTime() {
+        return average(this.queueTime.get());
+    }
+
+    /**
+     * @return Average time in milliseconds spent computing a hash.
+     */
+    public double getAverageHashTime() {
+        return average(this.hashTime.get());
+    }
+
+    /**
+     * Shuts down the hashing threads.
+     */
+    @Override
+    public void destroy() {
+        this.executor.shutdownNow();
+    }
+
+    /**
+     * Divides a total time by the number of completed hashes.
+     *
+     * @param totalNanos the total time in nanoseconds
+     * @return the average in milliseconds, or 0 if no hash completed
+     */
+    private double average(final long totalNanos) {
+        final long count = this.completed.get();
+        return count == 0 ? 0 : (double) totalNanos / count / TimeUnit.MILLISECONDS.toNanos(1);
+    }
+}
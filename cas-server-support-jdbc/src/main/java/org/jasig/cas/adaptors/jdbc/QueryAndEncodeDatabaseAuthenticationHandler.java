@@ -19,7 +19,6 @@
 package org.jasig.cas.adaptors.jdbc;
 
 import org.apache.commons.lang3.StringUtils;
-import org.apache.shiro.crypto.hash.ConfigurableHashService;
 import org.apache.shiro.crypto.hash.DefaultHashService;
 import org.apache.shiro.crypto.hash.HashRequest;
 import org.apache.shiro.util.ByteSource;
@@ -36,6 +35,7 @@ import javax.sql.DataSource;
 import javax.validation.constraints.NotNull;
 import java.security.GeneralSecurityException;
 import java.util.Map;
+import java.util.concurrent.Callable;
 
 /**
  * A JDBC querying handler that will pull back the password and
@@ -101,6 +101,12 @@ public class QueryAndEncodeDatabaseAuthenticationHandler extends AbstractJdbcUse
      */
     protected String staticSalt;
 
+    /**
+     * Hash service shared by all authentications. It is only configured before the handler is used, and computes
+     * hashes without changing its state, so it is safe for concurrent use.
+     */
+    private final DefaultHashService hashService = new DefaultHashService();
+
     /**
      * Instantiates a new Query and encode database authentication handler.
      *
@@ -117,23 +123,17 @@ public class QueryAndEncodeDatabaseAuthenticationHandler extends AbstractJdbcUse
         setDataSource(datasource);
         this.sql = sql;
         this.algorithmName = algorithmName;
+        this.hashService.setHashAlgorithmName(algorithmName);
     }
 
     @Override
     protected final HandlerResult authenticateUsernamePasswordInternal(final UsernamePasswordCredential transformedCredential)
             throws GeneralSecurityException, PreventedException {
         final String username = getPrincipalNameTransformer().transform(transformedCredential.getUsername());
-        final String encodedPsw = this.getPasswordEncoder().encode(transformedCredential.getPassword());
 
+        final Map<String, Object> values;
         try {
-            final Map<String, Object> values = getJdbcTemplate().queryForMap(this.sql, username);
-            final String digestedPassword = digestEncodedPassword(encodedPsw, values);
-
-            if (!values.get(this.passwordFieldName).equals(digestedPassword)) {
-                throw new FailedLoginException("Password does not match value on record.");
-            }
-            return createHandlerResult(transformedCredential, new SimplePrincipal(username), null);
-
+            values = getJdbcTemplate().queryForMap(this.sql, username);
         } catch (final IncorrectResultSizeDataAccessException e) {
             if (e.getActualSize() == 0) {
                 throw new AccountNotFoundException(username + " not found with SQL query");
@@ -144,6 +144,18 @@ public class QueryAndEncodeDatabaseAuthenticationHandler extends AbstractJdbcUse
             throw new PreventedException("SQL exception while executing query for " + username, e);
         }
 
+        // The connection has been released, so the iterated hashing does not hold it
+        final String digestedPassword = hash(new Callable<String>() {
+            @Override
+            public String call() {
+                final String encodedPsw = getPasswordEncoder().encode(transformedCredential.getPassword());
+                return digestEncodedPassword(encodedPsw, values);
+            }
+        });
+        if (!values.get(this.passwordFieldName).equals(digestedPassword)) {
+            throw new FailedLoginException("Password does not match value on record.");
+        }
+        return createHandlerResult(transformedCredential, new SimplePrincipal(username), null);
     }
 
     /**
@@ -154,30 +166,24 @@ public class QueryAndEncodeDatabaseAuthenticationHandler extends AbstractJdbcUse
      * @return the digested password
      */
     protected String digestEncodedPassword(final String encodedPassword, final Map<String, Object> values) {
-        final ConfigurableHashService hashService = new DefaultHashService();
-
-        if (StringUtils.isNotBlank(this.staticSalt)) {
-            hashService.setPrivateSalt(ByteSource.Util.bytes(this.staticSalt));
-        }
-        hashService.setHashAlgorithmName(this.algorithmName);
-
         Long numOfIterations = this.numberOfIterations;
         if (values.containsKey(this.numberOfIterationsFieldName)) {
             final String longAsStr = values.get(this.numberOfIterationsFieldName).toString();
             numOfIterations = Long.valueOf(longAsStr);
         }
 
-        hashService.setHashIterations(numOfIterations.intValue());
         if (!values.containsKey(this.saltFieldName)) {
             throw new RuntimeException("Specified field name for salt does not exist in the results");
         }
 
         final String dynaSalt = values.get(this.saltFieldName).toString();
+        // The service hashes at least once, as it did when the iterations were set on the service itself
         final HashRequest request = new HashRequest.Builder()
                                     .setSalt(dynaSalt)
                                     .setSource(encodedPassword)
+                                    .setIterations(Math.max(1, numOfIterations.intValue()))
                                     .build();
-        return hashService.computeHash(request).toHex();
+        return this.hashService.computeHash(request).toHex();
     }
 
     /**
@@ -199,6 +205,7 @@ public class QueryAndEncodeDatabaseAuthenticationHandler extends AbstractJdbcUse
      */
     public final void setStaticSalt(final String staticSalt) {
         this.staticSalt = staticSalt;
+        this.hashService.setPrivateSalt(StringUtils.isNotBlank(staticSalt) ? ByteSource.Util.bytes(staticSalt) : null);
     }
 
     /**
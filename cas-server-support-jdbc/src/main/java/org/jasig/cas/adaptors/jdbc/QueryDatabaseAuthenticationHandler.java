@@ -56,12 +56,9 @@ public class QueryDatabaseAuthenticationHandler extends AbstractJdbcUsernamePass
             throws GeneralSecurityException, PreventedException {
 
         final String username = credential.getUsername();
-        final String encryptedPassword = this.getPasswordEncoder().encode(credential.getPassword());
+        final String dbPassword;
         try {
-            final String dbPassword = getJdbcTemplate().queryForObject(this.sql, String.class, username);
-            if (!dbPassword.equals(encryptedPassword)) {
-                throw new FailedLoginException("Password does not match value on record.");
-            }
+            dbPassword = getJdbcTemplate().queryForObject(this.sql, String.class, username);
         } catch (final IncorrectResultSizeDataAccessException e) {
             if (e.getActualSize() == 0) {
                 throw new AccountNotFoundException(username + " not found with SQL query");
@@ -71,6 +68,11 @@ public class QueryDatabaseAuthenticationHandler extends AbstractJdbcUsernamePass
         } catch (final DataAccessException e) {
             throw new PreventedException("SQL exception while executing query for " + username, e);
         }
+        // The connection has been released, so hashing does not hold it
+        final String encryptedPassword = encodePassword(credential.getPassword());
+        if (!dbPassword.equals(encryptedPassword)) {
+            throw new FailedLoginException("Password does not match value on record.");
+        }
         return createHandlerResult(credential, new SimplePrincipal(username), null);
     }
 
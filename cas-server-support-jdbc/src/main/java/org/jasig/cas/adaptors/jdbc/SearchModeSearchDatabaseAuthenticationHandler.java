@@ -66,7 +66,7 @@ public class SearchModeSearchDatabaseAuthenticationHandler extends AbstractJdbcU
             throws GeneralSecurityException, PreventedException {
 
         final String username = credential.getUsername();
-        final String encyptedPassword = getPasswordEncoder().encode(credential.getPassword());
+        final String encyptedPassword = encodePassword(credential.getPassword());
         final int count;
         try {
             count = getJdbcTemplate().queryForObject(this.sql, Integer.class, username, encyptedPassword);
@@ -0,0 +1,185 @@
+/*
+ * Licensed to Apereo under one or more contributor license
+ * agreements. See the NOTICE file distributed with this work
+ * for additional information regarding copyright ownership.
+ * Apereo licenses this file to you under the Apache License,
+ * Version 2.0 (the "License"); you may not use this file
+ * except in compliance with the License.  You may obtain a
+ * copy of the License at the following location:
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.jasig.cas.services;
+
+import org.springframework.dao.DataAccessException;
+import org.springframework.dao.DataIntegrityViolationException;
+import org.springframework.jdbc.BadSqlGrammarException;
+import org.springframework.jdbc.core.JdbcTemplate;
+
+import javax.sql.DataSource;
+import javax.validation.constraints.Min;
+import javax.validation.constraints.NotNull;
+import java.util.List;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Notifies peers of service registry changes through a version row in a database shared by all nodes.
+ * A change increments the version; every node reads the single row at a short interval and reloads its
+ * services when the version moved, so that only changed registries cause the services to be read.
+ * The table is created with its only row when missing:
+ * <pre>
+ * create table cas_service_registry_version (id integer primary key, registry_version bigint not null)
+ * </pre>
+ * The node that made a change also sees the version move and reloads, which reads nothing new when the
+ * registry is a {@link VersionedServiceRegistryDao}.
+ *
+ * @author CAS Team
+ * @since 4.1
+ */
+public final class JdbcServiceRegistryChangeNotifier extends AbstractServiceRegistryChangeNotifier {
+
+    /** Default name of the version table. */
+    public static final String DEFAULT_TABLE_NAME = "cas_service_registry_version";
+
+    /** Default time in milliseconds between reads of the version row. */
+    public static final long DEFAULT_POLL_INTERVAL = 5000;
+
+    private static final int ROW_ID = 1;
+
+    @NotNull
+    private final JdbcTemplate jdbcTemplate;
+
+    @NotNull
+    private String tableName = DEFAULT_TABLE_NAME;
+
+    @Min(1)
+    private long pollInterval = DEFAULT_POLL_INTERVAL;
+
+    private ScheduledExecutorService scheduler;
+
+    private Long lastVersion;
+
+    /**
+     * Creates a new notifier.
+     *
+     * @param servicesManager Services manager to reload when another node changes the registry.
+     * @param dataSource Database shared by all nodes.
+     */
+    public JdbcServiceRegistryChangeNotifier(final ReloadableServicesManager servicesManager,
+            final DataSource dataSource) {
+        super(servicesManager);
+        this.jdbcTemplate = new JdbcTemplate(dataSource);
+    }
+
+    /**
+     * @param tableName Name of the version table.
+     */
+    public void setTableName(final String tableName) {
+        this.tableName = tableName;
+    }
+
+    /**
+     * @param pollInterval Time in milliseconds between reads of the version row.
+     */
+    public void setPollInterval(final long pollInterval) {
+        this.pollInterval = pollInterval;
+    }
+
+    @Override
+    protected void start() throws Exception {
+        createVersionRowIfMissing();
+        this.scheduler = Executors.newSingleThreadScheduledExecutor(newThreadFactory("JdbcServiceRegistryChangeNotifier"));
+        this.scheduler.scheduleWithFixedDelay(new Runnable() {
+            @Override
+            public void run() {
+                poll();
+            }
+        }, this.pollInterval, this.pollInterval, TimeUnit.MILLISECONDS);
+    }
+
+    @Override
+    protected void stop() throws Exception {
+        if (this.scheduler != null) {
+            this.scheduler.shutdownNow();
+        }
+    }
+
+    /**
+     * {@inheritDoc}
+     * The version is incremented on the polling thread, outside of any transaction of the caller.
+     */
+    @Override
+    public void publishChange() {
+        this.scheduler.execute(new Runnable() {
+            @Override
+            public void run() {
+                try {
+                    jdbcTemplate.update("update " + tableName + " set registry_version = registry_version + 1 where id = ?",
+                            ROW_ID);
+                } catch (final DataAccessException e) {
+                    logger.warn("Cannot increment service registry version: {}", e.getMessage());
+                }
+            }
+        });
+    }
+
+    /**
+     * Reads the version row and reloads the services if the version moved since the previous read.
+     */
+    private void poll() {
+        try {
+            final Long version = this.jdbcTemplate.queryForObject(
+                    "select registry_version from " + this.tableName + " where id = ?", Long.class, ROW_ID);
+            if (this.lastVersion != null && !this.lastVersion.equals(version)) {
+                logger.debug("Service registry version moved from {} to {}", this.lastVersion, version);
+                reloadServices();
+            }
+            this.lastVersion = version;
+        } catch (final DataAccessException e) {
+            logger.warn("Cannot read service registry version: {}", e.getMessage());
+        }
+    }
+
+    /**
+     * Creates the version table and its row unless they exist, tolerating other nodes doing the same.
+     */
+    private void createVersionRowIfMissing() {
+        try {
+            readVersions();
+        } catch (final BadSqlGrammarException e) {
+            logger.info("Creating service registry version table {}", this.tableName);
+            try {
+                this.jdbcTemplate.execute("create table " + this.tableName
+                        + " (id integer primary key, registry_version bigint not null)");
+            } catch (final DataAccessException ex) {
+                logger.debug("Version table {} was created concurrently: {}", this.tableName, ex.getMessage());
+            }
+        }
+        if (readVersions().isEmpty()) {
+            try {
+                this.jdbcTemplate.update("insert into " + this.tableName + " (id, registry_version) values (?, 0)", ROW_ID);
+            } catch (final DataIntegrityViolationException e) {
+                logger.debug("Version row was inserted concurrently: {}", e.getMessage());
+            }
+        }
+    }
+
+    /**
+     * Reads the version row, if present.
+     *
+     * @return the version, or an empty list if the row is missing
+     */
+    private List<Long> readVersions() {
+        return this.jdbcTemplate.queryForList(
+                "select registry_version from " + this.tableName + " where id = ?", Long.class, ROW_ID);
+    }
+}
@@ -18,23 +18,67 @@
  */
 package org.jasig.cas.services;
 
+import org.hibernate.Session;
+
+import javax.persistence.CacheStoreMode;
 import javax.persistence.EntityManager;
 import javax.persistence.PersistenceContext;
 import javax.validation.constraints.NotNull;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.Set;
 
 /**
  * Implementation of the ServiceRegistryDao based on JPA.
+ * <p>
+ * Changes are found by reading the identifier and <code>last_modified</code> column of every service,
+ * so a reload of an unchanged registry runs a single query that loads no entities.
+ * </p>
+ * <p>
+ * Registered services are marked {@link javax.persistence.Cacheable} and the full load is a cacheable
+ * query in the {@value #LOAD_QUERY_REGION} region, so with the second-level and query caches enabled,
+ * for example with these Hibernate properties:
+ * </p>
+ * <pre>
+ * javax.persistence.sharedCache.mode=ENABLE_SELECTIVE
+ * hibernate.cache.use_second_level_cache=true
+ * hibernate.cache.use_query_cache=true
+ * hibernate.cache.default_cache_concurrency_strategy=read-write
+ * hibernate.cache.region.factory_class=org.hibernate.cache.ehcache.SingletonEhCacheRegionFactory
+ * </pre>
+ * <p>
+ * loads and lookups by id are served from memory until {@link #save(RegisteredService)} or
+ * {@link #delete(RegisteredService)} invalidate them. Changes written by other servers sharing the
+ * database are noticed by {@link #loadChangesSince(long)}, which evicts the cached services before
+ * reading the changed ones.
+ * </p>
  *
  * @author Scott Battaglia
  * @since 3.1
  */
-public final class JpaServiceRegistryDaoImpl implements ServiceRegistryDao {
+public final class JpaServiceRegistryDaoImpl implements VersionedServiceRegistryDao {
+
+    /** Query cache region of the full load. */
+    public static final String LOAD_QUERY_REGION = "org.jasig.cas.services.JpaServiceRegistryDaoImpl.load";
+
+    /** Maximum number of identifiers in the IN clause of a query for modified services. */
+    private static final int MAX_IDS_PER_QUERY = 500;
+
+    private static final String HINT_CACHEABLE = "org.hibernate.cacheable";
+
+    private static final String HINT_CACHE_REGION = "org.hibernate.cacheRegion";
+
+    private static final String HINT_CACHE_STORE_MODE = "javax.persistence.cache.storeMode";
 
     @NotNull
     @PersistenceContext
     private EntityManager entityManager;
 
+    private final ServiceModificationTracker modificationTracker = new ServiceModificationTracker();
+
     @Override
     public boolean delete(final RegisteredService registeredService) {
         if (this.entityManager.contains(registeredService)) {
@@ -48,9 +92,52 @@ public final class JpaServiceRegistryDaoImpl implements ServiceRegistryDao {
     @Override
     public List<RegisteredService> load() {
         return this.entityManager.createQuery("select r from AbstractRegisteredService r", RegisteredService.class)
+                .setHint(HINT_CACHEABLE, true)
+                .setHint(HINT_CACHE_REGION, LOAD_QUERY_REGION)
                 .getResultList();
     }
 
+    @Override
+    public synchronized ServiceRegistryChanges loadChangesSince(final long version) {
+        final Map<Long, Long> modificationTimes = new HashMap<Long, Long>();
+        for (final Object[] row : this.entityManager.createQuery(
+                "select r.id, r.lastModified from AbstractRegisteredService r", Object[].class).getResultList()) {
+            modificationTimes.put((Long) row[0], (Long) row[1]);
+        }
+
+        if (this.modificationTracker.hasChanged(modificationTimes)) {
+            evictCachedServices();
+        }
+
+        final Set<Long> modifiedIds = this.modificationTracker.getModifiedServiceIds(version, modificationTimes);
+        final List<RegisteredService> modified;
+        if (modifiedIds.isEmpty()) {
+            modified = Collections.emptyList();
+        } else if (modifiedIds.size() == modificationTimes.size()) {
+            modified = load();
+        } else {
+            modified = new ArrayList<RegisteredService>(modifiedIds.size());
+            final List<Long> ids = new ArrayList<Long>(modifiedIds);
+            for (int i = 0; i < ids.size(); i += MAX_IDS_PER_QUERY) {
+                modified.addAll(this.entityManager.createQuery(
+                        "select r from AbstractRegisteredService r where r.id in :ids", RegisteredService.class)
+                        .setParameter("ids", ids.subList(i, Math.min(i + MAX_IDS_PER_QUERY, ids.size())))
+                        .setHint(HINT_CACHE_STORE_MODE, CacheStoreMode.REFRESH)
+                        .getResultList());
+            }
+        }
+        return this.modificationTracker.update(modificationTimes, modified);
+    }
+
+    /**
+     * Evicts registered services and the full load from the second-level and query caches, since they may
+     * have been changed by another server.
+     */
+    private void evictCachedServices() {
+        this.entityManager.getEntityManagerFactory().getCache().evict(AbstractRegisteredService.class);
+        this.entityManager.unwrap(Session.class).getSessionFactory().getCache().evictQueryRegion(LOAD_QUERY_REGION);
+    }
+
     @Override
     public RegisteredService save(final RegisteredService registeredService) {
         final boolean isNew = registeredService.getId() == RegisteredService.INITIAL_IDENTIFIER_VALUE;
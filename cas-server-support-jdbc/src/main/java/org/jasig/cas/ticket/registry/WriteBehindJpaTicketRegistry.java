@@ -0,0 +1,825 @@
+/*
+ * Licensed to Apereo under one or more contributor license
+ * agreements. See the NOTICE file distributed with this work
+ * for additional information regarding copyright ownership.
+ * Apereo licenses this file to you under the Apache License,
+ * Version 2.0 (the "License"); you may not use this file
+ * except in compliance with the License.  You may obtain a
+ * copy of the License at the following location:
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.jasig.cas.ticket.registry;
+
+import java.util.AbstractCollection;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.ReentrantLock;
+
+import javax.persistence.EntityManager;
+import javax.persistence.PersistenceContext;
+import javax.validation.constraints.Min;
+import javax.validation.constraints.NotNull;
+
+import org.apache.commons.lang3.SerializationUtils;
+import org.jasig.cas.ticket.ServiceTicketImpl;
+import org.jasig.cas.ticket.Ticket;
+import org.jasig.cas.ticket.TicketGrantingTicket;
+import org.jasig.cas.ticket.TicketGrantingTicketImpl;
+import org.springframework.beans.factory.DisposableBean;
+import org.springframework.beans.factory.InitializingBean;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.TransactionStatus;
+import org.springframework.transaction.support.TransactionCallback;
+import org.springframework.transaction.support.TransactionCallbackWithoutResult;
+import org.springframework.transaction.support.TransactionTemplate;
+
+/**
+ * JPA ticket registry that persists mutations to the database asynchronously.
+ * <p>
+ * Every add, update and delete is queued and flushed to JPA in batched transactions by a background
+ * thread at a fixed interval. Writes for the same ticket within a batch are coalesced so that only
+ * the latest state is written. The flusher serializes a copy of each ticket it writes while holding the
+ * monitors of the ticket and its ancestors, which the ticket-granting methods synchronize on, so request
+ * threads never pay for serialization and the flusher never merges a ticket in the middle of a change.
+ * </p>
+ * <p>
+ * Reads are served from memory: first from the pending writes of this node, then from a local copy of
+ * every ticket this node has written or read within {@link #setLocalTimeToLive(long)}, and only then
+ * from the database. Deletes invalidate the local copy immediately, so a ticket deleted by this node is
+ * never served again. A ticket changed or deleted by another node may be served stale for at most the
+ * local time to live plus that node's flush delay; a time to live of zero sends every read of a flushed
+ * ticket to the database. Expired local copies are purged on every background flush.
+ * </p>
+ * <p>
+ * The staleness of the database relative to this node is bounded by {@link #setMaxStaleness(long)}:
+ * once the oldest pending write is older than that bound, or the queue is full, the writing thread
+ * flushes synchronously before returning. Queue depth, current staleness and flush statistics are
+ * exposed through getters for monitoring purposes.
+ * </p>
+ *
+ * @author CAS Team
+ * @since 4.1
+ */
+public final class WriteBehindJpaTicketRegistry extends AbstractDistributedTicketRegistry
+        implements InitializingBean, DisposableBean {
+
+    /** Default interval between background flushes in milliseconds. */
+    public static final long DEFAULT_FLUSH_INTERVAL = 1000;
+
+    /** Default maximum age of the oldest unflushed write in milliseconds. */
+    public static final long DEFAULT_MAX_STALENESS = 5000;
+
+    /** Default number of writes flushed per transaction. */
+    public static final int DEFAULT_BATCH_SIZE = 500;
+
+    /** Default maximum number of pending writes. */
+    public static final int DEFAULT_QUEUE_CAPACITY = 100000;
+
+    /** Default number of times a write is attempted before it is dropped. */
+    public static final int DEFAULT_MAX_ATTEMPTS = 3;
+
+    /** Default number of tickets read per transaction when enumerating tickets. */
+    public static final int DEFAULT_PAGE_SIZE = 1000;
+
+    /** Default time in milliseconds a ticket is served from memory before it is read from the database again. */
+    public static final long DEFAULT_LOCAL_TIME_TO_LIVE = 2000;
+
+    /** Kind of pending database operation. */
+    private enum Operation { SAVE, DELETE }
+
+    @NotNull
+    @PersistenceContext
+    private EntityManager entityManager;
+
+    /** Executes batches and reads in their own transactions. */
+    @NotNull
+    private final TransactionTemplate transactionTemplate;
+
+    /** Latest write of each ticket that has not been committed yet. */
+    private final ConcurrentMap<String, PendingWrite> pending = new ConcurrentHashMap<String, PendingWrite>();
+
+    /** Tickets recently written or read by this node, served until they expire. */
+    private final ConcurrentMap<String, LocalTicket> local = new ConcurrentHashMap<String, LocalTicket>();
+
+    /** Writes waiting to be flushed in arrival order. */
+    private final BlockingQueue<PendingWrite> queue;
+
+    /** Keeps {@link #pending} in the same order as {@link #queue}. */
+    private final Object enqueueLock = new Object();
+
+    /** Serializes flushes between the background thread and writers applying back pressure. */
+    private final ReentrantLock flushLock = new ReentrantLock();
+
+    private final ScheduledExecutorService scheduler = Executors.newSingleThreadScheduledExecutor();
+
+    @Min(1)
+    private long flushInterval = DEFAULT_FLUSH_INTERVAL;
+
+    @Min(1)
+    private long maxStaleness = DEFAULT_MAX_STALENESS;
+
+    @Min(1)
+    private int batchSize = DEFAULT_BATCH_SIZE;
+
+    @Min(1)
+    private int maxAttempts = DEFAULT_MAX_ATTEMPTS;
+
+    @Min(1)
+    private int pageSize = DEFAULT_PAGE_SIZE;
+
+    @Min(0)
+    private long localTimeToLive = DEFAULT_LOCAL_TIME_TO_LIVE;
+
+    private final AtomicLong flushedWrites = new AtomicLong();
+
+    private final AtomicLong retriedWrites = new AtomicLong();
+
+    private final AtomicLong failedWrites = new AtomicLong();
+
+    private volatile long lastFlushDuration;
+
+    /**
+     * Creates a new instance with the default queue capacity.
+     *
+     * @param transactionManager Transaction manager of the persistence unit holding tickets.
+     */
+    public WriteBehindJpaTicketRegistry(final PlatformTransactionManager transactionManager) {
+        this(transactionManager, DEFAULT_QUEUE_CAPACITY);
+    }
+
+    /**
+     * Creates a new instance.
+     *
+     * @param transactionManager Transaction manager of the persistence unit holding tickets.
+     * @param queueCapacity Maximum number of pending writes before writers flush synchronously.
+     */
+    public WriteBehindJpaTicketRegistry(final PlatformTransactionManager transactionManager,
+            final int queueCapacity) {
+        this.transactionTemplate = new TransactionTemplate(transactionManager);
+        this.queue = new LinkedBlockingQueue<PendingWrite>(queueCapacity);
+    }
+
+    /**
+     * Sets the interval between background flushes.
+     *
+     * @param flushInterval Interval in milliseconds.
+     */
+    public void setFlushInterval(final long flushInterval) {
+        this.flushInterval = flushInterval;
+    }
+
+    /**
+     * Sets the maximum age of the oldest unflushed write before writers are forced to flush.
+     *
+     * @param maxStaleness Staleness bound in milliseconds.
+     */
+    public void setMaxStaleness(final long maxStaleness) {
+        this.maxStaleness = maxStaleness;
+    }
+
+    /**
+     * Sets the maximum number of writes flushed in a single transaction.
+     *
+     * @param batchSize Batch size.
+     */
+    public void setBatchSize(final int batchSize) {
+        this.batchSize = batchSize;
+    }
+
+    /**
+     * Sets the number of flushes in which a failing write is attempted before it is dropped.
+     *
+     * @param maxAttempts Maximum number of attempts.
+     */
+    public void setMaxAttempts(final int maxAttempts) {
+        this.maxAttempts = maxAttempts;
+    }
+
+    /**
+     * Sets the number of tickets read per transaction by {@link #getTickets()}.
+     *
+     * @param pageSize Page size.
+     */
+    public void setPageSize(final int pageSize) {
+        this.pageSize = pageSize;
+    }
+
+    /**
+     * Sets how long a ticket written or read by this node is served from memory, which bounds how long
+     * changes made by other nodes may go unnoticed.
+     *
+     * @param localTimeToLive Time to live in milliseconds; zero disables the local copy.
+     */
+    public void setLocalTimeToLive(final long localTimeToLive) {
+        this.localTimeToLive = localTimeToLive;
+    }
+
+    @Override
+    public void afterPropertiesSet() throws Exception {
+        this.scheduler.scheduleWithFixedDelay(new Runnable() {
+            @Override
+            public void run() {
+                try {
+                    flush();
+                    purgeLocalTickets();
+                } catch (final Exception e) {
+                    logger.error("Failed flushing pending ticket writes", e);
+                }
+            }
+        }, this.flushInterval, this.flushInterval, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * Flushes all pending writes and stops the background flusher.
+     *
+     * @throws Exception the exception
+     */
+    @Override
+    public void destroy() throws Exception {
+        this.scheduler.shutdown();
+        this.scheduler.awaitTermination(this.flushInterval, TimeUnit.MILLISECONDS);
+        flush();
+    }
+
+    @Override
+    public void addTicket(final Ticket ticket) {
+        logger.debug("Added ticket [{}] to registry.", ticket.getId());
+        enqueue(new PendingWrite(Operation.SAVE, ticket.getId(), ticket), false);
+        keepLocally(ticket);
+    }
+
+    @Override
+    protected void updateTicket(final Ticket ticket) {
+        if (enqueue(new PendingWrite(Operation.SAVE, ticket.getId(), ticket), true)) {
+            keepLocally(ticket);
+        }
+    }
+
+    @Override
+    public boolean deleteTicket(final String ticketId) {
+        if (ticketId == null) {
+            return false;
+        }
+        logger.debug("Removing ticket [{}] from registry", ticketId);
+        final boolean removed = getRawTicket(ticketId) != null;
+        enqueue(new PendingWrite(Operation.DELETE, ticketId, null), false);
+        this.local.remove(ticketId);
+        return removed;
+    }
+
+    @Override
+    public Ticket getTicket(final String ticketId) {
+        if (ticketId == null) {
+            return null;
+        }
+        return getProxiedTicketInstance(getRawTicket(ticketId));
+    }
+
+    /**
+     * {@inheritDoc}
+     * Flushes pending writes and then reads tickets from the database lazily, {@link #setPageSize(int)}
+     * tickets per transaction, so that enumerating a large registry does not hold it in memory.
+     */
+    @Override
+    public Collection<Ticket> getTickets() {
+        flush();
+        return new AbstractCollection<Ticket>() {
+            @Override
+            public Iterator<Ticket> iterator() {
+                return new TicketPageIterator();
+            }
+
+            @Override
+            public int size() {
+                return sessionCount() + serviceTicketCount();
+            }
+        };
+    }
+
+    /**
+     * {@inheritDoc}
+     * Counts tickets committed to the database.
+     */
+    @Override
+    public int sessionCount() {
+        return count("select count(t) from TicketGrantingTicketImpl t");
+    }
+
+    /**
+     * {@inheritDoc}
+     * Counts tickets committed to the database.
+     */
+    @Override
+    public int serviceTicketCount() {
+        return count("select count(s) from ServiceTicketImpl s");
+    }
+
+    @Override
+    protected boolean needsCallback() {
+        return false;
+    }
+
+    /**
+     * Writes all pending mutations to the database in batches of at most {@link #setBatchSize(int)}.
+     * A batch that fails as a whole is retried one write per transaction so that a single bad
+     * ticket cannot block the queue. Writes that still fail are queued again for the next flush, up to
+     * {@link #setMaxAttempts(int)} times, and then dropped.
+     */
+    public void flush() {
+        this.flushLock.lock();
+        try {
+            final long start = System.currentTimeMillis();
+            final List<PendingWrite> drained = new ArrayList<PendingWrite>(this.batchSize);
+            final List<PendingWrite> failed = new ArrayList<PendingWrite>();
+            while (this.queue.drainTo(drained, this.batchSize) > 0) {
+                final Collection<PendingWrite> batch = coalesce(drained);
+                drained.clear();
+                try {
+                    writeInTransaction(batch);
+                    for (final PendingWrite write : batch) {
+                        committed(write);
+                    }
+                } catch (final Exception e) {
+                    logger.warn("Batch of {} ticket writes failed; retrying individually", batch.size(), e);
+                    for (final PendingWrite write : batch) {
+                        try {
+                            writeInTransaction(Collections.singletonList(write));
+                            committed(write);
+                        } catch (final Exception ex) {
+                            logger.warn("Failed writing ticket {} to the database", write.ticketId, ex);
+                            failed.add(write);
+                        }
+                    }
+                }
+            }
+            for (final PendingWrite write : failed) {
+                retryOrDrop(write);
+            }
+            this.lastFlushDuration = System.currentTimeMillis() - start;
+        } finally {
+            this.flushLock.unlock();
+        }
+    }
+
+    /**
+     * @return Number of writes waiting to be flushed.
+     */
+    public int getQueueDepth() {
+        return this.queue.size();
+    }
+
+    /**
+     * @return Age in milliseconds of the oldest unflushed write, or zero if the queue is empty.
+     */
+    public long getStaleness() {
+        final PendingWrite oldest = this.queue.peek();
+        return oldest == null ? 0 : System.currentTimeMillis() - oldest.enqueuedAt;
+    }
+
+    /**
+     * @return Configured bound on {@link #getStaleness()} in milliseconds.
+     */
+    public long getMaxStaleness() {
+        return this.maxStaleness;
+    }
+
+    /**
+     * @return Duration of the last completed flush in milliseconds.
+     */
+    public long getLastFlushDuration() {
+        return this.lastFlushDuration;
+    }
+
+    /**
+     * @return Total number of writes committed to the database.
+     */
+    public long getFlushedWriteCount() {
+        return this.flushedWrites.get();
+    }
+
+    /**
+     * @return Total number of failed writes that were queued again for the next flush.
+     */
+    public long getRetriedWriteCount() {
+        return this.retriedWrites.get();
+    }
+
+    /**
+     * @return Total number of writes that could not be committed and were dropped.
+     */
+    public long getFailedWriteCount() {
+        return this.failedWrites.get();
+    }
+
+    /**
+     * @return Number of tickets currently served from memory without a pending write.
+     */
+    public int getLocalTicketCount() {
+        return this.local.size();
+    }
+
+    /**
+     * Returns the ticket from the latest pending write of this node, else from the unexpired local copy,
+     * or else from the database. Pending writes are only forgotten once committed, so a ticket deleted by
+     * this node cannot be read back from the database before the delete is flushed.
+     *
+     * @param ticketId the ticket id
+     * @return the ticket or null if not found
+     */
+    private Ticket getRawTicket(final String ticketId) {
+        final PendingWrite write = this.pending.get(ticketId);
+        if (write != null) {
+            return write.ticket;
+        }
+        final LocalTicket copy = this.local.get(ticketId);
+        if (copy != null) {
+            if (!copy.isExpired()) {
+                return copy.ticket;
+            }
+            this.local.remove(ticketId, copy);
+        }
+        try {
+            final Ticket ticket = this.transactionTemplate.execute(new TransactionCallback<Ticket>() {
+                @Override
+                public Ticket doInTransaction(final TransactionStatus status) {
+                    return findTicket(ticketId);
+                }
+            });
+            // A write queued while reading is newer than what was read
+            if (ticket != null && !this.pending.containsKey(ticketId)) {
+                keepLocally(ticket);
+            }
+            return ticket;
+        } catch (final Exception e) {
+            logger.error("Error loading ticket {} from the database.", ticketId, e);
+        }
+        return null;
+    }
+
+    /**
+     * Serves the ticket from memory for the configured time to live.
+     *
+     * @param ticket the ticket
+     */
+    private void keepLocally(final Ticket ticket) {
+        if (this.localTimeToLive > 0) {
+            this.local.put(ticket.getId(), new LocalTicket(ticket, System.currentTimeMillis() + this.localTimeToLive));
+        }
+    }
+
+    /**
+     * Removes expired local copies.
+     */
+    private void purgeLocalTickets() {
+        final Iterator<LocalTicket> iterator = this.local.values().iterator();
+        while (iterator.hasNext()) {
+            if (iterator.next().isExpired()) {
+                iterator.remove();
+            }
+        }
+    }
+
+    /**
+     * Queues a write, flushing synchronously when the queue is full or the staleness bound is exceeded.
+     *
+     * @param write the write
+     * @param update whether the write updates an existing ticket, in which case it is ignored if
+     *               the ticket has been deleted in the meantime
+     * @return false if the update was ignored
+     */
+    private boolean enqueue(final PendingWrite write, final boolean update) {
+        boolean queued = false;
+        while (!queued) {
+            synchronized (this.enqueueLock) {
+                final PendingWrite previous = this.pending.get(write.ticketId);
+                if (update && previous != null && previous.operation == Operation.DELETE) {
+                    logger.debug("Ignoring update of ticket [{}] which is no longer in the registry.", write.ticketId);
+                    return false;
+                }
+                queued = this.queue.offer(write);
+                if (queued) {
+                    this.pending.put(write.ticketId, write);
+                }
+            }
+            if (!queued) {
+                logger.debug("Write-behind queue is full; flushing synchronously");
+                flush();
+            }
+        }
+        if (getStaleness() > this.maxStaleness) {
+            logger.debug("Oldest pending write exceeds staleness bound of {} ms; flushing synchronously",
+                    this.maxStaleness);
+            flush();
+        }
+        return true;
+    }
+
+    /**
+     * Records a committed write and forgets it unless the ticket has been written again since.
+     *
+     * @param write the write
+     */
+    private void committed(final PendingWrite write) {
+        this.flushedWrites.incrementAndGet();
+        this.pending.remove(write.ticketId, write);
+    }
+
+    /**
+     * Queues a failed write for the next flush, or drops it once it has been attempted
+     * {@link #setMaxAttempts(int)} times. Writes superseded by a later write of the same ticket are not retried.
+     *
+     * @param write the failed write
+     */
+    private void retryOrDrop(final PendingWrite write) {
+        synchronized (this.enqueueLock) {
+            if (this.pending.get(write.ticketId) != write) {
+                logger.debug("Failed write of ticket {} has been superseded", write.ticketId);
+                return;
+            }
+            write.attempts++;
+            if (write.attempts < this.maxAttempts && this.queue.offer(write)) {
+                this.retriedWrites.incrementAndGet();
+                return;
+            }
+            this.pending.remove(write.ticketId, write);
+        }
+        this.failedWrites.incrementAndGet();
+        logger.error("Dropped {} of ticket {} after {} failed attempts", write.operation, write.ticketId,
+                write.attempts);
+    }
+
+    /**
+     * Collapses writes to the same ticket so only the latest is written. Deletes are moved to the end
+     * of the batch so that children saved in the same batch are removed along with their parent.
+     *
+     * @param writes writes in arrival order
+     * @return coalesced writes in the order they should be applied
+     */
+    private Collection<PendingWrite> coalesce(final List<PendingWrite> writes) {
+        final Map<String, PendingWrite> saves = new LinkedHashMap<String, PendingWrite>();
+        final Map<String, PendingWrite> deletes = new LinkedHashMap<String, PendingWrite>();
+        for (final PendingWrite write : writes) {
+            if (write.operation == Operation.DELETE) {
+                saves.remove(write.ticketId);
+                deletes.put(write.ticketId, write);
+            } else {
+                deletes.remove(write.ticketId);
+                saves.put(write.ticketId, write);
+            }
+        }
+        final List<PendingWrite> batch = new ArrayList<PendingWrite>(saves.size() + deletes.size());
+        batch.addAll(saves.values());
+        batch.addAll(deletes.values());
+        return batch;
+    }
+
+    /**
+     * Applies the given writes in a single transaction.
+     *
+     * @param writes the writes
+     */
+    private void writeInTransaction(final Collection<PendingWrite> writes) {
+        this.transactionTemplate.execute(new TransactionCallbackWithoutResult() {
+            @Override
+            protected void doInTransactionWithoutResult(final TransactionStatus status) {
+                for (final PendingWrite write : writes) {
+                    if (write.operation == Operation.SAVE) {
+                        final Ticket snapshot = SerializationUtils.deserialize(serialize(write.ticket, write.ticket));
+                        entityManager.merge(snapshot);
+                    } else {
+                        final Ticket ticket = findTicket(write.ticketId);
+                        if (ticket != null) {
+                            deleteTicketAndChildren(ticket);
+                        }
+                    }
+                }
+            }
+        });
+    }
+
+    /**
+     * Serializes a ticket while holding the monitors of it and every ticket-granting ticket it descends from,
+     * which the methods changing a ticket-granting ticket synchronize on.
+     *
+     * @param ticket the ticket
+     * @param locked the next ticket whose monitor to take, or null once all are held
+     * @return the serialized ticket
+     */
+    private static byte[] serialize(final Ticket ticket, final Ticket locked) {
+        if (locked == null) {
+            return SerializationUtils.serialize(ticket);
+        }
+        synchronized (locked) {
+            return serialize(ticket, locked.getGrantingTicket());
+        }
+    }
+
+    /**
+     * Runs a count query in its own transaction.
+     *
+     * @param query the count query
+     * @return the count
+     */
+    private int count(final String query) {
+        return this.transactionTemplate.execute(new TransactionCallback<Integer>() {
+            @Override
+            public Integer doInTransaction(final TransactionStatus status) {
+                return ((Number) entityManager.createQuery(query).getSingleResult()).intValue();
+            }
+        });
+    }
+
+    /**
+     * Finds the ticket entity for the given id. Must be called within a transaction.
+     *
+     * @param ticketId the ticket id
+     * @return the ticket or null if not found
+     */
+    private Ticket findTicket(final String ticketId) {
+        if (ticketId.startsWith(TicketGrantingTicket.PREFIX)
+                || ticketId.startsWith(TicketGrantingTicket.PROXY_GRANTING_TICKET_PREFIX)) {
+            return this.entityManager.find(TicketGrantingTicketImpl.class, ticketId);
+        }
+        return this.entityManager.find(ServiceTicketImpl.class, ticketId);
+    }
+
+    /**
+     * Delete the ticket and, for a TGT, all of its descendant tickets. Must be called within a transaction.
+     *
+     * @param ticket the ticket
+     */
+    private void deleteTicketAndChildren(final Ticket ticket) {
+        if (ticket instanceof TicketGrantingTicket) {
+            final List<ServiceTicketImpl> serviceTickets = this.entityManager
+                    .createQuery("select s from ServiceTicketImpl s where s.ticketGrantingTicket.id = :id",
+                            ServiceTicketImpl.class)
+                    .setParameter("id", ticket.getId())
+                    .getResultList();
+            for (final ServiceTicketImpl s : serviceTickets) {
+                this.entityManager.remove(s);
+            }
+            final List<TicketGrantingTicketImpl> children = this.entityManager
+                    .createQuery("select t from TicketGrantingTicketImpl t where t.ticketGrantingTicket.id = :id",
+                            TicketGrantingTicketImpl.class)
+                    .setParameter("id", ticket.getId())
+                    .getResultList();
+            for (final TicketGrantingTicketImpl t : children) {
+                deleteTicketAndChildren(t);
+            }
+        }
+        this.entityManager.remove(ticket);
+    }
+
+    /**
+     * Reads ticket granting tickets and then service tickets from the database in pages ordered by id.
+     * Each page is read in its own transaction, so tickets deleted while iterating are simply skipped.
+     */
+    private final class TicketPageIterator implements Iterator<Ticket> {
+        private final List<Class<? extends Ticket>> types = new ArrayList<Class<? extends Ticket>>();
+
+        private Iterator<? extends Ticket> page = Collections.<Ticket>emptyList().iterator();
+
+        private String lastId = "";
+
+        private boolean lastPage = true;
+
+        /**
+         * Instantiates a new iterator.
+         */
+        TicketPageIterator() {
+            this.types.add(TicketGrantingTicketImpl.class);
+            this.types.add(ServiceTicketImpl.class);
+        }
+
+        @Override
+        public boolean hasNext() {
+            while (!this.page.hasNext()) {
+                if (this.lastPage) {
+                    if (this.types.isEmpty()) {
+                        return false;
+                    }
+                    this.lastId = "";
+                }
+                final List<? extends Ticket> tickets = readPage(this.types.get(0), this.lastId);
+                this.lastPage = tickets.size() < pageSize;
+                if (this.lastPage) {
+                    this.types.remove(0);
+                }
+                if (!tickets.isEmpty()) {
+                    this.lastId = tickets.get(tickets.size() - 1).getId();
+                }
+                this.page = tickets.iterator();
+            }
+            return true;
+        }
+
+        @Override
+        public Ticket next() {
+            if (!hasNext()) {
+                throw new NoSuchElementException();
+            }
+            return this.page.next();
+        }
+
+        @Override
+        public void remove() {
+            throw new UnsupportedOperationException();
+        }
+
+        /**
+         * Reads the page of tickets of the given type following the given id.
+         *
+         * @param type the ticket entity class
+         * @param afterId the id of the last ticket read, or an empty string for the first page
+         * @return the page
+         */
+        private List<? extends Ticket> readPage(final Class<? extends Ticket> type, final String afterId) {
+            return transactionTemplate.execute(new TransactionCallback<List<? extends Ticket>>() {
+                @Override
+                public List<? extends Ticket> doInTransaction(final TransactionStatus status) {
+                    return entityManager
+                            .createQuery("select t from " + type.getSimpleName() + " t where t.id > :id order by t.id", type)
+                            .setParameter("id", afterId)
+                            .setMaxResults(pageSize)
+                            .getResultList();
+                }
+            });
+        }
+    }
+
+    /**
+     * A queued database write.
+     */
+    private static final class PendingWrite {
+        private final Operation operation;
+
+        private final String ticketId;
+
+        /** Live ticket served to readers of this node until the write is committed. */
+        private final Ticket ticket;
+
+        private final long enqueuedAt = System.currentTimeMillis();
+
+        /** Number of failed attempts; only accessed while flushing. */
+        private int attempts;
+
+        /**
+         * Instantiates a new pending write.
+         *
+         * @param operation the operation
+         * @param ticketId the ticket id
+         * @param ticket the ticket to save, or null for deletes
+         */
+        PendingWrite(final Operation operation, final String ticketId, final Ticket ticket) {
+            this.operation = operation;
+            this.ticketId = ticketId;
+            this.ticket = ticket;
+        }
+    }
+
+    /**
+     * A ticket served from memory until it expires.
+     */
+    private static final class LocalTicket {
+        private final Ticket ticket;
+
+        private final long expiresAt;
+
+        /**
+         * Instantiates a new local copy.
+         *
+         * @param ticket the ticket
+         * @param expiresAt the time the copy expires
+         */
+        LocalTicket(final Ticket ticket, final long expiresAt) {
+            this.ticket = ticket;
+            this.expiresAt = expiresAt;
+        }
+
+        boolean isExpired() {
+            return System.currentTimeMillis() >= this.expiresAt;
+        }
+    }
+}
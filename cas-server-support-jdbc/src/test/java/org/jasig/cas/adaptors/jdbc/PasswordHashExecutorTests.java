@@ -0,0 +1,111 @@
+/*
+ * Licensed to Apereo under one or more contributor license
+ * agreements. See the NOTICE file distributed with this work
+ * for additional information regarding copyright ownership.
+ * Apereo licenses this file to you under the Apache License,
+ * Version 2.0 (the "License"); you may not use this file
+ * except in compliance with the License.  You may obtain a
+ * copy of the License at the following location:
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.jasig.cas.adaptors.jdbc;
+
+import org.jasig.cas.authentication.PreventedException;
+import org.junit.After;
+import org.junit.Test;
+
+import java.util.concurrent.Callable;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.*;
+
+/**
+ * Unit test for {@link PasswordHashExecutor}.
+ *
+ * @author CAS Team
+ * @since 4.1
+ */
+public class PasswordHashExecutorTests {
+
+    private final PasswordHashExecutor executor = new PasswordHashExecutor(1, 1);
+
+    private final ExecutorService callers = Executors.newCachedThreadPool();
+
+    @After
+    public void tearDown() {
+        this.executor.destroy();
+        this.callers.shutdownNow();
+    }
+
+    @Test
+    public void testHashesOnPool() throws Exception {
+        assertEquals("hashed", this.executor.execute(new Callable<String>() {
+            @Override
+            public String call() {
+                assertTrue(Thread.currentThread().getName().startsWith("PasswordHashExecutor"));
+                return "hashed";
+            }
+        }));
+        assertEquals(1, this.executor.getCompletedCount());
+    }
+
+    @Test
+    public void testRejectsWhenQueueIsFull() throws Exception {
+        final CountDownLatch started = new CountDownLatch(1);
+        final CountDownLatch release = new CountDownLatch(1);
+        final Callable<String> blocking = new Callable<String>() {
+            @Override
+            public String call() throws Exception {
+                started.countDown();
+                release.await();
+                return "hashed";
+            }
+        };
+        // One hash runs and one waits in the queue
+        for (int i = 0; i < 2; i++) {
+            this.callers.submit(new Callable<String>() {
+                @Override
+                public String call() throws Exception {
+                    return executor.execute(blocking);
+                }
+            });
+            if (i == 0) {
+                assertTrue(started.await(10, TimeUnit.SECONDS));
+            }
+        }
+        while (this.executor.getQueueLength() == 0) {
+            Thread.sleep(10);
+        }
+        try {
+            this.executor.execute(blocking);
+            fail("Should have thrown PreventedException");
+        } catch (final PreventedException e) {
+            assertEquals(1, this.executor.getRejectedCount());
+        } finally {
+            release.countDown();
+        }
+    }
+
+    @Test(expected = PreventedException.class)
+    public void testTimesOut() throws Exception {
+        this.executor.setTimeout(50);
+        this.executor.execute(new Callable<String>() {
+            @Override
+            public String call() throws Exception {
+                Thread.sleep(10000);
+                return "hashed";
+            }
+        });
+    }
+}
@@ -163,6 +163,27 @@ public class QueryAndEncodeDatabaseAuthenticationHandlerTests {
         assertEquals(r.getPrincipal().getId(), "user1");
     }
 
+    @Test
+    public void testAuthenticationSuccessfulWithHashExecutor() throws Exception {
+        final QueryAndEncodeDatabaseAuthenticationHandler q =
+                new QueryAndEncodeDatabaseAuthenticationHandler(this.dataSource, buildSql(),
+                        ALG_NAME);
+        q.setNumberOfIterationsFieldName("numIterations");
+        q.setStaticSalt(STATIC_SALT);
+        final PasswordHashExecutor executor = new PasswordHashExecutor(2, 10);
+        q.setHashExecutor(executor);
+        try {
+            for (int i = 1; i < 10; i++) {
+                final HandlerResult r = q.authenticateUsernamePasswordInternal(
+                        TestUtils.getCredentialsWithSameUsernameAndPassword("user" + i));
+                assertEquals("user" + i, r.getPrincipal().getId());
+            }
+            assertEquals(9, executor.getCompletedCount());
+        } finally {
+            executor.destroy();
+        }
+    }
+
     private String buildSql(final String where) {
         return String.format(SQL, where);
     }
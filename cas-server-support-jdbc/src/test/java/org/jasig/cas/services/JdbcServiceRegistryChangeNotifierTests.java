@@ -0,0 +1,85 @@
+/*
+ * Licensed to Apereo under one or more contributor license
+ * agreements. See the NOTICE file distributed with this work
+ * for additional information regarding copyright ownership.
+ * Apereo licenses this file to you under the Apache License,
+ * Version 2.0 (the "License"); you may not use this file
+ * except in compliance with the License.  You may obtain a
+ * copy of the License at the following location:
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.jasig.cas.services;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.test.context.ContextConfiguration;
+import org.springframework.test.context.junit4.SpringJUnit4ClassRunner;
+
+import javax.sql.DataSource;
+
+import static org.mockito.Mockito.*;
+
+/**
+ * Unit test for {@link JdbcServiceRegistryChangeNotifier}.
+ *
+ * @author CAS Team
+ * @since 4.1
+ */
+@RunWith(SpringJUnit4ClassRunner.class)
+@ContextConfiguration("classpath:jpaTestApplicationContext.xml")
+public class JdbcServiceRegistryChangeNotifierTests {
+
+    private static final int TIMEOUT = 10000;
+
+    @Autowired
+    private DataSource dataSource;
+
+    private ReloadableServicesManager peerManager;
+
+    private JdbcServiceRegistryChangeNotifier publisher;
+
+    private JdbcServiceRegistryChangeNotifier peer;
+
+    @Before
+    public void setUp() throws Exception {
+        this.publisher = newNotifier(mock(ReloadableServicesManager.class));
+        this.peerManager = mock(ReloadableServicesManager.class);
+        this.peer = newNotifier(this.peerManager);
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        this.publisher.destroy();
+        this.peer.destroy();
+    }
+
+    @Test
+    public void testPeerReloadsWhenVersionMoves() throws Exception {
+        // Let the peer read the initial version first
+        Thread.sleep(200);
+        verify(this.peerManager, never()).reload();
+
+        this.publisher.publishChange();
+        verify(this.peerManager, timeout(TIMEOUT)).reload();
+    }
+
+    private JdbcServiceRegistryChangeNotifier newNotifier(final ReloadableServicesManager servicesManager)
+            throws Exception {
+        final JdbcServiceRegistryChangeNotifier notifier =
+                new JdbcServiceRegistryChangeNotifier(servicesManager, this.dataSource);
+        notifier.setPollInterval(50);
+        notifier.afterPropertiesSet();
+        return notifier;
+    }
+}
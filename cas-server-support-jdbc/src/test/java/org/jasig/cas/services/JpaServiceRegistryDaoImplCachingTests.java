@@ -0,0 +1,164 @@
+/*
+ * Licensed to Apereo under one or more contributor license
+ * agreements. See the NOTICE file distributed with this work
+ * for additional information regarding copyright ownership.
+ * Apereo licenses this file to you under the Apache License,
+ * Version 2.0 (the "License"); you may not use this file
+ * except in compliance with the License.  You may obtain a
+ * copy of the License at the following location:
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.jasig.cas.services;
+
+import org.hibernate.Session;
+import org.hibernate.stat.Statistics;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.test.context.ContextConfiguration;
+import org.springframework.test.context.junit4.SpringJUnit4ClassRunner;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.TransactionStatus;
+import org.springframework.transaction.support.TransactionCallback;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import javax.persistence.EntityManager;
+import javax.persistence.PersistenceContext;
+import java.util.List;
+
+import static org.junit.Assert.*;
+
+/**
+ * Counts the SQL statements {@link JpaServiceRegistryDaoImpl} runs against HSQLDB with thousands of services
+ * and the second-level and query caches enabled.
+ *
+ * @author CAS Team
+ * @since 4.1
+ */
+@RunWith(SpringJUnit4ClassRunner.class)
+@ContextConfiguration("classpath:jpaTestApplicationContext.xml")
+public class JpaServiceRegistryDaoImplCachingTests {
+
+    private static final int SERVICE_COUNT = 2000;
+
+    private final Logger logger = LoggerFactory.getLogger(getClass());
+
+    @Autowired
+    private JpaServiceRegistryDaoImpl dao;
+
+    @Autowired
+    private PlatformTransactionManager txManager;
+
+    @PersistenceContext
+    private EntityManager entityManager;
+
+    private Statistics statistics;
+
+    @Before
+    public void setUp() {
+        new TransactionTemplate(this.txManager).execute(new TransactionCallback<Void>() {
+            @Override
+            public Void doInTransaction(final TransactionStatus status) {
+                for (int i = 0; i < SERVICE_COUNT; i++) {
+                    final RegexRegisteredService r = new RegexRegisteredService();
+                    r.setName("service" + i);
+                    r.setServiceId("^https://app" + i + "\\.example\\.org/.*");
+                    r.setDescription("description");
+                    r.setEvaluationOrder(i);
+                    dao.save(r);
+                }
+                statistics = entityManager.unwrap(Session.class).getSessionFactory().getStatistics();
+                return null;
+            }
+        });
+    }
+
+    @After
+    public void tearDown() {
+        new TransactionTemplate(this.txManager).execute(new TransactionCallback<Void>() {
+            @Override
+            public Void doInTransaction(final TransactionStatus status) {
+                entityManager.createQuery("delete from AbstractRegisteredService").executeUpdate();
+                return null;
+            }
+        });
+    }
+
+    @Test
+    public void testLoadAndFindAreServedFromCaches() throws Exception {
+        final List<RegisteredService> services = this.dao.load();
+        assertEquals(SERVICE_COUNT, services.size());
+
+        this.statistics.clear();
+        assertEquals(SERVICE_COUNT, this.dao.load().size());
+        assertNotNull(this.dao.findServiceById(services.get(0).getId()));
+        logger.info("Cached load and find of {} services ran {} statements", SERVICE_COUNT,
+                this.statistics.getPrepareStatementCount());
+        assertEquals(0, this.statistics.getPrepareStatementCount());
+
+        final RegisteredService changed = services.get(1).clone();
+        changed.setEvaluationOrder(-1);
+        saveInTransaction(changed);
+
+        this.statistics.clear();
+        assertEquals(-1, findInList(this.dao.load(), changed.getId()).getEvaluationOrder());
+        assertTrue(this.statistics.getPrepareStatementCount() > 0);
+    }
+
+    @Test
+    public void testReloadStatementCounts() throws Exception {
+        final ServiceRegistryChanges initial = this.dao.loadChangesSince(ServiceRegistryChanges.INITIAL_VERSION);
+        assertEquals(SERVICE_COUNT, initial.getModifiedServices().size());
+
+        this.statistics.clear();
+        final ServiceRegistryChanges unchanged = this.dao.loadChangesSince(initial.getVersion());
+        logger.info("Reloading {} unchanged services ran {} statements", SERVICE_COUNT,
+                this.statistics.getPrepareStatementCount());
+        assertTrue(unchanged.getModifiedServices().isEmpty());
+        assertEquals(1, this.statistics.getPrepareStatementCount());
+
+        final AbstractRegisteredService changed =
+                (AbstractRegisteredService) initial.getModifiedServices().iterator().next().clone();
+        changed.setDescription("changed");
+        saveInTransaction(changed);
+
+        this.statistics.clear();
+        final ServiceRegistryChanges modified = this.dao.loadChangesSince(unchanged.getVersion());
+        logger.info("Reloading {} services with one change ran {} statements", SERVICE_COUNT,
+                this.statistics.getPrepareStatementCount());
+        assertEquals(1, modified.getModifiedServices().size());
+        assertEquals("changed", modified.getModifiedServices().iterator().next().getDescription());
+        assertEquals(2, this.statistics.getPrepareStatementCount());
+    }
+
+    private void saveInTransaction(final RegisteredService service) {
+        new TransactionTemplate(this.txManager).execute(new TransactionCallback<Void>() {
+            @Override
+            public Void doInTransaction(final TransactionStatus status) {
+                dao.save(service);
+                return null;
+            }
+        });
+    }
+
+    private static RegisteredService findInList(final List<RegisteredService> services, final long id) {
+        for (final RegisteredService r : services) {
+            if (r.getId() == id) {
+                return r;
+            }
+        }
+        return null;
+    }
+}
@@ -97,4 +97,38 @@ public class JpaServiceRegistryDaoImplTests extends AbstractTransactionalJUnit4S
         assertEquals(r.getTheme(), r3.getTheme());
     }
 
+    @Test
+    public void testLoadChangesSince() {
+        final RegisteredServiceImpl r = new RegisteredServiceImpl();
+        r.setName("test");
+        r.setServiceId("testId");
+        r.setTheme("theme");
+        r.setDescription("description");
+        final RegisteredService r1 = this.dao.save(r);
+
+        final ServiceRegistryChanges initial = this.dao.loadChangesSince(ServiceRegistryChanges.INITIAL_VERSION);
+        assertEquals(1, initial.getModifiedServices().size());
+        assertTrue(initial.getServiceIds().contains(r1.getId()));
+
+        final ServiceRegistryChanges unchanged = this.dao.loadChangesSince(initial.getVersion());
+        assertTrue(unchanged.getModifiedServices().isEmpty());
+        assertEquals(initial.getVersion(), unchanged.getVersion());
+
+        final RegisteredServiceImpl other = new RegisteredServiceImpl();
+        other.setName("other");
+        other.setServiceId("otherId");
+        other.setDescription("description");
+        final RegisteredService r2 = this.dao.save(other);
+
+        final ServiceRegistryChanges added = this.dao.loadChangesSince(unchanged.getVersion());
+        assertEquals(1, added.getModifiedServices().size());
+        assertEquals(r2.getId(), added.getModifiedServices().iterator().next().getId());
+        assertEquals(2, added.getServiceIds().size());
+
+        this.dao.delete(r2);
+        final ServiceRegistryChanges deleted = this.dao.loadChangesSince(added.getVersion());
+        assertTrue(deleted.getModifiedServices().isEmpty());
+        assertEquals(1, deleted.getServiceIds().size());
+        assertTrue(deleted.getVersion() > added.getVersion());
+    }
 }
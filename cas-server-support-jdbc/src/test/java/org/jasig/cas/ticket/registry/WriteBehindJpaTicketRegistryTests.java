@@ -0,0 +1,211 @@
+/*
+ * Licensed to Apereo under one or more contributor license
+ * agreements. See the NOTICE file distributed with this work
+ * for additional information regarding copyright ownership.
+ * Apereo licenses this file to you under the Apache License,
+ * Version 2.0 (the "License"); you may not use this file
+ * except in compliance with the License.  You may obtain a
+ * copy of the License at the following location:
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.jasig.cas.ticket.registry;
+
+import org.jasig.cas.ticket.ServiceTicket;
+import org.jasig.cas.ticket.Ticket;
+import org.jasig.cas.ticket.TicketGrantingTicket;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.test.context.ContextConfiguration;
+import org.springframework.test.context.junit4.SpringJUnit4ClassRunner;
+import org.springframework.test.jdbc.JdbcTestUtils;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.TransactionStatus;
+import org.springframework.transaction.support.TransactionCallback;
+import org.springframework.transaction.support.TransactionCallbackWithoutResult;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import javax.sql.DataSource;
+import java.util.Collection;
+import java.util.HashSet;
+import java.util.Set;
+
+import static org.junit.Assert.*;
+
+/**
+ * Unit test for {@link WriteBehindJpaTicketRegistry} class.
+ *
+ * @author CAS Team
+ * @since 4.1
+ */
+@RunWith(SpringJUnit4ClassRunner.class)
+@ContextConfiguration("classpath:jpaTestApplicationContext.xml")
+public class WriteBehindJpaTicketRegistryTests {
+
+    @Autowired
+    private PlatformTransactionManager txManager;
+
+    @Autowired
+    private JpaTicketRegistry jpaTicketRegistry;
+
+    @Autowired
+    private WriteBehindJpaTicketRegistry writeBehindTicketRegistry;
+
+    private JdbcTemplate jdbcTemplate;
+
+    @Autowired
+    public void setDataSource(final DataSource dataSource) {
+        this.jdbcTemplate = new JdbcTemplate(dataSource);
+    }
+
+    @Before
+    public void setUp() {
+        this.writeBehindTicketRegistry.flush();
+        JdbcTestUtils.deleteFromTables(this.jdbcTemplate, "SERVICETICKET");
+        JdbcTestUtils.deleteFromTables(this.jdbcTemplate, "TICKETGRANTINGTICKET");
+    }
+
+    @Test
+    public void testWritesAreVisibleBeforeFlush() {
+        final TicketGrantingTicket tgt = JpaTicketRegistryTests.newTGT();
+        this.writeBehindTicketRegistry.addTicket(tgt);
+
+        assertNotNull(this.writeBehindTicketRegistry.getTicket(tgt.getId()));
+        assertEquals(1, this.writeBehindTicketRegistry.getQueueDepth());
+        assertNull(getPersistedTicket(tgt.getId()));
+
+        this.writeBehindTicketRegistry.flush();
+        assertEquals(0, this.writeBehindTicketRegistry.getQueueDepth());
+        assertEquals(0, this.writeBehindTicketRegistry.getStaleness());
+        assertNotNull(getPersistedTicket(tgt.getId()));
+    }
+
+    @Test
+    public void testUpdatesAndDeletesAreFlushed() {
+        final TicketGrantingTicket tgt = JpaTicketRegistryTests.newTGT();
+        this.writeBehindTicketRegistry.addTicket(tgt);
+        final TicketGrantingTicket proxied =
+                (TicketGrantingTicket) this.writeBehindTicketRegistry.getTicket(tgt.getId());
+        final ServiceTicket st = JpaTicketRegistryTests.newST(proxied);
+        this.writeBehindTicketRegistry.addTicket(st);
+        this.writeBehindTicketRegistry.flush();
+
+        assertNotNull(getPersistedTicket(st.getId()));
+        assertEquals(1, ((TicketGrantingTicket) getPersistedTicket(tgt.getId())).getCountOfUses());
+
+        assertTrue(this.writeBehindTicketRegistry.deleteTicket(tgt.getId()));
+        assertNull(this.writeBehindTicketRegistry.getTicket(tgt.getId()));
+        this.writeBehindTicketRegistry.flush();
+
+        assertNull(getPersistedTicket(tgt.getId()));
+        assertNull(getPersistedTicket(st.getId()));
+    }
+
+    @Test
+    public void testMissingTicketsAreLoadedFromDatabase() {
+        final TicketGrantingTicket tgt = JpaTicketRegistryTests.newTGT();
+        new TransactionTemplate(this.txManager).execute(new TransactionCallbackWithoutResult() {
+            @Override
+            protected void doInTransactionWithoutResult(final TransactionStatus status) {
+                jpaTicketRegistry.addTicket(tgt);
+            }
+        });
+
+        final Ticket loaded = this.writeBehindTicketRegistry.getTicket(tgt.getId());
+        assertNotNull(loaded);
+        assertEquals(tgt.getId(), loaded.getId());
+        assertTrue(this.writeBehindTicketRegistry.sessionCount() > 0);
+        this.writeBehindTicketRegistry.deleteTicket(tgt.getId());
+        this.writeBehindTicketRegistry.flush();
+    }
+
+    @Test
+    public void testFlushedTicketsAreServedFromMemoryUntilTheyExpire() throws Exception {
+        this.writeBehindTicketRegistry.setLocalTimeToLive(200);
+        try {
+            final TicketGrantingTicket tgt = JpaTicketRegistryTests.newTGT();
+            this.writeBehindTicketRegistry.addTicket(tgt);
+            this.writeBehindTicketRegistry.flush();
+
+            // Another node deletes the ticket
+            JdbcTestUtils.deleteFromTables(this.jdbcTemplate, "TICKETGRANTINGTICKET");
+            assertNotNull(this.writeBehindTicketRegistry.getTicket(tgt.getId()));
+
+            Thread.sleep(300);
+            assertNull(this.writeBehindTicketRegistry.getTicket(tgt.getId()));
+        } finally {
+            this.writeBehindTicketRegistry.setLocalTimeToLive(WriteBehindJpaTicketRegistry.DEFAULT_LOCAL_TIME_TO_LIVE);
+        }
+    }
+
+    @Test
+    public void testDeletedTicketsAreNotServedFromMemory() {
+        final TicketGrantingTicket tgt = JpaTicketRegistryTests.newTGT();
+        this.writeBehindTicketRegistry.addTicket(tgt);
+        this.writeBehindTicketRegistry.flush();
+        assertNotNull(this.writeBehindTicketRegistry.getTicket(tgt.getId()));
+
+        assertTrue(this.writeBehindTicketRegistry.deleteTicket(tgt.getId()));
+        this.writeBehindTicketRegistry.flush();
+        assertNull(this.writeBehindTicketRegistry.getTicket(tgt.getId()));
+    }
+
+    @Test
+    public void testLatestStateIsFlushed() {
+        final TicketGrantingTicket tgt = JpaTicketRegistryTests.newTGT();
+        this.writeBehindTicketRegistry.addTicket(tgt);
+        final TicketGrantingTicket proxied =
+                (TicketGrantingTicket) this.writeBehindTicketRegistry.getTicket(tgt.getId());
+        JpaTicketRegistryTests.newST(proxied);
+        JpaTicketRegistryTests.newST(proxied);
+        assertEquals(3, this.writeBehindTicketRegistry.getQueueDepth());
+        this.writeBehindTicketRegistry.flush();
+
+        assertEquals(2, getPersistedTicket(tgt.getId()).getCountOfUses());
+    }
+
+    @Test
+    public void testTicketsAreEnumeratedInPages() {
+        this.writeBehindTicketRegistry.setPageSize(2);
+        try {
+            final TicketGrantingTicket tgt = JpaTicketRegistryTests.newTGT();
+            this.writeBehindTicketRegistry.addTicket(tgt);
+            for (int i = 0; i < 4; i++) {
+                this.writeBehindTicketRegistry.addTicket(JpaTicketRegistryTests.newTGT());
+            }
+            final TicketGrantingTicket proxied =
+                    (TicketGrantingTicket) this.writeBehindTicketRegistry.getTicket(tgt.getId());
+            this.writeBehindTicketRegistry.addTicket(JpaTicketRegistryTests.newST(proxied));
+
+            final Collection<Ticket> tickets = this.writeBehindTicketRegistry.getTickets();
+            assertEquals(0, this.writeBehindTicketRegistry.getQueueDepth());
+            assertEquals(6, tickets.size());
+            final Set<String> ids = new HashSet<String>();
+            for (final Ticket ticket : tickets) {
+                ids.add(ticket.getId());
+            }
+            assertEquals(6, ids.size());
+        } finally {
+            this.writeBehindTicketRegistry.setPageSize(WriteBehindJpaTicketRegistry.DEFAULT_PAGE_SIZE);
+        }
+    }
+
+    private Ticket getPersistedTicket(final String ticketId) {
+        return new TransactionTemplate(this.txManager).execute(new TransactionCallback<Ticket>() {
+            @Override
+            public Ticket doInTransaction(final TransactionStatus status) {
+                return jpaTicketRegistry.getTicket(ticketId);
+            }
+        });
+    }
+}
@@ -20,6 +20,7 @@ package org.jasig.cas.adaptors.ldap.remote;
 
 import org.jasig.cas.authentication.AbstractAuthenticationHandler;
 import org.jasig.cas.authentication.Credential;
+import org.jasig.cas.authentication.CredentialTypeAuthenticationHandler;
 import org.jasig.cas.authentication.HandlerResult;
 import org.jasig.cas.authentication.principal.SimplePrincipal;
 import org.slf4j.Logger;
@@ -39,7 +40,8 @@ import java.security.GeneralSecurityException;
  * @since 3.2.1
  *
  */
-public final class RemoteAddressAuthenticationHandler extends AbstractAuthenticationHandler {
+public final class RemoteAddressAuthenticationHandler extends AbstractAuthenticationHandler
+        implements CredentialTypeAuthenticationHandler {
 
     private static final int HEX_RIGHT_SHIFT_COEFFICIENT = 0xff;
     private final Logger logger = LoggerFactory.getLogger(getClass());
@@ -71,6 +73,11 @@ public final class RemoteAddressAuthenticationHandler extends AbstractAuthentica
         return credential instanceof RemoteAddressCredential;
     }
 
+    @Override
+    public Class<? extends Credential> getSupportedCredentialType() {
+        return RemoteAddressCredential.class;
+    }
+
     /**
      * The following code is from the Apache Software Foundations's Lenya project
      * See InetAddressUtil.java
@@ -19,7 +19,9 @@
 package org.jasig.cas.adaptors.ldap.services;
 
 import org.jasig.cas.services.RegisteredService;
-import org.jasig.cas.services.ServiceRegistryDao;
+import org.jasig.cas.services.ServiceModificationTracker;
+import org.jasig.cas.services.ServiceRegistryChanges;
+import org.jasig.cas.services.VersionedServiceRegistryDao;
 import org.jasig.cas.util.LdapUtils;
 import org.ldaptive.AddOperation;
 import org.ldaptive.AddRequest;
@@ -41,23 +43,45 @@ import org.ldaptive.SearchFilter;
 import org.ldaptive.SearchOperation;
 import org.ldaptive.SearchRequest;
 import org.ldaptive.SearchResult;
+import org.ldaptive.control.util.PagedResultsClient;
+import org.ldaptive.pool.PooledConnectionFactory;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import javax.annotation.PostConstruct;
+import javax.validation.constraints.Min;
 import javax.validation.constraints.NotNull;
 import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
 import java.util.LinkedList;
 import java.util.List;
+import java.util.Map;
+import java.util.Set;
 
 /**
  * Implementation of the ServiceRegistryDao interface which stores the services in a LDAP Directory.
+ * <p>
+ * Changes are found by reading the identifier and the operational change attribute, by default
+ * <code>modifyTimestamp</code>, of every service entry; only entries whose value differs from the previous
+ * load are read in full, with a filter on the change attribute. Directories that record changes more finely
+ * than the one-second resolution of <code>modifyTimestamp</code> may be configured to use another ordered
+ * attribute, such as <code>entryCSN</code> on OpenLDAP.
+ * </p>
+ * <p>
+ * Searches that may return every service entry use the paged results control, so that large registries are
+ * not cut off by server size limits. The connection factory should be a {@link PooledConnectionFactory}, so
+ * that reloads reuse bound connections instead of connecting and binding for every operation.
+ * </p>
  *
  * @author Misagh Moayyed
  * @author Marvin S. Addison
  * @since 4.0.0
  */
-public final class LdapServiceRegistryDao implements ServiceRegistryDao {
+public final class LdapServiceRegistryDao implements VersionedServiceRegistryDao {
+
+    /** Default number of entries requested per page. */
+    public static final int DEFAULT_PAGE_SIZE = 500;
 
     private final Logger logger = LoggerFactory.getLogger(this.getClass());
 
@@ -76,6 +100,13 @@ public final class LdapServiceRegistryDao implements ServiceRegistryDao {
     @NotNull
     private SearchRequest searchRequest;
 
+    @NotNull
+    private String changeAttribute = "modifyTimestamp";
+
+    @Min(0)
+    private int pageSize = DEFAULT_PAGE_SIZE;
+
+    private final ServiceModificationTracker modificationTracker = new ServiceModificationTracker();
 
     /**
      * Inits the dao with the search filter and load filters.
@@ -84,6 +115,9 @@ public final class LdapServiceRegistryDao implements ServiceRegistryDao {
     public void init() {
         this.searchFilter = '(' + this.ldapServiceMapper.getIdAttribute() +  "={0})";
         this.loadFilter = "(objectClass=" + this.ldapServiceMapper.getObjectClass() + ')';
+        if (!(this.connectionFactory instanceof PooledConnectionFactory)) {
+            logger.warn("Service registry connection factory is not pooled; every operation opens and binds a new connection");
+        }
     }
 
     @Override
@@ -120,27 +154,18 @@ public final class LdapServiceRegistryDao implements ServiceRegistryDao {
             final Response<SearchResult> response = searchForServiceById(searchConnection, rs.getId());
             if (hasResults(response)) {
                 final String currentDn = response.getResult().getEntry().getDn();
+                final ModifyOperation operation = new ModifyOperation(searchConnection);
 
-                Connection modifyConnection = null;
-                try {
-                    modifyConnection = getConnection();
-                    final ModifyOperation operation = new ModifyOperation(searchConnection);
-
-                    final List<AttributeModification> mods = new ArrayList<AttributeModification>();
+                final List<AttributeModification> mods = new ArrayList<AttributeModification>();
 
-                    final LdapEntry entry = this.ldapServiceMapper.mapFromRegisteredService(this.searchRequest.getBaseDn(), rs);
-                    for (final LdapAttribute attr : entry.getAttributes()) {
-                        if (!attr.getName().equals(this.ldapServiceMapper.getIdAttribute())) {
-                            mods.add(new AttributeModification(AttributeModificationType.REPLACE, attr));
-                        }
+                final LdapEntry entry = this.ldapServiceMapper.mapFromRegisteredService(this.searchRequest.getBaseDn(), rs);
+                for (final LdapAttribute attr : entry.getAttributes()) {
+                    if (!attr.getName().equals(this.ldapServiceMapper.getIdAttribute())) {
+                        mods.add(new AttributeModification(AttributeModificationType.REPLACE, attr));
                     }
-                    final ModifyRequest request = new ModifyRequest(currentDn, mods.toArray(new AttributeModification[]{}));
-                    operation.execute(request);
-                }catch (final LdapException e) {
-                    logger.error(e.getMessage(), e);
-                } finally {
-                    LdapUtils.closeConnection(modifyConnection);
                 }
+                final ModifyRequest request = new ModifyRequest(currentDn, mods.toArray(new AttributeModification[]{}));
+                operation.execute(request);
             }
         } catch (final LdapException e) {
             logger.error(e.getMessage(), e);
@@ -180,7 +205,7 @@ public final class LdapServiceRegistryDao implements ServiceRegistryDao {
         try {
             connection = getConnection();
             final Response<SearchResult> response =
-                    executeSearchOperation(connection, new SearchFilter(this.loadFilter));
+                    executePagedSearch(connection, newRequest(new SearchFilter(this.loadFilter)));
             if (hasResults(response)) {
                 for (final LdapEntry entry : response.getResult().getEntries()) {
                     final RegisteredService svc = this.ldapServiceMapper.mapToRegisteredService(entry);
@@ -195,6 +220,51 @@ public final class LdapServiceRegistryDao implements ServiceRegistryDao {
         return list;
     }
 
+    @Override
+    public synchronized ServiceRegistryChanges loadChangesSince(final long version) {
+        Connection connection = null;
+        try {
+            connection = getConnection();
+            final Map<Long, String> changeValues = new HashMap<Long, String>();
+            final SearchRequest changeRequest = newRequest(new SearchFilter(this.loadFilter));
+            changeRequest.setReturnAttributes(this.ldapServiceMapper.getIdAttribute(), this.changeAttribute);
+            changeRequest.setBinaryAttributes();
+            final Response<SearchResult> changeResponse = executePagedSearch(connection, changeRequest);
+            if (hasResults(changeResponse)) {
+                for (final LdapEntry entry : changeResponse.getResult().getEntries()) {
+                    changeValues.put(getId(entry), LdapUtils.getString(entry, this.changeAttribute));
+                }
+            }
+
+            final Set<Long> modifiedIds = this.modificationTracker.getModifiedServiceIds(version, changeValues);
+            if (modifiedIds.isEmpty()) {
+                return this.modificationTracker.update(changeValues, Collections.<RegisteredService>emptyList());
+            }
+
+            final List<RegisteredService> modified = new ArrayList<RegisteredService>(modifiedIds.size());
+            final Response<SearchResult> response =
+                    executePagedSearch(connection, newRequest(newModifiedSinceFilter(modifiedIds, changeValues)));
+            if (hasResults(response)) {
+                for (final LdapEntry entry : response.getResult().getEntries()) {
+                    if (modifiedIds.contains(getId(entry))) {
+                        final RegisteredService svc = this.ldapServiceMapper.mapToRegisteredService(entry);
+                        if (svc != null) {
+                            modified.add(svc);
+                        }
+                    }
+                }
+            }
+            logger.debug("Read {} of {} service entries changed since version {}", modified.size(), changeValues.size(),
+                    version);
+            return this.modificationTracker.update(changeValues, modified);
+        } catch (final LdapException e) {
+            logger.error(e.getMessage(), e);
+        } finally {
+            LdapUtils.closeConnection(connection);
+        }
+        return this.modificationTracker.unchanged(version);
+    }
+
     @Override
     public RegisteredService findServiceById(final long id) {
         Connection connection = null;
@@ -247,6 +317,58 @@ public final class LdapServiceRegistryDao implements ServiceRegistryDao {
         return searchOperation.execute(request);
     }
 
+    /**
+     * Executes a search that may return many entries, one page at a time when paging is enabled.
+     *
+     * @param connection the connection
+     * @param request the search request
+     * @return the response combining all pages
+     * @throws LdapException the ldap exception
+     */
+    private Response<SearchResult> executePagedSearch(final Connection connection, final SearchRequest request)
+            throws LdapException {
+
+        logger.debug("Using search request {} with page size {}", request, this.pageSize);
+        if (this.pageSize > 0) {
+            return new PagedResultsClient(connection, this.pageSize).executeToCompletion(request);
+        }
+        return new SearchOperation(connection).execute(request);
+    }
+
+    /**
+     * Builds a filter matching the service entries changed at or after the earliest change value among the
+     * modified services, or all service entries if any of them has no change value.
+     *
+     * @param modifiedIds the identifiers of the modified services
+     * @param changeValues the change attribute value of each service
+     * @return the search filter
+     */
+    private SearchFilter newModifiedSinceFilter(final Set<Long> modifiedIds, final Map<Long, String> changeValues) {
+        String earliest = null;
+        for (final Long id : modifiedIds) {
+            final String value = changeValues.get(id);
+            if (value == null) {
+                return new SearchFilter(this.loadFilter);
+            }
+            if (earliest == null || value.compareTo(earliest) < 0) {
+                earliest = value;
+            }
+        }
+        final SearchFilter filter = new SearchFilter("(&" + this.loadFilter + '(' + this.changeAttribute + ">={0}))");
+        filter.setParameter(0, earliest);
+        return filter;
+    }
+
+    /**
+     * Gets the service identifier of an entry the same way the default mapper does.
+     *
+     * @param entry the entry
+     * @return the service identifier
+     */
+    private long getId(final LdapEntry entry) {
+        return LdapUtils.getLong(entry, this.ldapServiceMapper.getIdAttribute(), Long.valueOf(entry.getDn().hashCode()));
+    }
+
     public void setConnectionFactory(@NotNull final ConnectionFactory factory) {
         this.connectionFactory = factory;
     }
@@ -259,6 +381,21 @@ public final class LdapServiceRegistryDao implements ServiceRegistryDao {
         this.searchRequest = request;
     }
 
+    /**
+     * @param changeAttribute Ordered operational attribute that changes whenever a service entry is modified.
+     */
+    public void setChangeAttribute(@NotNull final String changeAttribute) {
+        this.changeAttribute = changeAttribute;
+    }
+
+    /**
+     * @param pageSize Number of entries requested per page when loading services, or 0 to disable paging for
+     * directories that do not support the paged results control.
+     */
+    public void setPageSize(final int pageSize) {
+        this.pageSize = pageSize;
+    }
+
     /**
      * Checks to see if response has a result.
      *
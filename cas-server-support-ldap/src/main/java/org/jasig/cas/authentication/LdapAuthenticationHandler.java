@@ -23,14 +23,27 @@ import org.jasig.cas.authentication.handler.support.AbstractUsernamePasswordAuth
 import org.jasig.cas.authentication.principal.Principal;
 import org.jasig.cas.authentication.principal.SimplePrincipal;
 import org.jasig.cas.authentication.support.LdapPasswordPolicyConfiguration;
+import org.jasig.cas.util.LdapUtils;
+import org.ldaptive.BindOperation;
+import org.ldaptive.BindRequest;
+import org.ldaptive.Connection;
+import org.ldaptive.ConnectionFactory;
 import org.ldaptive.LdapAttribute;
 import org.ldaptive.LdapEntry;
 import org.ldaptive.LdapException;
+import org.ldaptive.Response;
+import org.ldaptive.ResultCode;
 import org.ldaptive.ReturnAttributes;
+import org.ldaptive.SearchFilter;
+import org.ldaptive.SearchOperation;
+import org.ldaptive.SearchRequest;
+import org.ldaptive.SearchResult;
+import org.ldaptive.SearchScope;
 import org.ldaptive.auth.AuthenticationRequest;
 import org.ldaptive.auth.AuthenticationResponse;
 import org.ldaptive.auth.AuthenticationResultCode;
 import org.ldaptive.auth.Authenticator;
+import org.springframework.util.StringUtils;
 
 import javax.annotation.PostConstruct;
 import javax.security.auth.login.AccountNotFoundException;
@@ -44,6 +57,8 @@ import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
 
 /**
  * LDAP authentication handler that uses the ldaptive <code>Authenticator</code> component underneath.
@@ -55,6 +70,14 @@ import java.util.Set;
  *     <ol>{@link #setPrincipalIdAttribute(String)}</ol>
  *     <ol>{@link #setPrincipalAttributeMap(java.util.Map)}</ol>
  * </ul>
+ * <p>
+ * When both a {@link #setSearchConnectionFactory(ConnectionFactory) search connection factory} and a
+ * {@link #setBindConnectionFactory(ConnectionFactory) bind connection factory} are set, the handler runs in
+ * single search mode instead: one search resolves the DN of the user and fetches the entry attributes, and the
+ * credential is checked by a bind on a connection of the separate bind pool. This takes two round trips per
+ * authentication. The authenticator is still used when a password policy is configured, since account state
+ * handling needs its response. The latency of each phase is recorded.
+ * </p>
  *
  * @author Marvin S. Addison
  * @since 4.0.0
@@ -86,6 +109,30 @@ public class LdapAuthenticationHandler extends AbstractUsernamePasswordAuthentic
     /** Set of LDAP attributes fetch from an entry as part of the authentication process. */
     private String[] authenticatedEntryAttributes = ReturnAttributes.NONE.value();
 
+    /** Connection factory on which single search mode resolves user entries. */
+    private ConnectionFactory searchConnectionFactory;
+
+    /** Connection factory, preferably a dedicated pool, on which single search mode binds users. */
+    private ConnectionFactory bindConnectionFactory;
+
+    /** Base DN of user entries in single search mode. */
+    private String baseDn;
+
+    /** Filter of user entries in single search mode. */
+    private String userFilter;
+
+    /** Whether single search mode searches the whole subtree below the base DN. */
+    private boolean subtreeSearch;
+
+    /** Latency of authenticator calls. */
+    private final Latency authenticatorLatency = new Latency();
+
+    /** Latency of user entry searches in single search mode. */
+    private final Latency searchLatency = new Latency();
+
+    /** Latency of binds in single search mode. */
+    private final Latency bindLatency = new Latency();
+
     /**
      * Creates a new authentication handler that delegates to the given authenticator.
      *
@@ -150,10 +197,82 @@ public class LdapAuthenticationHandler extends AbstractUsernamePasswordAuthentic
         this.additionalAttributes = additionalAttributes;
     }
 
+    /**
+     * Sets the connection factory on which user entries are searched in single search mode. It is strongly
+     * recommended that this be a <code>PooledConnectionFactory</code> object.
+     *
+     * @param connectionFactory LDAP connection factory bound with rights to search user entries.
+     */
+    public void setSearchConnectionFactory(final ConnectionFactory connectionFactory) {
+        this.searchConnectionFactory = connectionFactory;
+    }
+
+    /**
+     * Sets the connection factory on which users are bound in single search mode. Binding changes the identity
+     * of a connection, so this should be a <code>PooledConnectionFactory</code> dedicated to binds.
+     *
+     * @param connectionFactory LDAP connection factory.
+     */
+    public void setBindConnectionFactory(final ConnectionFactory connectionFactory) {
+        this.bindConnectionFactory = connectionFactory;
+    }
+
+    /**
+     * Sets the base DN of user entries searched in single search mode.
+     *
+     * @param baseDn LDAP base DN of search.
+     */
+    public void setBaseDn(final String baseDn) {
+        this.baseDn = baseDn;
+    }
+
+    /**
+     * Sets the filter of user entries searched in single search mode.
+     *
+     * @param userFilter Search filter of the form "(uid={user})" where {user} is replaced with the username.
+     */
+    public void setUserFilter(final String userFilter) {
+        this.userFilter = userFilter;
+    }
+
+    /**
+     * Sets whether single search mode searches the whole subtree below the base DN, or only its children.
+     *
+     * @param subtreeSearch True for a subtree search, false for a one level search.
+     */
+    public void setSubtreeSearch(final boolean subtreeSearch) {
+        this.subtreeSearch = subtreeSearch;
+    }
+
+    /**
+     * @return Average time in milliseconds of authentications performed by the authenticator.
+     */
+    public double getAverageAuthenticatorLatency() {
+        return this.authenticatorLatency.getAverage();
+    }
+
+    /**
+     * @return Average time in milliseconds of user entry searches in single search mode.
+     */
+    public double getAverageSearchLatency() {
+        return this.searchLatency.getAverage();
+    }
+
+    /**
+     * @return Average time in milliseconds of binds in single search mode.
+     */
+    public double getAverageBindLatency() {
+        return this.bindLatency.getAverage();
+    }
+
     @Override
     protected HandlerResult authenticateUsernamePasswordInternal(final UsernamePasswordCredential upc)
             throws GeneralSecurityException, PreventedException {
+        if (isSingleSearch()) {
+            return authenticateWithSingleSearch(upc);
+        }
         final AuthenticationResponse response;
+        final long start = System.nanoTime();
         try {
             logger.debug("Attempting LDAP authentication for {}", upc);
             final String password = getPasswordEncoder().encode(upc.getPassword());
@@ -163,6 +282,8 @@ public class LdapAuthenticationHandler extends AbstractUsernamePasswordAuthentic
             response = this.authenticator.authenticate(request);
         } catch (final LdapException e) {
             throw new PreventedException("Unexpected LDAP error", e);
+        } finally {
+            this.authenticatorLatency.record(System.nanoTime() - start);
         }
         logger.debug("LDAP response: {}", response);
 
@@ -188,6 +309,102 @@ public class LdapAuthenticationHandler extends AbstractUsernamePasswordAuthentic
         throw new FailedLoginException("Invalid credentials");
     }
 
+    /**
+     * Authenticates a user with a single search for the user entry followed by a bind on the bind pool.
+     *
+     * @param upc the credential
+     * @return the handler result
+     * @throws GeneralSecurityException on authentication failure
+     * @throws PreventedException on LDAP errors
+     */
+    private HandlerResult authenticateWithSingleSearch(final UsernamePasswordCredential upc)
+            throws GeneralSecurityException, PreventedException {
+        logger.debug("Attempting LDAP authentication with a single search for {}", upc);
+        if (!StringUtils.hasText(upc.getPassword())) {
+            // A DN with an empty password is an unauthenticated bind, which many directories accept (RFC 4513 5.1.2)
+            throw new FailedLoginException("Password is blank");
+        }
+        final LdapEntry entry = searchEntry(upc.getUsername());
+        if (entry == null) {
+            throw new AccountNotFoundException(upc.getUsername() + " not found.");
+        }
+        bind(entry.getDn(), getPasswordEncoder().encode(upc.getPassword()));
+        return createHandlerResult(upc, createPrincipal(upc.getUsername(), entry), Collections.<Message>emptyList());
+    }
+
+    /**
+     * Searches the entry of a user, with the attributes needed for the principal.
+     *
+     * @param username the username
+     * @return the entry, or null if none matches
+     * @throws LoginException if several entries match
+     * @throws PreventedException on LDAP errors
+     */
+    private LdapEntry searchEntry(final String username) throws LoginException, PreventedException {
+        final SearchFilter filter = new SearchFilter(this.userFilter);
+        filter.setParameter("user", username);
+        final SearchRequest request = new SearchRequest(this.baseDn, filter, this.authenticatedEntryAttributes);
+        request.setSearchScope(this.subtreeSearch ? SearchScope.SUBTREE : SearchScope.ONELEVEL);
+        request.setSizeLimit(2);
+
+        final long start = System.nanoTime();
+        Connection connection = null;
+        final SearchResult result;
+        try {
+            connection = this.searchConnectionFactory.getConnection();
+            connection.open();
+            final Response<SearchResult> response = new SearchOperation(connection).execute(request);
+            result = response.getResult();
+        } catch (final LdapException e) {
+            throw new PreventedException("Unexpected LDAP error searching for " + username, e);
+        } finally {
+            LdapUtils.closeConnection(connection);
+            this.searchLatency.record(System.nanoTime() - start);
+        }
+        if (result.size() > 1) {
+            throw new LoginException("Multiple entries found for " + username);
+        }
+        return result.getEntry();
+    }
+
+    /**
+     * Binds as a user on a connection of the bind pool.
+     *
+     * @param dn the user DN
+     * @param password the encoded password
+     * @throws FailedLoginException if the credentials are invalid
+     * @throws PreventedException on other LDAP errors
+     */
+    private void bind(final String dn, final String password) throws FailedLoginException, PreventedException {
+        final long start = System.nanoTime();
+        Connection connection = null;
+        try {
+            connection = this.bindConnectionFactory.getConnection();
+            connection.open();
+            final Response<Void> response = new BindOperation(connection).execute(
+                    new BindRequest(dn, new org.ldaptive.Credential(password)));
+            if (response.getResultCode() != ResultCode.SUCCESS) {
+                throw new FailedLoginException("Invalid credentials");
+            }
+        } catch (final LdapException e) {
+            if (e.getResultCode() == ResultCode.INVALID_CREDENTIALS) {
+                throw new FailedLoginException("Invalid credentials");
+            }
+            throw new PreventedException("Unexpected LDAP error binding as " + dn, e);
+        } finally {
+            LdapUtils.closeConnection(connection);
+            this.bindLatency.record(System.nanoTime() - start);
+        }
+    }
+
+    /**
+     * @return True if user entries are resolved with a single search and bound on the bind pool.
+     */
+    private boolean isSingleSearch() {
+        return this.searchConnectionFactory != null && this.bindConnectionFactory != null
+                && getPasswordPolicyConfiguration() == null;
+    }
+
     /**
      * Examine account state to see if any errors are present.
      * If so, throws the relevant security exception.
@@ -281,6 +498,43 @@ public class LdapAuthenticationHandler extends AbstractUsernamePasswordAuthentic
         if (!attributes.isEmpty()) {
             this.authenticatedEntryAttributes = attributes.toArray(new String[attributes.size()]);
         }
+
+        if (this.searchConnectionFactory != null && this.bindConnectionFactory != null) {
+            if (this.baseDn == null || this.userFilter == null) {
+                throw new IllegalStateException("Single search mode requires a base DN and a user filter");
+            }
+            if (getPasswordPolicyConfiguration() != null) {
+                logger.warn("{} has a password policy; authenticating with the authenticator instead of a single search",
+                        this.name);
+            }
+        }
+    }
+
+    /**
+     * Count and total time of an authentication phase.
+     */
+    private static final class Latency {
+        private final AtomicLong count = new AtomicLong();
+
+        private final AtomicLong total = new AtomicLong();
+
+        /**
+         * Records one execution of the phase.
+         *
+         * @param nanos the duration in nanoseconds
+         */
+        public void record(final long nanos) {
+            this.count.incrementAndGet();
+            this.total.addAndGet(nanos);
+        }
+
+        /**
+         * @return the average duration in milliseconds, or 0 if the phase never ran
+         */
+        public double getAverage() {
+            final long n = this.count.get();
+            return n == 0 ? 0 : (double) this.total.get() / n / TimeUnit.MILLISECONDS.toNanos(1);
+        }
     }
 
 
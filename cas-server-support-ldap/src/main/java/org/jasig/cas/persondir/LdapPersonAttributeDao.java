@@ -22,9 +22,12 @@ import java.util.ArrayList;
 import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.regex.Pattern;
 
 import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
 import javax.naming.directory.SearchControls;
+import javax.validation.constraints.Min;
 import javax.validation.constraints.NotNull;
 
 import org.jasig.cas.util.LdapUtils;
@@ -34,6 +37,7 @@ import org.jasig.services.persondir.support.CaseInsensitiveAttributeNamedPersonI
 import org.jasig.services.persondir.support.CaseInsensitiveNamedPersonImpl;
 import org.ldaptive.Connection;
 import org.ldaptive.ConnectionFactory;
+import org.ldaptive.DefaultConnectionFactory;
 import org.ldaptive.LdapAttribute;
 import org.ldaptive.LdapEntry;
 import org.ldaptive.LdapException;
@@ -43,18 +47,41 @@ import org.ldaptive.SearchOperation;
 import org.ldaptive.SearchRequest;
 import org.ldaptive.SearchResult;
 import org.ldaptive.SearchScope;
+import org.ldaptive.pool.BlockingConnectionPool;
+import org.ldaptive.pool.IdlePruneStrategy;
+import org.ldaptive.pool.PoolConfig;
+import org.ldaptive.pool.PooledConnectionFactory;
+import org.ldaptive.pool.SearchValidator;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 /**
  * Person directory <code>IPersonAttribute</code> implementation that queries an LDAP directory
  * with ldaptive components to populate person attributes.
+ * <p>
+ * When pooling is enabled with {@link #setPooled(boolean)} and the DAO is given a plain
+ * <code>DefaultConnectionFactory</code>, the DAO manages its own connection pool, validated and pruned
+ * periodically, so that queries do not open a new connection each. Connection factories that are already pooled
+ * are used as they are.
+ * </p>
  *
  * @author Marvin S. Addison
  * @since 4.0.0
  */
 public class LdapPersonAttributeDao extends AbstractQueryPersonAttributeDao<SearchFilter> {
 
+    /** Default time in milliseconds to wait for a pooled connection. */
+    public static final long DEFAULT_BLOCK_WAIT_TIME = 3000;
+
+    /** Default period in seconds between prunes of idle pooled connections. */
+    public static final long DEFAULT_PRUNE_PERIOD = 300;
+
+    /** Default time in seconds a pooled connection may be idle before it is pruned. */
+    public static final long DEFAULT_IDLE_TIME = 600;
+
+    /** Placeholder of the query value in the search filter. */
+    private static final String FILTER_PARAMETER = "{0}";
+
     /** Logger instance. **/
     protected Logger logger = LoggerFactory.getLogger(this.getClass());
 
@@ -80,6 +107,31 @@ public class LdapPersonAttributeDao extends AbstractQueryPersonAttributeDao<Sear
     /** LDAP attributes to fetch from search results. */
     private String[] attributes;
 
+    /** Whether to pool connections of a plain connection factory. */
+    private boolean pooled;
+
+    /** Size and validation settings of the managed pool. */
+    @NotNull
+    private PoolConfig poolConfig = newPoolConfig();
+
+    /** Time in milliseconds to wait for a connection of the managed pool. */
+    @Min(0)
+    private long blockWaitTime = DEFAULT_BLOCK_WAIT_TIME;
+
+    /** Period in seconds between prunes of the managed pool. */
+    @Min(1)
+    private long prunePeriod = DEFAULT_PRUNE_PERIOD;
+
+    /** Time in seconds a connection of the managed pool may be idle. */
+    @Min(1)
+    private long idleTime = DEFAULT_IDLE_TIME;
+
+    /** Connection pool managed by this DAO, if any. */
+    private BlockingConnectionPool connectionPool;
+
+    /** Search filter split around the query value placeholder. */
+    private String[] filterParts;
+
     /**
      * Sets the base DN of the LDAP search for attributes.
      *
@@ -110,8 +162,9 @@ public class LdapPersonAttributeDao extends AbstractQueryPersonAttributeDao<Sear
     }
 
     /**
-     * Sets the connection factory that produces LDAP connections on which searches occur. It is strongly recommended
-     * that this be a <code>PooledConnecitonFactory</code> object.
+     * Sets the connection factory that produces LDAP connections on which searches occur. A plain
+     * <code>DefaultConnectionFactory</code> is pooled by this DAO if pooling is enabled; any other factory,
+     * such as a <code>PooledConnectionFactory</code>, is used as it is.
      *
      * @param connectionFactory LDAP connection factory.
      */
@@ -119,6 +172,53 @@ public class LdapPersonAttributeDao extends AbstractQueryPersonAttributeDao<Sear
         this.connectionFactory = connectionFactory;
     }
 
+    /**
+     * Sets whether a plain <code>DefaultConnectionFactory</code> is wrapped in a connection pool managed by this DAO.
+     * Defaults to false, which opens a connection for every query as in previous versions.
+     *
+     * @param pooled True to pool connections, false to open a connection for every query.
+     */
+    public void setPooled(final boolean pooled) {
+        this.pooled = pooled;
+    }
+
+    /**
+     * Sets the size and validation settings of the managed connection pool. Defaults to the ldaptive pool defaults
+     * with periodic validation.
+     *
+     * @param poolConfig Connection pool configuration.
+     */
+    public void setPoolConfig(final PoolConfig poolConfig) {
+        this.poolConfig = poolConfig;
+    }
+
+    /**
+     * Sets the time to wait for a connection of the managed pool when all are in use.
+     *
+     * @param blockWaitTime Wait time in milliseconds.
+     */
+    public void setBlockWaitTime(final long blockWaitTime) {
+        this.blockWaitTime = blockWaitTime;
+    }
+
+    /**
+     * Sets the period between prunes of idle connections of the managed pool.
+     *
+     * @param prunePeriod Prune period in seconds.
+     */
+    public void setPrunePeriod(final long prunePeriod) {
+        this.prunePeriod = prunePeriod;
+    }
+
+    /**
+     * Sets the time a connection of the managed pool may be idle before it is pruned.
+     *
+     * @param idleTime Idle time in seconds.
+     */
+    public void setIdleTime(final long idleTime) {
+        this.idleTime = idleTime;
+    }
+
     /**
      * Initializes the object after properties are set.
      */
@@ -130,6 +230,28 @@ public class LdapPersonAttributeDao extends AbstractQueryPersonAttributeDao<Sear
             }
         }
         this.attributes = getResultAttributeMapping().keySet().toArray(new String[getResultAttributeMapping().size()]);
+        this.filterParts = this.searchFilter.split(Pattern.quote(FILTER_PARAMETER), -1);
+
+        if (this.pooled && this.connectionFactory instanceof DefaultConnectionFactory) {
+            this.connectionPool = new BlockingConnectionPool(this.poolConfig, (DefaultConnectionFactory) this.connectionFactory);
+            this.connectionPool.setBlockWaitTime(this.blockWaitTime);
+            this.connectionPool.setValidator(new SearchValidator());
+            this.connectionPool.setPruneStrategy(new IdlePruneStrategy(this.prunePeriod, this.idleTime));
+            this.connectionPool.initialize();
+            this.connectionFactory = new PooledConnectionFactory(this.connectionPool);
+            logger.debug("Pooling LDAP connections with at most {} connections", this.poolConfig.getMaxPoolSize());
+        }
+    }
+
+    /**
+     * Closes the connection pool managed by this DAO, if any.
+     */
+    @PreDestroy
+    public void destroy() {
+        if (this.connectionPool != null) {
+            this.connectionPool.close();
+            this.connectionPool = null;
+        }
     }
 
     @Override
@@ -173,9 +295,14 @@ public class LdapPersonAttributeDao extends AbstractQueryPersonAttributeDao<Sear
             final SearchFilter filter, final String attribute, final List<Object> values) {
         final SearchFilter query;
         if (filter == null && values.size() > 0) {
-            query = new SearchFilter(this.searchFilter);
-            query.setParameter(0, values.get(0).toString());
-            logger.debug("Constructed LDAP search query [{}]", query.format());
+            final String value = SearchFilter.encodeValue(values.get(0).toString());
+            final StringBuilder builder = new StringBuilder(this.searchFilter.length() + value.length());
+            builder.append(this.filterParts[0]);
+            for (int i = 1; i < this.filterParts.length; i++) {
+                builder.append(value).append(this.filterParts[i]);
+            }
+            query = new SearchFilter(builder.toString());
+            logger.debug("Constructed LDAP search query [{}]", query.getFilter());
         } else {
             throw new UnsupportedOperationException("Multiple attributes not supported.");
         }
@@ -183,23 +310,31 @@ public class LdapPersonAttributeDao extends AbstractQueryPersonAttributeDao<Sear
     }
 
     /**
-     * Creates a search request from a search filter.
+     * Creates a search request from the settings resolved at initialization.
      *
-     * @param filter LDAP search filter.
+     * @param filter Search filter.
      *
      * @return ldaptive search request.
      */
     private SearchRequest createRequest(final SearchFilter filter) {
-        final SearchRequest request = new SearchRequest();
-        request.setBaseDn(this.baseDN);
-        request.setSearchFilter(filter);
-        request.setReturnAttributes(this.attributes);
+        final SearchRequest request = new SearchRequest(this.baseDN, filter, this.attributes);
         request.setSearchScope(this.searchScope);
         request.setSizeLimit(this.searchControls.getCountLimit());
         request.setTimeLimit(this.searchControls.getTimeLimit());
         return request;
     }
 
+    /**
+     * Creates the default managed pool configuration.
+     *
+     * @return Pool configuration validating connections periodically.
+     */
+    private static PoolConfig newPoolConfig() {
+        final PoolConfig config = new PoolConfig();
+        config.setValidatePeriodically(true);
+        return config;
+    }
+
     /**
      * Converts an ldaptive <code>LdapEntry</code> containing result entry attributes into an attribute map as needed
      * by Person Directory components.
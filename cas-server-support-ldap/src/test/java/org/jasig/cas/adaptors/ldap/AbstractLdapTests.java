@@ -64,6 +64,14 @@ public abstract class AbstractLdapTests implements ApplicationContextAware {
         return DIRECTORY.getLdapEntries();
     }
 
+    protected long getSearchCount() {
+        return DIRECTORY.getSearchCount();
+    }
+
+    protected long getBindCount() {
+        return DIRECTORY.getBindCount();
+    }
+
     protected String getUsername(final LdapEntry entry) {
         final String unameAttr = this.context.getBean("usernameAttribute", String.class);
         return entry.getAttribute(unameAttr).getStringValue();
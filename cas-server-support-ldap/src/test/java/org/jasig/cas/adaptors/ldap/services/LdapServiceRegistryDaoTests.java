@@ -29,7 +29,9 @@ import org.jasig.cas.services.RegisteredService;
 import org.jasig.cas.services.RegisteredServiceImpl;
 import org.jasig.cas.services.ReturnAllAttributeReleasePolicy;
 import org.jasig.cas.services.ReturnAllowedAttributeReleasePolicy;
+import org.jasig.cas.services.ServiceRegistryChanges;
 import org.jasig.cas.services.ServiceRegistryDao;
+import org.jasig.cas.services.VersionedServiceRegistryDao;
 import org.junit.Before;
 import org.junit.Test;
 import org.junit.runner.RunWith;
@@ -148,6 +150,44 @@ public class LdapServiceRegistryDaoTests extends AbstractLdapTests {
         assertEquals(0, this.dao.load().size());
     }
 
+    @Test
+    public void testLoadingMultiplePages() {
+        for (int i = 0; i < 5; i++) {
+            final RegisteredService rs = getRegexRegisteredService();
+            rs.setEvaluationOrder(i);
+            this.dao.save(rs);
+        }
+        assertEquals(5, this.dao.load().size());
+        final ServiceRegistryChanges changes = ((VersionedServiceRegistryDao) this.dao).loadChangesSince(
+                ServiceRegistryChanges.INITIAL_VERSION);
+        assertEquals(5, changes.getModifiedServices().size());
+    }
+
+    @Test
+    public void testLoadChangesSince() {
+        final VersionedServiceRegistryDao versionedDao = (VersionedServiceRegistryDao) this.dao;
+        this.dao.save(getRegisteredService());
+
+        final ServiceRegistryChanges initial = versionedDao.loadChangesSince(ServiceRegistryChanges.INITIAL_VERSION);
+        assertEquals(1, initial.getModifiedServices().size());
+        assertEquals(1, initial.getServiceIds().size());
+
+        final ServiceRegistryChanges unchanged = versionedDao.loadChangesSince(initial.getVersion());
+        assertTrue(unchanged.getModifiedServices().isEmpty());
+        assertEquals(initial.getVersion(), unchanged.getVersion());
+
+        this.dao.save(getRegexRegisteredService());
+        final ServiceRegistryChanges added = versionedDao.loadChangesSince(unchanged.getVersion());
+        assertEquals(1, added.getModifiedServices().size());
+        assertEquals("^http?://.+", added.getModifiedServices().iterator().next().getServiceId());
+        assertEquals(2, added.getServiceIds().size());
+
+        this.dao.delete(added.getModifiedServices().iterator().next());
+        final ServiceRegistryChanges deleted = versionedDao.loadChangesSince(added.getVersion());
+        assertTrue(deleted.getModifiedServices().isEmpty());
+        assertEquals(1, deleted.getServiceIds().size());
+    }
+
     private RegisteredService getRegisteredService() {
         final AbstractRegisteredService rs = new RegisteredServiceImpl();
         rs.setName("Service Name1");
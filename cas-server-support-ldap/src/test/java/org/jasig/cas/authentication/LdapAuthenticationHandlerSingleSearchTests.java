@@ -0,0 +1,109 @@
+/*
+ * Licensed to Apereo under one or more contributor license
+ * agreements. See the NOTICE file distributed with this work
+ * for additional information regarding copyright ownership.
+ * Apereo licenses this file to you under the Apache License,
+ * Version 2.0 (the "License"); you may not use this file
+ * except in compliance with the License.  You may obtain a
+ * copy of the License at the following location:
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.jasig.cas.authentication;
+
+import org.jasig.cas.adaptors.ldap.AbstractLdapTests;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.ldaptive.LdapEntry;
+import org.springframework.test.context.ContextConfiguration;
+import org.springframework.test.context.junit4.SpringJUnit4ClassRunner;
+
+import javax.security.auth.login.AccountNotFoundException;
+import javax.security.auth.login.FailedLoginException;
+
+import static org.junit.Assert.*;
+
+/**
+ * Unit test for the single search mode of {@link LdapAuthenticationHandler}, compared with an authenticator
+ * resolving DNs by search.
+ *
+ * @author CAS Team
+ * @since 4.1
+ */
+@RunWith(SpringJUnit4ClassRunner.class)
+@ContextConfiguration({"/ldap-context.xml", "/authn-single-search-test.xml"})
+public class LdapAuthenticationHandlerSingleSearchTests extends AbstractLdapTests {
+
+    @Test
+    public void testAuthenticateSuccess() throws Exception {
+        final LdapAuthenticationHandler handler = getBean("singleSearchHandler", LdapAuthenticationHandler.class);
+        for (final LdapEntry entry : this.getEntries()) {
+            final String username = getUsername(entry);
+            final HandlerResult result = handler.authenticate(
+                    new UsernamePasswordCredential(username, entry.getAttribute("userPassword").getStringValue()));
+            assertEquals(username, result.getPrincipal().getId());
+            assertEquals(
+                    entry.getAttribute("displayName").getStringValue(),
+                    result.getPrincipal().getAttributes().get("displayName"));
+        }
+        assertTrue(handler.getAverageSearchLatency() > 0);
+        assertTrue(handler.getAverageBindLatency() > 0);
+    }
+
+    @Test(expected = FailedLoginException.class)
+    public void testAuthenticateFailure() throws Exception {
+        final LdapEntry entry = this.getEntries().iterator().next();
+        getBean("singleSearchHandler", LdapAuthenticationHandler.class).authenticate(
+                new UsernamePasswordCredential(getUsername(entry), "badpassword"));
+    }
+
+    @Test(expected = FailedLoginException.class)
+    public void testAuthenticateBlankPassword() throws Exception {
+        final LdapEntry entry = this.getEntries().iterator().next();
+        getBean("singleSearchHandler", LdapAuthenticationHandler.class).authenticate(
+                new UsernamePasswordCredential(getUsername(entry), ""));
+    }
+
+    @Test(expected = AccountNotFoundException.class)
+    public void testAuthenticateNotFound() throws Exception {
+        getBean("singleSearchHandler", LdapAuthenticationHandler.class).authenticate(
+                new UsernamePasswordCredential("notfound@example.org", "somepwd"));
+    }
+
+    @Test
+    public void testFewerRoundTripsThanAuthenticator() throws Exception {
+        final long authenticatorOperations = countOperations(
+                getBean("authenticatorHandler", LdapAuthenticationHandler.class));
+        final long singleSearchOperations = countOperations(
+                getBean("singleSearchHandler", LdapAuthenticationHandler.class));
+        logger.info("Operations per authentication: {} with the authenticator, {} with a single search",
+                authenticatorOperations, singleSearchOperations);
+        assertEquals(2, singleSearchOperations);
+        assertTrue(singleSearchOperations < authenticatorOperations);
+    }
+
+    /**
+     * Authenticates a user once and counts the searches and binds the directory received.
+     *
+     * @param handler the handler
+     * @return the number of operations
+     * @throws Exception on authentication failure
+     */
+    private long countOperations(final LdapAuthenticationHandler handler) throws Exception {
+        final LdapEntry entry = this.getEntries().iterator().next();
+        final UsernamePasswordCredential credential = new UsernamePasswordCredential(
+                getUsername(entry), entry.getAttribute("userPassword").getStringValue());
+        // Warm up the connection pools so that only the authentication itself is counted
+        handler.authenticate(credential);
+        final long before = getSearchCount() + getBindCount();
+        handler.authenticate(credential);
+        return getSearchCount() + getBindCount() - before;
+    }
+}
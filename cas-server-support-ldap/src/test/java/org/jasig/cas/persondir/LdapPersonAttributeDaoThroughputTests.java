@@ -0,0 +1,102 @@
+/*
+ * Licensed to Apereo under one or more contributor license
+ * agreements. See the NOTICE file distributed with this work
+ * for additional information regarding copyright ownership.
+ * Apereo licenses this file to you under the Apache License,
+ * Version 2.0 (the "License"); you may not use this file
+ * except in compliance with the License.  You may obtain a
+ * copy of the License at the following location:
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.jasig.cas.persondir;
+
+import org.jasig.cas.adaptors.ldap.AbstractLdapTests;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.ldaptive.LdapEntry;
+import org.springframework.test.annotation.IfProfileValue;
+import org.springframework.test.annotation.ProfileValueSourceConfiguration;
+import org.springframework.test.annotation.SystemProfileValueSource;
+import org.springframework.test.context.ContextConfiguration;
+import org.springframework.test.context.junit4.SpringJUnit4ClassRunner;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.*;
+
+/**
+ * Measures the throughput of {@link LdapPersonAttributeDao} against the in-memory directory with a managed
+ * connection pool and with a new connection per query. Run with <code>-Dcas.ldap.benchmark=true</code>.
+ *
+ * @author CAS Team
+ * @since 4.1
+ */
+@RunWith(SpringJUnit4ClassRunner.class)
+@ProfileValueSourceConfiguration(SystemProfileValueSource.class)
+@IfProfileValue(name = "cas.ldap.benchmark", value = "true")
+@ContextConfiguration({"/ldap-context.xml", "/ldap-persondir-pool-test.xml"})
+public class LdapPersonAttributeDaoThroughputTests extends AbstractLdapTests {
+
+    private static final int THREADS = 8;
+
+    private static final int QUERIES_PER_THREAD = 200;
+
+    @Test
+    public void testThroughputWithManagedPool() throws Exception {
+        final long pooled = measure(getBean("pooledAttributeDao", LdapPersonAttributeDao.class));
+        final long unpooled = measure(getBean("unpooledAttributeDao", LdapPersonAttributeDao.class));
+        logger.info("{} attribute queries on {} threads: {} ms pooled, {} ms with a connection per query",
+                THREADS * QUERIES_PER_THREAD, THREADS, pooled, unpooled);
+    }
+
+    /**
+     * Queries the attributes of every directory entry in turn from several threads and checks the results.
+     *
+     * @param dao the DAO to query
+     * @return the elapsed time in milliseconds
+     * @throws Exception on query failure
+     */
+    private long measure(final LdapPersonAttributeDao dao) throws Exception {
+        final List<String> usernames = new ArrayList<String>();
+        for (final LdapEntry entry : getEntries()) {
+            usernames.add(getUsername(entry));
+        }
+        final ExecutorService executor = Executors.newFixedThreadPool(THREADS);
+        try {
+            final List<Future<Void>> futures = new ArrayList<Future<Void>>(THREADS);
+            final long start = System.nanoTime();
+            for (int i = 0; i < THREADS; i++) {
+                futures.add(executor.submit(new Callable<Void>() {
+                    @Override
+                    public Void call() {
+                        for (int j = 0; j < QUERIES_PER_THREAD; j++) {
+                            final String username = usernames.get(j % usernames.size());
+                            assertEquals(username, dao.getPerson(username).getName());
+                        }
+                        return null;
+                    }
+                }));
+            }
+            for (final Future<Void> future : futures) {
+                future.get();
+            }
+            return TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start);
+        } finally {
+            executor.shutdown();
+        }
+    }
+}
@@ -21,6 +21,9 @@ package org.jasig.cas.util.ldap.uboundid;
 import com.unboundid.ldap.listener.InMemoryDirectoryServer;
 import com.unboundid.ldap.listener.InMemoryDirectoryServerConfig;
 import com.unboundid.ldap.listener.InMemoryListenerConfig;
+import com.unboundid.ldap.listener.interceptor.InMemoryInterceptedSearchRequest;
+import com.unboundid.ldap.listener.interceptor.InMemoryInterceptedSimpleBindRequest;
+import com.unboundid.ldap.listener.interceptor.InMemoryOperationInterceptor;
 import com.unboundid.ldap.sdk.LDAPConnection;
 import com.unboundid.ldap.sdk.LDAPException;
 import com.unboundid.ldap.sdk.schema.Schema;
@@ -39,6 +42,7 @@ import java.io.FileInputStream;
 import java.io.IOException;
 import java.util.Collection;
 import java.util.Properties;
+import java.util.concurrent.atomic.AtomicLong;
 
 /**
  * @author Misagh Moayyed
@@ -50,6 +54,10 @@ public final class InMemoryTestLdapDirectoryServer implements Closeable {
 
     private Collection<LdapEntry> ldapEntries;
 
+    private final AtomicLong searchCount = new AtomicLong();
+
+    private final AtomicLong bindCount = new AtomicLong();
+
     /**
      * Instantiates a new Ldap directory server.
      */
@@ -79,6 +87,18 @@ public final class InMemoryTestLdapDirectoryServer implements Closeable {
                             serverSSLUtil.createSSLServerSocketFactory(), // Server factory
                             clientSSLUtil.createSSLSocketFactory())); // Client factory
 
+            config.addInMemoryOperationInterceptor(new InMemoryOperationInterceptor() {
+                @Override
+                public void processSearchRequest(final InMemoryInterceptedSearchRequest request) {
+                    searchCount.incrementAndGet();
+                }
+
+                @Override
+                public void processSimpleBindRequest(final InMemoryInterceptedSimpleBindRequest request) {
+                    bindCount.incrementAndGet();
+                }
+            });
+
             config.setEnforceSingleStructuralObjectClass(false);
             config.setEnforceAttributeSyntaxCompliance(true);
 
@@ -116,6 +136,20 @@ public final class InMemoryTestLdapDirectoryServer implements Closeable {
         return this.ldapEntries;
     }
 
+    /**
+     * @return Number of search requests received by the directory.
+     */
+    public long getSearchCount() {
+        return this.searchCount.get();
+    }
+
+    /**
+     * @return Number of simple bind requests received by the directory.
+     */
+    public long getBindCount() {
+        return this.bindCount.get();
+    }
+
     public LDAPConnection getConnection() throws LDAPException {
         return this.directoryServer.getConnection();
     }
@@ -20,7 +20,9 @@ package org.jasig.cas.support.oauth;
 
 import org.apache.commons.io.IOUtils;
 import org.apache.commons.lang3.StringUtils;
+import org.jasig.cas.services.KeyedServicesManager;
 import org.jasig.cas.services.RegisteredService;
+import org.jasig.cas.services.RegisteredServiceKeyExtractor;
 import org.jasig.cas.services.ServicesManager;
 import org.jasig.cas.support.oauth.services.OAuthRegisteredService;
 import org.slf4j.Logger;
@@ -44,8 +46,18 @@ import java.util.Iterator;
  */
 public final class OAuthUtils {
 
+    /** Name of the services manager index of OAuth services by client id. */
+    public static final String CLIENT_ID_INDEX = "oauthClientId";
+
     private static final Logger LOGGER = LoggerFactory.getLogger(OAuthUtils.class);
 
+    private static final RegisteredServiceKeyExtractor CLIENT_ID_EXTRACTOR = new RegisteredServiceKeyExtractor() {
+        @Override
+        public String extractKey(final RegisteredService service) {
+            return service instanceof OAuthRegisteredService ? ((OAuthRegisteredService) service).getClientId() : null;
+        }
+    };
+
     /**
      * Instantiates a new OAuth utils.
      */
@@ -140,12 +152,20 @@ public final class OAuthUtils {
 
     /**
      * Locate the requested instance of {@link OAuthRegisteredService} by the given clientId.
+     * Services managers that implement {@link KeyedServicesManager} look the client id up in an index;
+     * others are scanned.
      * @param servicesManager the service registry DAO instance.
      * @param clientId the client id by which the {@link OAuthRegisteredService} is to be located.
      * @return null, or the located {@link OAuthRegisteredService} instance in the service registry.
      */
     public static OAuthRegisteredService getRegisteredOAuthService(final ServicesManager servicesManager,
                                                                    final String clientId) {
+        if (servicesManager instanceof KeyedServicesManager) {
+            final KeyedServicesManager keyedServicesManager = (KeyedServicesManager) servicesManager;
+            keyedServicesManager.registerServiceIndex(CLIENT_ID_INDEX, CLIENT_ID_EXTRACTOR);
+            return (OAuthRegisteredService) keyedServicesManager.findServiceByKey(CLIENT_ID_INDEX, clientId);
+        }
+
         final Iterator<RegisteredService> it = servicesManager.getAllServices().iterator();
         while (it.hasNext()) {
             final RegisteredService aService = it.next();
@@ -29,7 +29,7 @@ import org.junit.runners.Suite;
 @RunWith(Suite.class)
 @Suite.SuiteClasses({OAuth20AccessTokenControllerTests.class, OAuth20AuthorizeControllerTests.class,
                      OAuth20CallbackAuthorizeControllerTests.class, OAuth20ProfileControllerTests.class,
-                     OAuth20WrapperControllerTests.class})
+                     OAuth20WrapperControllerTests.class, OAuthUtilsTests.class})
 /**
  * OAuth test suite that runs all test in a batch.
  * @author Misagh Moayyed
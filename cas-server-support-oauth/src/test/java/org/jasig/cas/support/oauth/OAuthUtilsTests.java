@@ -0,0 +1,94 @@
+/*
+ * Licensed to Apereo under one or more contributor license
+ * agreements. See the NOTICE file distributed with this work
+ * for additional information regarding copyright ownership.
+ * Apereo licenses this file to you under the Apache License,
+ * Version 2.0 (the "License"); you may not use this file
+ * except in compliance with the License.  You may obtain a
+ * copy of the License at the following location:
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.jasig.cas.support.oauth;
+
+import org.jasig.cas.services.DefaultServicesManagerImpl;
+import org.jasig.cas.services.InMemoryServiceRegistryDaoImpl;
+import org.jasig.cas.services.RegisteredService;
+import org.jasig.cas.services.ServicesManager;
+import org.jasig.cas.support.oauth.services.OAuthRegisteredService;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.Assert.*;
+import static org.mockito.Mockito.*;
+
+/**
+ * This class tests the {@link OAuthUtils} service lookups.
+ *
+ * @author CAS Team
+ * @since 4.1
+ */
+public final class OAuthUtilsTests {
+
+    private DefaultServicesManagerImpl servicesManager;
+
+    private List<RegisteredService> services;
+
+    @Before
+    public void setUp() {
+        this.services = new ArrayList<RegisteredService>();
+        this.services.add(newOAuthService(1, "client1", 10));
+        this.services.add(newOAuthService(2, "client2", 20));
+        this.services.add(newOAuthService(3, "client2", 30));
+
+        final InMemoryServiceRegistryDaoImpl dao = new InMemoryServiceRegistryDaoImpl();
+        dao.setRegisteredServices(this.services);
+        this.servicesManager = new DefaultServicesManagerImpl(dao);
+    }
+
+    @Test
+    public void testGetRegisteredOAuthServiceByClientId() {
+        assertEquals(1, OAuthUtils.getRegisteredOAuthService(this.servicesManager, "client1").getId());
+        // The first service in evaluation order wins, as with a scan
+        assertEquals(2, OAuthUtils.getRegisteredOAuthService(this.servicesManager, "client2").getId());
+        assertNull(OAuthUtils.getRegisteredOAuthService(this.servicesManager, "unknown"));
+        assertNull(OAuthUtils.getRegisteredOAuthService(this.servicesManager, null));
+    }
+
+    @Test
+    public void testClientIdIndexFollowsChanges() {
+        assertNotNull(OAuthUtils.getRegisteredOAuthService(this.servicesManager, "client1"));
+        this.servicesManager.delete(1);
+        assertNull(OAuthUtils.getRegisteredOAuthService(this.servicesManager, "client1"));
+
+        this.servicesManager.save(newOAuthService(5, "client5", 50));
+        assertEquals(5, OAuthUtils.getRegisteredOAuthService(this.servicesManager, "client5").getId());
+    }
+
+    @Test
+    public void testGetRegisteredOAuthServiceWithoutIndex() {
+        final ServicesManager scannedServicesManager = mock(ServicesManager.class);
+        when(scannedServicesManager.getAllServices()).thenReturn(this.services);
+        assertEquals(2, OAuthUtils.getRegisteredOAuthService(scannedServicesManager, "client2").getId());
+    }
+
+    private static OAuthRegisteredService newOAuthService(final long id, final String clientId, final int order) {
+        final OAuthRegisteredService service = new OAuthRegisteredService();
+        service.setId(id);
+        service.setName("service" + id);
+        service.setServiceId("^https://app" + id + "\\.example\\.org/.*");
+        service.setClientId(clientId);
+        service.setEvaluationOrder(order);
+        return service;
+    }
+}
@@ -24,6 +24,7 @@ import org.jasig.cas.authentication.AbstractAuthenticationHandler;
 import org.jasig.cas.authentication.BasicCredentialMetaData;
 import org.jasig.cas.authentication.HandlerResult;
 import org.jasig.cas.authentication.Credential;
+import org.jasig.cas.authentication.CredentialTypeAuthenticationHandler;
 import org.jasig.cas.authentication.principal.Principal;
 import org.jasig.cas.support.openid.authentication.principal.OpenIdCredential;
 import org.jasig.cas.ticket.TicketGrantingTicket;
@@ -39,7 +40,8 @@ import javax.validation.constraints.NotNull;
  * @author Scott Battaglia
  * @since 3.1
  */
-public final class OpenIdCredentialsAuthenticationHandler extends AbstractAuthenticationHandler {
+public final class OpenIdCredentialsAuthenticationHandler extends AbstractAuthenticationHandler
+        implements CredentialTypeAuthenticationHandler {
 
     @NotNull
     private TicketRegistry ticketRegistry;
@@ -66,6 +68,11 @@ public final class OpenIdCredentialsAuthenticationHandler extends AbstractAuthen
         return credential instanceof OpenIdCredential;
     }
 
+    @Override
+    public Class<? extends Credential> getSupportedCredentialType() {
+        return OpenIdCredential.class;
+    }
+
     public void setTicketRegistry(final TicketRegistry ticketRegistry) {
         this.ticketRegistry = ticketRegistry;
     }
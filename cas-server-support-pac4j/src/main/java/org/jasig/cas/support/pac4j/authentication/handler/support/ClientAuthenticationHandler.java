@@ -28,6 +28,7 @@ import javax.validation.constraints.NotNull;
 import org.apache.commons.lang3.StringUtils;
 import org.jasig.cas.authentication.BasicCredentialMetaData;
 import org.jasig.cas.authentication.Credential;
+import org.jasig.cas.authentication.CredentialTypeAuthenticationHandler;
 import org.jasig.cas.authentication.HandlerResult;
 import org.jasig.cas.authentication.PreventedException;
 import org.jasig.cas.authentication.handler.support.AbstractPreAndPostProcessingAuthenticationHandler;
@@ -50,7 +51,8 @@ import org.springframework.webflow.context.servlet.ServletExternalContext;
  * @since 3.5.0
  */
 @SuppressWarnings("unchecked")
-public final class ClientAuthenticationHandler extends AbstractPreAndPostProcessingAuthenticationHandler {
+public final class ClientAuthenticationHandler extends AbstractPreAndPostProcessingAuthenticationHandler
+        implements CredentialTypeAuthenticationHandler {
 
     /**
      * The clients for authentication.
@@ -77,6 +79,11 @@ public final class ClientAuthenticationHandler extends AbstractPreAndPostProcess
         return credential != null && ClientCredential.class.isAssignableFrom(credential.getClass());
     }
 
+    @Override
+    public Class<? extends Credential> getSupportedCredentialType() {
+        return ClientCredential.class;
+    }
+
     @Override
     protected HandlerResult doAuthentication(final Credential credential) throws GeneralSecurityException, PreventedException {
         final ClientCredential clientCredentials = (ClientCredential) credential;
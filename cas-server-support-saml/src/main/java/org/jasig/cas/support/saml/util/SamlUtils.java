@@ -21,7 +21,6 @@ package org.jasig.cas.support.saml.util;
 import java.io.ByteArrayInputStream;
 import java.io.StringWriter;
 import java.security.PrivateKey;
-import java.security.Provider;
 import java.security.PublicKey;
 import java.security.interfaces.DSAPublicKey;
 import java.security.interfaces.RSAPublicKey;
@@ -45,6 +44,7 @@ import javax.xml.crypto.dsig.spec.TransformParameterSpec;
 import javax.xml.parsers.DocumentBuilderFactory;
 
 
+import org.jasig.cas.util.CryptoPrimitives;
 import org.jdom.Document;
 import org.jdom.Element;
 import org.jdom.input.DOMBuilder;
@@ -123,9 +123,7 @@ public final class SamlUtils {
         try {
             final String providerName = System.getProperty("jsr105Provider",
                     JSR_105_PROVIDER);
-            final XMLSignatureFactory sigFactory = XMLSignatureFactory
-                    .getInstance("DOM", (Provider) Class.forName(providerName)
-                            .newInstance());
+            final XMLSignatureFactory sigFactory = CryptoPrimitives.getXmlSignatureFactory(providerName);
 
             final List<Transform> envelopedTransform = Collections
                     .singletonList(sigFactory.newTransform(Transform.ENVELOPED,
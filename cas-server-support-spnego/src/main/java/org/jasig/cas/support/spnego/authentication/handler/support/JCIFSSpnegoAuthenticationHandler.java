@@ -21,6 +21,7 @@ package org.jasig.cas.support.spnego.authentication.handler.support;
 import jcifs.spnego.Authentication;
 import org.jasig.cas.authentication.BasicCredentialMetaData;
 import org.jasig.cas.authentication.Credential;
+import org.jasig.cas.authentication.CredentialTypeAuthenticationHandler;
 import org.jasig.cas.authentication.HandlerResult;
 import org.jasig.cas.authentication.PreventedException;
 import org.jasig.cas.authentication.handler.support.AbstractPreAndPostProcessingAuthenticationHandler;
@@ -44,7 +45,8 @@ import java.util.regex.Pattern;
  * @since 3.1
  */
 @Deprecated
-public final class JCIFSSpnegoAuthenticationHandler extends AbstractPreAndPostProcessingAuthenticationHandler {
+public final class JCIFSSpnegoAuthenticationHandler extends AbstractPreAndPostProcessingAuthenticationHandler
+        implements CredentialTypeAuthenticationHandler {
 
     private Authentication authentication;
 
@@ -107,6 +109,11 @@ public final class JCIFSSpnegoAuthenticationHandler extends AbstractPreAndPostPr
         return credential instanceof SpnegoCredential;
     }
 
+    @Override
+    public Class<? extends Credential> getSupportedCredentialType() {
+        return SpnegoCredential.class;
+    }
+
     public void setAuthentication(final Authentication authentication) {
         this.authentication = authentication;
     }
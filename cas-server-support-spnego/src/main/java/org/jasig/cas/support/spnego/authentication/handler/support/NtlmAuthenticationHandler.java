@@ -29,6 +29,7 @@ import jcifs.smb.SmbAuthException;
 import jcifs.smb.SmbSession;
 import org.jasig.cas.authentication.BasicCredentialMetaData;
 import org.jasig.cas.authentication.Credential;
+import org.jasig.cas.authentication.CredentialTypeAuthenticationHandler;
 import org.jasig.cas.authentication.HandlerResult;
 import org.jasig.cas.authentication.PreventedException;
 import org.jasig.cas.authentication.handler.support.AbstractPreAndPostProcessingAuthenticationHandler;
@@ -48,7 +49,8 @@ import java.security.GeneralSecurityException;
  * @since 3.1
  */
 
-public class NtlmAuthenticationHandler extends AbstractPreAndPostProcessingAuthenticationHandler {
+public class NtlmAuthenticationHandler extends AbstractPreAndPostProcessingAuthenticationHandler
+        implements CredentialTypeAuthenticationHandler {
 
     private static final int NBT_ADDRESS_TYPE = 0x1C;
     private static final int NTLM_TOKEN_TYPE_FIELD_INDEX = 8;
@@ -134,6 +136,11 @@ public class NtlmAuthenticationHandler extends AbstractPreAndPostProcessingAuthe
         return credential instanceof SpnegoCredential;
     }
 
+    @Override
+    public Class<? extends Credential> getSupportedCredentialType() {
+        return SpnegoCredential.class;
+    }
+
     public void setLoadBalance(final boolean loadBalance) {
         this.loadBalance = loadBalance;
     }
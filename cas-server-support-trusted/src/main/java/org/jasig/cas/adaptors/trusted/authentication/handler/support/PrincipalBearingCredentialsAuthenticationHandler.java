@@ -23,6 +23,7 @@ import java.security.GeneralSecurityException;
 import org.jasig.cas.adaptors.trusted.authentication.principal.PrincipalBearingCredential;
 import org.jasig.cas.authentication.AbstractAuthenticationHandler;
 import org.jasig.cas.authentication.Credential;
+import org.jasig.cas.authentication.CredentialTypeAuthenticationHandler;
 import org.jasig.cas.authentication.HandlerResult;
 import org.jasig.cas.authentication.principal.SimplePrincipal;
 import org.slf4j.Logger;
@@ -38,7 +39,8 @@ import org.slf4j.LoggerFactory;
  * @author Andrew Petro
  * @since 3.0.0.5
  */
-public final class PrincipalBearingCredentialsAuthenticationHandler extends AbstractAuthenticationHandler {
+public final class PrincipalBearingCredentialsAuthenticationHandler extends AbstractAuthenticationHandler
+        implements CredentialTypeAuthenticationHandler {
 
     private final Logger logger = LoggerFactory.getLogger(this.getClass());
 
@@ -53,4 +55,9 @@ public final class PrincipalBearingCredentialsAuthenticationHandler extends Abst
     public boolean supports(final Credential credential) {
         return credential instanceof PrincipalBearingCredential;
     }
+
+    @Override
+    public Class<? extends Credential> getSupportedCredentialType() {
+        return PrincipalBearingCredential.class;
+    }
 }
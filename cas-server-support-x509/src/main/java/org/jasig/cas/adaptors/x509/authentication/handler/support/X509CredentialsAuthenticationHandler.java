@@ -30,6 +30,7 @@ import org.jasig.cas.authentication.HandlerResult;
 import org.jasig.cas.authentication.PreventedException;
 import org.jasig.cas.authentication.handler.support.AbstractPreAndPostProcessingAuthenticationHandler;
 import org.jasig.cas.authentication.Credential;
+import org.jasig.cas.authentication.CredentialTypeAuthenticationHandler;
 import org.jasig.cas.authentication.principal.SimplePrincipal;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -53,7 +54,8 @@ import javax.validation.constraints.NotNull;
  * @author Jan Van der Velpen
  * @since 3.0.0.4
  */
-public class X509CredentialsAuthenticationHandler extends AbstractPreAndPostProcessingAuthenticationHandler {
+public class X509CredentialsAuthenticationHandler extends AbstractPreAndPostProcessingAuthenticationHandler
+        implements CredentialTypeAuthenticationHandler {
 
     /** Default setting to limit the number of intermediate certificates. */
     private static final int DEFAULT_MAXPATHLENGTH = 1;
@@ -117,6 +119,11 @@ public class X509CredentialsAuthenticationHandler extends AbstractPreAndPostProc
                         .getClass());
     }
 
+    @Override
+    public Class<? extends Credential> getSupportedCredentialType() {
+        return X509CertificateCredential.class;
+    }
+
     /**
      * {@inheritDoc}
      */